@@ -0,0 +1,194 @@
+package com.jogeeks.wordpress;
+
+/**
+ * Builds json-api responses shaped like the ones of a real blog: posts with
+ * HTML content, categories, tags, an author, comments, one attachment with
+ * every image size and a few custom fields.
+ */
+class WPBenchmarkFixtures {
+
+	static final int CATEGORIES_PER_POST = 3;
+	static final int TAGS_PER_POST = 4;
+	static final int COMMENTS_PER_POST = 8;
+	static final int CUSTOM_FIELDS_PER_POST = 6;
+
+	private static final String SITE = "http://blog.example.com/";
+
+	private static final String PARAGRAPH = "<p>Lorem ipsum dolor sit amet, "
+			+ "consectetur adipiscing elit. Sed do eiusmod tempor incididunt ut "
+			+ "labore et dolore magna aliqua &#8211; ut enim ad minim veniam, "
+			+ "<a href=\\\"http://blog.example.com/2014/02/\\\">quis nostrud</a> "
+			+ "exercitation ullamco laboris nisi ut aliquip ex ea commodo "
+			+ "consequat.</p>\\n";
+
+	private WPBenchmarkFixtures() {
+	}
+
+	/**
+	 * A get_posts (or get_recent_posts, get_search_results...) response with
+	 * count posts.
+	 */
+	static String posts(int count) {
+		StringBuilder json = new StringBuilder(count * 12 * 1024);
+		json.append("{\"status\":\"ok\",\"count\":").append(count)
+				.append(",\"count_total\":").append(count * 10)
+				.append(",\"pages\":10,\"posts\":[");
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			post(json, 1000 + i);
+		}
+		json.append("],\"query\":{\"ignore_sticky_posts\":true}}");
+		return json.toString();
+	}
+
+	/**
+	 * A single post object, as found in the "posts" array.
+	 */
+	static String post(int id) {
+		StringBuilder json = new StringBuilder(12 * 1024);
+		post(json, id);
+		return json.toString();
+	}
+
+	/**
+	 * A get_category_index response.
+	 */
+	static String categories(int count) {
+		StringBuilder json = new StringBuilder(count * 200);
+		json.append("{\"status\":\"ok\",\"count\":").append(count)
+				.append(",\"categories\":[");
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			category(json, i + 1, i < 5 ? 0 : 1 + i % 5);
+		}
+		json.append("]}");
+		return json.toString();
+	}
+
+	/**
+	 * The "custom_fields" object of a post.
+	 */
+	static String customFields(int count) {
+		StringBuilder json = new StringBuilder(count * 64);
+		customFields(json, count);
+		return json.toString();
+	}
+
+	private static void post(StringBuilder json, int id) {
+		String slug = "a-post-about-something-" + id;
+		json.append("{\"id\":").append(id)
+				.append(",\"type\":\"post\",\"slug\":\"").append(slug)
+				.append("\",\"url\":\"").append(SITE).append("2014/02/")
+				.append(slug).append("/\",\"status\":\"publish\"")
+				.append(",\"title\":\"A post about something &#8211; part ")
+				.append(id).append("\",\"title_plain\":\"A post about something \\u2013 part ")
+				.append(id).append("\",\"content\":\"");
+		for (int i = 0; i < 8; i++) {
+			json.append(PARAGRAPH);
+		}
+		json.append("\",\"excerpt\":\"").append(PARAGRAPH)
+				.append("\",\"date\":\"2014-02-11 09:3").append(id % 10)
+				.append(":00\",\"modified\":\"2014-02-12 18:0").append(id % 10)
+				.append(":00\",\"categories\":[");
+		for (int i = 0; i < CATEGORIES_PER_POST; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			category(json, 1 + (id + i) % 20, 0);
+		}
+		json.append("],\"tags\":[");
+		for (int i = 0; i < TAGS_PER_POST; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			int tag = 1 + (id * 7 + i) % 60;
+			json.append("{\"id\":").append(tag).append(",\"slug\":\"tag-")
+					.append(tag).append("\",\"title\":\"Tag ").append(tag)
+					.append("\",\"description\":\"\",\"post_count\":")
+					.append(tag * 3).append('}');
+		}
+		json.append("],\"author\":");
+		author(json, 1 + id % 4);
+		json.append(",\"comments\":[");
+		for (int i = 0; i < COMMENTS_PER_POST; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			int comment = id * 100 + i;
+			json.append("{\"id\":").append(comment)
+					.append(",\"name\":\"Reader ").append(i)
+					.append("\",\"url\":\"http://reader").append(i)
+					.append(".example.org\",\"date\":\"2014-02-13 10:1")
+					.append(i).append(":00\",\"content\":\"<p>Thanks for the post, ")
+					.append("this helped a lot with my own setup.</p>\\n\",\"parent\":")
+					.append(i % 3 == 2 ? comment - 1 : 0).append('}');
+		}
+		json.append("],\"attachments\":[{\"id\":").append(id * 10)
+				.append(",\"url\":\"").append(SITE)
+				.append("wp-content/uploads/2014/02/image-").append(id)
+				.append(".jpg\",\"slug\":\"image-").append(id)
+				.append("\",\"title\":\"image-").append(id)
+				.append("\",\"description\":\"\",\"caption\":\"\",\"parent\":")
+				.append(id).append(",\"mime_type\":\"image/jpeg\",\"images\":{");
+		image(json, id, "full", "", 1024, 768);
+		json.append(',');
+		image(json, id, "thumbnail", "-150x150", 150, 150);
+		json.append(',');
+		image(json, id, "medium", "-300x225", 300, 225);
+		json.append(',');
+		image(json, id, "large", "-1024x768", 1024, 768);
+		json.append(',');
+		image(json, id, "post-thumbnail", "-624x468", 624, 468);
+		json.append("}}],\"comment_count\":").append(COMMENTS_PER_POST)
+				.append(",\"comment_status\":\"open\",\"custom_fields\":");
+		customFields(json, CUSTOM_FIELDS_PER_POST);
+		json.append('}');
+	}
+
+	private static void category(StringBuilder json, int id, int parent) {
+		json.append("{\"id\":").append(id).append(",\"slug\":\"category-")
+				.append(id).append("\",\"title\":\"Category ").append(id)
+				.append("\",\"description\":\"Posts about category ")
+				.append(id).append("\",\"parent\":").append(parent)
+				.append(",\"post_count\":").append(id * 11).append('}');
+	}
+
+	private static void author(StringBuilder json, int id) {
+		json.append("{\"id\":").append(id).append(",\"slug\":\"author-")
+				.append(id).append("\",\"name\":\"Author ").append(id)
+				.append("\",\"first_name\":\"Author\",\"last_name\":\"Number ")
+				.append(id).append("\",\"nickname\":\"author").append(id)
+				.append("\",\"url\":\"http://author").append(id)
+				.append(".example.org\",\"description\":\"Writes about ")
+				.append("things.\"}");
+	}
+
+	private static void image(StringBuilder json, int id, String size,
+			String suffix, int width, int height) {
+		json.append('"').append(size).append("\":{\"url\":\"").append(SITE)
+				.append("wp-content/uploads/2014/02/image-").append(id)
+				.append(suffix).append(".jpg\",\"width\":").append(width)
+				.append(",\"height\":").append(height).append('}');
+	}
+
+	private static void customFields(StringBuilder json, int count) {
+		json.append('{');
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append("\"field_").append(i).append("\":[\"value ")
+					.append(i).append('"');
+			// some keys hold several values, only the first one is kept
+			if (i % 3 == 0) {
+				json.append(",\"other value\"");
+			}
+			json.append(']');
+		}
+		json.append('}');
+	}
+}
@@ -0,0 +1,130 @@
+package com.jogeeks.wordpress;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a benchmark on the calling thread: a warm up, then a timed run where
+ * every call is measured. Reports the throughput, the percentiles of a call,
+ * the bytes allocated per call and the allocation rate, and the collections
+ * that ran during the timed run.
+ *
+ * Allocations are read from the HotSpot thread MX bean and are not reported
+ * on VMs without it.
+ */
+class WPBenchmarkRunner {
+
+	interface Benchmark {
+		/**
+		 * @return the result, kept so the call can't be optimized away.
+		 */
+		public Object run() throws Exception;
+	}
+
+	// more calls than this are timed but not sampled
+	private static final int MAX_SAMPLES = 1000000;
+
+	private final long warmupMs;
+	private final long measureMs;
+
+	private static volatile Object sink;
+
+	WPBenchmarkRunner(long warmupMs, long measureMs) {
+		this.warmupMs = warmupMs;
+		this.measureMs = measureMs;
+	}
+
+	static void printHeader() {
+		System.out.println(String.format("%-36s %12s %10s %10s %12s %10s %8s",
+				"benchmark", "ops/s", "p50 us", "p99 us", "alloc B/op",
+				"alloc MB/s", "gc ms"));
+	}
+
+	void run(String name, Benchmark benchmark) throws Exception {
+		long end = System.nanoTime() + warmupMs * 1000000;
+		while (System.nanoTime() < end) {
+			sink = benchmark.run();
+		}
+		System.gc();
+
+		// allocated up front so sampling doesn't count as allocations
+		long[] samples = new long[MAX_SAMPLES];
+		int sampled = 0;
+		long ops = 0;
+		long allocated = allocatedBytes();
+		long gcCount = gcCount();
+		long gcTime = gcTime();
+		long start = System.nanoTime();
+		end = start + measureMs * 1000000;
+
+		long now = start;
+		while (now < end) {
+			long before = now;
+			sink = benchmark.run();
+			now = System.nanoTime();
+			ops++;
+
+			if (sampled < samples.length) {
+				samples[sampled++] = now - before;
+			}
+		}
+
+		long elapsed = now - start;
+		allocated = allocated < 0 ? -1 : allocatedBytes() - allocated;
+		gcCount = gcCount() - gcCount;
+		gcTime = gcTime() - gcTime;
+		Arrays.sort(samples, 0, sampled);
+
+		System.out.println(String.format(
+				"%-36s %12.1f %10.2f %10.2f %12s %10s %8s", name, ops
+						* 1e9 / elapsed, percentile(samples, sampled, 0.50)
+						/ 1e3, percentile(samples, sampled, 0.99) / 1e3,
+				allocated < 0 ? "n/a" : Long.toString(allocated / ops),
+				allocated < 0 ? "n/a" : String.format("%.1f", allocated
+						* 1e9 / elapsed / (1024 * 1024)), gcTime + " ("
+						+ gcCount + ")"));
+	}
+
+	private static long percentile(long[] sorted, int count, double p) {
+		if (count == 0) {
+			return 0;
+		}
+		return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+	}
+
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory
+				.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+			if (hotspot.isThreadAllocatedMemorySupported()
+					&& hotspot.isThreadAllocatedMemoryEnabled()) {
+				return hotspot.getThreadAllocatedBytes(Thread.currentThread()
+						.getId());
+			}
+		}
+		return -1;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		List<GarbageCollectorMXBean> collectors = ManagementFactory
+				.getGarbageCollectorMXBeans();
+		for (int i = 0; i < collectors.size(); i++) {
+			count += Math.max(0, collectors.get(i).getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		List<GarbageCollectorMXBean> collectors = ManagementFactory
+				.getGarbageCollectorMXBeans();
+		for (int i = 0; i < collectors.size(); i++) {
+			time += Math.max(0, collectors.get(i).getCollectionTime());
+		}
+		return time;
+	}
+}
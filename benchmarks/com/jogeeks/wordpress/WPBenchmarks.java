@@ -0,0 +1,197 @@
+package com.jogeeks.wordpress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.entity.BasicHttpEntity;
+import org.json.JSONObject;
+
+import com.jogeeks.wordpress.WPBenchmarkRunner.Benchmark;
+
+/**
+ * Benchmarks of the paths a response goes through before the app gets it:
+ * parsing post lists (JSONObject tree and streaming, from a String or from a
+ * gzipped body), building a post from its JSON, encoding and decoding a post
+ * with WPPostCodec, reading custom fields and categories, and picking the
+ * endpoint that handles a response.
+ *
+ * Usage: WPBenchmarks [filter] [warmup seconds] [measure seconds]. Only the
+ * benchmarks whose name contains filter are run; run each one in its own VM
+ * for numbers that don't depend on what ran before.
+ *
+ * Converting posts to Bundles (WPBundles) needs Android and is not covered,
+ * the Bundle only holds the WPPostCodec bytes.
+ */
+public class WPBenchmarks {
+
+	private static final int[] POST_COUNTS = { 10, 50, 500 };
+
+	public static void main(String[] args) throws Exception {
+		String filter = args.length > 0 ? args[0] : "";
+		long warmup = args.length > 1 ? Long.parseLong(args[1]) : 5;
+		long measure = args.length > 2 ? Long.parseLong(args[2]) : 10;
+
+		WPBenchmarkRunner runner = new WPBenchmarkRunner(warmup * 1000,
+				measure * 1000);
+		WPBenchmarkRunner.printHeader();
+
+		for (int i = 0; i < POST_COUNTS.length; i++) {
+			final String posts = WPBenchmarkFixtures.posts(POST_COUNTS[i]);
+			final JSONObject postsJson = new JSONObject(posts);
+
+			run(runner, filter, "parsePosts.tree.fromString." + POST_COUNTS[i],
+					new Benchmark() {
+						@Override
+						public Object run() throws Exception {
+							return WPPost.parsePosts(new JSONObject(posts));
+						}
+					});
+			run(runner, filter, "parsePosts.tree.fromJSON." + POST_COUNTS[i],
+					new Benchmark() {
+						@Override
+						public Object run() throws Exception {
+							return WPPost.parsePosts(postsJson);
+						}
+					});
+			run(runner, filter, "parsePosts.streaming." + POST_COUNTS[i],
+					new Benchmark() {
+						@Override
+						public Object run() throws Exception {
+							return WPPost.parsePosts(new WPJsonReader(posts),
+									new HashMap<String, String>());
+						}
+					});
+
+			// a gzipped response: read whole into a String like
+			// JsonHttpResponseHandler does, or parsed as it is inflated
+			final byte[] gzipped = gzip(posts);
+			run(runner, filter, "parsePosts.gzip.buffered." + POST_COUNTS[i],
+					new Benchmark() {
+						@Override
+						public Object run() throws Exception {
+							return WPPost.parsePosts(new WPJsonReader(
+									new String(inflate(gzipped), "UTF-8")),
+									new HashMap<String, String>());
+						}
+					});
+			run(runner, filter, "parsePosts.gzip.streaming." + POST_COUNTS[i],
+					new Benchmark() {
+						@Override
+						public Object run() throws Exception {
+							BasicHttpEntity entity = new BasicHttpEntity();
+							entity.setContent(new ByteArrayInputStream(gzipped));
+							entity.setContentLength(gzipped.length);
+							entity.setContentEncoding("gzip");
+							return WPPost.parsePosts(new WPJsonReader(
+									new InputStreamReader(new WPDecodingEntity(
+											entity).getContent(), "UTF-8")),
+									new HashMap<String, String>());
+						}
+					});
+		}
+
+		final JSONObject post = new JSONObject(WPBenchmarkFixtures.post(1000));
+		run(runner, filter, "post.fromJSON", new Benchmark() {
+			@Override
+			public Object run() throws Exception {
+				return new WPPost(post);
+			}
+		});
+
+		// the two on-disk formats of WPPostStore
+		final String postText = WPBenchmarkFixtures.post(1000);
+		run(runner, filter, "post.fromJsonText.streaming", new Benchmark() {
+			@Override
+			public Object run() throws Exception {
+				return new WPPost(new WPJsonReader(postText));
+			}
+		});
+		final WPPost parsed = new WPPost(new WPJsonReader(postText));
+		final byte[] encoded = WPPostCodec.encode(parsed);
+		run(runner, filter, "postCodec.encode", new Benchmark() {
+			@Override
+			public Object run() throws Exception {
+				return WPPostCodec.encode(parsed);
+			}
+		});
+		run(runner, filter, "postCodec.decode", new Benchmark() {
+			@Override
+			public Object run() throws Exception {
+				return WPPostCodec.decode(encoded);
+			}
+		});
+
+		final String fields = WPBenchmarkFixtures
+				.customFields(WPBenchmarkFixtures.CUSTOM_FIELDS_PER_POST);
+		final JSONObject fieldsJson = new JSONObject(fields);
+		run(runner, filter, "parseMetaResponse.tree", new Benchmark() {
+			@Override
+			public Object run() throws Exception {
+				return WPCustomField.parseMetaResponse(fieldsJson);
+			}
+		});
+		run(runner, filter, "parseMetaResponse.streaming", new Benchmark() {
+			@Override
+			public Object run() throws Exception {
+				return WPCustomField.parseMetaResponse(new WPJsonReader(fields));
+			}
+		});
+
+		final JSONObject categories = new JSONObject(
+				WPBenchmarkFixtures.categories(50));
+		run(runner, filter, "parseCategories.50", new Benchmark() {
+			@Override
+			public Object run() throws Exception {
+				return WPCategory.parseCategories(categories);
+			}
+		});
+
+		final String baseUrl = "http://blog.example.com/api/";
+		final String[] uris = new String[WPEndpoint.values().length];
+		for (int i = 0; i < uris.length; i++) {
+			uris[i] = baseUrl + WPEndpoint.values()[i].getPath()
+					+ "?count=10&page=2";
+		}
+		run(runner, filter, "endpoint.fromRequestUri", new Benchmark() {
+			private int next;
+
+			@Override
+			public Object run() throws Exception {
+				next = (next + 1) % uris.length;
+				return WPEndpoint.fromRequestUri(uris[next], baseUrl);
+			}
+		});
+	}
+
+	private static byte[] gzip(String text) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		out.write(text.getBytes("UTF-8"));
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static byte[] inflate(byte[] gzipped) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void run(WPBenchmarkRunner runner, String filter,
+			String name, Benchmark benchmark) throws Exception {
+		if (name.indexOf(filter) != -1) {
+			runner.run(name, benchmark);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.jogeeks.wordpress;
+
+/**
+ * The assertions of a check program: each prints a line, and the program
+ * exits with status 1 if any failed, so a script can run the checks.
+ */
+class WPCheck {
+
+	private int passed;
+	private int failed;
+
+	/**
+	 * @param detail
+	 *            what was seen, printed if the check failed.
+	 */
+	void check(String name, boolean condition, Object detail) {
+		if (condition) {
+			passed++;
+			System.out.println("ok      " + name);
+		} else {
+			failed++;
+			System.out.println("FAILED  " + name + ": " + detail);
+		}
+	}
+
+	void exit() {
+		System.out.println(passed + " passed, " + failed + " failed");
+		System.exit(failed == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,257 @@
+package com.jogeeks.wordpress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashSet;
+
+/**
+ * Checks the retry policy and the circuit breaker against the faults of a
+ * {@link WPStandInServer}: its errors, dropped connections and outages.
+ * Requests are sent the way WPRequest sends them: reads get the retry
+ * policy, writes are sent once, and every attempt goes through the breaker,
+ * which an HTTP error such as a 404 doesn't open.
+ *
+ * Usage: WPFaultCheck. It exits with 1 if a check failed.
+ */
+public class WPFaultCheck {
+
+	private static final int READS = 200;
+	private static final int WRITES = 50;
+
+	/**
+	 * The outcome of a request over all its attempts.
+	 */
+	private static class Outcome {
+		WPFailure.Reason reason;
+		int attempts;
+	}
+
+	public static void main(String[] args) throws Exception {
+		WPCheck check = new WPCheck();
+		checkDelays(check);
+
+		WPStandInServer server = new WPStandInServer(0, 50);
+		server.start();
+		String baseUrl = server.getBaseUrl();
+		String read = baseUrl + WPPost.RECENT_POSTS_URL + "/?count=1";
+		String write = baseUrl + WPPost.CREATE_POST_URL;
+		WPRetryPolicy retry = new WPRetryPolicy(4, 20, 200);
+
+		// errors: a retried read almost always gets through
+		server.setErrorRate(0.3);
+		int once = 0;
+		int retried = 0;
+		for (int i = 0; i < READS; i++) {
+			if (send(read, WPEndpoint.RECENT_POSTS, WPRetryPolicy.NONE,
+					null).reason == null) {
+				once++;
+			}
+			if (send(read, WPEndpoint.RECENT_POSTS, retry, null).reason == null) {
+				retried++;
+			}
+		}
+		check.check("retried reads get through 30% errors",
+				retried >= READS * 95 / 100 && retried > once, retried + "/"
+						+ READS + " retried, " + once + "/" + READS
+						+ " sent once");
+
+		int before = server.getRequestCount();
+		int failedWrites = 0;
+		for (int i = 0; i < WRITES; i++) {
+			if (send(write, WPEndpoint.CREATE_POST, retry, null).reason != null) {
+				failedWrites++;
+			}
+		}
+		check.check("writes are sent once",
+				server.getRequestCount() - before == WRITES,
+				(server.getRequestCount() - before) + " requests for "
+						+ WRITES + " writes, " + failedWrites + " failed");
+		server.setErrorRate(0);
+
+		// dropped connections are connection failures, retried to the limit;
+		// HttpURLConnection itself sends a GET that got no answer once more
+		server.setDropRate(1);
+		before = server.getRequestCount();
+		Outcome dropped = send(read, WPEndpoint.RECENT_POSTS, retry, null);
+		int requests = server.getRequestCount() - before;
+		check.check("a dropped read is retried to the limit",
+				dropped.reason == WPFailure.Reason.CONNECTION
+						&& dropped.attempts == retry.getMaxAttempts()
+						&& requests >= retry.getMaxAttempts()
+						&& requests <= 2 * retry.getMaxAttempts(),
+				dropped.reason + " after " + dropped.attempts + " attempts, "
+						+ requests + " requests");
+		server.setDropRate(0);
+
+		// an outage opens the circuit, the open circuit spares the server
+		WPCircuitBreaker breaker = new WPCircuitBreaker(
+				WPCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, 300);
+		server.setDown(1500);
+		long upAt = System.nanoTime() / 1000000 + 1500;
+		before = server.getRequestCount();
+		int refused = 0;
+		for (int i = 0; i < 20; i++) {
+			if (send(read, WPEndpoint.RECENT_POSTS, WPRetryPolicy.NONE,
+					breaker).reason == WPFailure.Reason.CIRCUIT_OPEN) {
+				refused++;
+			}
+		}
+		int threshold = WPCircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+		requests = server.getRequestCount() - before;
+		check.check("the circuit opens after " + threshold + " failures",
+				breaker.getState() == WPCircuitBreaker.State.OPEN
+						&& requests == threshold && refused == 20 - threshold,
+				breaker.getState() + ", " + requests + " requests, " + refused
+						+ " refused");
+
+		Thread.sleep(350);
+		before = server.getRequestCount();
+		Outcome probe = send(read, WPEndpoint.RECENT_POSTS,
+				WPRetryPolicy.NONE, breaker);
+		Outcome behind = send(read, WPEndpoint.RECENT_POSTS,
+				WPRetryPolicy.NONE, breaker);
+		check.check("a failed probe opens the circuit again",
+				probe.reason == WPFailure.Reason.SERVER_ERROR
+						&& behind.reason == WPFailure.Reason.CIRCUIT_OPEN
+						&& breaker.getState() == WPCircuitBreaker.State.OPEN
+						&& server.getRequestCount() - before == 1, probe.reason
+						+ ", then " + behind.reason + ", "
+						+ breaker.getState());
+
+		Thread.sleep(Math.max(0, upAt - System.nanoTime() / 1000000) + 350);
+		probe = send(read, WPEndpoint.RECENT_POSTS, WPRetryPolicy.NONE,
+				breaker);
+		check.check("a successful probe closes the circuit",
+				probe.reason == null
+						&& breaker.getState() == WPCircuitBreaker.State.CLOSED,
+				probe.reason + ", " + breaker.getState());
+
+		// a 404 is an answer, the host is up
+		breaker = new WPCircuitBreaker(
+				WPCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, 300);
+		Outcome missing = null;
+		for (int i = 0; i < 10; i++) {
+			missing = send(baseUrl + "missing/method/", WPEndpoint.POST,
+					retry, breaker);
+		}
+		check.check("HTTP errors aren't retried and don't open the circuit",
+				missing.reason == WPFailure.Reason.HTTP_ERROR
+						&& missing.attempts == 1
+						&& breaker.getState() == WPCircuitBreaker.State.CLOSED,
+				missing.reason + " after " + missing.attempts + " attempts, "
+						+ breaker.getState());
+
+		server.stop();
+		check.exit();
+	}
+
+	/**
+	 * The n-th retry waits between 0 and min(maxDelay, baseDelay * 2^(n-1)),
+	 * a different time every time.
+	 */
+	private static void checkDelays(WPCheck check) {
+		WPRetryPolicy policy = new WPRetryPolicy(6, 100, 1000);
+		boolean bounded = true;
+		boolean spread = true;
+		String detail = "";
+		for (int attempts = 1; attempts <= 5; attempts++) {
+			long cap = Math.min(1000, 100L << (attempts - 1));
+			long max = 0;
+			HashSet<Long> delays = new HashSet<Long>();
+			for (int i = 0; i < 1000; i++) {
+				long delay = policy.getDelay(attempts);
+				bounded &= delay >= 0 && delay <= cap;
+				max = Math.max(max, delay);
+				delays.add(delay);
+			}
+			spread &= max >= cap * 9 / 10 && delays.size() > cap / 2;
+			detail += " " + attempts + ": max " + max + " of " + cap + ", "
+					+ delays.size() + " values;";
+		}
+		check.check("backoff delays stay under their cap", bounded, detail);
+		check.check("backoff delays are jittered over the cap", spread,
+				detail);
+		check.check("the last attempt isn't retried",
+				!policy.shouldRetry(WPFailure.Reason.SERVER_ERROR, 6)
+						&& policy.shouldRetry(WPFailure.Reason.SERVER_ERROR, 5),
+				"");
+	}
+
+	/**
+	 * Sends a request until it succeeds, the retry policy gives up or the
+	 * breaker refuses it, the way WPRequest does.
+	 *
+	 * @param breaker
+	 *            null to not go through one.
+	 */
+	private static Outcome send(String url, WPEndpoint endpoint,
+			WPRetryPolicy retryPolicy, WPCircuitBreaker breaker)
+			throws InterruptedException {
+		WPRetryPolicy policy = endpoint.isRead() ? retryPolicy
+				: WPRetryPolicy.NONE;
+		Outcome outcome = new Outcome();
+		while (true) {
+			if (breaker != null && !breaker.allowRequest()) {
+				outcome.reason = WPFailure.Reason.CIRCUIT_OPEN;
+				return outcome;
+			}
+			outcome.attempts++;
+			IOException error = null;
+			int status;
+			try {
+				status = sendOnce(url, !endpoint.isRead());
+			} catch (IOException e) {
+				status = 0;
+				error = e;
+			}
+			outcome.reason = WPFailure.reasonOf(status, error);
+			if (breaker != null) {
+				if (outcome.reason == null
+						|| outcome.reason == WPFailure.Reason.HTTP_ERROR) {
+					breaker.onSuccess();
+				} else {
+					breaker.onFailure();
+				}
+			}
+			if (outcome.reason == null
+					|| !policy.shouldRetry(outcome.reason, outcome.attempts)) {
+				return outcome;
+			}
+			Thread.sleep(policy.getDelay(outcome.attempts));
+		}
+	}
+
+	/**
+	 * @return the status code of the response.
+	 */
+	private static int sendOnce(String url, boolean post) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url)
+				.openConnection();
+		// a new connection per attempt, so that HttpURLConnection doesn't
+		// silently send again on a kept alive connection the stand-in dropped
+		connection.setRequestProperty("Connection", "close");
+		connection.setConnectTimeout(5000);
+		connection.setReadTimeout(5000);
+		if (post) {
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type",
+					"application/x-www-form-urlencoded");
+			OutputStream out = connection.getOutputStream();
+			out.write("nonce=0&title=Fault&content=Test".getBytes("UTF-8"));
+			out.close();
+		}
+		int status = connection.getResponseCode();
+		InputStream in = status >= 400 ? connection.getErrorStream()
+				: connection.getInputStream();
+		if (in != null) {
+			byte[] buffer = new byte[8192];
+			while (in.read(buffer) != -1) {
+			}
+			in.close();
+		}
+		return status;
+	}
+}
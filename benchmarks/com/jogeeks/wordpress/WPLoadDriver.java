@@ -0,0 +1,543 @@
+package com.jogeeks.wordpress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.entity.BasicHttpEntity;
+
+/**
+ * Sends a mix of the library's requests from several threads for a while
+ * and reports, per endpoint, the client side throughput, errors and latency
+ * percentiles. A latency covers the whole request: connecting, waiting,
+ * downloading and, for post lists, parsing the posts.
+ *
+ * Reads can be retried with a {@link WPRetryPolicy} and hedged with a
+ * {@link WPHedgePolicy}, and every request can go through a
+ * {@link WPCircuitBreaker}, like the library's requests do; the report then
+ * also counts the retries, the requests the open circuit failed at once and
+ * the hedges. The responses are asked gzipped and read through a
+ * {@link WPDecodingEntity}; a second table gives, per endpoint, the bytes of
+ * a response on the wire and decoded.
+ *
+ * Usage: WPLoadDriver [base url] [threads] [seconds] [options|-]
+ * [faults|-]. Without a base url, or with "-", a {@link WPStandInServer} with
+ * 50 ms +- 20 ms of latency is started. The faults, separated by commas, are
+ * "errors": it fails 5% of the requests, drops 2% of the connections and is
+ * down during the middle fifth of the run, and "slow": 2% of the requests
+ * take one more second. The options, separated by commas, are "retry": reads
+ * are retried with the default policy behind a breaker that opens for 2 s,
+ * "hedge": reads are hedged after the p95 latency, at most 5% of them, and
+ * "plain": responses are not asked compressed.
+ */
+public class WPLoadDriver {
+
+	/**
+	 * A request of the mix, picked weight times out of the sum of the
+	 * weights.
+	 */
+	private static class Request {
+		final String name;
+		final String path;
+		final String body;
+		final boolean read;
+		final int weight;
+
+		Request(String name, String path, String body, boolean read,
+				int weight) {
+			this.name = name;
+			this.path = path;
+			this.body = body;
+			this.read = read;
+			this.weight = weight;
+		}
+	}
+
+	private static class Samples {
+		long[] latencies = new long[256];
+		int count;
+		int errors;
+		int retries;
+		int rejected;
+
+		void add(long latency) {
+			if (count == latencies.length) {
+				long[] grown = new long[latencies.length * 2];
+				System.arraycopy(latencies, 0, grown, 0, latencies.length);
+				latencies = grown;
+			}
+			latencies[count++] = latency;
+		}
+
+		void addAll(Samples other) {
+			for (int i = 0; i < other.count; i++) {
+				add(other.latencies[i]);
+			}
+			errors += other.errors;
+			retries += other.retries;
+			rejected += other.rejected;
+		}
+
+		double percentile(double p) {
+			if (count == 0) {
+				return 0;
+			}
+			return latencies[Math.min(count - 1, (int) Math.ceil(p * count) - 1)] / 1e6;
+		}
+	}
+
+	private final String baseUrl;
+	private final ArrayList<Request> mix = new ArrayList<Request>();
+	private int totalWeight;
+	private WPRetryPolicy retryPolicy = WPRetryPolicy.NONE;
+	private WPCircuitBreaker breaker;
+	private WPHedgePolicy hedgePolicy;
+	private ExecutorService hedgeExecutor;
+	private boolean gzip = true;
+	private final WPTransferStats transferStats = new WPTransferStats();
+
+	public WPLoadDriver(String baseUrl) {
+		this.baseUrl = baseUrl;
+
+		// roughly what a reading app sends, writes are rare
+		add("get_recent_posts", WPPost.RECENT_POSTS_URL + "/?count=10&page=1",
+				null, true, 30);
+		add("get_posts", WPPost.POSTS_URL + "/?count=10&page=3", null, true,
+				20);
+		add("get_post", WPPost.POST_URL + "/?post_id=42", null, true, 20);
+		add("get_category_index", WPCategory.CATEGORY_INDEX + "/", null,
+				true, 5);
+		add("get_nonce", WPEndpoint.NONCE.getPath()
+				+ "?controller=posts&method=create_post", null, true, 5);
+		add("generate_auth_cookie", "auth/generate_auth_cookie/"
+				+ "?nonce=0&username=reader&password=secret", null, false, 2);
+		add("create_post", WPPost.CREATE_POST_URL, "nonce=0&title=Load"
+				+ "&content=Test&status=publish", false, 2);
+		add("get_post_custom", WPCustomField.GET_POST_CUSTOM + "?post_id=42",
+				null, true, 5);
+		add("batch_post_meta", WPCustomField.BATCH_POST_META,
+				"operations=%5B%7B%22action%22%3A%22update%22%2C%22post_id%22"
+						+ "%3A42%2C%22meta_key%22%3A%22views%22%2C%22meta_value"
+						+ "%22%3A%221%22%7D%5D", false, 3);
+		add("submit_comment", WPComment.SUBMIT_COMMENT_URL
+				+ "/?post_id=42&name=Reader&email=reader%40example.com"
+				+ "&content=Nice", null, false, 8);
+	}
+
+	private void add(String name, String path, String body, boolean read,
+			int weight) {
+		mix.add(new Request(name, path, body, read, weight));
+		totalWeight += weight;
+	}
+
+	/**
+	 * Retries the reads that fail with retryPolicy, NONE by default.
+	 */
+	public void setRetryPolicy(WPRetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Hedges the reads with hedgePolicy, none by default.
+	 */
+	public void setHedgePolicy(WPHedgePolicy hedgePolicy) {
+		this.hedgePolicy = hedgePolicy;
+	}
+
+	/**
+	 * @param gzip
+	 *            false to not ask for compressed responses, true by default.
+	 */
+	public void setGzip(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	/**
+	 * Sends every request through breaker, none by default.
+	 */
+	public void setCircuitBreaker(WPCircuitBreaker breaker) {
+		this.breaker = breaker;
+	}
+
+	/**
+	 * Runs the mix from threads threads for seconds seconds and prints the
+	 * report.
+	 */
+	public void run(int threads, long seconds) throws InterruptedException {
+		final long end = System.nanoTime() + seconds * 1000000000L;
+		final ArrayList<HashMap<String, Samples>> results = new ArrayList<HashMap<String, Samples>>();
+		Thread[] workers = new Thread[threads];
+
+		if (hedgePolicy != null) {
+			hedgeExecutor = Executors.newCachedThreadPool();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < threads; i++) {
+			final HashMap<String, Samples> samples = new HashMap<String, Samples>();
+			results.add(samples);
+			final long seed = i;
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					while (System.nanoTime() < end) {
+						Request request = pick(random);
+						Samples endpoint = samples.get(request.name);
+						if (endpoint == null) {
+							endpoint = new Samples();
+							samples.put(request.name, endpoint);
+						}
+
+						long before = System.nanoTime();
+						if (send(request, endpoint)) {
+							endpoint.add(System.nanoTime() - before);
+						} else {
+							endpoint.errors++;
+						}
+					}
+				}
+			});
+			workers[i].start();
+		}
+		for (int i = 0; i < threads; i++) {
+			workers[i].join();
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		if (hedgeExecutor != null) {
+			hedgeExecutor.shutdown();
+		}
+
+		TreeMap<String, Samples> merged = new TreeMap<String, Samples>();
+		for (int i = 0; i < results.size(); i++) {
+			for (String name : results.get(i).keySet()) {
+				Samples endpoint = merged.get(name);
+				if (endpoint == null) {
+					endpoint = new Samples();
+					merged.put(name, endpoint);
+				}
+				endpoint.addAll(results.get(i).get(name));
+			}
+		}
+
+		System.out.println(String.format(
+				"%-22s %10s %8s %8s %8s %9s %9s %9s %9s", "endpoint", "req/s",
+				"errors", "retries", "open", "p50 ms", "p90 ms", "p99 ms",
+				"max ms"));
+		Samples all = new Samples();
+		for (String name : merged.keySet()) {
+			Samples endpoint = merged.get(name);
+			all.addAll(endpoint);
+			print(name, endpoint, elapsed);
+		}
+		print("all", all, elapsed);
+		if (hedgePolicy != null) {
+			System.out.println(String.format(
+					"hedged %.1f%% of %d reads, the hedge won %.1f%%",
+					hedgePolicy.getHedgeRate() * 100,
+					hedgePolicy.getRequestCount(),
+					hedgePolicy.getWinRate() * 100));
+		}
+
+		System.out.println(String.format("%n%-22s %12s %12s %8s",
+				"endpoint", "wire B", "decoded B", "ratio"));
+		for (String name : transferStats.getEndpoints()) {
+			long responses = transferStats.getResponseCount(name);
+			System.out.println(String.format("%-22s %12d %12d %7.1fx", name,
+					transferStats.getWireBytes(name) / responses,
+					transferStats.getDecodedBytes(name) / responses,
+					transferStats.getRatio(name)));
+		}
+	}
+
+	private static void print(String name, Samples samples, double elapsed) {
+		Arrays.sort(samples.latencies, 0, samples.count);
+		System.out.println(String.format(
+				"%-22s %10.1f %8d %8d %8d %9.1f %9.1f %9.1f %9.1f", name,
+				samples.count / elapsed, samples.errors, samples.retries,
+				samples.rejected, samples.percentile(0.50),
+				samples.percentile(0.90), samples.percentile(0.99),
+				samples.percentile(1)));
+	}
+
+	private Request pick(Random random) {
+		int weight = random.nextInt(totalWeight);
+		for (int i = 0; i < mix.size(); i++) {
+			weight -= mix.get(i).weight;
+			if (weight < 0) {
+				return mix.get(i);
+			}
+		}
+		return mix.get(mix.size() - 1);
+	}
+
+	/**
+	 * Sends request until it succeeds, the retry policy gives up or the
+	 * circuit breaker refuses it.
+	 *
+	 * @return false if the request failed.
+	 */
+	private boolean send(Request request, Samples samples) {
+		WPRetryPolicy policy = request.read ? retryPolicy : WPRetryPolicy.NONE;
+		for (int attempts = 1;; attempts++) {
+			if (breaker != null && !breaker.allowRequest()) {
+				// failed at once, the thread would spin without this pause
+				samples.rejected++;
+				pause(Math.max(10, breaker.getRemainingOpenTime()));
+				return false;
+			}
+
+			WPFailure.Reason reason = WPFailure.reasonOf(
+					hedgePolicy != null && request.read ? sendHedged(request)
+							: sendOnce(request), null);
+			if (breaker != null) {
+				if (reason == null || reason == WPFailure.Reason.HTTP_ERROR) {
+					breaker.onSuccess();
+				} else {
+					breaker.onFailure();
+				}
+			}
+			if (reason == null) {
+				return true;
+			}
+			if (!policy.shouldRetry(reason, attempts)) {
+				return false;
+			}
+
+			samples.retries++;
+			if (!pause(policy.getDelay(attempts))) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * One send of a request, run by the hedge executor.
+	 */
+	private class Attempt implements Callable<Attempt> {
+		final Request request;
+		final boolean hedge;
+		int status;
+		long millis;
+
+		Attempt(Request request, boolean hedge) {
+			this.request = request;
+			this.hedge = hedge;
+		}
+
+		@Override
+		public Attempt call() {
+			long before = System.nanoTime();
+			status = sendOnce(request);
+			millis = (System.nanoTime() - before) / 1000000;
+			return this;
+		}
+	}
+
+	/**
+	 * Sends request and, if it hasn't answered after the hedge delay, sends
+	 * it again; the first answer wins, a failure only counts once both have
+	 * failed. Unlike the library, the loser isn't cancelled: an
+	 * HttpURLConnection ignores interrupts, it finishes in the background.
+	 *
+	 * @return the status code of the winner, 0 if there was no response.
+	 */
+	private int sendHedged(Request request) {
+		CompletionService<Attempt> attempts = new ExecutorCompletionService<Attempt>(
+				hedgeExecutor);
+		hedgePolicy.onRequest();
+		attempts.submit(new Attempt(request, false));
+		int running = 1;
+		try {
+			Future<Attempt> done = null;
+			long delay = hedgePolicy.getHedgeDelay();
+			if (delay >= 0) {
+				done = attempts.poll(delay, TimeUnit.MILLISECONDS);
+				if (done == null && hedgePolicy.tryHedge()) {
+					attempts.submit(new Attempt(request, true));
+					running++;
+				}
+			}
+			while (true) {
+				if (done == null) {
+					done = attempts.take();
+				}
+				running--;
+				Attempt attempt = done.get();
+				boolean answered = attempt.status != 0
+						&& WPFailure.reasonOf(attempt.status, null) != WPFailure.Reason.SERVER_ERROR;
+				if (answered) {
+					hedgePolicy.onAnswer(attempt.millis, attempt.hedge);
+				}
+				if (answered || running == 0) {
+					return attempt.status;
+				}
+				done = null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 0;
+		} catch (ExecutionException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return false if the thread was interrupted.
+	 */
+	private static boolean pause(long millis) {
+		try {
+			Thread.sleep(millis);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * @return the status code of the response, 0 if there was none.
+	 */
+	private int sendOnce(Request request) {
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) new URL(baseUrl + request.path)
+					.openConnection();
+			connection.setConnectTimeout(10000);
+			connection.setReadTimeout(30000);
+			if (gzip) {
+				connection.setRequestProperty("Accept-Encoding",
+						WPDecodingEntity.ACCEPT_ENCODING);
+			}
+			if (request.body != null) {
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type",
+						"application/x-www-form-urlencoded");
+				OutputStream out = connection.getOutputStream();
+				out.write(request.body.getBytes("UTF-8"));
+				out.close();
+			}
+
+			int status = connection.getResponseCode();
+			if (status != HttpURLConnection.HTTP_OK) {
+				drain(connection.getErrorStream());
+				return status;
+			}
+
+			BasicHttpEntity entity = new BasicHttpEntity();
+			entity.setContent(connection.getInputStream());
+			entity.setContentLength(connection.getContentLength());
+			entity.setContentEncoding(connection.getContentEncoding());
+			WPDecodingEntity body = new WPDecodingEntity(entity);
+			InputStream in = body.getContent();
+			if (request.path.startsWith(WPPost.POSTS_URL)
+					|| request.path.startsWith(WPPost.RECENT_POSTS_URL)) {
+				Reader reader = new InputStreamReader(in, "UTF-8");
+				WPPost.parsePosts(new WPJsonReader(reader),
+						new HashMap<String, String>());
+				reader.close();
+			} else {
+				drain(in);
+			}
+			transferStats.record(request.name, body.getWireBytes(),
+					body.getDecodedBytes());
+			return HttpURLConnection.HTTP_OK;
+		} catch (IOException e) {
+			// connections are otherwise kept alive, like the library's client
+			// does
+			if (connection != null) {
+				connection.disconnect();
+			}
+			return 0;
+		}
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		if (in == null) {
+			return;
+		}
+		byte[] buffer = new byte[8192];
+		while (in.read(buffer) != -1) {
+		}
+		in.close();
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		long seconds = args.length > 2 ? Long.parseLong(args[2]) : 30;
+
+		WPStandInServer server = null;
+		String baseUrl;
+		if (args.length > 0 && !args[0].equals("-")) {
+			baseUrl = args[0];
+		} else {
+			server = new WPStandInServer(0, 500);
+			server.setLatency(50, 20);
+			String faults = args.length > 4 ? args[4] : "";
+			if (faults.contains("errors")) {
+				server.setErrorRate(0.05);
+				server.setDropRate(0.02);
+				scheduleOutage(server, seconds * 1000 * 2 / 5,
+						seconds * 1000 / 5);
+			}
+			if (faults.contains("slow")) {
+				server.setSlowRate(0.02, 1000);
+			}
+			server.start();
+			baseUrl = server.getBaseUrl();
+		}
+
+		WPLoadDriver driver = new WPLoadDriver(baseUrl);
+		String options = args.length > 3 ? args[3] : "";
+		if (options.contains("retry")) {
+			driver.setRetryPolicy(WPRetryPolicy.DEFAULT);
+			// opens for less than the library's so a short run sees it close
+			driver.setCircuitBreaker(new WPCircuitBreaker(
+					WPCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, 2000));
+		}
+		if (options.contains("hedge")) {
+			driver.setHedgePolicy(new WPHedgePolicy(0.95, 0.05));
+		}
+		if (options.contains("plain")) {
+			driver.setGzip(false);
+		}
+		driver.run(threads, seconds);
+
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	private static void scheduleOutage(final WPStandInServer server,
+			final long after, final long length) {
+		Thread outage = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(after);
+				} catch (InterruptedException e) {
+					return;
+				}
+				server.setDown(length);
+			}
+		});
+		outage.setDaemon(true);
+		outage.start();
+	}
+}
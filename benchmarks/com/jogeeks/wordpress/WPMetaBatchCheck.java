@@ -0,0 +1,132 @@
+package com.jogeeks.wordpress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Arrays;
+
+import org.json.JSONObject;
+
+/**
+ * Checks custom field batches against the {@link WPMetaStub} of a
+ * {@link WPStandInServer}: the operations of a WPMetaBatch are encoded,
+ * applied in order and each gets its own result back, the single operation
+ * methods only take a POST, and a site without the batch controller answers
+ * 404, which is what makes Wordpress.applyPostMeta fall back to them.
+ *
+ * Usage: WPMetaBatchCheck. It exits with 1 if a check failed.
+ */
+public class WPMetaBatchCheck {
+
+	private static final int POST = 42;
+
+	public static void main(String[] args) throws Exception {
+		WPStandInServer server = new WPStandInServer(0, 50);
+		server.start();
+		String baseUrl = server.getBaseUrl();
+		WPCheck check = new WPCheck();
+
+		WPMetaBatch batch = new WPMetaBatch()
+				.add(POST, new WPCustomField("color", "red"), true)
+				.add(POST, new WPCustomField("color", "blue"), true)
+				.update(POST, new WPCustomField("color", "green"), "red")
+				.update(POST, new WPCustomField("size", "L"), "M")
+				.delete(POST, "missing")
+				.add(POST, new WPCustomField("tag", "a"), false)
+				.add(POST, new WPCustomField("tag", "b"), false)
+				.delete(POST, new WPCustomField("tag", "a"));
+		String[] answer = send(baseUrl + WPCustomField.BATCH_POST_META,
+				"operations=" + encode(batch.toJSON().toString()));
+		check.check("batch answered", "200".equals(answer[0]), answer[0]);
+		batch.setResults(new JSONObject(answer[1]).getJSONArray("results"));
+
+		boolean[] expected = { true, false, true, true, false, true, true,
+				true };
+		boolean[] results = new boolean[batch.size()];
+		for (int i = 0; i < batch.size(); i++) {
+			results[i] = batch.isSuccessful(i);
+		}
+		check.check("one result per operation, in order",
+				Arrays.equals(expected, results), Arrays.toString(results));
+		check.check("a failed operation has its error",
+				batch.getError(1) != null && batch.getError(4) != null,
+				batch.getError(1) + ", " + batch.getError(4));
+		check.check("operations applied in order",
+				server.getPostMeta(POST, "color").equals(
+						Arrays.asList("green"))
+						&& server.getPostMeta(POST, "size").equals(
+								Arrays.asList("L"))
+						&& server.getPostMeta(POST, "tag").equals(
+								Arrays.asList("b")),
+				server.getPostMeta(POST, "color") + " "
+						+ server.getPostMeta(POST, "size") + " "
+						+ server.getPostMeta(POST, "tag"));
+
+		WPMetaBatch.Operation single = new WPMetaBatch().delete(POST,
+				new WPCustomField("color", "green")).get(0);
+		String query = new WPTransport.Request(false, baseUrl
+				+ single.getEndpoint().getPath(), null, single.toParams())
+				.getUrlWithQuery();
+		answer = send(query, null);
+		check.check("a single write sent as GET is refused", answer[1]
+				.contains("\"error\""), answer[1]);
+		check.check("the refused write changed nothing",
+				server.getPostMeta(POST, "color").equals(
+						Arrays.asList("green")),
+				server.getPostMeta(POST, "color"));
+		answer = send(baseUrl + single.getEndpoint().getPath(),
+				query.substring(query.indexOf('?') + 1));
+		check.check("a single write sent as POST is applied", answer[1]
+				.equals("{\"status\":\"ok\"}")
+				&& server.getPostMeta(POST, "color").isEmpty(), answer[1]);
+
+		server.setMetaBatch(false);
+		answer = send(baseUrl + WPCustomField.BATCH_POST_META, "operations="
+				+ encode(batch.toJSON().toString()));
+		check.check("a site without the batch controller answers 404",
+				"404".equals(answer[0]), answer[0]);
+
+		server.stop();
+		check.exit();
+	}
+
+	/**
+	 * @param body
+	 *            the form of a POST, null for a GET.
+	 * @return the status code and the body of the answer.
+	 */
+	private static String[] send(String url, String body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url)
+				.openConnection();
+		if (body != null) {
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type",
+					"application/x-www-form-urlencoded");
+			OutputStream out = connection.getOutputStream();
+			out.write(body.getBytes("UTF-8"));
+			out.close();
+		}
+		int status = connection.getResponseCode();
+		InputStream in = status >= 400 ? connection.getErrorStream()
+				: connection.getInputStream();
+		ByteArrayOutputStream answer = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while (in != null && (read = in.read(buffer)) != -1) {
+			answer.write(buffer, 0, read);
+		}
+		if (in != null) {
+			in.close();
+		}
+		return new String[] { Integer.toString(status),
+				answer.toString("UTF-8") };
+	}
+
+	private static String encode(String value) throws IOException {
+		return URLEncoder.encode(value, "UTF-8");
+	}
+}
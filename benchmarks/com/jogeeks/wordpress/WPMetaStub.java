@@ -0,0 +1,175 @@
+package com.jogeeks.wordpress;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A local stand-in for the meta controller the custom field methods call:
+ * add_post_meta, update_post_meta, delete_post_meta and the batch controller
+ * method batch_post_meta, which applies its operations in order and answers
+ * one result per operation. The custom fields are kept in memory and follow
+ * WordPress' post meta functions:
+ * <ul>
+ * <li>add appends a value, a unique add fails if the post has the key.</li>
+ * <li>update replaces the values of the key, or only those equal to
+ * prev_value, and adds the key if the post doesn't have it. It fails if
+ * prev_value matches none.</li>
+ * <li>delete removes the values of the key, or only those equal to
+ * meta_value, and fails if it removes none.</li>
+ * </ul>
+ * Writes sent as a GET are refused, like a controller that only takes them
+ * from a form.
+ */
+class WPMetaStub {
+
+	static final String ADD = method(WPCustomField.ADD_POST_META);
+	static final String UPDATE = method(WPCustomField.UPDATE_POST_META);
+	static final String DELETE = method(WPCustomField.DELETE_POST_META);
+	static final String BATCH = method(WPCustomField.BATCH_POST_META);
+
+	private static final String OK = "{\"status\":\"ok\"}";
+
+	// post id -> key -> values, in the order they were added
+	private final HashMap<Integer, HashMap<String, ArrayList<String>>> meta = new HashMap<Integer, HashMap<String, ArrayList<String>>>();
+
+	/**
+	 * @return the answer of the controller, null if method isn't one of its
+	 *         write methods.
+	 */
+	synchronized String respond(String method, HashMap<String, String> params,
+			boolean post) {
+		if (!method.equals(ADD) && !method.equals(UPDATE)
+				&& !method.equals(DELETE) && !method.equals(BATCH)) {
+			return null;
+		}
+		if (!post) {
+			return error("Writes have to be sent as POST.");
+		}
+		if (!method.equals(BATCH)) {
+			String action = method.equals(ADD) ? WPMetaBatch.ADD : method
+					.equals(UPDATE) ? WPMetaBatch.UPDATE : WPMetaBatch.DELETE;
+			return apply(action, intParam(params.get("post_id")),
+					params.get("meta_key"), params.get("meta_value"),
+					Boolean.parseBoolean(params.get("unique")),
+					params.get("prev_value"));
+		}
+
+		JSONArray operations;
+		try {
+			operations = new JSONArray(params.get("operations"));
+		} catch (JSONException e) {
+			return error("Invalid operations.");
+		} catch (NullPointerException e) {
+			return error("Invalid operations.");
+		}
+		StringBuilder json = new StringBuilder("{\"status\":\"ok\",\"results\":[");
+		for (int i = 0; i < operations.length(); i++) {
+			JSONObject operation = operations.optJSONObject(i);
+			json.append(i > 0 ? "," : "");
+			if (operation == null) {
+				json.append(error("Invalid operation."));
+				continue;
+			}
+			json.append(apply(operation.optString("action"),
+					operation.optInt("post_id"),
+					operation.optString("meta_key", null),
+					operation.optString("meta_value", null),
+					operation.optBoolean("unique"),
+					operation.optString("prev_value", null)));
+		}
+		return json.append("]}").toString();
+	}
+
+	/**
+	 * @return the values of key on the post, empty if it has none.
+	 */
+	synchronized ArrayList<String> get(int pid, String key) {
+		ArrayList<String> values = fields(pid).get(key);
+		return values != null ? new ArrayList<String>(values)
+				: new ArrayList<String>();
+	}
+
+	private String apply(String action, int pid, String key, String value,
+			boolean unique, String previousValue) {
+		if (pid <= 0 || key == null || key.length() == 0) {
+			return error("Include post_id and meta_key.");
+		}
+		HashMap<String, ArrayList<String>> fields = fields(pid);
+		ArrayList<String> values = fields.get(key);
+
+		if (WPMetaBatch.ADD.equals(action)) {
+			if (unique && values != null) {
+				return error("The post already has " + key + ".");
+			}
+			if (values == null) {
+				values = new ArrayList<String>();
+				fields.put(key, values);
+			}
+			values.add(value != null ? value : "");
+			return OK;
+		} else if (WPMetaBatch.UPDATE.equals(action)) {
+			if (values == null) {
+				values = new ArrayList<String>();
+				values.add(value != null ? value : "");
+				fields.put(key, values);
+				return OK;
+			}
+			boolean updated = false;
+			for (int i = 0; i < values.size(); i++) {
+				if (previousValue == null || previousValue.equals(values.get(i))) {
+					values.set(i, value != null ? value : "");
+					updated = true;
+				}
+			}
+			return updated ? OK : error("No " + key + " with that value.");
+		} else if (WPMetaBatch.DELETE.equals(action)) {
+			boolean deleted = false;
+			for (int i = values != null ? values.size() - 1 : -1; i >= 0; i--) {
+				if (value == null || value.equals(values.get(i))) {
+					values.remove(i);
+					deleted = true;
+				}
+			}
+			if (values != null && values.isEmpty()) {
+				fields.remove(key);
+			}
+			return deleted ? OK : error("No " + key + " to delete.");
+		}
+		return error("Unknown action " + action + ".");
+	}
+
+	private HashMap<String, ArrayList<String>> fields(int pid) {
+		HashMap<String, ArrayList<String>> fields = meta.get(pid);
+		if (fields == null) {
+			fields = new HashMap<String, ArrayList<String>>();
+			meta.put(pid, fields);
+		}
+		return fields;
+	}
+
+	/**
+	 * @return the controller and method of an endpoint path, without the
+	 *         trailing slash, e.g. "meta/add_post_meta".
+	 */
+	private static String method(String path) {
+		return path.endsWith("/") ? path.substring(0, path.length() - 1)
+				: path;
+	}
+
+	private static int intParam(String value) {
+		try {
+			return value != null ? Integer.parseInt(value) : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static String error(String message) {
+		return "{\"status\":\"error\",\"error\":" + JSONObject.quote(message)
+				+ "}";
+	}
+}
@@ -0,0 +1,295 @@
+package com.jogeeks.wordpress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.jogeeks.wordpress.listeners.OnPostsFailedListener;
+import com.jogeeks.wordpress.listeners.OnPostsReceivedListener;
+import com.loopj.android.http.AsyncHttpClient;
+import com.loopj.android.http.RequestParams;
+import com.loopj.android.http.ResponseHandlerInterface;
+
+/**
+ * Checks that the transports deliver overlapping requests each to the
+ * response handler it was sent with: hundreds of get_post and get_posts
+ * calls, every one asking for a different post, are sent at once from
+ * several threads through each transport to a {@link WPStandInServer} whose
+ * jitter answers them out of order. Every call has its own handler and
+ * listener; the check then asserts that every listener was called exactly
+ * once, with the post its call asked for, and that no listener got a
+ * response meant for another one. A call that failed, e.g. on a keep alive
+ * connection the stand-in closed, counts as called but not as routed; the
+ * failures are printed.
+ *
+ * It doesn't cover Wordpress and WordpressResponseHandler, the per-request
+ * handlers Wordpress creates: loopj's response handlers need Android's
+ * Looper, which a plain VM doesn't have. The handlers here are plain
+ * ResponseHandlerInterfaces that only parse the post for the listener.
+ *
+ * Usage: WPRoutingCheck [calls] [threads]. It exits with 1 if a check
+ * failed.
+ */
+public class WPRoutingCheck {
+
+	private static final int POSTS = 500;
+
+	/**
+	 * The listener of one call: records every delivery it gets.
+	 */
+	private static class Tagged implements OnPostsReceivedListener,
+			OnPostsFailedListener {
+
+		final int expectedId;
+		final AtomicInteger deliveries = new AtomicInteger();
+		volatile int receivedId = -1;
+		volatile Throwable failure;
+
+		Tagged(int expectedId) {
+			this.expectedId = expectedId;
+		}
+
+		@Override
+		public void onPostsReceived(List<WPPost> posts,
+				HashMap<String, String> meta) {
+			deliveries.incrementAndGet();
+			receivedId = posts.size() == 1 ? posts.get(0).getId() : -1;
+		}
+
+		@Override
+		public void onNoPosts() {
+			deliveries.incrementAndGet();
+		}
+
+		@Override
+		public void onPostsFailed(Throwable error) {
+			deliveries.incrementAndGet();
+			failure = error;
+		}
+	}
+
+	/**
+	 * The response handler of one call, it only knows its own listener.
+	 */
+	private static class CallHandler implements ResponseHandlerInterface {
+
+		private final boolean single;
+		private final Tagged listener;
+		private final CountDownLatch done;
+		private URI uri;
+		private Header[] headers;
+
+		CallHandler(boolean single, Tagged listener, CountDownLatch done) {
+			this.single = single;
+			this.listener = listener;
+			this.done = done;
+		}
+
+		@Override
+		public void sendResponseMessage(HttpResponse response)
+				throws IOException {
+			HttpEntity entity = response.getEntity();
+			int status = response.getStatusLine().getStatusCode();
+			if (status != 200 || entity == null) {
+				listener.onPostsFailed(new IOException("status " + status));
+				return;
+			}
+			InputStream in = new WPDecodingEntity(entity).getContent();
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+			}
+			in.close();
+
+			List<WPPost> posts;
+			try {
+				JSONObject json = new JSONObject(body.toString("UTF-8"));
+				if (single) {
+					posts = new ArrayList<WPPost>();
+					posts.add(new WPPost(json.getJSONObject("post")));
+				} else {
+					posts = WPPost.parsePosts(json);
+				}
+			} catch (JSONException e) {
+				listener.onPostsFailed(e);
+				return;
+			}
+			listener.onPostsReceived(posts, new HashMap<String, String>());
+		}
+
+		@Override
+		public void sendFailureMessage(int statusCode, Header[] headers,
+				byte[] responseBody, Throwable error) {
+			listener.onPostsFailed(error);
+		}
+
+		@Override
+		public void sendFinishMessage() {
+			done.countDown();
+		}
+
+		@Override
+		public void sendStartMessage() {
+		}
+
+		@Override
+		public void sendProgressMessage(int bytesWritten, int bytesTotal) {
+		}
+
+		@Override
+		public void sendSuccessMessage(int statusCode, Header[] headers,
+				byte[] responseBody) {
+		}
+
+		@Override
+		public void sendRetryMessage() {
+		}
+
+		@Override
+		public URI getRequestURI() {
+			return uri;
+		}
+
+		@Override
+		public Header[] getRequestHeaders() {
+			return headers;
+		}
+
+		@Override
+		public void setRequestURI(URI requestURI) {
+			uri = requestURI;
+		}
+
+		@Override
+		public void setRequestHeaders(Header[] requestHeaders) {
+			headers = requestHeaders;
+		}
+
+		@Override
+		public void setUseSynchronousMode(boolean useSynchronousMode) {
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int calls = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		WPCheck check = new WPCheck();
+
+		AsyncHttpClient client = new AsyncHttpClient();
+		client.setMaxRetriesAndTimeout(0, 0);
+		// the calls all wait for one of its pooled connections at once
+		client.setTimeout(60000);
+		ThreadPoolExecutor loopjPool = (ThreadPoolExecutor) Executors
+				.newCachedThreadPool();
+		client.setThreadPool(loopjPool);
+		run("android-async", new WPAsyncHttpTransport(client, null), calls,
+				threads, check);
+		loopjPool.shutdownNow();
+
+		ExecutorService urlPool = Executors.newCachedThreadPool();
+		run("urlconnection", new WPUrlConnectionTransport(urlPool), calls,
+				threads, check);
+		urlPool.shutdownNow();
+
+		check.exit();
+	}
+
+	private static void run(String name, final WPTransport transport,
+			int calls, int threads, WPCheck check) throws Exception {
+		WPStandInServer server = new WPStandInServer(0, POSTS);
+		// answers come back in a different order than the calls went out
+		server.setLatency(30, 25);
+		server.start();
+		final String baseUrl = server.getBaseUrl();
+
+		final Tagged[] listeners = new Tagged[calls];
+		final CountDownLatch done = new CountDownLatch(calls);
+		ExecutorService senders = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < calls; i++) {
+			// even calls ask get_post for a post, odd ones get_posts for a
+			// page of one post; both tag the call with the post's id
+			final boolean single = i % 2 == 0;
+			final int id = 1 + i % POSTS;
+			listeners[i] = new Tagged(id);
+			final CallHandler handler = new CallHandler(single, listeners[i],
+					done);
+			senders.execute(new Runnable() {
+				@Override
+				public void run() {
+					RequestParams params = new RequestParams();
+					String url;
+					if (single) {
+						url = baseUrl + WPPost.POST_URL + "/";
+						params.put("post_id", String.valueOf(id));
+					} else {
+						// the stand-in lists the newest, highest id, first
+						url = baseUrl + WPPost.POSTS_URL + "/";
+						params.put("count", "1");
+						params.put("page", String.valueOf(POSTS - id + 1));
+					}
+					transport.execute(new WPTransport.Request(false, url,
+							null, params), handler);
+				}
+			});
+		}
+		senders.shutdown();
+		boolean finished = done.await(60, TimeUnit.SECONDS);
+		// a stray delivery would arrive after the finish of its own call
+		Thread.sleep(200);
+		server.stop();
+
+		int missing = 0;
+		int repeated = 0;
+		int wrong = 0;
+		int failed = 0;
+		String example = null;
+		for (int i = 0; i < calls; i++) {
+			Tagged listener = listeners[i];
+			int deliveries = listener.deliveries.get();
+			if (deliveries == 0) {
+				missing++;
+			} else if (deliveries > 1) {
+				repeated++;
+			} else if (listener.failure != null) {
+				failed++;
+			} else if (listener.receivedId != listener.expectedId) {
+				wrong++;
+				if (example == null) {
+					example = "call " + i + " asked for "
+							+ listener.expectedId + ", got "
+							+ listener.receivedId;
+				}
+			}
+		}
+		check.check(name + ": all " + calls + " calls finished", finished,
+				done.getCount() + " still running");
+		check.check(name + ": every listener called", missing == 0, missing
+				+ " never called");
+		check.check(name + ": every listener called once", repeated == 0,
+				repeated + " called more than once");
+		check.check(name + ": every listener got its own post", wrong == 0,
+				wrong + " got another call's post, e.g. " + example);
+		if (failed > 0) {
+			System.out.println("        " + name + ": " + failed
+					+ " calls failed and weren't checked");
+		}
+	}
+}
@@ -0,0 +1,455 @@
+package com.jogeeks.wordpress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the json-api endpoints the library uses from a generated blog, so
+ * the client can be measured without a WordPress install: post lists,
+ * get_post, get_category_index, get_nonce, auth/generate_auth_cookie,
+ * posts/create_post, the meta controller (its writes on a {@link WPMetaStub})
+ * and submit_comment. Every response
+ * can be delayed, slowed down to a bandwidth, held by a slow worker and made
+ * to fail at random:
+ * answered with a 500 or the connection dropped without an answer. The
+ * whole server can also be made to answer 503 for a while, like a site that
+ * is down. It counts the requests and the connections they came on. Bodies
+ * are gzipped for the clients that accept it.
+ *
+ * Point the app at it with the url string resource (e.g.
+ * http://10.0.2.2:8080 from the emulator), or run it on its own: WPStandInServer
+ * [port] [posts] [latency ms] [jitter ms] [bytes/s] [error rate] [drop rate]
+ * [slow rate] [slow ms].
+ */
+public class WPStandInServer {
+
+	private final int port;
+	private final String[] posts;
+	private final String categories;
+
+	private long latencyMs;
+	private long jitterMs;
+	private long bytesPerSecond;
+	private double errorRate;
+	private double dropRate;
+	private double slowRate;
+	private long slowMs;
+	private volatile long downUntil;
+	private boolean gzip = true;
+	private volatile boolean metaBatch = true;
+	private final WPMetaStub metaStub = new WPMetaStub();
+
+	private final Random random = new Random();
+	private final AtomicInteger nextId = new AtomicInteger(1000000);
+	private final AtomicInteger requestCount = new AtomicInteger();
+	// the client end of every connection, a new one is a new connection
+	private final HashSet<InetSocketAddress> connections = new HashSet<InetSocketAddress>();
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * @param port
+	 *            0 to pick a free port.
+	 * @param postCount
+	 *            number of posts of the generated blog.
+	 */
+	public WPStandInServer(int port, int postCount) {
+		this.port = port;
+		posts = new String[postCount];
+		for (int i = 0; i < postCount; i++) {
+			posts[i] = WPBenchmarkFixtures.post(postCount - i);
+		}
+		categories = WPBenchmarkFixtures.categories(20);
+	}
+
+	/**
+	 * Delay before every response, latency plus or minus up to jitter.
+	 */
+	public void setLatency(long latencyMs, long jitterMs) {
+		this.latencyMs = latencyMs;
+		this.jitterMs = jitterMs;
+	}
+
+	/**
+	 * Makes a fraction of the requests, slowRate from 0 to 1, take slowMs
+	 * more, like the requests that land on a slow PHP worker.
+	 */
+	public void setSlowRate(double slowRate, long slowMs) {
+		this.slowRate = slowRate;
+		this.slowMs = slowMs;
+	}
+
+	/**
+	 * @param bytesPerSecond
+	 *            0 for no limit.
+	 */
+	public void setBandwidth(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * @param errorRate
+	 *            fraction of the requests answered with a 500, 0 to 1.
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * @param dropRate
+	 *            fraction of the requests whose connection is closed without
+	 *            a response, 0 to 1.
+	 */
+	public void setDropRate(double dropRate) {
+		this.dropRate = dropRate;
+	}
+
+	/**
+	 * @param gzip
+	 *            false to send the bodies uncompressed even to clients that
+	 *            accept gzip, true by default.
+	 */
+	public void setGzip(boolean gzip) {
+		this.gzip = gzip;
+	}
+
+	/**
+	 * @param supported
+	 *            false to answer meta/batch_post_meta like a site without the
+	 *            batch controller, with a 404. True by default.
+	 */
+	public void setMetaBatch(boolean supported) {
+		metaBatch = supported;
+	}
+
+	/**
+	 * @return the values of the custom field key of the post, as the meta
+	 *         writes left them.
+	 */
+	public ArrayList<String> getPostMeta(int pid, String key) {
+		return metaStub.get(pid, key);
+	}
+
+	/**
+	 * Answers every request with a 503 for the next millis milliseconds.
+	 */
+	public void setDown(long millis) {
+		downUntil = System.nanoTime() + millis * 1000000L;
+	}
+
+	/**
+	 * @return the number of requests received so far, failed ones included.
+	 */
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * @return the number of connections the clients opened so far, less than
+	 *         the requests when connections are kept alive.
+	 */
+	public int getConnectionCount() {
+		synchronized (connections) {
+			return connections.size();
+		}
+	}
+
+	public void start() throws IOException {
+		// without it Nagle adds 40 ms to every keep alive response
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(new InetSocketAddress(port), 128);
+		// requests sleep, every one gets its own thread
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					serve(exchange);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * The url to use as the base url of the library (the api path included).
+	 */
+	public String getBaseUrl() {
+		return "http://localhost:" + getPort() + "/api/";
+	}
+
+	private void serve(HttpExchange exchange) throws IOException,
+			InterruptedException {
+		requestCount.incrementAndGet();
+		synchronized (connections) {
+			connections.add(exchange.getRemoteAddress());
+		}
+		HashMap<String, String> params = new HashMap<String, String>();
+		readParams(exchange.getRequestURI().getRawQuery(), params);
+		boolean post = "POST".equals(exchange.getRequestMethod());
+		if (post) {
+			readParams(readBody(exchange.getRequestBody()), params);
+		}
+
+		long delay = latencyMs;
+		if (jitterMs > 0) {
+			delay += (long) ((random.nextDouble() * 2 - 1) * jitterMs);
+		}
+		if (slowRate > 0 && random.nextDouble() < slowRate) {
+			delay += slowMs;
+		}
+		if (delay > 0) {
+			Thread.sleep(delay);
+		}
+
+		if (System.nanoTime() < downUntil) {
+			send(exchange, 503, "Service Unavailable");
+			return;
+		}
+		if (dropRate > 0 && random.nextDouble() < dropRate) {
+			// closed by handle without a status line
+			return;
+		}
+		if (errorRate > 0 && random.nextDouble() < errorRate) {
+			send(exchange, 500, "{\"status\":\"error\",\"error\":\"Stand-in error\"}");
+			return;
+		}
+
+		String body = respond(method(exchange.getRequestURI().getPath()),
+				params, post);
+		if (body == null) {
+			send(exchange, 404,
+					"{\"status\":\"error\",\"error\":\"Unknown method.\"}");
+		} else {
+			send(exchange, 200, body);
+		}
+	}
+
+	/**
+	 * The controller and method of a request path, e.g. "meta/add_post_meta"
+	 * for /api/meta/add_post_meta/.
+	 */
+	private static String method(String path) {
+		path = path.replaceAll("/+", "/");
+		if (path.startsWith("/api/")) {
+			path = path.substring("/api/".length());
+		}
+		if (path.endsWith("/")) {
+			path = path.substring(0, path.length() - 1);
+		}
+		return path;
+	}
+
+	private String respond(String method, HashMap<String, String> params,
+			boolean post) {
+		if (method.equals(WPPost.POSTS_URL)
+				|| method.equals(WPPost.RECENT_POSTS_URL)
+				|| method.equals(WPPost.DATE_POSTS_URL)
+				|| method.equals(WPPost.CATEGORY_POSTS_URL)
+				|| method.equals(WPPost.TAG_POSTS_URL)
+				|| method.equals(WPPost.AUTHOR_POSTS_URL)
+				|| method.equals(WPPost.SEARCH_POSTS_URL)) {
+			return postsPage(intParam(params, "count", 10),
+					intParam(params, "page", 1));
+		} else if (method.equals(WPPost.POST_URL)) {
+			int id = intParam(params, "post_id", intParam(params, "id", 0));
+			return postResponse(id > 0 && id <= posts.length ? posts[posts.length
+					- id]
+					: posts[0]);
+		} else if (method.equals(WPCategory.CATEGORY_INDEX)) {
+			return categories;
+		} else if (method.equals(Wordpress.NONCE_URL)) {
+			return "{\"status\":\"ok\",\"controller\":\""
+					+ params.get("controller") + "\",\"method\":\""
+					+ params.get("method") + "\",\"nonce\":\""
+					+ Integer.toHexString(random.nextInt()) + "\"}";
+		} else if (method.equals(Wordpress.AUTH_CONTROLLER + "/"
+				+ Wordpress.LOGIN_METHOD)) {
+			return login(params.get("username"));
+		} else if (method.equals(Wordpress.POSTS_CONTROLLER + "/"
+				+ Wordpress.CREATE_POST_METHOD)) {
+			return postResponse(WPBenchmarkFixtures.post(nextId
+					.incrementAndGet()));
+		} else if (method.equals(WPComment.SUBMIT_COMMENT_URL)) {
+			return "{\"status\":\"ok\",\"id\":" + nextId.incrementAndGet()
+					+ ",\"name\":\"" + params.get("name")
+					+ "\",\"url\":\"\",\"date\":\"2014-02-14 12:00:00\","
+					+ "\"content\":\"<p>Comment</p>\",\"parent\":0}";
+		} else if (method.startsWith("meta/")) {
+			return meta(method, params, post);
+		}
+		return null;
+	}
+
+	private String postsPage(int count, int page) {
+		int from = Math.max(0, (page - 1) * count);
+		int to = Math.min(posts.length, from + count);
+		int pages = (posts.length + count - 1) / Math.max(1, count);
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\"status\":\"ok\",\"count\":")
+				.append(Math.max(0, to - from)).append(",\"count_total\":")
+				.append(posts.length).append(",\"pages\":").append(pages)
+				.append(",\"posts\":[");
+		for (int i = from; i < to; i++) {
+			if (i > from) {
+				json.append(',');
+			}
+			json.append(posts[i]);
+		}
+		json.append("]}");
+		return json.toString();
+	}
+
+	private static String postResponse(String post) {
+		return "{\"status\":\"ok\",\"post\":" + post + "}";
+	}
+
+	private static String login(String username) {
+		return "{\"status\":\"ok\",\"cookie\":\"" + username
+				+ "|1392422400|stand-in\",\"cookie_name\":\"wordpress_logged_in\","
+				+ "\"user\":{\"id\":1,\"username\":\"" + username
+				+ "\",\"nicename\":\"" + username + "\",\"email\":\""
+				+ username + "@example.com\",\"url\":\"\","
+				+ "\"registered\":\"2014-01-01 00:00:00\",\"displayname\":\""
+				+ username + "\",\"firstname\":\"\",\"lastname\":\"\","
+				+ "\"nickname\":\"" + username + "\",\"description\":\"\","
+				+ "\"avatar\":\"\",\"capabilities\":{\"subscriber\":true}}}";
+	}
+
+	private String meta(String method, HashMap<String, String> params,
+			boolean post) {
+		if (method.equals(WPMetaStub.BATCH) && !metaBatch) {
+			return null;
+		}
+		String written = metaStub.respond(method, params, post);
+		if (written != null) {
+			return written;
+		} else if (method.equals(method(WPCustomField.GET_POST_CUSTOM))) {
+			return "{\"status\":\"ok\",\"custom_fields\":"
+					+ WPBenchmarkFixtures
+							.customFields(WPBenchmarkFixtures.CUSTOM_FIELDS_PER_POST)
+					+ "}";
+		} else if (method.equals(method(WPCustomField.GET_POST_KEYS))) {
+			return "{\"status\":\"ok\",\"custom_fields_keys\":[\"field_0\",\"field_1\"]}";
+		} else if (method.equals(method(WPCustomField.GET_POST_VALUES))) {
+			return "{\"status\":\"ok\",\"custom_fields_values\":[\"value 0\"]}";
+		}
+		return null;
+	}
+
+	private void send(HttpExchange exchange, int status, String body)
+			throws IOException, InterruptedException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type",
+				"application/json; charset=UTF-8");
+		String accepted = exchange.getRequestHeaders().getFirst(
+				"Accept-Encoding");
+		if (gzip && accepted != null && accepted.contains("gzip")) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(
+					bytes.length / 4);
+			GZIPOutputStream out = new GZIPOutputStream(compressed);
+			out.write(bytes);
+			out.close();
+			bytes = compressed.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.sendResponseHeaders(status, bytes.length);
+
+		OutputStream out = exchange.getResponseBody();
+		if (bytesPerSecond <= 0) {
+			out.write(bytes);
+		} else {
+			// about 20 writes per second
+			int chunk = (int) Math.max(1, bytesPerSecond / 20);
+			for (int offset = 0; offset < bytes.length; offset += chunk) {
+				int length = Math.min(chunk, bytes.length - offset);
+				out.write(bytes, offset, length);
+				out.flush();
+				Thread.sleep(length * 1000L / bytesPerSecond);
+			}
+		}
+		out.close();
+	}
+
+	private static String readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			body.write(buffer, 0, read);
+		}
+		return body.toString("UTF-8");
+	}
+
+	private static void readParams(String query, HashMap<String, String> params)
+			throws UnsupportedEncodingException {
+		if (query == null) {
+			return;
+		}
+		String[] pairs = query.split("&");
+		for (int i = 0; i < pairs.length; i++) {
+			int equals = pairs[i].indexOf('=');
+			if (equals > 0) {
+				params.put(URLDecoder.decode(pairs[i].substring(0, equals),
+						"UTF-8"), URLDecoder.decode(
+						pairs[i].substring(equals + 1), "UTF-8"));
+			}
+		}
+	}
+
+	private static int intParam(HashMap<String, String> params, String name,
+			int defaultValue) {
+		try {
+			return Integer.parseInt(params.get(name));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		WPStandInServer server = new WPStandInServer(
+				args.length > 0 ? Integer.parseInt(args[0]) : 8080,
+				args.length > 1 ? Integer.parseInt(args[1]) : 500);
+		server.setLatency(args.length > 2 ? Long.parseLong(args[2]) : 0,
+				args.length > 3 ? Long.parseLong(args[3]) : 0);
+		server.setBandwidth(args.length > 4 ? Long.parseLong(args[4]) : 0);
+		server.setErrorRate(args.length > 5 ? Double.parseDouble(args[5]) : 0);
+		server.setDropRate(args.length > 6 ? Double.parseDouble(args[6]) : 0);
+		server.setSlowRate(args.length > 7 ? Double.parseDouble(args[7]) : 0,
+				args.length > 8 ? Long.parseLong(args[8]) : 0);
+		server.start();
+		System.out.println("Serving " + server.getBaseUrl());
+	}
+}
@@ -0,0 +1,221 @@
+package com.jogeeks.wordpress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+
+import com.loopj.android.http.AsyncHttpClient;
+import com.loopj.android.http.RequestParams;
+import com.loopj.android.http.ResponseHandlerInterface;
+
+/**
+ * Compares the transports on the same load: every thread sends a
+ * get_recent_posts through the transport, reads the body to the end, and
+ * sends the next one. Reports, per transport, the throughput, the p50/p99
+ * latency, the errors, and the connections the stand-in saw over the whole
+ * run with the requests per connection: a transport that doesn't keep its
+ * connections alive shows one request per connection.
+ *
+ * Usage: WPTransportBenchmark [threads] [seconds] [latency ms]. Every
+ * transport gets its own {@link WPStandInServer}, with 10 posts per page and
+ * the latency given (20 ms by default), and a warm up of a fifth of the run.
+ */
+public class WPTransportBenchmark {
+
+	private static final int POOL_SIZE = 10;
+
+	/**
+	 * Reads the response like the library's handlers do, then lets the
+	 * thread waiting for it go.
+	 */
+	private static class Drain implements ResponseHandlerInterface {
+
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile boolean failed = true;
+		private URI uri;
+		private Header[] headers;
+
+		@Override
+		public void sendResponseMessage(HttpResponse response)
+				throws IOException {
+			HttpEntity entity = response.getEntity();
+			if (entity != null) {
+				// inflated as it is read, like WPRequest does
+				InputStream in = new WPDecodingEntity(entity).getContent();
+				byte[] buffer = new byte[8192];
+				while (in.read(buffer) != -1) {
+				}
+				in.close();
+			}
+			failed = response.getStatusLine().getStatusCode() >= 300;
+		}
+
+		@Override
+		public void sendFailureMessage(int statusCode, Header[] headers,
+				byte[] responseBody, Throwable error) {
+			failed = true;
+		}
+
+		@Override
+		public void sendFinishMessage() {
+			done.countDown();
+		}
+
+		@Override
+		public void sendStartMessage() {
+		}
+
+		@Override
+		public void sendProgressMessage(int bytesWritten, int bytesTotal) {
+		}
+
+		@Override
+		public void sendSuccessMessage(int statusCode, Header[] headers,
+				byte[] responseBody) {
+		}
+
+		@Override
+		public void sendRetryMessage() {
+		}
+
+		@Override
+		public URI getRequestURI() {
+			return uri;
+		}
+
+		@Override
+		public Header[] getRequestHeaders() {
+			return headers;
+		}
+
+		@Override
+		public void setRequestURI(URI requestURI) {
+			uri = requestURI;
+		}
+
+		@Override
+		public void setRequestHeaders(Header[] requestHeaders) {
+			headers = requestHeaders;
+		}
+
+		@Override
+		public void setUseSynchronousMode(boolean useSynchronousMode) {
+		}
+	}
+
+	private static class Result {
+		long[] latencies = new long[256];
+		int count;
+		int errors;
+
+		synchronized void add(long latency, boolean failed) {
+			if (failed) {
+				errors++;
+				return;
+			}
+			if (count == latencies.length) {
+				long[] grown = new long[latencies.length * 2];
+				System.arraycopy(latencies, 0, grown, 0, latencies.length);
+				latencies = grown;
+			}
+			latencies[count++] = latency;
+		}
+
+		double percentile(double p) {
+			if (count == 0) {
+				return 0;
+			}
+			return latencies[Math.min(count - 1, (int) Math.ceil(p * count) - 1)] / 1e6;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		long seconds = args.length > 1 ? Long.parseLong(args[1]) : 20;
+		long latency = args.length > 2 ? Long.parseLong(args[2]) : 20;
+
+		System.out.println(String.format("%-16s %9s %9s %9s %7s %7s %11s",
+				"transport", "req/s", "p50 ms", "p99 ms", "errors", "conns",
+				"req/conn"));
+
+		AsyncHttpClient client = new AsyncHttpClient();
+		client.setMaxRetriesAndTimeout(0, 0);
+		client.setMaxConnections(POOL_SIZE);
+		ThreadPoolExecutor loopjPool = (ThreadPoolExecutor) Executors
+				.newCachedThreadPool();
+		client.setThreadPool(loopjPool);
+		run("android-async", new WPAsyncHttpTransport(client, null), threads,
+				seconds, latency);
+		loopjPool.shutdownNow();
+
+		ExecutorService urlPool = Executors.newCachedThreadPool();
+		System.setProperty("http.maxConnections", String.valueOf(POOL_SIZE));
+		run("urlconnection", new WPUrlConnectionTransport(urlPool), threads,
+				seconds, latency);
+		urlPool.shutdownNow();
+	}
+
+	private static void run(String name, final WPTransport transport,
+			int threads, long seconds, long latency) throws Exception {
+		WPStandInServer server = new WPStandInServer(0, 500);
+		server.setLatency(latency, 0);
+		server.start();
+		final String url = server.getBaseUrl() + WPPost.RECENT_POSTS_URL
+				+ "/";
+
+		final long warmupEnd = System.nanoTime() + seconds * 200000000L;
+		final long end = System.nanoTime() + seconds * 1000000000L;
+		final Result result = new Result();
+
+		ExecutorService senders = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			senders.execute(new Runnable() {
+				@Override
+				public void run() {
+					while (System.nanoTime() < end) {
+						RequestParams params = new RequestParams();
+						params.put("count", "10");
+						params.put("page", "1");
+						Drain drain = new Drain();
+						long start = System.nanoTime();
+						transport.execute(new WPTransport.Request(false, url,
+								null, params), drain);
+						try {
+							drain.done.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						if (start >= warmupEnd) {
+							result.add(System.nanoTime() - start, drain.failed);
+						}
+					}
+				}
+			});
+		}
+
+		senders.shutdown();
+		senders.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+		double elapsed = (System.nanoTime() - warmupEnd) / 1e9;
+		// the warm up included, connections are opened while it runs
+		int connections = server.getConnectionCount();
+		int requests = server.getRequestCount();
+		server.stop();
+
+		Arrays.sort(result.latencies, 0, result.count);
+		System.out.println(String.format(
+				"%-16s %9.1f %9.1f %9.1f %7d %7d %11.1f", name, result.count
+						/ elapsed, result.percentile(0.5),
+				result.percentile(0.99), result.errors, connections,
+				(double) requests / Math.max(1, connections)));
+	}
+}
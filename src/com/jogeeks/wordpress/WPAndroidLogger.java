@@ -0,0 +1,19 @@
+package com.jogeeks.wordpress;
+
+import android.util.Log;
+
+/**
+ * Sends the log of the platform neutral classes to logcat.
+ */
+class WPAndroidLogger implements WPLog.Logger {
+
+	@Override
+	public void d(String tag, String msg) {
+		Log.d(tag, msg);
+	}
+
+	@Override
+	public void w(String tag, String msg, Throwable tr) {
+		Log.w(tag, msg, tr);
+	}
+}
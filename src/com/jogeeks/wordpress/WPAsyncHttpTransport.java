@@ -0,0 +1,61 @@
+package com.jogeeks.wordpress;
+
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.impl.client.DefaultHttpClient;
+
+import android.content.Context;
+
+import com.loopj.android.http.AsyncHttpClient;
+import com.loopj.android.http.RequestHandle;
+import com.loopj.android.http.ResponseHandlerInterface;
+
+/**
+ * The default transport: android-async-http's AsyncHttpClient, the Apache
+ * HttpClient with its connection pool. The client asks for gzip, its own
+ * inflater is removed so the body is handed over as it came.
+ */
+public class WPAsyncHttpTransport implements WPTransport {
+
+	private final AsyncHttpClient client;
+	private final Context context;
+
+	/**
+	 * @param context
+	 *            the context the requests are sent with, may be null.
+	 */
+	public WPAsyncHttpTransport(AsyncHttpClient client, Context context) {
+		this.client = client;
+		this.context = context;
+		// loopj's only response interceptor inflates gzip bodies
+		DefaultHttpClient http = (DefaultHttpClient) client.getHttpClient();
+		for (int i = http.getResponseInterceptorCount() - 1; i >= 0; i--) {
+			Class<? extends HttpResponseInterceptor> type = http
+					.getResponseInterceptor(i).getClass();
+			if (type.getName().startsWith(AsyncHttpClient.class.getName())) {
+				http.removeResponseInterceptorByClass(type);
+			}
+		}
+	}
+
+	public AsyncHttpClient getClient() {
+		return client;
+	}
+
+	@Override
+	public Call execute(Request request, ResponseHandlerInterface handler) {
+		final RequestHandle handle;
+		if (request.isPost()) {
+			handle = client.post(context, request.getUrl(),
+					request.getHeaders(), request.getParams(), null, handler);
+		} else {
+			handle = client.get(context, request.getUrl(),
+					request.getHeaders(), request.getParams(), handler);
+		}
+		return new Call() {
+			@Override
+			public void cancel(boolean interrupt) {
+				handle.cancel(interrupt);
+			}
+		};
+	}
+}
@@ -1,10 +1,10 @@
 package com.jogeeks.wordpress;
 
+import java.io.IOException;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import android.os.Bundle;
-
 public class WPAuthor extends WPUser {
 
 	static final String AUTHOR_INDEX_URL = "get_author_index";
@@ -15,6 +15,9 @@ public class WPAuthor extends WPUser {
 	private String slug;
 	private String name;
 
+	WPAuthor() {
+	}
+
 	public WPAuthor(JSONObject author) {
 		try {
 			setId(Integer.parseInt(author.getString("id")));
@@ -33,66 +36,94 @@ public class WPAuthor extends WPUser {
 		}
 	}
 
-	public WPAuthor(Bundle bundle) {
-		super(bundle);
-		// id = bundle.getInt("id");
-		// username = bundle.getString("username");
-		// nicename = bundle.getString("nicename");
-		// url = bundle.getString("url");
-		// email = bundle.getString("email");
-		// registered = bundle.getString("registerd");
-		// displayname = bundle.getString("display_name");
-		// firstname = bundle.getString("firstname");
-		// lastname = bundle.getString("lastname");
-		// nickname = bundle.getString("nickname");
-		// description = bundle.getString("desc");
-		slug = bundle.getString("slug");
-		name = bundle.getString("name");
-
+	WPAuthor(WPJsonReader reader) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String key = reader.nextName();
+			if (key.equals("id")) {
+				setId(reader.nextInt());
+			} else if (key.equals("slug")) {
+				setSlug(reader.nextString());
+			} else if (key.equals("name")) {
+				setName(reader.nextString());
+			} else if (key.equals("first_name")) {
+				setFirstname(reader.nextString());
+			} else if (key.equals("last_name")) {
+				setLastname(reader.nextString());
+			} else if (key.equals("nickname")) {
+				setNickname(reader.nextString());
+			} else if (key.equals("url")) {
+				setUrl(reader.nextString());
+			} else if (key.equals("description")) {
+				setDescription(reader.nextString());
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
 	}
 
-	public String getSlug() {
+	public synchronized String getSlug() {
 		return slug;
 	}
 
-	public void setSlug(String slug) {
+	public synchronized void setSlug(String slug) {
 		this.slug = slug;
 	}
 
-	public String getName() {
+	public synchronized String getName() {
 		return name;
 	}
 
-	public void setName(String name) {
+	public synchronized void setName(String name) {
 		this.name = name;
 	}
 
-	public static Bundle getBundle(WPAuthor author) {
-
-		Bundle authorBundle = new Bundle();
-		/*
-		 * private int id; private String username; private String nicename;
-		 * private String email; private String url; private String registered;
-		 * private String displayname; private String firstname; private String
-		 * lastname; private String nickname; private String description;
-		 * private String slug; private String name;
-		 */
-
-		authorBundle.putInt("id", author.getId());
-		authorBundle.putString("username", author.getUsername());
-		authorBundle.putString("nicename", author.getNicename());
-		authorBundle.putString("url", author.getUrl());
-		authorBundle.putString("email", author.getEmail());
-		authorBundle.putString("registerd", author.getRegistered());
-		authorBundle.putString("display_name", author.getDisplayname());
-		authorBundle.putString("firstname", author.getFirstname());
-		authorBundle.putString("lastname", author.getLastname());
-		authorBundle.putString("nickname", author.getNickname());
-		authorBundle.putString("desc", author.getDescription());
-		authorBundle.putString("slug", author.getSlug());
-		authorBundle.putString("name", author.getName());
-
-		return authorBundle;
+	/**
+	 * Takes the values of a newer copy of this author. The fields it takes
+	 * from WPUser are guarded by the same lock.
+	 * 
+	 * @see WPCategory#update(WPCategory)
+	 */
+	synchronized void update(WPAuthor newer) {
+		if (newer.slug != null) {
+			slug = newer.slug;
+		}
+		if (newer.name != null) {
+			name = newer.name;
+		}
+		if (newer.firstname != null) {
+			firstname = newer.firstname;
+		}
+		if (newer.lastname != null) {
+			lastname = newer.lastname;
+		}
+		if (newer.nickname != null) {
+			nickname = newer.nickname;
+		}
+		if (newer.url != null) {
+			url = newer.url;
+		}
+		if (newer.description != null) {
+			description = newer.description;
+		}
+	}
 
+	/**
+	 * Inverse of {@link #WPAuthor(JSONObject)}, in the json-api format.
+	 */
+	public static JSONObject getJSON(WPAuthor author) throws JSONException {
+		JSONObject authorJson = new JSONObject();
+
+		authorJson.put("id", author.getId());
+		authorJson.put("slug", author.getSlug());
+		authorJson.put("name", author.getName());
+		authorJson.put("first_name", author.getFirstname());
+		authorJson.put("last_name", author.getLastname());
+		authorJson.put("nickname", author.getNickname());
+		authorJson.put("url", author.getUrl());
+		authorJson.put("description", author.getDescription());
+
+		return authorJson;
 	}
 }
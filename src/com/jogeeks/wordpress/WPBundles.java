@@ -0,0 +1,307 @@
+package com.jogeeks.wordpress;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.os.Bundle;
+
+/**
+ * Android side of the models: converts them to and from Bundles so they can be
+ * passed between activities and fragments. The models themselves don't depend
+ * on Android.
+ */
+public class WPBundles {
+
+	private static final int REFERENCED_POSTS = 32;
+
+	// posts passed by id, the most recently passed ones
+	private static final LinkedHashMap<Integer, WPPost> referencedPosts = new LinkedHashMap<Integer, WPPost>(
+			REFERENCED_POSTS, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, WPPost> eldest) {
+			return size() > REFERENCED_POSTS;
+		}
+	};
+
+	private WPBundles() {
+	}
+
+	/**
+	 * @return the post as a Bundle holding its {@link WPPostCodec} bytes. A
+	 *         post with a long content or many comments can still exceed the
+	 *         binder limit, pass it with {@link #getReferenceBundle(WPPost)}
+	 *         then.
+	 */
+	public static Bundle getBundle(WPPost post) {
+		Bundle postData = new Bundle();
+		postData.putInt("id", post.getId());
+		postData.putByteArray("post", WPPostCodec.encode(post));
+		return postData;
+	}
+
+	/**
+	 * @return the post of a Bundle from {@link #getBundle(WPPost)}, null if it
+	 *         can't be read.
+	 */
+	public static WPPost getPost(Bundle postBundle) {
+		byte[] data = postBundle.getByteArray("post");
+		if (data == null) {
+			return getLegacyPost(postBundle);
+		}
+		try {
+			return WPPostCodec.decode(data);
+		} catch (IOException e) {
+			WPLog.w("WPBundles", "dropping unreadable post", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Keeps the post in memory and returns a Bundle that only holds its id, for
+	 * passing a post to another activity or fragment of the same process.
+	 *
+	 * @see #getReferencedPost(Bundle)
+	 */
+	public static Bundle getReferenceBundle(WPPost post) {
+		synchronized (referencedPosts) {
+			referencedPosts.put(post.getId(), post);
+		}
+		Bundle postData = new Bundle();
+		postData.putInt("id", post.getId());
+		return postData;
+	}
+
+	/**
+	 * @return the post of a Bundle from {@link #getReferenceBundle(WPPost)} or
+	 *         {@link #getBundle(WPPost)}. Null if only the id was passed and
+	 *         the post isn't in memory anymore (the process was restarted or
+	 *         it was pushed out by newer posts), load it again by id, e.g.
+	 *         from WPPostStore.
+	 */
+	public static WPPost getReferencedPost(Bundle postBundle) {
+		if (postBundle.getByteArray("post") != null) {
+			return getPost(postBundle);
+		}
+		synchronized (referencedPosts) {
+			return referencedPosts.get(postBundle.getInt("id"));
+		}
+	}
+
+	/**
+	 * @return the post id of any Bundle of this class.
+	 */
+	public static int getPostId(Bundle postBundle) {
+		return postBundle.getInt("id");
+	}
+
+	/**
+	 * Reads a post from the nested Bundles of the previous versions, still
+	 * found in saved instance states after an update.
+	 */
+	private static WPPost getLegacyPost(Bundle postBundle) {
+		WPPost post = new WPPost();
+
+		post.setId(postBundle.getInt("id"));
+		post.setType(postBundle.getString("type"));
+		post.setSlug(postBundle.getString("slug"));
+		post.setUrl(postBundle.getString("url"));
+		post.setTitle(postBundle.getString("title"));
+		post.setTitlePlain(postBundle.getString("title_plain"));
+		post.setContent(postBundle.getString("content"));
+		post.setExcerpt(postBundle.getString("excerpt"));
+		post.setDate(postBundle.getString("date"));
+		post.setmodified(postBundle.getString("modified"));
+
+		ArrayList<WPCategory> categories = new ArrayList<WPCategory>();
+		ArrayList<Bundle> catsBundle = postBundle
+				.getParcelableArrayList("cats");
+		for (int i = 0; i < catsBundle.size(); i++) {
+			categories.add(getCategory(catsBundle.get(i)));
+		}
+		post.setCategories(categories);
+
+		ArrayList<WPTag> tags = new ArrayList<WPTag>();
+		ArrayList<Bundle> tagsBundle = postBundle.getParcelableArrayList("tags");
+		for (int i = 0; i < tagsBundle.size(); i++) {
+			tags.add(getTag(tagsBundle.get(i)));
+		}
+		post.setTags(tags);
+
+		post.setAuthor(getAuthor(postBundle.getBundle("author")));
+
+		ArrayList<WPComment> comments = new ArrayList<WPComment>();
+		ArrayList<Bundle> commentsBundle = postBundle
+				.getParcelableArrayList("comments");
+		for (int i = 0; i < commentsBundle.size(); i++) {
+			comments.add(getComment(commentsBundle.get(i)));
+		}
+		post.setComments(comments);
+
+		post.setCustomeFields(new ArrayList<WPCustomField>());
+
+		WPAtachment attachments = new WPAtachment();
+		ArrayList<String> atts = postBundle.getStringArrayList("attachments");
+		attachments.setFullImage(atts.get(0));
+		attachments.setThumbnailImage(atts.get(1));
+		attachments.setMediumImage(atts.get(2));
+		attachments.setPostThumbnailImage(atts.get(3));
+		post.setAttachments(attachments);
+
+		post.setCommentingStatus(postBundle.getBoolean("commenting_status"));
+		post.setCommentsCount(postBundle.getInt("comment_count"));
+
+		return post;
+	}
+
+	public static Bundle getBundle(WPCategory cat) {
+		Bundle catBundle = new Bundle();
+
+		catBundle.putInt("id", cat.getId());
+		catBundle.putString("slug", cat.getSlug());
+		catBundle.putString("title", cat.getSlug());
+		catBundle.putString("desc", cat.getDescription());
+		catBundle.putInt("parent", cat.getParent());
+		catBundle.putInt("post_count", cat.getPostCount());
+
+		return catBundle;
+	}
+
+	public static WPCategory getCategory(Bundle bundle) {
+		WPCategory cat = new WPCategory();
+		cat.setId(bundle.getInt("id"));
+		cat.setSlug(bundle.getString("slug"));
+		cat.setTitle(bundle.getString("title"));
+		cat.setDescription(bundle.getString("desc"));
+		cat.setParent(bundle.getInt("parent"));
+		cat.setPostCount(bundle.getInt("post_count"));
+		return WPEntities.restoredCategory(cat);
+	}
+
+	public static Bundle getBundle(WPTag tag) {
+		Bundle tagBundle = new Bundle();
+
+		tagBundle.putInt("id", tag.getId());
+		tagBundle.putString("slug", tag.getSlug());
+		tagBundle.putString("title", tag.getSlug());
+		tagBundle.putString("desc", tag.getDescription());
+		tagBundle.putInt("post_count", tag.getPostCount());
+
+		return tagBundle;
+	}
+
+	public static WPTag getTag(Bundle bundle) {
+		WPTag tag = new WPTag();
+		tag.setId(bundle.getInt("id"));
+		tag.setSlug(bundle.getString("slug"));
+		tag.setTitle(bundle.getString("title"));
+		tag.setDescription(bundle.getString("desc"));
+		tag.setPostCount(bundle.getInt("post_count"));
+		return WPEntities.restoredTag(tag);
+	}
+
+	public static Bundle getBundle(WPComment comment) {
+		Bundle commentBundle = new Bundle();
+
+		commentBundle.putInt("id", comment.getId());
+		commentBundle.putString("name", comment.getName());
+		commentBundle.putString("url", comment.getUrl());
+		commentBundle.putString("date", comment.getDate());
+		commentBundle.putString("content", comment.getContent());
+		commentBundle.putInt("parent", comment.getParent());
+
+		return commentBundle;
+	}
+
+	public static WPComment getComment(Bundle bundle) {
+		WPComment comment = new WPComment();
+		comment.setId(bundle.getInt("id"));
+		comment.setName(bundle.getString("name"));
+		comment.setUrl(bundle.getString("url"));
+		comment.setDate(bundle.getString("date"));
+		comment.setContent(bundle.getString("content"));
+		comment.setParent(bundle.getInt("parent"));
+		return comment;
+	}
+
+	public static Bundle getBundle(WPAuthor author) {
+		Bundle authorBundle = putUser(author);
+		authorBundle.putString("slug", author.getSlug());
+		authorBundle.putString("name", author.getName());
+		return authorBundle;
+	}
+
+	public static WPAuthor getAuthor(Bundle bundle) {
+		WPAuthor author = new WPAuthor();
+		readUser(author, bundle);
+		author.setSlug(bundle.getString("slug"));
+		author.setName(bundle.getString("name"));
+		return WPEntities.restoredAuthor(author);
+	}
+
+	public static Bundle getBundle(WPUser user) {
+		Bundle userBundle = putUser(user);
+		userBundle.putString("avatar", user.getAvatar());
+		userBundle.putString("capabilities", user.getCapabilities());
+		return userBundle;
+	}
+
+	public static WPUser getUser(Bundle bundle) {
+		WPUser user = new WPUser();
+		readUser(user, bundle);
+		return user;
+	}
+
+	/**
+	 * Sets the user's data from a bundle with all of the required values:
+	 * username, nicename, email, url, registered, displayname, firstname,
+	 * lastname, nickname, description and avatar.
+	 *
+	 * @see WPUser#setUserData(java.util.Map)
+	 */
+	public static void setUserData(WPUser user, Bundle userData) {
+		HashMap<String, String> data = new HashMap<String, String>();
+		for (String key : userData.keySet()) {
+			data.put(key, userData.getString(key));
+		}
+		user.setUserData(data);
+	}
+
+	private static Bundle putUser(WPUser user) {
+		Bundle userBundle = new Bundle();
+
+		userBundle.putInt("id", user.getId());
+		userBundle.putString("username", user.getUsername());
+		userBundle.putString("nicename", user.getNicename());
+		userBundle.putString("url", user.getUrl());
+		userBundle.putString("email", user.getEmail());
+		userBundle.putString("registerd", user.getRegistered());
+		userBundle.putString("display_name", user.getDisplayname());
+		userBundle.putString("firstname", user.getFirstname());
+		userBundle.putString("lastname", user.getLastname());
+		userBundle.putString("nickname", user.getNickname());
+		userBundle.putString("desc", user.getDescription());
+
+		return userBundle;
+	}
+
+	private static void readUser(WPUser user, Bundle bundle) {
+		user.id = bundle.getInt("id");
+		user.username = bundle.getString("username");
+		user.nicename = bundle.getString("nicename");
+		user.url = bundle.getString("url");
+		user.email = bundle.getString("email");
+		user.registered = bundle.getString("registerd");
+		user.displayname = bundle.getString("display_name");
+		user.firstname = bundle.getString("firstname");
+		user.lastname = bundle.getString("lastname");
+		user.nickname = bundle.getString("nickname");
+		user.description = bundle.getString("desc");
+		user.avatar = bundle.getString("avatar");
+		user.setCapabilities(bundle.getString("capabilities"));
+	}
+}
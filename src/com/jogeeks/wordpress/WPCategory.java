@@ -1,13 +1,13 @@
 package com.jogeeks.wordpress;
 
+import java.io.IOException;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.ArrayList;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import android.os.Bundle;
-
 public class WPCategory implements Serializable {
 
 	/**
@@ -45,76 +45,120 @@ public class WPCategory implements Serializable {
 		}
 	}
 
-	public WPCategory(Bundle bundle) {
-		id = bundle.getInt("id");
-		slug = bundle.getString("slug");
-		title = bundle.getString("title");
-		description = bundle.getString("desc");
-		parent = bundle.getInt("parent");
-		postCount = bundle.getInt("post_count");
+	WPCategory(WPJsonReader reader) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("id")) {
+				setId(reader.nextInt());
+			} else if (name.equals("slug")) {
+				setSlug(reader.nextString());
+			} else if (name.equals("title")) {
+				setTitle(reader.nextString());
+			} else if (name.equals("description")) {
+				setDescription(reader.nextString());
+			} else if (name.equals("parent")) {
+				setParent(reader.nextInt());
+			} else if (name.equals("post_count")) {
+				setPostCount(reader.nextInt());
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
 	}
 
 	public int getId() {
 		return id;
 	}
 
-	private void setId(int id) {
+	void setId(int id) {
 		this.id = id;
 	}
 
-	public String getSlug() {
+	public synchronized String getSlug() {
 		return slug;
 	}
 
-	private void setSlug(String slug) {
+	synchronized void setSlug(String slug) {
 		this.slug = slug;
 	}
 
-	public String getTitle() {
+	public synchronized String getTitle() {
 		return title;
 	}
 
-	private void setTitle(String title) {
+	synchronized void setTitle(String title) {
 		this.title = title;
 	}
 
-	public String getDescription() {
+	public synchronized String getDescription() {
 		return description;
 	}
 
-	private void setDescription(String description) {
+	synchronized void setDescription(String description) {
 		this.description = description;
 	}
 
-	public int getParent() {
+	public synchronized int getParent() {
 		return parent;
 	}
 
-	private void setParent(int parent) {
+	synchronized void setParent(int parent) {
 		this.parent = parent;
 	}
 
-	public int getPostCount() {
+	public synchronized int getPostCount() {
 		return postCount;
 	}
 
-	private void setPostCount(int postCount) {
+	synchronized void setPostCount(int postCount) {
 		this.postCount = postCount;
 	}
 
-	public static Bundle getBundle(WPCategory cat) {
-		Bundle catBundle = new Bundle();
-
-		catBundle.putInt("id", cat.getId());
-		catBundle.putString("slug", cat.getSlug());
-		catBundle.putString("title", cat.getSlug());
-		catBundle.putString("desc", cat.getDescription());
-		catBundle.putInt("parent", cat.getParent());
-		catBundle.putInt("post_count", cat.getPostCount());
+	/**
+	 * Takes the values of a newer copy of this category. The instance is
+	 * shared by every post that holds it and a response may be parsed while
+	 * the app reads it, so the getters and setters hold the same lock.
+	 */
+	synchronized void update(WPCategory newer) {
+		if (newer.slug != null) {
+			slug = newer.slug;
+		}
+		if (newer.title != null) {
+			title = newer.title;
+		}
+		if (newer.description != null) {
+			description = newer.description;
+		}
+		parent = newer.parent;
+		postCount = newer.postCount;
+	}
 
-		return catBundle;
+	/**
+	 * A deserialized category is resolved through {@link WPEntities} like a
+	 * parsed one.
+	 */
+	private Object readResolve() throws ObjectStreamException {
+		return WPEntities.restoredCategory(this);
 	}
 	
+	/**
+	 * Inverse of {@link #WPCategory(JSONObject)}, in the json-api format.
+	 */
+	public static JSONObject getJSON(WPCategory cat) throws JSONException {
+		JSONObject catJson = new JSONObject();
+
+		catJson.put("id", cat.getId());
+		catJson.put("slug", cat.getSlug());
+		catJson.put("title", cat.getTitle());
+		catJson.put("description", cat.getDescription());
+		catJson.put("parent", cat.getParent());
+		catJson.put("post_count", cat.getPostCount());
+
+		return catJson;
+	}
+
 	protected static ArrayList<WPCategory> parseCategories(JSONObject response)
 			throws JSONException {
 		JSONObject wpCats = response;
@@ -124,7 +168,7 @@ public class WPCategory implements Serializable {
 		for (int i = 0; i < count; i++) {
 			JSONObject jObj = wpCats.getJSONArray("categories")
 					.getJSONObject(i);
-			cats.add(new WPCategory(jObj));
+			cats.add(WPEntities.category(new WPCategory(jObj)));
 		}
 
 		return cats;
@@ -0,0 +1,184 @@
+package com.jogeeks.wordpress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The category hierarchy of the site, built once from the parent ids of
+ * get_category_index. Parent, children, descendants and the post count of a
+ * whole subtree are all precomputed, so a category drawer or a "this
+ * category and its children" view only does lookups.
+ *
+ * A category whose parent isn't in the index is a root, categories whose
+ * parents loop are left out. The tree is immutable, it is rebuilt from the
+ * next category index.
+ */
+public class WPCategoryTree {
+
+	private static final List<WPCategory> NONE = Collections.emptyList();
+
+	private final HashMap<Integer, WPCategory> categories = new HashMap<Integer, WPCategory>();
+	// categories are shared and updated in place, the hierarchy is the one of
+	// the index the tree was built from
+	private final HashMap<Integer, WPCategory> parents = new HashMap<Integer, WPCategory>();
+	private final HashMap<Integer, List<WPCategory>> children = new HashMap<Integer, List<WPCategory>>();
+	private final HashMap<Integer, List<WPCategory>> descendants = new HashMap<Integer, List<WPCategory>>();
+	private final HashMap<Integer, Integer> subtreePostCounts = new HashMap<Integer, Integer>();
+	private final HashMap<Integer, Integer> depths = new HashMap<Integer, Integer>();
+	private final List<WPCategory> roots;
+
+	public WPCategoryTree(List<WPCategory> index) {
+		for (int i = 0; i < index.size(); i++) {
+			categories.put(index.get(i).getId(), index.get(i));
+		}
+
+		ArrayList<WPCategory> rootList = new ArrayList<WPCategory>();
+		HashMap<Integer, ArrayList<WPCategory>> childLists = new HashMap<Integer, ArrayList<WPCategory>>();
+		for (int i = 0; i < index.size(); i++) {
+			WPCategory category = index.get(i);
+			int parent = category.getParent();
+			if (parent == 0 || parent == category.getId()
+					|| !categories.containsKey(parent)) {
+				rootList.add(category);
+				continue;
+			}
+			parents.put(category.getId(), categories.get(parent));
+			ArrayList<WPCategory> siblings = childLists.get(parent);
+			if (siblings == null) {
+				siblings = new ArrayList<WPCategory>();
+				childLists.put(parent, siblings);
+			}
+			siblings.add(category);
+		}
+		for (Integer parent : childLists.keySet()) {
+			children.put(parent,
+					Collections.unmodifiableList(childLists.get(parent)));
+		}
+		roots = Collections.unmodifiableList(rootList);
+
+		for (int i = 0; i < roots.size(); i++) {
+			index(roots.get(i), 0);
+		}
+	}
+
+	/**
+	 * Fills the descendants, subtree post count and depth of category and
+	 * everything below it.
+	 */
+	private void index(WPCategory category, int depth) {
+		depths.put(category.getId(), depth);
+
+		ArrayList<WPCategory> below = new ArrayList<WPCategory>();
+		int postCount = category.getPostCount();
+		List<WPCategory> direct = getChildren(category.getId());
+		for (int i = 0; i < direct.size(); i++) {
+			WPCategory child = direct.get(i);
+			index(child, depth + 1);
+			below.add(child);
+			below.addAll(descendants.get(child.getId()));
+			postCount += subtreePostCounts.get(child.getId());
+		}
+
+		descendants.put(category.getId(), Collections.unmodifiableList(below));
+		subtreePostCounts.put(category.getId(), postCount);
+	}
+
+	/**
+	 * @return the categories without a parent, in index order.
+	 */
+	public List<WPCategory> getRoots() {
+		return roots;
+	}
+
+	/**
+	 * @return the category, null if it isn't in the index.
+	 */
+	public WPCategory getCategory(int id) {
+		return categories.get(id);
+	}
+
+	/**
+	 * @return the parent of the category, null for a root.
+	 */
+	public WPCategory getParent(int id) {
+		if (!depths.containsKey(id)) {
+			return null;
+		}
+		return parents.get(id);
+	}
+
+	/**
+	 * @return the direct children of the category, in index order.
+	 */
+	public List<WPCategory> getChildren(int id) {
+		List<WPCategory> list = children.get(id);
+		return list == null ? NONE : list;
+	}
+
+	/**
+	 * @return every category below this one, depth first, the category itself
+	 *         excluded.
+	 */
+	public List<WPCategory> getDescendants(int id) {
+		List<WPCategory> list = descendants.get(id);
+		return list == null ? NONE : list;
+	}
+
+	/**
+	 * @return the ids of the category and all its descendants.
+	 */
+	public int[] getSubtreeIds(int id) {
+		if (!categories.containsKey(id)) {
+			return new int[0];
+		}
+		List<WPCategory> below = getDescendants(id);
+		int[] ids = new int[below.size() + 1];
+		ids[0] = id;
+		for (int i = 0; i < below.size(); i++) {
+			ids[i + 1] = below.get(i).getId();
+		}
+		return ids;
+	}
+
+	/**
+	 * @return true if category is ancestor or one of its descendants.
+	 */
+	public boolean isInSubtree(int ancestor, int category) {
+		if (!depths.containsKey(category)) {
+			return false;
+		}
+		WPCategory current = categories.get(category);
+		while (current != null) {
+			if (current.getId() == ancestor) {
+				return true;
+			}
+			current = parents.get(current.getId());
+		}
+		return false;
+	}
+
+	/**
+	 * @return the post count of the category plus the post counts of all its
+	 *         descendants. A post in several of them is counted once per
+	 *         category.
+	 */
+	public int getSubtreePostCount(int id) {
+		Integer count = subtreePostCounts.get(id);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * @return 0 for a root, 1 for its children..., -1 if the category isn't in
+	 *         the tree.
+	 */
+	public int getDepth(int id) {
+		Integer depth = depths.get(id);
+		return depth == null ? -1 : depth;
+	}
+
+	public int size() {
+		return categories.size();
+	}
+}
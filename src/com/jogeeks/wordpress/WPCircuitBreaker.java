@@ -0,0 +1,118 @@
+package com.jogeeks.wordpress;
+
+import java.util.HashMap;
+
+/**
+ * Stops sending requests to a host that keeps failing. After
+ * failureThreshold connection failures or server errors in a row the circuit
+ * opens: requests fail at once without touching the network. Once openTime
+ * has passed a single request is let through, its success closes the circuit
+ * and its failure opens it again.
+ *
+ * There is one breaker per host for the whole process, shared by every
+ * Wordpress instance of the site.
+ */
+public class WPCircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	public static final long DEFAULT_OPEN_TIME = 30 * 1000;
+
+	private static final HashMap<String, WPCircuitBreaker> hosts = new HashMap<String, WPCircuitBreaker>();
+
+	private final int failureThreshold;
+	private final long openTime;
+
+	private State state = State.CLOSED;
+	private int failures;
+	private long openUntil;
+	private boolean probing;
+
+	public WPCircuitBreaker(int failureThreshold, long openTime) {
+		this.failureThreshold = failureThreshold;
+		this.openTime = openTime;
+	}
+
+	/**
+	 * @return the breaker of the host, created with the default threshold and
+	 *         open time.
+	 */
+	public static WPCircuitBreaker forHost(String host) {
+		synchronized (hosts) {
+			WPCircuitBreaker breaker = hosts.get(host);
+			if (breaker == null) {
+				breaker = new WPCircuitBreaker(DEFAULT_FAILURE_THRESHOLD,
+						DEFAULT_OPEN_TIME);
+				hosts.put(host, breaker);
+			}
+			return breaker;
+		}
+	}
+
+	/**
+	 * @return false if the request must not be sent. A true while the
+	 *         circuit is open lets the probe through, its outcome must be
+	 *         reported.
+	 */
+	public synchronized boolean allowRequest() {
+		switch (state) {
+		case OPEN:
+		case HALF_OPEN:
+			// a probe whose outcome never came (cancelled) is replaced once
+			// openTime has passed
+			if (now() < openUntil && (state == State.OPEN || probing)) {
+				return false;
+			}
+			state = State.HALF_OPEN;
+			probing = true;
+			openUntil = now() + openTime;
+			return true;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Reports a response from the host, even an HTTP error: the host is up.
+	 */
+	public synchronized void onSuccess() {
+		state = State.CLOSED;
+		failures = 0;
+		probing = false;
+	}
+
+	/**
+	 * Reports a connection failure, a timeout or a server error.
+	 */
+	public synchronized void onFailure() {
+		failures++;
+		probing = false;
+		if (state == State.HALF_OPEN || failures >= failureThreshold) {
+			state = State.OPEN;
+			openUntil = now() + openTime;
+		}
+	}
+
+	/**
+	 * @return the state, OPEN until the next request is let through as a
+	 *         probe.
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * @return the milliseconds until a probe is let through, 0 if the circuit
+	 *         isn't open.
+	 */
+	public synchronized long getRemainingOpenTime() {
+		return state == State.OPEN ? Math.max(0, openUntil - now()) : 0;
+	}
+
+	private static long now() {
+		return System.nanoTime() / 1000000;
+	}
+}
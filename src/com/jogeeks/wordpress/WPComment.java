@@ -1,17 +1,19 @@
 package com.jogeeks.wordpress;
 
+import java.io.IOException;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import android.content.Context;
-import android.os.AsyncTask;
-import android.os.Bundle;
-
-import com.jogeeks.mobipress.R;
-
 public class WPComment {
 
 	static final String SUBMIT_COMMENT_URL = "submit_comment";
+	/**
+	 * Not part of json-api: comments/get_comments/?post_id=&after=&count=
+	 * answers {"status":"ok","comments":[...]} with the first count approved
+	 * comments of the post with an id above after, in id order.
+	 */
+	static final String GET_COMMENTS_URL = "comments/get_comments/";
 	static final String NO_COMMENTS = "No comments";
 	static final String ONE_COMMENT = "One comment";
 
@@ -28,6 +30,7 @@ public class WPComment {
 	}
 
 	public WPComment(JSONObject comment, int postId) {
+		setPostId(postId);
 		try {
 			setId(Integer.parseInt(comment.getString("id")));
 			setName(comment.getString("name"));
@@ -45,13 +48,29 @@ public class WPComment {
 
 	}
 
-	public WPComment(Bundle bundle) {
-		id = bundle.getInt("id");
-		name = bundle.getString("name");
-		url = bundle.getString("url");
-		date = bundle.getString("date");
-		content = bundle.getString("content");
-		parent = bundle.getInt("parent");
+	WPComment(WPJsonReader reader, int postId) throws IOException {
+		setPostId(postId);
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String key = reader.nextName();
+			if (key.equals("id")) {
+				setId(reader.nextInt());
+			} else if (key.equals("name")) {
+				setName(reader.nextString());
+			} else if (key.equals("url")) {
+				setUrl(reader.nextString());
+			} else if (key.equals("date")) {
+				setDate(reader.nextString());
+			} else if (key.equals("content")) {
+				setContent(reader.nextString());
+			} else if (key.equals("parent")) {
+				setParent(reader.nextInt());
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
 	}
 
 	public int getId() {
@@ -102,17 +121,20 @@ public class WPComment {
 		this.parent = parent;
 	}
 
-	public static Bundle getBundle(WPComment comment) {
-		Bundle commentBundle = new Bundle();
+	/**
+	 * Inverse of {@link #WPComment(JSONObject, int)}, in the json-api format.
+	 */
+	public static JSONObject getJSON(WPComment comment) throws JSONException {
+		JSONObject commentJson = new JSONObject();
 
-		commentBundle.putInt("id", comment.getId());
-		commentBundle.putString("name", comment.getName());
-		commentBundle.putString("url", comment.getUrl());
-		commentBundle.putString("date", comment.getDate());
-		commentBundle.putString("content", comment.getContent());
-		commentBundle.putInt("parent", comment.getParent());
+		commentJson.put("id", comment.getId());
+		commentJson.put("name", comment.getName());
+		commentJson.put("url", comment.getUrl());
+		commentJson.put("date", comment.getDate());
+		commentJson.put("content", comment.getContent());
+		commentJson.put("parent", comment.getParent());
 
-		return commentBundle;
+		return commentJson;
 	}
 
 	public int getPostId() {
@@ -0,0 +1,110 @@
+package com.jogeeks.wordpress;
+
+import java.util.ArrayList;
+
+import com.jogeeks.wordpress.listeners.OnCommentThreadListener;
+
+/**
+ * Loads the comments of a post page by page into a {@link WPCommentThread},
+ * oldest first, instead of downloading the whole post. A refresh only asks
+ * for the comments posted since the newest one in the thread.
+ *
+ * Use it from the UI thread.
+ */
+public class WPCommentLoader {
+
+	public static final int DEFAULT_PAGE_SIZE = 50;
+
+	private final Wordpress wordpress;
+	private final WPCommentThread thread;
+	private final int pageSize;
+
+	private boolean lastPage;
+	private boolean loading;
+	private OnCommentThreadListener waiting;
+
+	public WPCommentLoader(Wordpress wordpress, int postId) {
+		this(wordpress, postId, DEFAULT_PAGE_SIZE);
+	}
+
+	public WPCommentLoader(Wordpress wordpress, int postId, int pageSize) {
+		this.wordpress = wordpress;
+		thread = new WPCommentThread(postId);
+		this.pageSize = pageSize;
+	}
+
+	public WPCommentThread getThread() {
+		return thread;
+	}
+
+	/**
+	 * @return false once the newest comment of the post has been loaded,
+	 *         until the next refresh.
+	 */
+	public boolean hasMore() {
+		return !lastPage;
+	}
+
+	/**
+	 * Loads the next page. If a page is already on its way the new listener
+	 * replaces the old one.
+	 */
+	public void loadMore(OnCommentThreadListener listener) {
+		waiting = listener;
+		if (loading) {
+			return;
+		}
+		if (lastPage) {
+			deliver(new ArrayList<WPComment>());
+			return;
+		}
+		request();
+	}
+
+	/**
+	 * Loads the comments posted since the last page was loaded.
+	 */
+	public void refresh(OnCommentThreadListener listener) {
+		lastPage = false;
+		loadMore(listener);
+	}
+
+	private void request() {
+		loading = true;
+		wordpress.getCommentsAfter(thread.getPostId(), thread.getLastId(),
+				pageSize, new Wordpress.OnCommentsPageListener() {
+					@Override
+					public void onCommentsPage(ArrayList<WPComment> comments,
+							boolean last) {
+						loading = false;
+						lastPage = last;
+						thread.addComments(comments);
+						deliver(comments);
+					}
+
+					@Override
+					public void onCommentsPageFailed(Throwable error) {
+						// the thread is unchanged, loadMore sends the request
+						// again
+						loading = false;
+						fail(error);
+					}
+				});
+	}
+
+	private void deliver(ArrayList<WPComment> added) {
+		OnCommentThreadListener listener = waiting;
+		waiting = null;
+		if (listener != null) {
+			listener.onCommentsLoaded(thread, added);
+		}
+	}
+
+	private void fail(Throwable error) {
+		OnCommentThreadListener listener = waiting;
+		waiting = null;
+		if (listener != null) {
+			listener.onCommentsFailed(thread, error);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.jogeeks.wordpress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The comments of a post as a reply tree, built from WPComment.parent as
+ * pages of comments arrive. Replies are kept in id order (the order they were
+ * posted in), a list only shows the top level comments and asks for the
+ * replies of a comment when it is expanded.
+ *
+ * A reply whose parent isn't known (not approved, deleted) is shown at the
+ * top level. A reply is always newer than its parent, a parent id that
+ * isn't lower than the comment's id is ignored.
+ */
+public class WPCommentThread {
+
+	private static final List<WPComment> NONE = Collections.emptyList();
+
+	private final int postId;
+
+	private final HashMap<Integer, WPComment> comments = new HashMap<Integer, WPComment>();
+	private final ArrayList<WPComment> roots = new ArrayList<WPComment>();
+	private final HashMap<Integer, ArrayList<WPComment>> replies = new HashMap<Integer, ArrayList<WPComment>>();
+	// comment id -> number of comments below it
+	private final HashMap<Integer, Integer> replyCounts = new HashMap<Integer, Integer>();
+	// reply ids whose parent hasn't arrived yet, by parent id
+	private final HashMap<Integer, ArrayList<WPComment>> orphans = new HashMap<Integer, ArrayList<WPComment>>();
+
+	private int lastId;
+
+	public WPCommentThread(int postId) {
+		this.postId = postId;
+	}
+
+	public int getPostId() {
+		return postId;
+	}
+
+	/**
+	 * Adds the comments to the tree, comments already in it are replaced.
+	 */
+	public void addComments(List<WPComment> page) {
+		ArrayList<WPComment> sorted = new ArrayList<WPComment>(page);
+		Collections.sort(sorted, WPCommentThread.BY_ID);
+		for (int i = 0; i < sorted.size(); i++) {
+			add(sorted.get(i));
+		}
+	}
+
+	private void add(WPComment comment) {
+		WPComment known = comments.get(comment.getId());
+		if (known != null) {
+			// an edit, keep the position in the tree
+			known.setName(comment.getName());
+			known.setUrl(comment.getUrl());
+			known.setDate(comment.getDate());
+			known.setContent(comment.getContent());
+			return;
+		}
+
+		comments.put(comment.getId(), comment);
+		lastId = Math.max(lastId, comment.getId());
+
+		int parent = comment.getParent();
+		if (parent == 0 || parent >= comment.getId()) {
+			insert(roots, comment);
+		} else if (comments.containsKey(parent)) {
+			attach(comment);
+		} else {
+			// shown at the top level until the parent arrives
+			insert(roots, comment);
+			ArrayList<WPComment> waiting = orphans.get(parent);
+			if (waiting == null) {
+				waiting = new ArrayList<WPComment>();
+				orphans.put(parent, waiting);
+			}
+			waiting.add(comment);
+		}
+
+		ArrayList<WPComment> waiting = orphans.remove(comment.getId());
+		for (int i = 0; waiting != null && i < waiting.size(); i++) {
+			roots.remove(waiting.get(i));
+			attach(waiting.get(i));
+		}
+	}
+
+	private void attach(WPComment reply) {
+		int parent = reply.getParent();
+		ArrayList<WPComment> siblings = replies.get(parent);
+		if (siblings == null) {
+			siblings = new ArrayList<WPComment>();
+			replies.put(parent, siblings);
+		}
+		insert(siblings, reply);
+
+		int added = 1 + getReplyCount(reply.getId());
+		// ids go down at every level, this ends at a top level comment
+		WPComment ancestor = comments.get(parent);
+		while (ancestor != null) {
+			replyCounts.put(ancestor.getId(), getReplyCount(ancestor.getId())
+					+ added);
+			ancestor = ancestor.getParent() < ancestor.getId() ? comments
+					.get(ancestor.getParent()) : null;
+		}
+	}
+
+	private static void insert(ArrayList<WPComment> list, WPComment comment) {
+		int index = Collections.binarySearch(list, comment, BY_ID);
+		list.add(index < 0 ? -index - 1 : index, comment);
+	}
+
+	/**
+	 * @return the top level comments, oldest first.
+	 */
+	public List<WPComment> getRoots() {
+		return Collections.unmodifiableList(roots);
+	}
+
+	/**
+	 * @return the direct replies to the comment, oldest first.
+	 */
+	public List<WPComment> getReplies(int commentId) {
+		ArrayList<WPComment> list = replies.get(commentId);
+		return list == null ? NONE : Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * @return the number of comments below the comment, all levels, to show
+	 *         on a collapsed comment.
+	 */
+	public int getReplyCount(int commentId) {
+		Integer count = replyCounts.get(commentId);
+		return count == null ? 0 : count;
+	}
+
+	public WPComment getComment(int id) {
+		return comments.get(id);
+	}
+
+	/**
+	 * @return the highest comment id in the thread, 0 if it is empty. A
+	 *         refresh only asks for the comments after it.
+	 */
+	public int getLastId() {
+		return lastId;
+	}
+
+	public int size() {
+		return comments.size();
+	}
+
+	static final Comparator<WPComment> BY_ID = new Comparator<WPComment>() {
+		@Override
+		public int compare(WPComment lhs, WPComment rhs) {
+			return lhs.getId() < rhs.getId() ? -1
+					: (lhs.getId() == rhs.getId() ? 0 : 1);
+		}
+	};
+}
@@ -14,8 +14,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import android.util.Log;
-
 public class WPCustomField implements Serializable, NameValuePair {
 	public static final String ADD_POST_META = "meta/add_post_meta/";
 	public static final String UPDATE_POST_META = "meta/update_post_meta/";
@@ -23,6 +21,7 @@ public class WPCustomField implements Serializable, NameValuePair {
 	public static final String GET_POST_CUSTOM = "meta/get_post_custom/";
 	public static final String GET_POST_KEYS = "meta/get_post_custom_keys/";
 	public static final String GET_POST_VALUES = "meta/get_post_custom_values/";
+	public static final String BATCH_POST_META = "meta/batch_post_meta/";
 
 	/**
 	 * 
@@ -71,7 +70,7 @@ public class WPCustomField implements Serializable, NameValuePair {
 				customeFields.add(new WPCustomField(key, customfield
 						.getString(0)));
 
-				Log.d(key, customfield.getString(0));
+				WPLog.d(key, customfield.getString(0));
 			}
 		} catch (JSONException e1) {
 			// TODO Auto-generated catch block
@@ -81,6 +80,36 @@ public class WPCustomField implements Serializable, NameValuePair {
 		return customeFields;
 	}
 
+	/**
+	 * Reads a "custom_fields" object, keeping the first value of every key
+	 * like {@link #parseMetaResponse(JSONObject)}.
+	 */
+	protected static ArrayList<WPCustomField> parseMetaResponse(
+			WPJsonReader reader) throws IOException {
+		ArrayList<WPCustomField> customeFields = new ArrayList<WPCustomField>();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String key = reader.nextName();
+			String value = null;
+			reader.beginArray();
+			if (reader.hasNext()) {
+				value = reader.nextString();
+			}
+			while (reader.hasNext()) {
+				reader.skipValue();
+			}
+			reader.endArray();
+
+			if (value != null) {
+				customeFields.add(new WPCustomField(key, value));
+			}
+		}
+		reader.endObject();
+
+		return customeFields;
+	}
+
 	protected static ArrayList<String> parseCustomValues(JSONArray response) {
 		ArrayList<String> customValues = new ArrayList<String>();
 		JSONArray customFields = response;
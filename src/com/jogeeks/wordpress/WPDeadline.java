@@ -0,0 +1,88 @@
+package com.jogeeks.wordpress;
+
+import java.util.ArrayList;
+
+/**
+ * A time budget for a whole operation, e.g. a login: the get_nonce call and
+ * the generate_auth_cookie call that follows it. Every request of the
+ * operation is sent with the same deadline; the one running when it passes
+ * is cancelled and the steps after it are never sent.
+ *
+ * The deadline records its steps, the requests and waits of the operation,
+ * so a failure can tell which one used up the budget.
+ */
+public class WPDeadline {
+
+	private final long budget;
+	private final long start = now();
+
+	private final ArrayList<String> steps = new ArrayList<String>();
+	private final ArrayList<Long> stepStarts = new ArrayList<Long>();
+
+	/**
+	 * @param budgetMillis
+	 *            the milliseconds the operation may take from now.
+	 */
+	public WPDeadline(long budgetMillis) {
+		budget = budgetMillis;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return the milliseconds since the deadline was created.
+	 */
+	public long getElapsed() {
+		return now() - start;
+	}
+
+	/**
+	 * @return the milliseconds left, 0 once expired.
+	 */
+	public long getRemaining() {
+		return Math.max(0, budget - getElapsed());
+	}
+
+	public boolean isExpired() {
+		return getElapsed() >= budget;
+	}
+
+	/**
+	 * Records that the operation moved on to step, e.g. "get_nonce".
+	 */
+	public synchronized void enterStep(String step) {
+		steps.add(step);
+		stepStarts.add(getElapsed());
+	}
+
+	/**
+	 * @return the step running, the last one entered, null before the first.
+	 */
+	public synchronized String getStep() {
+		return steps.isEmpty() ? null : steps.get(steps.size() - 1);
+	}
+
+	/**
+	 * @return the budget and the time every step took, e.g. "3000 ms:
+	 *         get_nonce 2950 ms, posts/create_post 50 ms".
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(budget).append(" ms");
+		long end = Math.min(getElapsed(), budget);
+		for (int i = 0; i < steps.size(); i++) {
+			long stepEnd = i + 1 < steps.size() ? stepStarts.get(i + 1) : end;
+			builder.append(i == 0 ? ": " : ", ").append(steps.get(i))
+					.append(' ').append(stepEnd - stepStarts.get(i))
+					.append(" ms");
+		}
+		return builder.toString();
+	}
+
+	private static long now() {
+		return System.nanoTime() / 1000000;
+	}
+}
@@ -0,0 +1,148 @@
+package com.jogeeks.wordpress;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * The body of a response as the handler reads it: a gzip body is inflated
+ * while it is read, nothing is buffered. The entity counts the bytes that
+ * came over the wire and the bytes decoded from them.
+ *
+ * Only gzip is asked for (ACCEPT_ENCODING) and decoded, any other encoding
+ * is handed over as it came.
+ */
+public class WPDecodingEntity extends HttpEntityWrapper {
+
+	/** the Accept-Encoding every request is sent with */
+	public static final String ACCEPT_ENCODING = "gzip";
+
+	private final boolean gzip;
+	private CountingInputStream wire;
+	private CountingInputStream decoded;
+
+	public WPDecodingEntity(HttpEntity entity) {
+		super(entity);
+		Header encoding = entity.getContentEncoding();
+		String name = encoding != null ? encoding.getValue().trim() : "";
+		// an empty body has no gzip header to read
+		gzip = (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip"))
+				&& entity.getContentLength() != 0;
+	}
+
+	/**
+	 * @return the decoded body, the same stream on every call.
+	 */
+	@Override
+	public synchronized InputStream getContent() throws IOException {
+		if (decoded == null) {
+			wire = new CountingInputStream(wrappedEntity.getContent());
+			decoded = gzip ? new CountingInputStream(new GZIPInputStream(wire))
+					: wire;
+		}
+		return decoded;
+	}
+
+	@Override
+	public Header getContentEncoding() {
+		return gzip ? null : super.getContentEncoding();
+	}
+
+	@Override
+	public long getContentLength() {
+		return gzip ? -1 : super.getContentLength();
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return false;
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return true;
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		InputStream in = getContent();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+	}
+
+	/**
+	 * Reads what is left of the body off the connection, so it can serve the
+	 * next request.
+	 */
+	@Override
+	public void consumeContent() throws IOException {
+		CountingInputStream rest;
+		synchronized (this) {
+			rest = wire;
+		}
+		if (rest != null) {
+			byte[] buffer = new byte[4096];
+			while (rest.read(buffer) != -1) {
+			}
+		}
+		super.consumeContent();
+	}
+
+	/**
+	 * @return the bytes read off the connection so far.
+	 */
+	public synchronized long getWireBytes() {
+		return wire != null ? wire.count : 0;
+	}
+
+	/**
+	 * @return the bytes of the body read so far, after decoding.
+	 */
+	public synchronized long getDecodedBytes() {
+		return decoded != null ? decoded.count : 0;
+	}
+
+	private static final class CountingInputStream extends FilterInputStream {
+
+		volatile long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = super.read();
+			if (read != -1) {
+				count++;
+			}
+			return read;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length)
+				throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+}
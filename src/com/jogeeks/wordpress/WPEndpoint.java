@@ -0,0 +1,100 @@
+package com.jogeeks.wordpress;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * The json-api controllers the library talks to. Requests are tagged with
+ * their endpoint when they are sent so WordpressResponseHandler can dispatch
+ * the response without parsing the request URI.
+ */
+public enum WPEndpoint {
+	/***** posts controller *****/
+	POSTS(WPPost.POSTS_URL, true),
+	RECENT_POSTS(WPPost.RECENT_POSTS_URL, true),
+	DATE_POSTS(WPPost.DATE_POSTS_URL, true),
+	CATEGORY_POSTS(WPPost.CATEGORY_POSTS_URL, true),
+	TAG_POSTS(WPPost.TAG_POSTS_URL, true),
+	AUTHOR_POSTS(WPPost.AUTHOR_POSTS_URL, true),
+	SEARCH_POSTS(WPPost.SEARCH_POSTS_URL, true),
+
+	/***** Post controller *****/
+	POST(WPPost.POST_URL, true),
+	PAGE(WPPost.PAGE_URL, true),
+	CREATE_POST(WPPost.CREATE_POST_URL, false),
+	UPDATE_POST(WPPost.UPDATE_POST_URL, false),
+	DELETE_POST(WPPost.DELTE_POST_URL, false),
+	NONCE("get_nonce/", true),
+
+	/***** Comments controller *****/
+	SUBMIT_COMMENT(WPComment.SUBMIT_COMMENT_URL, false),
+	GET_COMMENTS(WPComment.GET_COMMENTS_URL, true),
+
+	/***** Categories controller *****/
+	CATEGORY_INDEX(WPCategory.CATEGORY_INDEX, true),
+
+	/***** Post custom fields controller *****/
+	ADD_POST_META(WPCustomField.ADD_POST_META, false),
+	UPDATE_POST_META(WPCustomField.UPDATE_POST_META, false),
+	DELETE_POST_META(WPCustomField.DELETE_POST_META, false),
+	GET_POST_CUSTOM(WPCustomField.GET_POST_CUSTOM, true),
+	GET_POST_KEYS(WPCustomField.GET_POST_KEYS, true),
+	GET_POST_VALUES(WPCustomField.GET_POST_VALUES, true),
+	BATCH_POST_META(WPCustomField.BATCH_POST_META, false),
+
+	/***** Custom API request *****/
+	API("", false);
+
+	private static final HashMap<String, WPEndpoint> BY_PATH = new HashMap<String, WPEndpoint>();
+
+	static {
+		WPEndpoint[] endpoints = values();
+		for (int i = 0; i < endpoints.length; i++) {
+			BY_PATH.put(endpoints[i].path.toLowerCase(Locale.US), endpoints[i]);
+		}
+		// get_nonce is requested both with and without the trailing slash
+		BY_PATH.put("get_nonce", NONCE);
+	}
+
+	private final String path;
+	private final boolean read;
+
+	private WPEndpoint(String path, boolean read) {
+		this.path = path;
+		this.read = read;
+	}
+
+	/**
+	 * @return the path of this endpoint relative to WPSite.getBaseUrl()
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return true if the endpoint only reads, sending it twice does no harm.
+	 *         Only reads are retried after a failure.
+	 */
+	public boolean isRead() {
+		return read;
+	}
+
+	/**
+	 * Resolves the endpoint of a request that was not tagged when it was sent
+	 * (e.g. a response handler supplied by the app).
+	 *
+	 * @return the matching endpoint, API for a custom controller.
+	 */
+	public static WPEndpoint fromRequestUri(String requestUri, String baseUrl) {
+		if (requestUri == null || !requestUri.startsWith(baseUrl)) {
+			return API;
+		}
+
+		int end = requestUri.indexOf('?', baseUrl.length());
+		String controller = requestUri.substring(baseUrl.length(),
+				end == -1 ? requestUri.length() : end);
+
+		WPEndpoint endpoint = BY_PATH.get(controller.toLowerCase(Locale.US));
+		return endpoint == null ? API : endpoint;
+	}
+}
@@ -0,0 +1,259 @@
+package com.jogeeks.wordpress;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Identity map of the categories, tags and authors of the site. Parsing
+ * resolves every category, tag and author through it, so each one exists
+ * once however many posts reference it: a feed of 500 posts holds its ten
+ * categories once, and two posts are in the same category if they hold the
+ * same WPCategory instance.
+ *
+ * A newer copy of an entity is merged into the existing instance, so every
+ * post sees the latest title, post count...
+ *
+ * Ids are only unique within a site, each site has its own map. Responses are
+ * resolved in the map of the site they come from, everything else (posts
+ * restored from a Bundle or the post store, lists parsed by the app) in the
+ * map of the default site, the site of the first Wordpress instance.
+ *
+ * The maps hold their entities weakly: an entity no post, list or tree
+ * holds any more is dropped, so a long session that browses many categories
+ * or authors doesn't keep all of them. A site whose maps are empty is
+ * dropped too. Entities are updated in place under their own lock, see
+ * {@link WPCategory#update(WPCategory)}.
+ */
+public class WPEntities {
+
+	private static final HashMap<String, WPEntities> sites = new HashMap<String, WPEntities>();
+	private static WPSite defaultSite;
+	// the site of the response parsed on the thread
+	private static final ThreadLocal<WPSite> parsingSite = new ThreadLocal<WPSite>();
+
+	private final Identities<WPCategory> categories = new Identities<WPCategory>();
+	private final Identities<WPTag> tags = new Identities<WPTag>();
+	private final Identities<WPAuthor> authors = new Identities<WPAuthor>();
+
+	/**
+	 * Entities by id, held weakly. The entries of the entities that were
+	 * collected are removed on the next access.
+	 */
+	private static class Identities<T> {
+
+		private static class Entry<T> extends WeakReference<T> {
+			final int id;
+
+			Entry(int id, T entity, ReferenceQueue<T> queue) {
+				super(entity, queue);
+				this.id = id;
+			}
+		}
+
+		private final HashMap<Integer, Entry<T>> entries = new HashMap<Integer, Entry<T>>();
+		private final ReferenceQueue<T> collected = new ReferenceQueue<T>();
+
+		T get(int id) {
+			purge();
+			Entry<T> entry = entries.get(id);
+			return entry != null ? entry.get() : null;
+		}
+
+		void put(int id, T entity) {
+			purge();
+			entries.put(id, new Entry<T>(id, entity, collected));
+		}
+
+		boolean isEmpty() {
+			purge();
+			return entries.isEmpty();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void purge() {
+			Entry<T> entry;
+			while ((entry = (Entry<T>) collected.poll()) != null) {
+				// the id may have a newer entry since
+				if (entries.get(entry.id) == entry) {
+					entries.remove(entry.id);
+				}
+			}
+		}
+	}
+
+	private WPEntities() {
+	}
+
+	/**
+	 * Sets the site of the entities resolved without a site, unless one is
+	 * already set.
+	 */
+	static synchronized void setDefaultSite(WPSite site) {
+		if (defaultSite == null) {
+			defaultSite = site;
+		}
+	}
+
+	/**
+	 * Resolves the entities parsed on the calling thread in the map of site
+	 * until it is called with null.
+	 */
+	static void setParsingSite(WPSite site) {
+		if (site == null) {
+			parsingSite.remove();
+		} else {
+			parsingSite.set(site);
+		}
+	}
+
+	private static WPEntities current() {
+		WPSite site = parsingSite.get();
+		return of(site != null ? site : defaultSite);
+	}
+
+	private static WPEntities of(WPSite site) {
+		String key = site == null ? "" : site.getKey();
+		WPEntities entities = sites.get(key);
+		if (entities == null) {
+			dropEmptySites();
+			entities = new WPEntities();
+			sites.put(key, entities);
+		}
+		return entities;
+	}
+
+	/**
+	 * Called when a site is added, so the map of sites doesn't grow with
+	 * every site the app ever talked to.
+	 */
+	private static void dropEmptySites() {
+		for (Iterator<WPEntities> i = sites.values().iterator(); i.hasNext();) {
+			WPEntities entities = i.next();
+			if (entities.categories.isEmpty() && entities.tags.isEmpty()
+					&& entities.authors.isEmpty()) {
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return the instance of the category with the id of parsed, updated
+	 *         with the values of parsed, or parsed if it is the first one.
+	 */
+	static synchronized WPCategory category(WPCategory parsed) {
+		if (parsed == null || parsed.getId() == 0) {
+			return parsed;
+		}
+		Identities<WPCategory> categories = current().categories;
+		WPCategory known = categories.get(parsed.getId());
+		if (known == null) {
+			categories.put(parsed.getId(), parsed);
+			return parsed;
+		}
+		known.update(parsed);
+		return known;
+	}
+
+	/**
+	 * @see #category(WPCategory)
+	 */
+	static synchronized WPTag tag(WPTag parsed) {
+		if (parsed == null || parsed.getId() == 0) {
+			return parsed;
+		}
+		Identities<WPTag> tags = current().tags;
+		WPTag known = tags.get(parsed.getId());
+		if (known == null) {
+			tags.put(parsed.getId(), parsed);
+			return parsed;
+		}
+		known.update(parsed);
+		return known;
+	}
+
+	/**
+	 * @see #category(WPCategory)
+	 */
+	static synchronized WPAuthor author(WPAuthor parsed) {
+		if (parsed == null || parsed.getId() == 0) {
+			return parsed;
+		}
+		Identities<WPAuthor> authors = current().authors;
+		WPAuthor known = authors.get(parsed.getId());
+		if (known == null) {
+			authors.put(parsed.getId(), parsed);
+			return parsed;
+		}
+		known.update(parsed);
+		return known;
+	}
+
+	/**
+	 * Like {@link #category(WPCategory)} for a category restored from a
+	 * Bundle or a serialized copy, which may be older than the instance in
+	 * memory: the instance is kept as it is.
+	 */
+	static synchronized WPCategory restoredCategory(WPCategory restored) {
+		WPCategory known = current().categories.get(restored.getId());
+		return known != null ? known : category(restored);
+	}
+
+	static synchronized WPTag restoredTag(WPTag restored) {
+		WPTag known = current().tags.get(restored.getId());
+		return known != null ? known : tag(restored);
+	}
+
+	static synchronized WPAuthor restoredAuthor(WPAuthor restored) {
+		WPAuthor known = current().authors.get(restored.getId());
+		return known != null ? known : author(restored);
+	}
+
+	/**
+	 * @return the category with the id if a post or category list of the
+	 *         default site in memory holds it, null otherwise.
+	 */
+	public static synchronized WPCategory getCategory(int id) {
+		return of(defaultSite).categories.get(id);
+	}
+
+	public static synchronized WPTag getTag(int id) {
+		return of(defaultSite).tags.get(id);
+	}
+
+	public static synchronized WPAuthor getAuthor(int id) {
+		return of(defaultSite).authors.get(id);
+	}
+
+	/**
+	 * @return the category with the id if a post or category list of the site
+	 *         in memory holds it, null otherwise.
+	 */
+	public static synchronized WPCategory getCategory(WPSite site, int id) {
+		return of(site).categories.get(id);
+	}
+
+	public static synchronized WPTag getTag(WPSite site, int id) {
+		return of(site).tags.get(id);
+	}
+
+	public static synchronized WPAuthor getAuthor(WPSite site, int id) {
+		return of(site).authors.get(id);
+	}
+
+	/**
+	 * Forgets the entities of the site. Its posts parsed afterwards don't
+	 * share their entities with the posts parsed before.
+	 */
+	public static synchronized void clear(WPSite site) {
+		sites.remove(site == null ? "" : site.getKey());
+	}
+
+	/**
+	 * Forgets every entity of every site.
+	 */
+	public static synchronized void clear() {
+		sites.clear();
+	}
+}
@@ -0,0 +1,123 @@
+package com.jogeeks.wordpress;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Why a request failed for good, after its retries: the reason, the HTTP
+ * status (0 if there was no response), the exception, how many times it was
+ * sent and how long it took from the first attempt. For a request sent with
+ * a {@link WPDeadline} it also tells the step of the operation.
+ */
+public class WPFailure {
+
+	public enum Reason {
+		/** no connection, DNS failure, connection reset... */
+		CONNECTION,
+		/** connect or read timeout */
+		TIMEOUT,
+		/** 5xx or 429, the server is down or overloaded */
+		SERVER_ERROR,
+		/** any other status >= 400 (not found, forbidden...) */
+		HTTP_ERROR,
+		/** not sent, the circuit breaker of the host is open */
+		CIRCUIT_OPEN,
+		/** cancelled, the deadline of the operation passed */
+		DEADLINE
+	}
+
+	private final Reason reason;
+	private final String url;
+	private final int statusCode;
+	private final Throwable cause;
+	private final int attempts;
+	private final long elapsedMillis;
+	private final String step;
+
+	public WPFailure(Reason reason, String url, int statusCode,
+			Throwable cause, int attempts, long elapsedMillis) {
+		this(reason, url, statusCode, cause, attempts, elapsedMillis, null);
+	}
+
+	/**
+	 * @param step
+	 *            the step of the operation the request was, see
+	 *            {@link WPDeadline#getStep()}.
+	 */
+	public WPFailure(Reason reason, String url, int statusCode,
+			Throwable cause, int attempts, long elapsedMillis, String step) {
+		this.reason = reason;
+		this.url = url;
+		this.statusCode = statusCode;
+		this.cause = cause;
+		this.attempts = attempts;
+		this.elapsedMillis = elapsedMillis;
+		this.step = step;
+	}
+
+	/**
+	 * @return the reason of a failed attempt, null if statusCode is a success
+	 *         (2xx or 304).
+	 */
+	public static Reason reasonOf(int statusCode, Throwable cause) {
+		if (statusCode == 0) {
+			// SocketTimeoutException and ConnectTimeoutException
+			return cause instanceof InterruptedIOException ? Reason.TIMEOUT
+					: Reason.CONNECTION;
+		}
+		if (statusCode >= 500 || statusCode == 429) {
+			return Reason.SERVER_ERROR;
+		}
+		if (statusCode >= 400) {
+			return Reason.HTTP_ERROR;
+		}
+		return null;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * @return the exception of the last attempt, null for an HTTP error.
+	 */
+	public Throwable getCause() {
+		return cause;
+	}
+
+	/**
+	 * @return the number of times the request was sent, 0 if the circuit
+	 *         breaker didn't let it through.
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return the step of the operation, e.g. "get_nonce", null for a request
+	 *         sent without a deadline. For a DEADLINE failure, the step that
+	 *         used up the budget.
+	 */
+	public String getStep() {
+		return step;
+	}
+
+	@Override
+	public String toString() {
+		return reason + (step != null ? " in " + step : "")
+				+ (statusCode != 0 ? " " + statusCode : "")
+				+ (cause != null ? " (" + cause + ")" : "") + " after "
+				+ attempts + " attempts, " + elapsedMillis + " ms: " + url;
+	}
+}
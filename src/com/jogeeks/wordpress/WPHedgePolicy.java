@@ -0,0 +1,130 @@
+package com.jogeeks.wordpress;
+
+import java.util.Arrays;
+
+/**
+ * When to send a second, identical read while the first one hasn't answered.
+ * The delay is a percentile of the recent latencies, so only the slowest
+ * requests (the ones stuck on a slow PHP worker) are hedged. The first
+ * attempt to answer wins and the other one is cancelled.
+ *
+ * The extra load is capped: hedges never exceed maxHedgeRatio of the
+ * requests. A policy counts the requests, hedges and hedges that won; use
+ * one per Wordpress instance to read them per site.
+ */
+public class WPHedgePolicy {
+
+	/** number of recent latencies the delay is computed from */
+	public static final int SAMPLES = 128;
+	/** no hedging before that many latencies are known */
+	public static final int MIN_SAMPLES = 16;
+
+	private final double percentile;
+	private final double maxHedgeRatio;
+
+	private final long[] latencies = new long[SAMPLES];
+	private int count;
+	private int next;
+
+	private long requests;
+	private long hedges;
+	private long hedgeWins;
+
+	/**
+	 * @param percentile
+	 *            the latency percentile after which a request is hedged, e.g.
+	 *            0.95.
+	 * @param maxHedgeRatio
+	 *            the highest share of requests that may be hedged, e.g. 0.05
+	 *            for at most 5% of extra load.
+	 */
+	public WPHedgePolicy(double percentile, double maxHedgeRatio) {
+		this.percentile = percentile;
+		this.maxHedgeRatio = maxHedgeRatio;
+	}
+
+	/**
+	 * @return the milliseconds to wait for an answer before hedging, -1 while
+	 *         there are less than MIN_SAMPLES latencies.
+	 */
+	public synchronized long getHedgeDelay() {
+		if (count < MIN_SAMPLES) {
+			return -1;
+		}
+		long[] sorted = new long[count];
+		System.arraycopy(latencies, 0, sorted, 0, count);
+		Arrays.sort(sorted);
+		return sorted[Math.min(count - 1,
+				(int) Math.ceil(percentile * count) - 1)];
+	}
+
+	/**
+	 * Counts a request that may be hedged.
+	 */
+	synchronized void onRequest() {
+		requests++;
+	}
+
+	/**
+	 * @return true if the budget allows one more hedge, which is then
+	 *         counted.
+	 */
+	synchronized boolean tryHedge() {
+		if (hedges + 1 > maxHedgeRatio * requests) {
+			return false;
+		}
+		hedges++;
+		return true;
+	}
+
+	/**
+	 * Reports the attempt that answered first.
+	 *
+	 * @param latency
+	 *            milliseconds from the send of the attempt to its answer.
+	 * @param hedge
+	 *            true if it was the hedge.
+	 */
+	synchronized void onAnswer(long latency, boolean hedge) {
+		latencies[next] = latency;
+		next = (next + 1) % SAMPLES;
+		if (count < SAMPLES) {
+			count++;
+		}
+		if (hedge) {
+			hedgeWins++;
+		}
+	}
+
+	public synchronized long getRequestCount() {
+		return requests;
+	}
+
+	public synchronized long getHedgeCount() {
+		return hedges;
+	}
+
+	public synchronized long getHedgeWinCount() {
+		return hedgeWins;
+	}
+
+	/**
+	 * @return the share of the requests that were hedged.
+	 */
+	public synchronized double getHedgeRate() {
+		return requests == 0 ? 0 : (double) hedges / requests;
+	}
+
+	/**
+	 * @return the share of the hedges that answered before the first attempt.
+	 */
+	public synchronized double getWinRate() {
+		return hedges == 0 ? 0 : (double) hedgeWins / hedges;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return requests + " requests, " + hedges + " hedged, " + hedgeWins
+				+ " won by the hedge";
+	}
+}
@@ -0,0 +1,366 @@
+package com.jogeeks.wordpress;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * Minimal pull parser for json-api responses. Values are read token by token
+ * straight from the response so models can be built without an intermediate
+ * JSONObject tree.
+ *
+ * It is lenient the same way the json-api plugin is inconsistent: numbers can
+ * be read as strings and quoted numbers as ints.
+ */
+public class WPJsonReader implements Closeable {
+
+	public enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_OBJECT = 2;
+	private static final int DANGLING_NAME = 3;
+	private static final int NONEMPTY_OBJECT = 4;
+	private static final int EMPTY_ARRAY = 5;
+	private static final int NONEMPTY_ARRAY = 6;
+
+	private final Reader in;
+	private final char[] buffer = new char[1024];
+	private int pos;
+	private int limit;
+	private long consumed;
+
+	private int[] stack = new int[32];
+	private int stackSize = 0;
+
+	private Token peeked;
+	private String value;
+
+	private final StringBuilder builder = new StringBuilder();
+
+	public WPJsonReader(Reader in) {
+		this.in = in;
+		stack[stackSize++] = EMPTY_DOCUMENT;
+	}
+
+	public WPJsonReader(String json) {
+		this(new StringReader(json));
+	}
+
+	public void beginObject() throws IOException {
+		expect(Token.BEGIN_OBJECT);
+	}
+
+	public void endObject() throws IOException {
+		expect(Token.END_OBJECT);
+	}
+
+	public void beginArray() throws IOException {
+		expect(Token.BEGIN_ARRAY);
+	}
+
+	public void endArray() throws IOException {
+		expect(Token.END_ARRAY);
+	}
+
+	/**
+	 * @return true if the current object or array has another element.
+	 */
+	public boolean hasNext() throws IOException {
+		Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY
+				&& token != Token.END_DOCUMENT;
+	}
+
+	public String nextName() throws IOException {
+		expect(Token.NAME);
+		return value;
+	}
+
+	/**
+	 * Returns the next string, number or boolean as a string, or null if the
+	 * next value is a JSON null.
+	 */
+	public String nextString() throws IOException {
+		Token token = peek();
+		if (token == Token.NULL) {
+			peeked = null;
+			return null;
+		}
+		if (token != Token.STRING && token != Token.NUMBER
+				&& token != Token.BOOLEAN) {
+			throw syntaxError("Expected a string but was " + token);
+		}
+		peeked = null;
+		return value;
+	}
+
+	/**
+	 * Returns the next number (or quoted number) as an int.
+	 */
+	public int nextInt() throws IOException {
+		Token token = peek();
+		if (token != Token.STRING && token != Token.NUMBER) {
+			throw syntaxError("Expected an int but was " + token);
+		}
+		peeked = null;
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			try {
+				return (int) Double.parseDouble(value);
+			} catch (NumberFormatException e1) {
+				throw syntaxError("Expected an int but was \"" + value + "\"");
+			}
+		}
+	}
+
+	public boolean nextBoolean() throws IOException {
+		expect(Token.BOOLEAN);
+		return value.equals("true");
+	}
+
+	public void nextNull() throws IOException {
+		expect(Token.NULL);
+	}
+
+	/**
+	 * Skips the next value, including nested objects and arrays.
+	 */
+	public void skipValue() throws IOException {
+		int depth = 0;
+		do {
+			Token token = peek();
+			if (token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY) {
+				depth++;
+			} else if (token == Token.END_OBJECT || token == Token.END_ARRAY) {
+				depth--;
+			} else if (token == Token.END_DOCUMENT) {
+				throw syntaxError("Unexpected end of document");
+			}
+			peeked = null;
+		} while (depth > 0);
+	}
+
+	public Token peek() throws IOException {
+		if (peeked != null) {
+			return peeked;
+		}
+
+		int c;
+		switch (stack[stackSize - 1]) {
+		case EMPTY_DOCUMENT:
+			stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+			return peeked = readValue();
+
+		case NONEMPTY_DOCUMENT:
+			if (nextNonWhitespace() != -1) {
+				throw syntaxError("Expected end of document");
+			}
+			return peeked = Token.END_DOCUMENT;
+
+		case EMPTY_ARRAY:
+			stack[stackSize - 1] = NONEMPTY_ARRAY;
+			c = nextNonWhitespace();
+			if (c == ']') {
+				stackSize--;
+				return peeked = Token.END_ARRAY;
+			} else if (c != -1) {
+				pos--;
+			}
+			return peeked = readValue();
+
+		case NONEMPTY_ARRAY:
+			c = nextNonWhitespace();
+			if (c == ']') {
+				stackSize--;
+				return peeked = Token.END_ARRAY;
+			} else if (c != ',') {
+				throw syntaxError("Unterminated array");
+			}
+			return peeked = readValue();
+
+		case EMPTY_OBJECT:
+		case NONEMPTY_OBJECT:
+			boolean empty = stack[stackSize - 1] == EMPTY_OBJECT;
+			stack[stackSize - 1] = DANGLING_NAME;
+			c = nextNonWhitespace();
+			if (c == '}') {
+				stackSize--;
+				return peeked = Token.END_OBJECT;
+			}
+			if (!empty) {
+				if (c != ',') {
+					throw syntaxError("Unterminated object");
+				}
+				c = nextNonWhitespace();
+			}
+			if (c != '"') {
+				throw syntaxError("Expected a name");
+			}
+			value = readString();
+			return peeked = Token.NAME;
+
+		case DANGLING_NAME:
+			stack[stackSize - 1] = NONEMPTY_OBJECT;
+			if (nextNonWhitespace() != ':') {
+				throw syntaxError("Expected ':'");
+			}
+			return peeked = readValue();
+
+		default:
+			throw new IllegalStateException();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		peeked = null;
+		in.close();
+	}
+
+	private void expect(Token expected) throws IOException {
+		Token token = peek();
+		if (token != expected) {
+			throw syntaxError("Expected " + expected + " but was " + token);
+		}
+		peeked = null;
+	}
+
+	private Token readValue() throws IOException {
+		int c = nextNonWhitespace();
+		switch (c) {
+		case '{':
+			push(EMPTY_OBJECT);
+			return Token.BEGIN_OBJECT;
+		case '[':
+			push(EMPTY_ARRAY);
+			return Token.BEGIN_ARRAY;
+		case '"':
+			value = readString();
+			return Token.STRING;
+		case -1:
+			throw syntaxError("Unexpected end of document");
+		default:
+			pos--;
+			value = readLiteral();
+			if (value.length() == 0) {
+				throw syntaxError("Expected a value");
+			} else if (value.equals("true") || value.equals("false")) {
+				return Token.BOOLEAN;
+			} else if (value.equals("null")) {
+				return Token.NULL;
+			}
+			return Token.NUMBER;
+		}
+	}
+
+	private void push(int scope) {
+		if (stackSize == stack.length) {
+			int[] newStack = new int[stackSize * 2];
+			System.arraycopy(stack, 0, newStack, 0, stackSize);
+			stack = newStack;
+		}
+		stack[stackSize++] = scope;
+	}
+
+	private boolean fillBuffer() throws IOException {
+		consumed += limit;
+		pos = 0;
+		limit = 0;
+		int read = in.read(buffer, 0, buffer.length);
+		if (read <= 0) {
+			return false;
+		}
+		limit = read;
+		return true;
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		while (pos < limit || fillBuffer()) {
+			char c = buffer[pos++];
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+		}
+		return -1;
+	}
+
+	private String readString() throws IOException {
+		builder.setLength(0);
+		while (true) {
+			int start = pos;
+			while (pos < limit) {
+				char c = buffer[pos++];
+				if (c == '"') {
+					builder.append(buffer, start, pos - start - 1);
+					return builder.toString();
+				} else if (c == '\\') {
+					builder.append(buffer, start, pos - start - 1);
+					builder.append(readEscape());
+					start = pos;
+				}
+			}
+			builder.append(buffer, start, pos - start);
+			if (!fillBuffer()) {
+				throw syntaxError("Unterminated string");
+			}
+		}
+	}
+
+	private char readEscape() throws IOException {
+		if (pos == limit && !fillBuffer()) {
+			throw syntaxError("Unterminated escape sequence");
+		}
+		char escaped = buffer[pos++];
+		switch (escaped) {
+		case 'u':
+			int code = 0;
+			for (int i = 0; i < 4; i++) {
+				if (pos == limit && !fillBuffer()) {
+					throw syntaxError("Unterminated escape sequence");
+				}
+				int digit = Character.digit(buffer[pos++], 16);
+				if (digit == -1) {
+					throw syntaxError("Invalid escape sequence");
+				}
+				code = (code << 4) | digit;
+			}
+			return (char) code;
+		case 't':
+			return '\t';
+		case 'b':
+			return '\b';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 'f':
+			return '\f';
+		default:
+			// '"', '\\', '/' and anything else stand for themselves
+			return escaped;
+		}
+	}
+
+	private String readLiteral() throws IOException {
+		builder.setLength(0);
+		while (pos < limit || fillBuffer()) {
+			char c = buffer[pos];
+			if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' '
+					|| c == '\n' || c == '\r' || c == '\t') {
+				break;
+			}
+			builder.append(c);
+			pos++;
+		}
+		return builder.toString();
+	}
+
+	private IOException syntaxError(String message) {
+		return new IOException(message + " at character " + (consumed + pos));
+	}
+}
@@ -0,0 +1,44 @@
+package com.jogeeks.wordpress;
+
+/**
+ * Logging of the platform neutral classes. Wordpress routes it to logcat,
+ * anywhere else warnings are printed to System.err and debug messages are
+ * dropped unless another logger is set.
+ */
+public class WPLog {
+
+	public interface Logger {
+		public void d(String tag, String msg);
+
+		public void w(String tag, String msg, Throwable tr);
+	}
+
+	private static volatile Logger logger = new Logger() {
+		@Override
+		public void d(String tag, String msg) {
+		}
+
+		@Override
+		public void w(String tag, String msg, Throwable tr) {
+			System.err.println(tag + ": " + msg);
+			if (tr != null) {
+				tr.printStackTrace();
+			}
+		}
+	};
+
+	private WPLog() {
+	}
+
+	public static void setLogger(Logger l) {
+		logger = l;
+	}
+
+	static void d(String tag, String msg) {
+		logger.d(tag, msg);
+	}
+
+	static void w(String tag, String msg, Throwable tr) {
+		logger.w(tag, msg, tr);
+	}
+}
@@ -0,0 +1,203 @@
+package com.jogeeks.wordpress;
+
+import java.util.ArrayList;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.loopj.android.http.RequestParams;
+
+/**
+ * A list of custom field adds, updates and deletes, for one or several posts,
+ * sent with {@link Wordpress#applyPostMeta(WPMetaBatch,
+ * com.jogeeks.wordpress.listeners.OnCustomFieldsListener)} in a single
+ * request. Once it completes, the result of every operation can be read by its
+ * index.
+ */
+public class WPMetaBatch {
+
+	static final String ADD = "add";
+	static final String UPDATE = "update";
+	static final String DELETE = "delete";
+
+	private final ArrayList<Operation> operations = new ArrayList<Operation>();
+
+	public WPMetaBatch add(int pid, WPCustomField meta, boolean unique) {
+		Operation operation = new Operation(ADD, pid, meta.getName(),
+				meta.getValue());
+		operation.unique = unique;
+		operations.add(operation);
+		return this;
+	}
+
+	public WPMetaBatch update(int pid, WPCustomField meta) {
+		operations.add(new Operation(UPDATE, pid, meta.getName(), meta
+				.getValue()));
+		return this;
+	}
+
+	/**
+	 * @param previousValue
+	 *            the old value, to update only one of several fields with the
+	 *            same key.
+	 */
+	public WPMetaBatch update(int pid, WPCustomField meta, String previousValue) {
+		Operation operation = new Operation(UPDATE, pid, meta.getName(),
+				meta.getValue());
+		operation.previousValue = previousValue;
+		operations.add(operation);
+		return this;
+	}
+
+	/**
+	 * Deletes the fields with the key and value of meta.
+	 */
+	public WPMetaBatch delete(int pid, WPCustomField meta) {
+		operations.add(new Operation(DELETE, pid, meta.getName(), meta
+				.getValue()));
+		return this;
+	}
+
+	/**
+	 * Deletes every field with the key.
+	 */
+	public WPMetaBatch delete(int pid, String key) {
+		operations.add(new Operation(DELETE, pid, key, null));
+		return this;
+	}
+
+	public int size() {
+		return operations.size();
+	}
+
+	/**
+	 * @return true if the operation at index was applied.
+	 */
+	public boolean isSuccessful(int index) {
+		return operations.get(index).error == null
+				&& operations.get(index).done;
+	}
+
+	/**
+	 * @return the error the server gave for the operation at index, null if it
+	 *         succeeded.
+	 */
+	public String getError(int index) {
+		return operations.get(index).error;
+	}
+
+	Operation get(int index) {
+		return operations.get(index);
+	}
+
+	JSONArray toJSON() throws JSONException {
+		JSONArray array = new JSONArray();
+		for (int i = 0; i < operations.size(); i++) {
+			array.put(operations.get(i).toJSON());
+		}
+		return array;
+	}
+
+	/**
+	 * Reads the "results" array of the batch controller, one result per
+	 * operation in the order they were sent.
+	 */
+	void setResults(JSONArray results) {
+		for (int i = 0; i < operations.size(); i++) {
+			JSONObject result = results.optJSONObject(i);
+			if (result == null) {
+				operations.get(i).setResult("no result");
+			} else {
+				operations.get(i).setResult(result);
+			}
+		}
+	}
+
+	/**
+	 * Marks every operation failed with error: the batch couldn't be sent or
+	 * its answer read.
+	 */
+	void fail(String error) {
+		for (int i = 0; i < operations.size(); i++) {
+			operations.get(i).setResult(error);
+		}
+	}
+
+	static class Operation {
+		final String action;
+		final int pid;
+		final String key;
+		final String value;
+		String previousValue;
+		boolean unique;
+
+		private boolean done;
+		private String error;
+
+		private Operation(String action, int pid, String key, String value) {
+			this.action = action;
+			this.pid = pid;
+			this.key = key;
+			this.value = value;
+		}
+
+		WPEndpoint getEndpoint() {
+			if (ADD.equals(action)) {
+				return WPEndpoint.ADD_POST_META;
+			} else if (UPDATE.equals(action)) {
+				return WPEndpoint.UPDATE_POST_META;
+			}
+			return WPEndpoint.DELETE_POST_META;
+		}
+
+		/**
+		 * The params of the single operation meta controller methods.
+		 */
+		RequestParams toParams() {
+			RequestParams reqParams = new RequestParams();
+			reqParams.add("post_id", Integer.toString(pid));
+			reqParams.add("meta_key", key);
+			if (value != null) {
+				reqParams.add("meta_value", value);
+			}
+			if (ADD.equals(action)) {
+				reqParams.add("unique", Boolean.toString(unique));
+			}
+			if (previousValue != null) {
+				reqParams.add("prev_value", previousValue);
+			}
+			return reqParams;
+		}
+
+		JSONObject toJSON() throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("action", action);
+			json.put("post_id", pid);
+			json.put("meta_key", key);
+			if (value != null) {
+				json.put("meta_value", value);
+			}
+			if (ADD.equals(action)) {
+				json.put("unique", unique);
+			}
+			if (previousValue != null) {
+				json.put("prev_value", previousValue);
+			}
+			return json;
+		}
+
+		void setResult(JSONObject response) {
+			if ("ok".equals(response.optString("status"))) {
+				setResult((String) null);
+			} else {
+				setResult(response.optString("error", "failed"));
+			}
+		}
+
+		void setResult(String error) {
+			done = true;
+			this.error = error;
+		}
+	}
+}
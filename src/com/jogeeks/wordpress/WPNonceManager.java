@@ -0,0 +1,266 @@
+package com.jogeeks.wordpress;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.http.Header;
+import org.json.JSONObject;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.jogeeks.wordpress.listeners.OnConnectionFailureListener;
+import com.loopj.android.http.JsonHttpResponseHandler;
+
+/**
+ * Caches the nonces returned by get_nonce per controller and method so a
+ * write costs a single round trip. WordPress nonces stay valid for 12 to 24
+ * hours, a cached nonce is used for {@link #NONCE_TTL} and dropped when the
+ * server rejects it or the user changes.
+ *
+ * A get_nonce call is shared by every caller waiting for the nonce, so it is
+ * sent without their deadlines: a caller whose deadline passes stops
+ * waiting, the call goes on and its nonce is cached for the next try.
+ */
+class WPNonceManager {
+
+	/**
+	 * How long a nonce is reused, below the 12 hours a nonce is guaranteed to
+	 * be valid for.
+	 */
+	static final long NONCE_TTL = 11 * 60 * 60 * 1000L;
+
+	interface OnNonceListener {
+		public void onNonceReceived(String nonce);
+
+		/**
+		 * The server answered without a nonce (e.g. the controller or method
+		 * doesn't exist or the user isn't allowed to call it).
+		 */
+		public void onNonceRejected();
+
+		/**
+		 * No nonce: the get_nonce call failed or the deadline of the caller
+		 * passed while waiting for it.
+		 */
+		public void onNonceFailed(Throwable error);
+	}
+
+	private static final Handler mainHandler = new Handler(
+			Looper.getMainLooper());
+
+	private final Wordpress wordpress;
+	private final String baseUrl;
+	private final OnConnectionFailureListener onConnectionFailureListener;
+
+	private final HashMap<String, String> nonces = new HashMap<String, String>();
+	private final HashMap<String, Long> expiries = new HashMap<String, Long>();
+	// listeners waiting for a nonce request in flight
+	private final HashMap<String, ArrayList<OnNonceListener>> pending = new HashMap<String, ArrayList<OnNonceListener>>();
+	// deadlines of the waiters that have one
+	private final HashMap<OnNonceListener, Runnable> timeouts = new HashMap<OnNonceListener, Runnable>();
+
+	WPNonceManager(Wordpress wordpress, String baseUrl,
+			OnConnectionFailureListener listener) {
+		this.wordpress = wordpress;
+		this.baseUrl = baseUrl;
+		onConnectionFailureListener = listener;
+	}
+
+	void getNonce(String controller, String method, OnNonceListener listener) {
+		getNonce(controller, method, listener, null);
+	}
+
+	/**
+	 * Hands a cached nonce to the listener right away, or requests one.
+	 * Concurrent requests for the same nonce share one get_nonce call. If
+	 * deadline passes first, the listener gets onNonceFailed.
+	 */
+	void getNonce(final String controller, final String method,
+			OnNonceListener listener, WPDeadline deadline) {
+		final String key = controller + "/" + method;
+		final String url = baseUrl + Wordpress.NONCE_URL + "/?controller="
+				+ controller + "&method=" + method;
+
+		final ArrayList<OnNonceListener> waiters;
+		synchronized (this) {
+			Long expiry = expiries.get(key);
+			if (expiry != null && expiry > System.nanoTime() / 1000000) {
+				String nonce = nonces.get(key);
+				if (listener != null) {
+					listener.onNonceReceived(nonce);
+				}
+				return;
+			}
+
+			if (listener != null && deadline != null) {
+				watch(key, url, listener, deadline);
+			}
+			ArrayList<OnNonceListener> shared = pending.get(key);
+			if (shared != null) {
+				if (listener != null) {
+					shared.add(listener);
+				}
+				return;
+			}
+			waiters = new ArrayList<OnNonceListener>();
+			if (listener != null) {
+				waiters.add(listener);
+			}
+			pending.put(key, waiters);
+		}
+
+		wordpress.get(WPEndpoint.NONCE, url, null,
+				new JsonHttpResponseHandler() {
+					@Override
+					public void onSuccess(int statusCode, Header[] headers,
+							JSONObject response) {
+						String nonce = null;
+						if ("ok".equals(response.optString("status"))) {
+							nonce = response.optString("nonce", null);
+						}
+
+						synchronized (WPNonceManager.this) {
+							if (!release(key, waiters)) {
+								return;
+							}
+							if (nonce != null) {
+								nonces.put(key, nonce);
+								expiries.put(key, System.nanoTime() / 1000000
+										+ NONCE_TTL);
+							}
+						}
+
+						for (int i = 0; i < waiters.size(); i++) {
+							if (nonce != null) {
+								waiters.get(i).onNonceReceived(nonce);
+							} else {
+								waiters.get(i).onNonceRejected();
+							}
+						}
+					}
+
+					/**
+					 * Every failure of the call: a connection error or an
+					 * error status, whatever the body.
+					 */
+					@Override
+					public void onFailure(int statusCode, Header[] headers,
+							byte[] responseBody, Throwable error) {
+						fail(error);
+					}
+
+					/**
+					 * A success whose body isn't a JSON object.
+					 */
+					@Override
+					public void onFailure(Throwable error, JSONObject response) {
+						fail(error);
+					}
+
+					private void fail(Throwable error) {
+						synchronized (WPNonceManager.this) {
+							if (!release(key, waiters)) {
+								return;
+							}
+						}
+						if (onConnectionFailureListener != null) {
+							onConnectionFailureListener.OnConnectionFailed();
+						}
+						for (int i = 0; i < waiters.size(); i++) {
+							waiters.get(i).onNonceFailed(error);
+						}
+					}
+				});
+	}
+
+	/**
+	 * Ends the call waiters are waiting for, once: a new call for key may be
+	 * pending by the time a late callback of the old one comes.
+	 *
+	 * @return false if the call was already over.
+	 */
+	private boolean release(String key, ArrayList<OnNonceListener> waiters) {
+		if (pending.get(key) != waiters) {
+			return false;
+		}
+		pending.remove(key);
+		unwatch(waiters);
+		return true;
+	}
+
+	/**
+	 * Stops listener waiting for the nonce once deadline passes.
+	 */
+	private void watch(final String key, final String url,
+			final OnNonceListener listener, final WPDeadline deadline) {
+		deadline.enterStep(Wordpress.NONCE_URL);
+		Runnable timeout = new Runnable() {
+			@Override
+			public void run() {
+				synchronized (WPNonceManager.this) {
+					ArrayList<OnNonceListener> waiters = pending.get(key);
+					timeouts.remove(listener);
+					if (waiters == null || !waiters.remove(listener)) {
+						return;
+					}
+				}
+				InterruptedIOException error = new InterruptedIOException(
+						"deadline of " + deadline.getBudget()
+								+ " ms exceeded waiting for the " + key
+								+ " nonce");
+				wordpress.reportFailure(new WPFailure(
+						WPFailure.Reason.DEADLINE, url, 0, error, 0, deadline
+								.getElapsed(), deadline.getStep()));
+				listener.onNonceFailed(error);
+			}
+		};
+		timeouts.put(listener, timeout);
+		mainHandler.postDelayed(timeout, deadline.getRemaining());
+	}
+
+	private void unwatch(ArrayList<OnNonceListener> waiters) {
+		for (int i = 0; i < waiters.size(); i++) {
+			Runnable timeout = timeouts.remove(waiters.get(i));
+			if (timeout != null) {
+				mainHandler.removeCallbacks(timeout);
+			}
+		}
+	}
+
+	/**
+	 * Requests the nonce in the background so the next write doesn't wait for
+	 * it.
+	 */
+	void prefetch(String controller, String method) {
+		getNonce(controller, method, null);
+	}
+
+	/**
+	 * Drops the cached nonce after the server rejected it.
+	 */
+	synchronized void invalidate(String controller, String method) {
+		String key = controller + "/" + method;
+		nonces.remove(key);
+		expiries.remove(key);
+	}
+
+	/**
+	 * Drops every cached nonce, nonces belong to the logged in user.
+	 */
+	synchronized void clear() {
+		nonces.clear();
+		expiries.clear();
+	}
+
+	/**
+	 * json-api answers a write with a wrong or expired nonce with an error
+	 * telling to use get_nonce.
+	 */
+	static boolean isNonceError(JSONObject response) {
+		return response != null
+				&& "error".equals(response.optString("status"))
+				&& response.optString("error").indexOf("nonce") != -1;
+	}
+}
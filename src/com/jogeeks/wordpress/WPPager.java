@@ -0,0 +1,247 @@
+package com.jogeeks.wordpress;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import com.jogeeks.wordpress.listeners.OnPostsFailedListener;
+import com.jogeeks.wordpress.listeners.OnPostsReceivedListener;
+
+/**
+ * Pages through the posts of a query for an infinite scroll list. Every time
+ * a page is delivered the next pages are requested ahead of time, a few at
+ * once, so scrolling doesn't wait for the network.
+ *
+ * Posts published while paging push older posts onto the next page, posts
+ * that were already delivered are dropped from the following pages.
+ *
+ * A page whose request failed is sent again the next time it is needed.
+ *
+ * Use it from the UI thread.
+ */
+public class WPPager {
+
+	public static final int DEFAULT_PREFETCH_PAGES = 2;
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 2;
+
+	/**
+	 * A page request that didn't answer by then is considered lost and is
+	 * sent again when the page is needed.
+	 */
+	private static final long STALE_REQUEST_MS = 30 * 1000;
+
+	private final Wordpress wordpress;
+	private final WPQuery query;
+	private final int count;
+
+	private int prefetchPages = DEFAULT_PREFETCH_PAGES;
+	private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+
+	// next page handed to the app
+	private int nextPage = 1;
+	// number of pages of the query, -1 until the first page arrives
+	private int pages = -1;
+
+	private final HashMap<Integer, List<WPPost>> loaded = new HashMap<Integer, List<WPPost>>();
+	private final HashMap<Integer, HashMap<String, String>> loadedMeta = new HashMap<Integer, HashMap<String, String>>();
+	// page -> time the request was sent
+	private final HashMap<Integer, Long> inFlight = new HashMap<Integer, Long>();
+	private final HashSet<Integer> deliveredIds = new HashSet<Integer>();
+
+	private OnPostsReceivedListener waiting;
+	// responses to requests of an older generation are dropped
+	private int generation;
+
+	/**
+	 * @param query
+	 *            the query, null for all posts.
+	 * @param count
+	 *            posts per page.
+	 */
+	public WPPager(Wordpress wordpress, WPQuery query, int count) {
+		this.wordpress = wordpress;
+		this.query = query == null ? new WPQuery() : query;
+		this.count = count;
+	}
+
+	/**
+	 * @param pages
+	 *            number of pages requested ahead of the last delivered one, 0
+	 *            to only request pages when they are asked for.
+	 */
+	public void setPrefetchPages(int pages) {
+		prefetchPages = pages;
+	}
+
+	public void setMaxConcurrentRequests(int max) {
+		maxConcurrentRequests = Math.max(1, max);
+	}
+
+	/**
+	 * Hands the next page to the listener, right away if it was prefetched.
+	 * onNoPosts is called once there are no more pages. If the request of the
+	 * page fails, a listener that implements OnPostsFailedListener gets
+	 * onPostsFailed; calling loadNextPage again sends it again. If a page is
+	 * already being waited for the new listener replaces the old one.
+	 */
+	public void loadNextPage(OnPostsReceivedListener listener) {
+		waiting = listener;
+		deliver();
+		request();
+	}
+
+	public boolean hasMorePages() {
+		return pages == -1 || nextPage <= pages;
+	}
+
+	/**
+	 * Drops the prefetched pages and ignores the requests in flight, the next
+	 * loadNextPage starts over from the first page (e.g. pull to refresh).
+	 */
+	public void reset() {
+		cancel();
+		nextPage = 1;
+		pages = -1;
+		deliveredIds.clear();
+	}
+
+	/**
+	 * Stops prefetching: pages not yet requested are not requested and
+	 * responses to the requests in flight are dropped.
+	 */
+	public void cancel() {
+		generation++;
+		waiting = null;
+		loaded.clear();
+		loadedMeta.clear();
+		inFlight.clear();
+	}
+
+	private void deliver() {
+		while (waiting != null) {
+			if (pages != -1 && nextPage > pages) {
+				OnPostsReceivedListener listener = waiting;
+				waiting = null;
+				listener.onNoPosts();
+				return;
+			}
+
+			List<WPPost> posts = loaded.remove(nextPage);
+			HashMap<String, String> meta = loadedMeta.remove(nextPage);
+			if (posts == null) {
+				return;
+			}
+			nextPage++;
+
+			ArrayList<WPPost> fresh = new ArrayList<WPPost>(posts.size());
+			for (int i = 0; i < posts.size(); i++) {
+				if (deliveredIds.add(posts.get(i).getId())) {
+					fresh.add(posts.get(i));
+				}
+			}
+			// a page that only holds shifted posts is skipped
+			if (!fresh.isEmpty()) {
+				OnPostsReceivedListener listener = waiting;
+				waiting = null;
+				listener.onPostsReceived(fresh, meta);
+			}
+		}
+	}
+
+	private void request() {
+		long now = System.nanoTime() / 1000000;
+		Iterator<Long> sent = inFlight.values().iterator();
+		while (sent.hasNext()) {
+			if (now - sent.next() > STALE_REQUEST_MS) {
+				sent.remove();
+			}
+		}
+
+		int last = nextPage + prefetchPages - 1;
+		if (waiting != null) {
+			last = Math.max(last, nextPage);
+		}
+		if (pages != -1) {
+			last = Math.min(last, pages);
+		}
+
+		for (int page = nextPage; page <= last
+				&& inFlight.size() < maxConcurrentRequests; page++) {
+			if (!loaded.containsKey(page) && !inFlight.containsKey(page)) {
+				requestPage(page, now);
+			}
+		}
+	}
+
+	private void requestPage(int page, long now) {
+		inFlight.put(page, now);
+		wordpress.getPosts(query, count, page, new PageListener(page,
+				generation));
+	}
+
+	/**
+	 * The listener of one page request.
+	 */
+	private final class PageListener implements OnPostsReceivedListener,
+			OnPostsFailedListener {
+
+		private final int page;
+		private final int requestGeneration;
+
+		PageListener(int page, int requestGeneration) {
+			this.page = page;
+			this.requestGeneration = requestGeneration;
+		}
+
+		@Override
+		public void onPostsReceived(List<WPPost> posts,
+				HashMap<String, String> wpResponseMeta) {
+			if (requestGeneration != generation) {
+				return;
+			}
+			inFlight.remove(page);
+			try {
+				pages = Integer.parseInt(wpResponseMeta.get("pages"));
+			} catch (NumberFormatException e) {
+			}
+			if (page >= nextPage) {
+				loaded.put(page, posts);
+				loadedMeta.put(page, wpResponseMeta);
+			}
+			deliver();
+			request();
+		}
+
+		@Override
+		public void onNoPosts() {
+			if (requestGeneration != generation) {
+				return;
+			}
+			inFlight.remove(page);
+			pages = pages == -1 ? page - 1 : Math.min(pages, page - 1);
+			deliver();
+		}
+
+		/**
+		 * The page is requested again the next time it is needed. Only the
+		 * listener waiting for this very page is told.
+		 */
+		@Override
+		public void onPostsFailed(Throwable error) {
+			if (requestGeneration != generation) {
+				return;
+			}
+			inFlight.remove(page);
+			if (page != nextPage || waiting == null) {
+				return;
+			}
+			OnPostsReceivedListener listener = waiting;
+			waiting = null;
+			if (listener instanceof OnPostsFailedListener) {
+				((OnPostsFailedListener) listener).onPostsFailed(error);
+			}
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package com.jogeeks.wordpress;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 
@@ -9,10 +11,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import android.os.Bundle;
-import android.text.Html;
-import android.util.Log;
-
 public class WPPost {
 	public static final boolean COMMENT_OPEN = true;
 	public static final boolean COMMENT_CLOSED = false;
@@ -98,64 +96,6 @@ public class WPPost {
 		
 	}
 
-	public WPPost(Bundle postBundle) {
-		ArrayList<Bundle> catsBundle = new ArrayList<Bundle>();
-		ArrayList<Bundle> tagsBundle = new ArrayList<Bundle>();
-		Bundle authorBundle = new Bundle();
-		ArrayList<Bundle> commentsBundle = new ArrayList<Bundle>();
-
-		categories = new ArrayList<WPCategory>();
-		tags = new ArrayList<WPTag>();
-		attachments = new WPAtachment();
-		comments = new ArrayList<WPComment>();
-		customeFields = new ArrayList<WPCustomField>();
-
-		id = postBundle.getInt("id");
-		type = postBundle.getString("type");
-		slug = postBundle.getString("slug");
-		url = postBundle.getString("url");
-		title = postBundle.getString("title");
-		titlePlain = postBundle.getString("title_plain");
-		content = postBundle.getString("content");
-		excerpt = postBundle.getString("excerpt");
-		date = postBundle.getString("date");
-		modified = postBundle.getString("modified");
-
-		postBundle.getParcelableArrayList("cats");
-		postBundle.getParcelableArrayList("tags");
-		postBundle.getParcelableArrayList("comments");
-		postBundle.getSerializable("custom_fields");
-		catsBundle = postBundle.getParcelableArrayList("cats");
-		for (int i = 0; i < catsBundle.size(); i++) {
-			categories.add(new WPCategory(catsBundle.get(i)));
-		}
-
-		tagsBundle = postBundle.getParcelableArrayList("tags");
-		for (int i = 0; i < tagsBundle.size(); i++) {
-			tags.add(new WPTag(tagsBundle.get(i)));
-		}
-
-		authorBundle = postBundle.getBundle("author");
-
-		author = new WPAuthor(authorBundle);
-
-		commentsBundle = postBundle.getParcelableArrayList("comments");
-		for (int i = 0; i < commentsBundle.size(); i++) {
-			comments.add(new WPComment(commentsBundle.get(i)));
-		}
-
-		ArrayList<String> atts = new ArrayList<String>();
-		atts = postBundle.getStringArrayList("attachments");
-		attachments.setFullImage(atts.get(0));
-		attachments.setThumbnailImage(atts.get(1));
-		attachments.setMediumImage(atts.get(2));
-		attachments.setPostThumbnailImage(atts.get(3));
-
-		commentingStatus = postBundle.getBoolean("commenting_status");
-		commentsCount = postBundle.getInt("comment_count");
-		// postData.put custom fields
-	}
-
 	public void setCategories(ArrayList<WPCategory> cats) {
 		categories = cats;
 	}
@@ -180,6 +120,10 @@ public class WPPost {
 		return attachments;
 	}
 
+	void setAttachments(WPAtachment attachments) {
+		this.attachments = attachments;
+	}
+
 	public WPPost(JSONObject data) {
 		try {
 			setId(Integer.parseInt(data.getString("id")));
@@ -217,7 +161,8 @@ public class WPPost {
 						.toString());
 			}
 
-			author = new WPAuthor(data.getJSONObject("author"));
+			author = WPEntities.author(new WPAuthor(data
+					.getJSONObject("author")));
 
 			if (data.getString("comment_status").equals("open")) {
 				setCommentingStatus(WPPost.COMMENT_OPEN);
@@ -272,11 +217,13 @@ public class WPPost {
 		try {
 
 			for (int i = 0; i < numCats; i++) {
-				categories.add(new WPCategory(catsArray.getJSONObject(i)));
+				categories.add(WPEntities.category(new WPCategory(catsArray
+						.getJSONObject(i))));
 			}
 
 			for (int i = 0; i < numTags; i++) {
-				getTags().add(new WPTag(tagsArray.getJSONObject(i)));
+				getTags().add(
+						WPEntities.tag(new WPTag(tagsArray.getJSONObject(i))));
 			}
 
 			for (int i = 0; i < getCommentsCount(); i++) {
@@ -291,14 +238,193 @@ public class WPPost {
 		}
 	}
 
+	/**
+	 * Streaming counterpart of {@link #WPPost(JSONObject)}, reads the post
+	 * object token by token.
+	 */
+	WPPost(WPJsonReader reader) throws IOException {
+		comments = new ArrayList<WPComment>();
+		categories = new ArrayList<WPCategory>();
+		tags = new ArrayList<WPTag>();
+		attachments = new WPAtachment();
+		customeFields = new ArrayList<WPCustomField>();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("id")) {
+				setId(reader.nextInt());
+			} else if (name.equals("type")) {
+				setType(reader.nextString());
+			} else if (name.equals("slug")) {
+				setSlug(reader.nextString());
+			} else if (name.equals("url")) {
+				setUrl(reader.nextString());
+			} else if (name.equals("title")) {
+				setTitle(reader.nextString());
+			} else if (name.equals("title_plain")) {
+				setTitlePlain(reader.nextString());
+			} else if (name.equals("content")) {
+				setContent(reader.nextString());
+			} else if (name.equals("excerpt")) {
+				setExcerpt(reader.nextString());
+			} else if (name.equals("date")) {
+				setDate(reader.nextString());
+			} else if (name.equals("modified")) {
+				setmodified(reader.nextString());
+			} else if (name.equals("comment_status")) {
+				setCommentingStatus("open".equals(reader.nextString()));
+			} else if (name.equals("author")) {
+				author = WPEntities.author(new WPAuthor(reader));
+			} else if (name.equals("categories")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					categories.add(WPEntities.category(new WPCategory(reader)));
+				}
+				reader.endArray();
+			} else if (name.equals("tags")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					tags.add(WPEntities.tag(new WPTag(reader)));
+				}
+				reader.endArray();
+			} else if (name.equals("comments")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					// the post id may come after the comments
+					comments.add(new WPComment(reader, 0));
+				}
+				reader.endArray();
+			} else if (name.equals("attachments")) {
+				readAttachments(reader);
+			} else if (name.equals("custom_fields")) {
+				customeFields = WPCustomField.parseMetaResponse(reader);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		for (int i = 0; i < comments.size(); i++) {
+			comments.get(i).setPostId(id);
+		}
+		setCommentsCount(comments.size());
+	}
+
+	/**
+	 * Keeps the image sizes of the first attachment, in the same order as
+	 * {@link #WPPost(JSONObject)} sets them.
+	 */
+	private void readAttachments(WPJsonReader reader) throws IOException {
+		String[] images = new String[4];
+
+		reader.beginArray();
+		for (int i = 0; reader.hasNext(); i++) {
+			if (i > 0 || reader.peek() != WPJsonReader.Token.BEGIN_OBJECT) {
+				reader.skipValue();
+				continue;
+			}
+
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("images")
+						|| reader.peek() != WPJsonReader.Token.BEGIN_OBJECT) {
+					reader.skipValue();
+					continue;
+				}
+
+				reader.beginObject();
+				while (reader.hasNext()) {
+					String size = reader.nextName();
+					int index = -1;
+					if (size.equals("full")) {
+						index = 0;
+					} else if (size.equals("thumbnail")) {
+						index = 1;
+					} else if (size.equals("medium")) {
+						index = 2;
+					} else if (size.equals("post-thumbnail")) {
+						index = 3;
+					}
+
+					if (index == -1
+							|| reader.peek() != WPJsonReader.Token.BEGIN_OBJECT) {
+						reader.skipValue();
+						continue;
+					}
+
+					reader.beginObject();
+					while (reader.hasNext()) {
+						if (reader.nextName().equals("url")) {
+							images[index] = reader.nextString();
+						} else {
+							reader.skipValue();
+						}
+					}
+					reader.endObject();
+				}
+				reader.endObject();
+			}
+			reader.endObject();
+		}
+		reader.endArray();
+
+		// the sizes are indexed by position, stop at the first missing one
+		if (images[0] == null) {
+			return;
+		}
+		attachments.setFullImage(images[0]);
+		if (images[1] == null) {
+			return;
+		}
+		attachments.setThumbnailImage(images[1]);
+		if (images[2] == null) {
+			return;
+		}
+		attachments.setMediumImage(images[2]);
+		if (images[3] == null) {
+			return;
+		}
+		attachments.setPostThumbnailImage(images[3]);
+	}
+
 	public ArrayList<WPCategory> getCategories() {
 		return categories;
 	}
 
+	/**
+	 * Categories are shared between posts (see {@link WPEntities}), this
+	 * compares references.
+	 */
+	public boolean isInCategory(WPCategory category) {
+		for (int i = 0; categories != null && i < categories.size(); i++) {
+			if (categories.get(i) == category) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @see #isInCategory(WPCategory)
+	 */
+	public boolean hasTag(WPTag tag) {
+		for (int i = 0; tags != null && i < tags.size(); i++) {
+			if (tags.get(i) == tag) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public WPAuthor getAuthor() {
 		return author;
 	}
 
+	void setAuthor(WPAuthor author) {
+		this.author = author;
+	}
+
 	public String getCategoriesAsString() {
 		String cats = "";
 		if (categories.size() == 0) {
@@ -327,7 +453,7 @@ public class WPPost {
 		return id;
 	}
 
-	private void setId(int id) {
+	void setId(int id) {
 		this.id = id;
 	}
 
@@ -389,7 +515,7 @@ public class WPPost {
 	}
 
 	public String getExcerpt() {
-		if (titlePlain == null) {
+		if (excerpt == null) {
 			return NO_EXCERPT;
 		}
 		return excerpt;
@@ -423,81 +549,75 @@ public class WPPost {
 		this.commentingStatus = commentingStatus;
 	}
 
-	public static Bundle getBundle(WPPost post) {
-		Bundle postData = new Bundle();
-		ArrayList<Bundle> catsData = new ArrayList<Bundle>();
-		ArrayList<Bundle> tagsData = new ArrayList<Bundle>();
-		// Bundle authorData = new Bundle();
-		ArrayList<Bundle> commentsData = new ArrayList<Bundle>();
-		// TODO: finish adding all of the
-		/*
-		 * 
-		 * private ArrayList<WPCategory> categories; private ArrayList<WPTag>
-		 * tags;
-		 * 
-		 * private WPAuthor author;
-		 * 
-		 * private ArrayList<WPComment> comments;
-		 * 
-		 * private ArrayList<String> attachments; // ?? should I make a class
-		 * for this
-		 * 
-		 * private int commentsCount; private boolean commentingStatus; //
-		 * ("open" or "closed")
-		 * 
-		 * private String thumbURL; // (only included if a post thumbnail has
-		 * been // specified)
-		 * 
-		 * private ArrayList<BasicNameValuePair> customeFields; private String *
-		 * taxonomy; // ?? dont know what is this.
-		 */
-		postData.putInt("id", post.getId());
-		postData.putString("type", post.getType());
-		postData.putString("slug", post.getSlug());
-		postData.putString("url", post.getUrl());
-		postData.putString("slug", post.getSlug());
-		postData.putString("title", post.getTitle());
-		// postData.putString("title_plain", post.getTitlePlain());
-		postData.putString("content", post.getContent());
-		postData.putString("excerpt", post.getExcerpt());
-		postData.putString("date", post.getDate());
-		postData.putString("modified", post.getModified());
-
+	/**
+	 * Inverse of {@link #WPPost(JSONObject)}, gives back the post in the
+	 * json-api format so it can be stored and parsed again.
+	 */
+	public static JSONObject getJSON(WPPost post) throws JSONException {
+		JSONObject postJson = new JSONObject();
+
+		postJson.put("id", post.getId());
+		postJson.put("type", post.getType());
+		postJson.put("slug", post.getSlug());
+		postJson.put("url", post.getUrl());
+		postJson.put("title", post.title);
+		postJson.put("title_plain", post.titlePlain);
+		postJson.put("content", post.content);
+		postJson.put("excerpt", post.excerpt);
+		postJson.put("date", post.getDate());
+		postJson.put("modified", post.getModified());
+		postJson.put("comment_status", post.isCommentingStatus() ? "open"
+				: "closed");
+
+		JSONArray catsJson = new JSONArray();
 		for (int i = 0; post.getCategories() != null
 				&& i < post.getCategories().size(); i++) {
-			catsData.add(WPCategory.getBundle(post.getCategories().get(i)));
+			catsJson.put(WPCategory.getJSON(post.getCategories().get(i)));
 		}
+		postJson.put("categories", catsJson);
 
+		JSONArray tagsJson = new JSONArray();
 		for (int i = 0; post.getTags() != null && i < post.getTags().size(); i++) {
-			tagsData.add(WPTag.getBundle(post.getTags().get(i)));
+			tagsJson.put(WPTag.getJSON(post.getTags().get(i)));
 		}
+		postJson.put("tags", tagsJson);
 
-		postData.putBundle("author", WPAuthor.getBundle(post.getAuthor()));
+		if (post.getAuthor() != null) {
+			postJson.put("author", WPAuthor.getJSON(post.getAuthor()));
+		}
 
+		JSONArray commentsJson = new JSONArray();
 		for (int i = 0; post.getComments() != null
 				&& i < post.getComments().size(); i++) {
-			commentsData.add(WPComment.getBundle(post.getComments().get(i)));
+			commentsJson.put(WPComment.getJSON(post.getComments().get(i)));
 		}
-		
-		postData.putParcelableArrayList("cats", catsData);
-		postData.putParcelableArrayList("tags", tagsData);
-		postData.putParcelableArrayList("comments", commentsData);
-		postData.putSerializable("custom_fields", post.getCustomFields());
-		
-		ArrayList<String> atts = new ArrayList<String>();
-		atts.add(post.getAttachments().getFullImage());
-		atts.add(post.getAttachments().getThumbnailImage());
-		atts.add(post.getAttachments().getMediumImage());
-		atts.add(post.getAttachments().getPostThumbnailImage());
-
-		postData.putStringArrayList("attachments", atts);
-		postData.putBoolean("commenting_status", post.isCommentingStatus());
-		postData.putInt("comment_count", post.getCommentsCount());
-
-		// postData.put custom fields
-
-		return postData;
+		postJson.put("comments", commentsJson);
+
+		JSONArray attachmentsJson = new JSONArray();
+		WPAtachment atts = post.getAttachments();
+		if (atts != null && atts.size() == 4) {
+			JSONObject images = new JSONObject();
+			images.put("full", new JSONObject().put("url", atts.getFullImage()));
+			images.put("thumbnail",
+					new JSONObject().put("url", atts.getThumbnailImage()));
+			images.put("medium",
+					new JSONObject().put("url", atts.getMediumImage()));
+			images.put("post-thumbnail",
+					new JSONObject().put("url", atts.getPostThumbnailImage()));
+			attachmentsJson.put(new JSONObject().put("images", images));
+		}
+		postJson.put("attachments", attachmentsJson);
+
+		JSONObject customFieldsJson = new JSONObject();
+		for (int i = 0; post.getCustomFields() != null
+				&& i < post.getCustomFields().size(); i++) {
+			WPCustomField field = post.getCustomFields().get(i);
+			customFieldsJson.put(field.getName(),
+					new JSONArray().put(field.getValue()));
+		}
+		postJson.put("custom_fields", customFieldsJson);
 
+		return postJson;
 	}
 
 	public ArrayList<WPComment> getComments() {
@@ -537,10 +657,50 @@ public class WPPost {
 		return posts;
 	}
 
+	/**
+	 * Streaming counterpart of {@link #parsePosts(JSONObject)}, reads a posts
+	 * response without building a JSONObject tree.
+	 * 
+	 * @param responseMeta
+	 *            filled with the same values as Wordpress.parseResponseMeta
+	 */
+	protected static List<WPPost> parsePosts(WPJsonReader reader,
+			HashMap<String, String> responseMeta) throws IOException {
+		List<WPPost> posts = new ArrayList<WPPost>();
+		String count = "0", countTotal = "0", pages = "0";
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("count")) {
+				count = Integer.toString(reader.nextInt());
+			} else if (name.equals("count_total")) {
+				countTotal = Integer.toString(reader.nextInt());
+			} else if (name.equals("pages")) {
+				pages = Integer.toString(reader.nextInt());
+			} else if (name.equals("posts")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					posts.add(new WPPost(reader));
+				}
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		responseMeta.put("count", count);
+		responseMeta.put("count_total", countTotal);
+		responseMeta.put("pages", pages);
+
+		return posts;
+	}
+
 	protected static String parseNonce(JSONObject response) throws JSONException {
 		String nonce;
 		nonce = response.getString("nonce");
-		Log.d("CreatePostNonceResponse", nonce);
+		WPLog.d("CreatePostNonceResponse", nonce);
 
 		return nonce;
 	}
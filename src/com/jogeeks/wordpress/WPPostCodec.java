@@ -0,0 +1,362 @@
+package com.jogeeks.wordpress;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+
+/**
+ * Compact binary form of a post with its categories, tags, author, comments,
+ * custom fields and attachments. It is what WPBundles puts in a Bundle and
+ * what WPPostStore keeps on disk: it is smaller than the json-api text of
+ * the post and decodes without a parser.
+ *
+ * Ints are varints, strings are UTF-8 prefixed with their length (0 for
+ * null), lists are prefixed with their size and optional parts with a
+ * present byte. The first byte is the format version, data of another
+ * version is rejected and the post is loaded again.
+ */
+public class WPPostCodec {
+
+	static final int VERSION = 1;
+
+	private WPPostCodec() {
+	}
+
+	public static byte[] encode(WPPost post) {
+		Writer out = new Writer(1024 + 2 * post.getContent().length());
+		out.writeByte(VERSION);
+
+		out.writeInt(post.getId());
+		out.writeString(post.getType());
+		out.writeString(post.getSlug());
+		out.writeString(post.getUrl());
+		out.writeString(post.getStatus());
+		out.writeString(post.getTitle());
+		out.writeString(post.getTitlePlain());
+		out.writeString(post.getContent());
+		out.writeString(post.getExcerpt());
+		out.writeString(post.getDate());
+		out.writeString(post.getModified());
+		out.writeByte(post.isCommentingStatus() ? 1 : 0);
+		out.writeInt(post.getCommentsCount());
+
+		ArrayList<WPCategory> categories = post.getCategories();
+		out.writeSize(categories);
+		for (int i = 0; categories != null && i < categories.size(); i++) {
+			WPCategory category = categories.get(i);
+			// one version of the shared instance, not a mix of two
+			synchronized (category) {
+				out.writeInt(category.getId());
+				out.writeString(category.getSlug());
+				out.writeString(category.getTitle());
+				out.writeString(category.getDescription());
+				out.writeInt(category.getParent());
+				out.writeInt(category.getPostCount());
+			}
+		}
+
+		ArrayList<WPTag> tags = post.getTags();
+		out.writeSize(tags);
+		for (int i = 0; tags != null && i < tags.size(); i++) {
+			WPTag tag = tags.get(i);
+			synchronized (tag) {
+				out.writeInt(tag.getId());
+				out.writeString(tag.getSlug());
+				out.writeString(tag.getTitle());
+				out.writeString(tag.getDescription());
+				out.writeInt(tag.getPostCount());
+			}
+		}
+
+		WPAuthor author = post.getAuthor();
+		out.writeByte(author != null ? 1 : 0);
+		if (author != null) {
+			synchronized (author) {
+				out.writeInt(author.id);
+				out.writeString(author.username);
+				out.writeString(author.nicename);
+				out.writeString(author.email);
+				out.writeString(author.url);
+				out.writeString(author.registered);
+				out.writeString(author.displayname);
+				out.writeString(author.firstname);
+				out.writeString(author.lastname);
+				out.writeString(author.nickname);
+				out.writeString(author.description);
+				out.writeString(author.avatar);
+				out.writeString(author.capabilities != null ? author
+						.getCapabilities() : null);
+				out.writeString(author.getSlug());
+				out.writeString(author.getName());
+			}
+		}
+
+		ArrayList<WPComment> comments = post.getComments();
+		out.writeSize(comments);
+		for (int i = 0; comments != null && i < comments.size(); i++) {
+			WPComment comment = comments.get(i);
+			out.writeInt(comment.getId());
+			out.writeString(comment.getName());
+			out.writeString(comment.getUrl());
+			out.writeString(comment.getDate());
+			out.writeString(comment.getContent());
+			out.writeInt(comment.getParent());
+		}
+
+		ArrayList<WPCustomField> customFields = post.getCustomFields();
+		out.writeSize(customFields);
+		for (int i = 0; customFields != null && i < customFields.size(); i++) {
+			out.writeString(customFields.get(i).getName());
+			out.writeString(customFields.get(i).getValue());
+		}
+
+		WPAtachment attachments = post.getAttachments();
+		out.writeByte(attachments != null ? 1 : 0);
+		if (attachments != null) {
+			out.writeString(attachments.getFullImage());
+			out.writeString(attachments.getThumbnailImage());
+			out.writeString(attachments.getMediumImage());
+			out.writeString(attachments.getPostThumbnailImage());
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * @throws IOException
+	 *             if data is truncated, corrupt or of another version.
+	 */
+	public static WPPost decode(byte[] data) throws IOException {
+		Reader in = new Reader(data);
+		int version = in.readByte();
+		if (version != VERSION) {
+			throw new IOException("unknown post format version " + version);
+		}
+
+		WPPost post = new WPPost();
+		post.setId(in.readInt());
+		post.setType(in.readString());
+		post.setSlug(in.readString());
+		post.setUrl(in.readString());
+		post.setStatus(in.readString());
+		post.setTitle(in.readString());
+		post.setTitlePlain(in.readString());
+		post.setContent(in.readString());
+		post.setExcerpt(in.readString());
+		post.setDate(in.readString());
+		post.setmodified(in.readString());
+		post.setCommentingStatus(in.readByte() == 1);
+		post.setCommentsCount(in.readInt());
+
+		int size = in.readSize();
+		if (size >= 0) {
+			ArrayList<WPCategory> categories = new ArrayList<WPCategory>(size);
+			for (int i = 0; i < size; i++) {
+				WPCategory category = new WPCategory();
+				category.setId(in.readInt());
+				category.setSlug(in.readString());
+				category.setTitle(in.readString());
+				category.setDescription(in.readString());
+				category.setParent(in.readInt());
+				category.setPostCount(in.readInt());
+				categories.add(WPEntities.restoredCategory(category));
+			}
+			post.setCategories(categories);
+		}
+
+		size = in.readSize();
+		if (size >= 0) {
+			ArrayList<WPTag> tags = new ArrayList<WPTag>(size);
+			for (int i = 0; i < size; i++) {
+				WPTag tag = new WPTag();
+				tag.setId(in.readInt());
+				tag.setSlug(in.readString());
+				tag.setTitle(in.readString());
+				tag.setDescription(in.readString());
+				tag.setPostCount(in.readInt());
+				tags.add(WPEntities.restoredTag(tag));
+			}
+			post.setTags(tags);
+		}
+
+		if (in.readByte() == 1) {
+			WPAuthor author = new WPAuthor();
+			author.id = in.readInt();
+			author.username = in.readString();
+			author.nicename = in.readString();
+			author.email = in.readString();
+			author.url = in.readString();
+			author.registered = in.readString();
+			author.displayname = in.readString();
+			author.firstname = in.readString();
+			author.lastname = in.readString();
+			author.nickname = in.readString();
+			author.description = in.readString();
+			author.avatar = in.readString();
+			author.setCapabilities(in.readString());
+			author.setSlug(in.readString());
+			author.setName(in.readString());
+			post.setAuthor(WPEntities.restoredAuthor(author));
+		}
+
+		size = in.readSize();
+		if (size >= 0) {
+			ArrayList<WPComment> comments = new ArrayList<WPComment>(size);
+			for (int i = 0; i < size; i++) {
+				WPComment comment = new WPComment();
+				comment.setId(in.readInt());
+				comment.setName(in.readString());
+				comment.setUrl(in.readString());
+				comment.setDate(in.readString());
+				comment.setContent(in.readString());
+				comment.setParent(in.readInt());
+				comment.setPostId(post.getId());
+				comments.add(comment);
+			}
+			post.setComments(comments);
+		}
+
+		size = in.readSize();
+		if (size >= 0) {
+			ArrayList<WPCustomField> customFields = new ArrayList<WPCustomField>(
+					size);
+			for (int i = 0; i < size; i++) {
+				customFields.add(new WPCustomField(in.readString(), in
+						.readString()));
+			}
+			post.setCustomeFields(customFields);
+		}
+
+		if (in.readByte() == 1) {
+			WPAtachment attachments = new WPAtachment();
+			attachments.setFullImage(in.readString());
+			attachments.setThumbnailImage(in.readString());
+			attachments.setMediumImage(in.readString());
+			attachments.setPostThumbnailImage(in.readString());
+			post.setAttachments(attachments);
+		}
+
+		return post;
+	}
+
+	private static class Writer {
+		private byte[] buffer;
+		private int length;
+
+		Writer(int capacity) {
+			buffer = new byte[capacity];
+		}
+
+		void writeByte(int b) {
+			ensure(1);
+			buffer[length++] = (byte) b;
+		}
+
+		void writeInt(int value) {
+			ensure(5);
+			// negative ints take 5 bytes, ids and counts never are
+			while ((value & ~0x7F) != 0) {
+				buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[length++] = (byte) value;
+		}
+
+		/**
+		 * Writes the size + 1 of the list, 0 for null.
+		 */
+		void writeSize(ArrayList<?> list) {
+			writeInt(list == null ? 0 : list.size() + 1);
+		}
+
+		/**
+		 * Writes the UTF-8 length + 1 and the bytes, 0 for null.
+		 */
+		void writeString(String value) {
+			if (value == null) {
+				writeInt(0);
+				return;
+			}
+			try {
+				byte[] bytes = value.getBytes("UTF-8");
+				writeInt(bytes.length + 1);
+				ensure(bytes.length);
+				System.arraycopy(bytes, 0, buffer, length, bytes.length);
+				length += bytes.length;
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private void ensure(int count) {
+			if (length + count > buffer.length) {
+				byte[] larger = new byte[Math.max(buffer.length * 2, length
+						+ count)];
+				System.arraycopy(buffer, 0, larger, 0, length);
+				buffer = larger;
+			}
+		}
+
+		byte[] toByteArray() {
+			byte[] data = new byte[length];
+			System.arraycopy(buffer, 0, data, 0, length);
+			return data;
+		}
+	}
+
+	private static class Reader {
+		private final byte[] data;
+		private int position;
+
+		Reader(byte[] data) throws IOException {
+			if (data == null) {
+				throw new IOException("no post data");
+			}
+			this.data = data;
+		}
+
+		int readByte() throws IOException {
+			if (position >= data.length) {
+				throw new IOException("truncated post data");
+			}
+			return data[position++] & 0xFF;
+		}
+
+		int readInt() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int b = readByte();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("malformed varint in post data");
+		}
+
+		/**
+		 * @return the size of the list, -1 for null.
+		 */
+		int readSize() throws IOException {
+			int size = readInt() - 1;
+			if (size > data.length - position) {
+				// every element takes at least one byte
+				throw new IOException("corrupt list size in post data");
+			}
+			return size;
+		}
+
+		String readString() throws IOException {
+			int length = readInt() - 1;
+			if (length < 0) {
+				return null;
+			}
+			if (length > data.length - position) {
+				throw new IOException("truncated post data");
+			}
+			String value = new String(data, position, length, "UTF-8");
+			position += length;
+			return value;
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package com.jogeeks.wordpress;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * Local SQLite store of posts so the app can start from what it already has
+ * instead of waiting for the network. Each row keeps the whole post
+ * (categories, tags, author, comments and custom fields) in the
+ * {@link WPPostCodec} format next to its indexed dates.
+ *
+ * @see WPPostSync
+ */
+public class WPPostStore extends SQLiteOpenHelper {
+
+	static final String DATABASE_NAME = "libdroid-wordpress-posts.db";
+	private static final int DATABASE_VERSION = 2;
+
+	private static final String POSTS_TABLE = "posts";
+	private static final String STATE_TABLE = "sync_state";
+
+	private static final String COLUMN_ID = "id";
+	private static final String COLUMN_DATE = "date";
+	private static final String COLUMN_MODIFIED = "modified";
+	private static final String COLUMN_DATA = "data";
+
+	private static final String LAST_MODIFIED = "last_modified";
+	private static final String RESUME_PAGE = "resume_page";
+	private static final String RESUME_NEWEST = "resume_newest";
+
+	// null for the default site
+	private final WPSite site;
+	private WPSearchIndex searchIndex;
+
+	public WPPostStore(Context context) {
+		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+		site = null;
+	}
+
+	/**
+	 * A store of the posts of site, for apps that follow several sites. Its
+	 * posts share the categories, tags and authors of that site only.
+	 */
+	public WPPostStore(Context context, WPSite site) {
+		super(context, "libdroid-wordpress-posts-" + site.getKey() + ".db",
+				null, DATABASE_VERSION);
+		this.site = site;
+	}
+
+	@Override
+	public void onCreate(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE " + POSTS_TABLE + " (" + COLUMN_ID
+				+ " INTEGER PRIMARY KEY, " + COLUMN_DATE + " TEXT, "
+				+ COLUMN_MODIFIED + " TEXT, " + COLUMN_DATA + " BLOB)");
+		db.execSQL("CREATE INDEX posts_date ON " + POSTS_TABLE + " ("
+				+ COLUMN_DATE + ")");
+		db.execSQL("CREATE INDEX posts_modified ON " + POSTS_TABLE + " ("
+				+ COLUMN_MODIFIED + ")");
+		db.execSQL("CREATE TABLE " + STATE_TABLE
+				+ " (key TEXT PRIMARY KEY, value TEXT)");
+	}
+
+	@Override
+	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+		// a cache, the next sync fills it again
+		db.execSQL("DROP TABLE IF EXISTS " + POSTS_TABLE);
+		db.execSQL("DROP TABLE IF EXISTS " + STATE_TABLE);
+		onCreate(db);
+	}
+
+	/**
+	 * Inserts the posts, replacing the stored copy of posts that already
+	 * exist.
+	 */
+	public void putPosts(List<WPPost> posts) {
+		SQLiteDatabase db = getWritableDatabase();
+		ContentValues values = new ContentValues();
+
+		db.beginTransaction();
+		try {
+			for (int i = 0; i < posts.size(); i++) {
+				WPPost post = posts.get(i);
+				values.clear();
+				values.put(COLUMN_ID, post.getId());
+				values.put(COLUMN_DATE, post.getDate());
+				values.put(COLUMN_MODIFIED, post.getModified());
+				values.put(COLUMN_DATA, WPPostCodec.encode(post));
+				db.replace(POSTS_TABLE, null, values);
+			}
+			db.setTransactionSuccessful();
+
+			synchronized (this) {
+				if (searchIndex != null) {
+					searchIndex.addPosts(posts);
+				}
+			}
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * @return the stored post, null if it is not in the store.
+	 */
+	public WPPost getPost(int id) {
+		List<WPPost> posts = query(COLUMN_ID + " = ?",
+				new String[] { Integer.toString(id) }, null);
+		return posts.isEmpty() ? null : posts.get(0);
+	}
+
+	/**
+	 * Returns stored posts newest first, like get_recent_posts.
+	 */
+	public List<WPPost> getRecentPosts(int count, int page) {
+		return query(null, null, (page - 1) * count + "," + count);
+	}
+
+	/**
+	 * @return the stored posts among the ids, in the order of the ids.
+	 */
+	public List<WPPost> getPosts(List<Integer> ids) {
+		if (ids.isEmpty()) {
+			return new ArrayList<WPPost>();
+		}
+
+		StringBuilder selection = new StringBuilder(COLUMN_ID + " IN (");
+		String[] selectionArgs = new String[ids.size()];
+		for (int i = 0; i < ids.size(); i++) {
+			selection.append(i == 0 ? "?" : ",?");
+			selectionArgs[i] = ids.get(i).toString();
+		}
+		selection.append(')');
+
+		HashMap<Integer, WPPost> byId = new HashMap<Integer, WPPost>();
+		List<WPPost> stored = query(selection.toString(), selectionArgs, null);
+		for (int i = 0; i < stored.size(); i++) {
+			byId.put(stored.get(i).getId(), stored.get(i));
+		}
+
+		ArrayList<WPPost> posts = new ArrayList<WPPost>();
+		for (int i = 0; i < ids.size(); i++) {
+			WPPost post = byId.get(ids.get(i));
+			if (post != null) {
+				posts.add(post);
+			}
+		}
+		return posts;
+	}
+
+	/**
+	 * Returns the search index of the stored posts, building it from the store
+	 * on the first call (don't call it on the UI thread). Posts stored
+	 * afterwards are indexed as they are stored.
+	 */
+	public synchronized WPSearchIndex getSearchIndex() {
+		if (searchIndex == null) {
+			WPSearchIndex index = new WPSearchIndex();
+			index.addPosts(query(null, null, null));
+			searchIndex = index;
+		}
+		return searchIndex;
+	}
+
+	public int getPostCount() {
+		Cursor cursor = getReadableDatabase().rawQuery(
+				"SELECT COUNT(*) FROM " + POSTS_TABLE, null);
+		try {
+			return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * @return the modified date of the newest post the sync has seen, null
+	 *         before the first sync.
+	 */
+	public String getLastModified() {
+		return getState(LAST_MODIFIED);
+	}
+
+	public void setLastModified(String modified) {
+		setState(LAST_MODIFIED, modified);
+	}
+
+	/**
+	 * @return the page a sync cut at its page limit continues from, 0 if the
+	 *         last sync went through.
+	 */
+	int getResumePage() {
+		String page = getState(RESUME_PAGE);
+		return page != null ? Integer.parseInt(page) : 0;
+	}
+
+	/**
+	 * @return the modified date of the newest post the cut sync has seen, it
+	 *         becomes the last modified date once the sync goes through.
+	 */
+	String getResumeNewest() {
+		return getState(RESUME_NEWEST);
+	}
+
+	/**
+	 * Records where a sync cut at its page limit stops, page 0 once a sync
+	 * went through.
+	 */
+	void setResume(int page, String newest) {
+		setState(RESUME_PAGE, page != 0 ? Integer.toString(page) : null);
+		setState(RESUME_NEWEST, page != 0 ? newest : null);
+	}
+
+	private String getState(String key) {
+		Cursor cursor = getReadableDatabase().query(STATE_TABLE,
+				new String[] { "value" }, "key = ?", new String[] { key },
+				null, null, null);
+		try {
+			return cursor.moveToFirst() ? cursor.getString(0) : null;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private void setState(String key, String value) {
+		if (value == null) {
+			getWritableDatabase().delete(STATE_TABLE, "key = ?",
+					new String[] { key });
+			return;
+		}
+		ContentValues values = new ContentValues();
+		values.put("key", key);
+		values.put("value", value);
+		getWritableDatabase().replace(STATE_TABLE, null, values);
+	}
+
+	public void clear() {
+		SQLiteDatabase db = getWritableDatabase();
+		db.delete(POSTS_TABLE, null, null);
+		db.delete(STATE_TABLE, null, null);
+
+		synchronized (this) {
+			if (searchIndex != null) {
+				searchIndex.clear();
+			}
+		}
+	}
+
+	private List<WPPost> query(String selection, String[] selectionArgs,
+			String limit) {
+		ArrayList<WPPost> posts = new ArrayList<WPPost>();
+		Cursor cursor = getReadableDatabase().query(POSTS_TABLE,
+				new String[] { COLUMN_DATA }, selection, selectionArgs, null,
+				null, COLUMN_DATE + " DESC", limit);
+		// the entities of the posts are resolved in the map of their site
+		WPEntities.setParsingSite(site);
+		try {
+			while (cursor.moveToNext()) {
+				try {
+					posts.add(WPPostCodec.decode(cursor.getBlob(0)));
+				} catch (IOException e) {
+					WPLog.w("WPPostStore", "dropping unreadable post", e);
+				}
+			}
+		} finally {
+			WPEntities.setParsingSite(null);
+			cursor.close();
+		}
+		return posts;
+	}
+}
@@ -0,0 +1,315 @@
+package com.jogeeks.wordpress;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import android.os.AsyncTask;
+
+import com.jogeeks.wordpress.listeners.OnPostsFailedListener;
+import com.jogeeks.wordpress.listeners.OnPostsReceivedListener;
+import com.jogeeks.wordpress.listeners.OnPostsSyncListener;
+
+/**
+ * Offline first post loading: the stored posts are handed to the listener
+ * right away, then only the posts modified since the last sync are fetched
+ * (newest modified first) and merged into the store.
+ *
+ * A sync that reaches {@link #MAX_PAGES} with changes left stops there
+ * without moving the last modified date, the next sync goes on from the
+ * page after. Pages that moved down in between are fetched twice, no change
+ * is skipped.
+ */
+public class WPPostSync {
+
+	/**
+	 * Upper bound of pages fetched by one sync, a device that was offline for
+	 * a long time catches up over several syncs.
+	 */
+	private static final int MAX_PAGES = 5;
+
+	private final Wordpress wordpress;
+	private final WPPostStore store;
+
+	public WPPostSync(Wordpress wordpress, WPPostStore store) {
+		this.wordpress = wordpress;
+		this.store = store;
+	}
+
+	/**
+	 * @param count
+	 *            number of posts shown, also the page size of the sync.
+	 */
+	public void sync(final int count, final OnPostsSyncListener listener) {
+		new AsyncTask<Void, Void, List<WPPost>>() {
+			private String lastModified;
+			private int resumePage;
+			private String resumeNewest;
+
+			@Override
+			protected List<WPPost> doInBackground(Void... params) {
+				lastModified = store.getLastModified();
+				resumePage = store.getResumePage();
+				resumeNewest = store.getResumeNewest();
+				return store.getRecentPosts(count, 1);
+			}
+
+			@Override
+			protected void onPostExecute(List<WPPost> posts) {
+				listener.onLocalPostsLoaded(posts);
+				if (resumePage != 0) {
+					fetchPage(new Run(count, lastModified, resumeNewest,
+							resumePage, listener), resumePage);
+				} else {
+					fetchPage(new Run(count, lastModified, lastModified, 1,
+							listener), 1);
+				}
+			}
+		}.execute();
+	}
+
+	/**
+	 * Gets the posts with the ids, in the order of the ids: the stored ones
+	 * are read from the store, only the others are fetched and then stored.
+	 * Ids of posts that are neither stored nor on the site are left out. If
+	 * the fetch fails, a listener that implements OnPostsFailedListener gets
+	 * onPostsFailed, any other one the stored posts.
+	 */
+	public void getPostsByIds(final int[] ids,
+			final OnPostsReceivedListener listener) {
+		new AsyncTask<Void, Void, List<WPPost>>() {
+			@Override
+			protected List<WPPost> doInBackground(Void... params) {
+				ArrayList<Integer> list = new ArrayList<Integer>(ids.length);
+				for (int i = 0; i < ids.length; i++) {
+					list.add(ids[i]);
+				}
+				return store.getPosts(list);
+			}
+
+			@Override
+			protected void onPostExecute(final List<WPPost> stored) {
+				final HashMap<Integer, WPPost> byId = new HashMap<Integer, WPPost>();
+				for (int i = 0; i < stored.size(); i++) {
+					byId.put(stored.get(i).getId(), stored.get(i));
+				}
+
+				int[] missing = new int[ids.length];
+				int missingCount = 0;
+				for (int i = 0; i < ids.length; i++) {
+					if (!byId.containsKey(ids[i])) {
+						missing[missingCount++] = ids[i];
+					}
+				}
+				if (missingCount == 0) {
+					deliverByIds(ids, byId, listener);
+					return;
+				}
+
+				int[] fetch = new int[missingCount];
+				System.arraycopy(missing, 0, fetch, 0, missingCount);
+				wordpress.getPostsByIds(fetch, new FetchListener(ids, byId,
+						listener));
+			}
+		}.execute();
+	}
+
+	private void store(final List<WPPost> posts) {
+		new AsyncTask<Void, Void, Void>() {
+			@Override
+			protected Void doInBackground(Void... params) {
+				store.putPosts(posts);
+				return null;
+			}
+		}.execute();
+	}
+
+	/**
+	 * The listener of the fetch of the posts getPostsByIds didn't find in the
+	 * store.
+	 */
+	private final class FetchListener implements OnPostsReceivedListener,
+			OnPostsFailedListener {
+
+		private final int[] ids;
+		private final HashMap<Integer, WPPost> byId;
+		private final OnPostsReceivedListener listener;
+
+		FetchListener(int[] ids, HashMap<Integer, WPPost> byId,
+				OnPostsReceivedListener listener) {
+			this.ids = ids;
+			this.byId = byId;
+			this.listener = listener;
+		}
+
+		@Override
+		public void onPostsReceived(List<WPPost> posts,
+				HashMap<String, String> wpResponseMeta) {
+			for (int i = 0; i < posts.size(); i++) {
+				byId.put(posts.get(i).getId(), posts.get(i));
+			}
+			store(posts);
+			deliverByIds(ids, byId, listener);
+		}
+
+		@Override
+		public void onNoPosts() {
+			deliverByIds(ids, byId, listener);
+		}
+
+		@Override
+		public void onPostsFailed(Throwable error) {
+			if (listener instanceof OnPostsFailedListener) {
+				((OnPostsFailedListener) listener).onPostsFailed(error);
+			} else {
+				deliverByIds(ids, byId, listener);
+			}
+		}
+	}
+
+	private static void deliverByIds(int[] ids, HashMap<Integer, WPPost> byId,
+			OnPostsReceivedListener listener) {
+		ArrayList<WPPost> posts = new ArrayList<WPPost>();
+		for (int i = 0; i < ids.length; i++) {
+			WPPost post = byId.remove(ids[i]);
+			if (post != null) {
+				posts.add(post);
+			}
+		}
+		if (posts.isEmpty()) {
+			listener.onNoPosts();
+			return;
+		}
+		HashMap<String, String> meta = new HashMap<String, String>();
+		meta.put("count", Integer.toString(posts.size()));
+		listener.onPostsReceived(posts, meta);
+	}
+
+	/**
+	 * A sync going through the pages.
+	 */
+	private static final class Run {
+		final int count;
+		final String since;
+		final int firstPage;
+		final OnPostsSyncListener listener;
+		// the newest modified date seen, the last modified date once the run
+		// goes through
+		String newest;
+		int changed;
+
+		Run(int count, String since, String newest, int firstPage,
+				OnPostsSyncListener listener) {
+			this.count = count;
+			this.since = since;
+			this.newest = newest;
+			this.firstPage = firstPage;
+			this.listener = listener;
+		}
+	}
+
+	private void fetchPage(final Run run, final int page) {
+		WPQuery query = new WPQuery();
+		query.orderByModificationDate();
+
+		wordpress.getPosts(query, run.count, page, new PageListener(run, page));
+	}
+
+	private final class PageListener implements OnPostsReceivedListener,
+			OnPostsFailedListener {
+
+		private final Run run;
+		private final int page;
+
+		PageListener(Run run, int page) {
+			this.run = run;
+			this.page = page;
+		}
+
+		@Override
+		public void onPostsReceived(List<WPPost> posts,
+				HashMap<String, String> wpResponseMeta) {
+			ArrayList<WPPost> modified = new ArrayList<WPPost>();
+			for (int i = 0; i < posts.size(); i++) {
+				WPPost post = posts.get(i);
+				// json-api dates are "yyyy-MM-dd HH:mm:ss", they sort as strings
+				if (run.since == null || post.getModified() == null
+						|| post.getModified().compareTo(run.since) > 0) {
+					modified.add(post);
+				}
+				// a resumed run keeps the newest date of the run it resumes,
+				// the changes made since are above its pages
+				if (run.firstPage == 1
+						&& post.getModified() != null
+						&& (run.newest == null || post.getModified().compareTo(
+								run.newest) > 0)) {
+					run.newest = post.getModified();
+				}
+			}
+			run.changed += modified.size();
+
+			// the whole page changed, the next one may have changes too.
+			// The first sync only stores the first page.
+			boolean more = run.since != null
+					&& modified.size() == posts.size()
+					&& posts.size() == run.count;
+			if (!more) {
+				store(run, modified, 0, 0);
+			} else if (page < run.firstPage + MAX_PAGES - 1) {
+				store(run, modified, page + 1, 0);
+			} else {
+				store(run, modified, 0, page + 1);
+			}
+		}
+
+		@Override
+		public void onNoPosts() {
+			store(run, new ArrayList<WPPost>(), 0, 0);
+		}
+
+		/**
+		 * The pages stored so far stay, the last modified date doesn't move:
+		 * the next sync fetches them again.
+		 */
+		@Override
+		public void onPostsFailed(Throwable error) {
+			run.listener.onPostsSyncFailed(error);
+		}
+	}
+
+	/**
+	 * @param nextPage
+	 *            the page to fetch next, 0 if the run ends with this page.
+	 * @param resumePage
+	 *            the page the next sync starts from if the run is cut, 0 if
+	 *            it went through.
+	 */
+	private void store(final Run run, final List<WPPost> modified,
+			final int nextPage, final int resumePage) {
+		new AsyncTask<Void, Void, List<WPPost>>() {
+			@Override
+			protected List<WPPost> doInBackground(Void... params) {
+				if (!modified.isEmpty()) {
+					store.putPosts(modified);
+				}
+				if (nextPage != 0) {
+					return null;
+				}
+				store.setResume(resumePage, run.newest);
+				if (resumePage == 0 && run.newest != null) {
+					store.setLastModified(run.newest);
+				}
+				return store.getRecentPosts(run.count, 1);
+			}
+
+			@Override
+			protected void onPostExecute(List<WPPost> posts) {
+				if (nextPage != 0) {
+					fetchPage(run, nextPage);
+				} else {
+					run.listener.onPostsSynced(posts, run.changed);
+				}
+			}
+		}.execute();
+	}
+}
@@ -5,6 +5,9 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 import com.loopj.android.http.RequestParams;
 
@@ -24,6 +27,13 @@ public class WPQuery extends RequestParams implements Serializable{
 	//===================================================
 	final public static String ORDER_BY = "orderby";
 	//===================================================
+	// json-api hands the query string to WP_Query, post__in has to be an array
+	final public static String POST_IN = "post__in[]";
+	// "post__in%5B%5D=" + id + "&"
+	private static final int POST_IN_PARAM_LENGTH = 16;
+	// keeps the whole URL under the 2000 characters proxies and servers accept
+	private static final int MAX_POST_IN_LENGTH = 1500;
+	//===================================================
 	
 	public WPQuery(){
 
@@ -91,6 +101,61 @@ public class WPQuery extends RequestParams implements Serializable{
 		this.add(ORDER_BY, OrderBy.META_VALUE_NUM);
 	}
 	
+	/**
+	 * Only the posts with the ids, in the order of the ids. Sticky posts are
+	 * not added in front of them.
+	 */
+	public void postIn(int[] ids){
+		for(int i = 0; i < ids.length; i++){
+			this.add(POST_IN, Integer.toString(ids[i]));
+		}
+		this.add(ORDER_BY, OrderBy.POST_IN);
+		this.add("ignore_sticky_posts", "1");
+	}
+	
+	/**
+	 * Splits ids (duplicates removed) into groups small enough for one
+	 * {@link #postIn(int[])} request each.
+	 */
+	static List<int[]> postInBatches(int[] ids){
+		ArrayList<Integer> unique = new ArrayList<Integer>(
+				new LinkedHashSet<Integer>(toList(ids)));
+		ArrayList<int[]> batches = new ArrayList<int[]>();
+		
+		int start = 0;
+		int length = 0;
+		for(int i = 0; i < unique.size(); i++){
+			int paramLength = POST_IN_PARAM_LENGTH
+					+ unique.get(i).toString().length();
+			if(i > start && length + paramLength > MAX_POST_IN_LENGTH){
+				batches.add(toArray(unique.subList(start, i)));
+				start = i;
+				length = 0;
+			}
+			length += paramLength;
+		}
+		if(start < unique.size()){
+			batches.add(toArray(unique.subList(start, unique.size())));
+		}
+		return batches;
+	}
+	
+	private static List<Integer> toList(int[] ids){
+		ArrayList<Integer> list = new ArrayList<Integer>(ids.length);
+		for(int i = 0; i < ids.length; i++){
+			list.add(ids[i]);
+		}
+		return list;
+	}
+	
+	private static int[] toArray(List<Integer> ids){
+		int[] array = new int[ids.size()];
+		for(int i = 0; i < array.length; i++){
+			array[i] = ids.get(i);
+		}
+		return array;
+	}
+	
 	private void writeObject(ObjectOutputStream out) throws IOException {
 		for(int i = 0; i < this.getParamsList().size();i++){
 			out.writeChars(this.getParamsList().get(i).getName());
@@ -123,6 +188,6 @@ public class WPQuery extends RequestParams implements Serializable{
 		final protected static String MENU_ORDER = "menu_order";
 		final protected static String META_VALUE = "meta_value";
 		final protected static String META_VALUE_NUM = "meta_value_num";
-		final protected static String POST_IN = "post__in"; //TODO
+		final protected static String POST_IN = "post__in";
 	}
 }
@@ -0,0 +1,518 @@
+package com.jogeeks.wordpress;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.jogeeks.wordpress.listeners.OnRequestFailureListener;
+import com.loopj.android.http.RequestParams;
+import com.loopj.android.http.ResponseHandlerInterface;
+
+/**
+ * One request of Wordpress over all its attempts. It stands between the
+ * transport and the response handler: failed attempts the retry policy allows
+ * to retry never reach the handler, which sees one start, the outcome of the
+ * last attempt and one finish. Every attempt goes through the circuit breaker
+ * of the host.
+ *
+ * With a hedge policy, a read that hasn't answered after the hedge delay is
+ * sent a second time. The first of the two to answer wins, the other one is
+ * cancelled and its callbacks are dropped. A failure only counts once both
+ * have failed.
+ *
+ * The response is handed to the handler with a WPDecodingEntity, which
+ * inflates a gzip body as the handler reads it.
+ *
+ * With a deadline, the request fails with a DEADLINE failure once the
+ * deadline passes, whatever it is doing: attempts running are dropped and a
+ * retry that would end after it isn't sent.
+ *
+ * A cancelled request still gets its one finish, the transports don't send
+ * it for an attempt they abort.
+ */
+class WPRequest {
+
+	private static final Handler mainHandler = new Handler(
+			Looper.getMainLooper());
+
+	private final WPTransport transport;
+	private final WPTransport.Request request;
+	private final String url;
+	private final ResponseHandlerInterface handler;
+	private final WPRetryPolicy retryPolicy;
+	private final WPHedgePolicy hedgePolicy;
+	private final WPDeadline deadline;
+	private final WPCircuitBreaker breaker;
+	private final OnRequestFailureListener failureListener;
+	private WPTransferStats transferStats;
+	private String endpoint;
+
+	private final long start = System.nanoTime();
+	// sent attempts, hedges included
+	private int attempts;
+	// attempts without the hedges, what the retry policy counts
+	private int rounds;
+	private boolean started;
+	private volatile boolean cancelled;
+	private volatile boolean finished;
+	// guarded by this: the attempts of the round still running and the one
+	// whose outcome is the outcome of the round
+	private final ArrayList<Attempt> running = new ArrayList<Attempt>();
+	private Attempt winner;
+	// guarded by this: a retry is waiting for its delay, the deadline passed
+	private boolean retryScheduled;
+	private boolean expired;
+	// set by a failed attempt that is retried, read by its finish
+	private long retryDelay = -1;
+
+	private final Runnable retry = new Runnable() {
+		@Override
+		public void run() {
+			send();
+		}
+	};
+
+	private final Runnable hedge = new Runnable() {
+		@Override
+		public void run() {
+			if (breaker.allowRequest()) {
+				start(true);
+			}
+		}
+	};
+
+	private final Runnable expire = new Runnable() {
+		@Override
+		public void run() {
+			expire();
+		}
+	};
+
+	WPRequest(WPTransport transport, boolean post, String url,
+			Header[] headers, RequestParams params,
+			ResponseHandlerInterface handler, WPRetryPolicy retryPolicy,
+			WPHedgePolicy hedgePolicy, WPDeadline deadline,
+			WPCircuitBreaker breaker, OnRequestFailureListener failureListener) {
+		this.transport = transport;
+		this.url = url;
+		request = new WPTransport.Request(post, url, headers, params);
+		this.handler = handler;
+		this.retryPolicy = retryPolicy;
+		this.hedgePolicy = hedgePolicy;
+		this.deadline = deadline;
+		this.breaker = breaker;
+		this.failureListener = failureListener;
+	}
+
+	/**
+	 * Counts the wire and decoded bytes of the response under endpoint.
+	 */
+	void setTransferStats(WPTransferStats stats, String endpoint) {
+		transferStats = stats;
+		this.endpoint = endpoint;
+	}
+
+	void send() {
+		if (cancelled || finished) {
+			return;
+		}
+		if (deadline != null) {
+			if (deadline.isExpired()) {
+				synchronized (this) {
+					expired = true;
+				}
+				deadlineExceeded();
+				return;
+			}
+			if (rounds == 0) {
+				mainHandler.postDelayed(expire, deadline.getRemaining());
+			}
+		}
+		if (!breaker.allowRequest()) {
+			sendStart();
+			IOException open = new IOException("circuit open for " + url);
+			fail(new WPFailure(WPFailure.Reason.CIRCUIT_OPEN, url, 0, open,
+					attempts, elapsed(), step()));
+			handler.sendFailureMessage(0, null, null, open);
+			finish();
+			return;
+		}
+
+		synchronized (this) {
+			winner = null;
+			running.clear();
+			retryScheduled = false;
+		}
+		rounds++;
+		start(false);
+		if (hedgePolicy != null) {
+			hedgePolicy.onRequest();
+			long delay = hedgePolicy.getHedgeDelay();
+			if (delay >= 0) {
+				mainHandler.postDelayed(hedge, delay);
+			}
+		}
+	}
+
+	private void start(boolean hedge) {
+		Attempt attempt = new Attempt(hedge);
+		synchronized (this) {
+			if (cancelled || expired || winner != null) {
+				return;
+			}
+			// a single hedge per round, within the budget
+			if (hedge && (running.size() != 1 || !hedgePolicy.tryHedge())) {
+				return;
+			}
+			running.add(attempt);
+			attempts++;
+		}
+		attempt.call = transport.execute(request, attempt);
+	}
+
+	/**
+	 * Drops the attempts running and a retry waiting for its delay, then
+	 * finishes the request. An outcome the handler is being given is left
+	 * alone, its attempt finishes the request.
+	 */
+	void cancel() {
+		ArrayList<Attempt> all;
+		boolean delivering;
+		synchronized (this) {
+			if (cancelled || finished) {
+				return;
+			}
+			cancelled = true;
+			delivering = winner != null && !retryScheduled;
+			all = new ArrayList<Attempt>(running);
+			for (int i = 0; i < all.size(); i++) {
+				all.get(i).lost = true;
+			}
+			running.clear();
+		}
+		mainHandler.removeCallbacks(retry);
+		mainHandler.removeCallbacks(hedge);
+		mainHandler.removeCallbacks(expire);
+		for (int i = 0; i < all.size(); i++) {
+			all.get(i).cancel(true);
+		}
+		if (!delivering) {
+			finish();
+		}
+	}
+
+	boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Decides whether the outcome of attempt is the outcome of the round. The
+	 * first attempt to answer wins and cancels the other one; a failed
+	 * attempt drops out while the other one is still running.
+	 *
+	 * @return false if the outcome of attempt must be dropped.
+	 */
+	private boolean settle(Attempt attempt, boolean answered) {
+		ArrayList<Attempt> losers;
+		synchronized (this) {
+			if (winner == attempt) {
+				// the body of the winner failed to download
+				return true;
+			}
+			if (attempt.lost || winner != null) {
+				return false;
+			}
+			running.remove(attempt);
+			if (!answered && !running.isEmpty()) {
+				attempt.lost = true;
+				return false;
+			}
+			winner = attempt;
+			losers = new ArrayList<Attempt>(running);
+			for (int i = 0; i < losers.size(); i++) {
+				losers.get(i).lost = true;
+			}
+			running.clear();
+		}
+		mainHandler.removeCallbacks(hedge);
+		for (int i = 0; i < losers.size(); i++) {
+			// an interrupted request drops its response without releasing
+			// the connection, a loser that still answers is consumed instead
+			losers.get(i).cancel(false);
+		}
+		if (answered && hedgePolicy != null) {
+			hedgePolicy.onAnswer(attempt.elapsed(), attempt.hedge);
+		}
+		return true;
+	}
+
+	/**
+	 * Ends the request when the deadline passes. An outcome the handler is
+	 * being given is left alone, the retry it may ask for is refused by
+	 * sendFinishMessage.
+	 */
+	private void expire() {
+		ArrayList<Attempt> losers;
+		synchronized (this) {
+			if (cancelled || finished || expired) {
+				return;
+			}
+			expired = true;
+			if (winner != null && !retryScheduled) {
+				return;
+			}
+			losers = new ArrayList<Attempt>(running);
+			for (int i = 0; i < losers.size(); i++) {
+				losers.get(i).lost = true;
+			}
+			running.clear();
+		}
+		mainHandler.removeCallbacks(retry);
+		mainHandler.removeCallbacks(hedge);
+		for (int i = 0; i < losers.size(); i++) {
+			losers.get(i).cancel(false);
+		}
+		deadlineExceeded();
+	}
+
+	private void deadlineExceeded() {
+		sendStart();
+		InterruptedIOException timeout = new InterruptedIOException(
+				"deadline of " + deadline.getBudget() + " ms exceeded: " + url);
+		fail(new WPFailure(WPFailure.Reason.DEADLINE, url, 0, timeout,
+				attempts, elapsed(), deadline.getStep()));
+		handler.sendFailureMessage(0, null, null, timeout);
+		finish();
+	}
+
+	private synchronized boolean isLost(Attempt attempt) {
+		return attempt.lost;
+	}
+
+	private boolean retry(WPFailure.Reason reason) {
+		if (cancelled || !retryPolicy.shouldRetry(reason, rounds)) {
+			return false;
+		}
+		long delay = retryPolicy.getDelay(rounds);
+		if (deadline != null && delay >= deadline.getRemaining()) {
+			return false;
+		}
+		retryDelay = delay;
+		return true;
+	}
+
+	private void fail(final WPFailure failure) {
+		WPLog.d("WPRequest", failure.toString());
+		if (failureListener != null) {
+			mainHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					failureListener.onRequestFailed(failure);
+				}
+			});
+		}
+	}
+
+	private String step() {
+		return deadline != null ? deadline.getStep() : null;
+	}
+
+	private long elapsed() {
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	private void sendStart() {
+		synchronized (this) {
+			if (started) {
+				return;
+			}
+			started = true;
+		}
+		handler.sendStartMessage();
+	}
+
+	private void finish() {
+		synchronized (this) {
+			if (finished) {
+				return;
+			}
+			finished = true;
+		}
+		mainHandler.removeCallbacks(expire);
+		handler.sendFinishMessage();
+	}
+
+	/**
+	 * The handler of one attempt, passes to the response handler what
+	 * settle lets through.
+	 */
+	private final class Attempt implements ResponseHandlerInterface {
+
+		final boolean hedge;
+		final long sent = System.nanoTime();
+		volatile WPTransport.Call call;
+		// guarded by WPRequest.this, set when the attempt lost or dropped out
+		boolean lost;
+
+		Attempt(boolean hedge) {
+			this.hedge = hedge;
+		}
+
+		long elapsed() {
+			return (System.nanoTime() - sent) / 1000000;
+		}
+
+		void cancel(boolean interrupt) {
+			WPTransport.Call sent = call;
+			if (sent != null) {
+				sent.cancel(interrupt);
+			}
+		}
+
+		@Override
+		public void sendResponseMessage(HttpResponse response)
+				throws IOException {
+			// the handler reads the body decoded, while it downloads
+			WPDecodingEntity body = null;
+			if (response.getEntity() != null) {
+				body = new WPDecodingEntity(response.getEntity());
+				response.setEntity(body);
+			}
+			int statusCode = response.getStatusLine().getStatusCode();
+			WPFailure.Reason reason = WPFailure.reasonOf(statusCode, null);
+			if (!isLost(this)) {
+				if (reason == WPFailure.Reason.SERVER_ERROR) {
+					breaker.onFailure();
+				} else {
+					breaker.onSuccess();
+				}
+			}
+
+			if (!settle(this, reason != WPFailure.Reason.SERVER_ERROR)
+					|| (reason != null && retry(reason))) {
+				HttpEntity entity = response.getEntity();
+				if (entity != null) {
+					entity.consumeContent();
+				}
+				return;
+			}
+			if (reason != null) {
+				fail(new WPFailure(reason, url, statusCode, null, attempts,
+						WPRequest.this.elapsed(), step()));
+			}
+			try {
+				handler.sendResponseMessage(response);
+			} finally {
+				if (body != null && transferStats != null) {
+					transferStats.record(endpoint, body.getWireBytes(),
+							body.getDecodedBytes());
+				}
+			}
+		}
+
+		@Override
+		public void sendFailureMessage(int statusCode, Header[] headers,
+				byte[] responseBody, Throwable error) {
+			// only called for exceptions, responses go through
+			// sendResponseMessage
+			WPFailure.Reason reason = WPFailure.reasonOf(statusCode, error);
+			if (!cancelled && !isLost(this)
+					&& (reason == WPFailure.Reason.CONNECTION
+					|| reason == WPFailure.Reason.TIMEOUT)) {
+				breaker.onFailure();
+			}
+			if (!settle(this, false) || (reason != null && retry(reason))) {
+				return;
+			}
+			fail(new WPFailure(reason != null ? reason
+					: WPFailure.Reason.CONNECTION, url, statusCode, error,
+					attempts, WPRequest.this.elapsed(), step()));
+			handler.sendFailureMessage(statusCode, headers, responseBody,
+					error);
+		}
+
+		@Override
+		public void sendStartMessage() {
+			sendStart();
+		}
+
+		@Override
+		public void sendFinishMessage() {
+			synchronized (WPRequest.this) {
+				if (winner != this) {
+					return;
+				}
+			}
+			// the round is over, send the next one or finish the request
+			if (retryDelay >= 0) {
+				long delay = retryDelay;
+				retryDelay = -1;
+				boolean deadlinePassed;
+				synchronized (WPRequest.this) {
+					deadlinePassed = expired;
+					retryScheduled = !expired;
+				}
+				if (deadlinePassed) {
+					deadlineExceeded();
+				} else if (cancelled) {
+					finish();
+				} else {
+					mainHandler.postDelayed(retry, delay);
+				}
+				return;
+			}
+			finish();
+		}
+
+		@Override
+		public void sendProgressMessage(int bytesWritten, int bytesTotal) {
+			if (!isLost(this)) {
+				handler.sendProgressMessage(bytesWritten, bytesTotal);
+			}
+		}
+
+		@Override
+		public void sendSuccessMessage(int statusCode, Header[] headers,
+				byte[] responseBody) {
+			handler.sendSuccessMessage(statusCode, headers, responseBody);
+		}
+
+		@Override
+		public void sendRetryMessage() {
+			handler.sendRetryMessage();
+		}
+
+		@Override
+		public URI getRequestURI() {
+			return handler.getRequestURI();
+		}
+
+		@Override
+		public Header[] getRequestHeaders() {
+			return handler.getRequestHeaders();
+		}
+
+		@Override
+		public void setRequestURI(URI requestURI) {
+			handler.setRequestURI(requestURI);
+		}
+
+		@Override
+		public void setRequestHeaders(Header[] requestHeaders) {
+			handler.setRequestHeaders(requestHeaders);
+		}
+
+		@Override
+		public void setUseSynchronousMode(boolean useSynchronousMode) {
+			handler.setUseSynchronousMode(useSynchronousMode);
+		}
+	}
+}
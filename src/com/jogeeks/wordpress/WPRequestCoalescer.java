@@ -0,0 +1,119 @@
+package com.jogeeks.wordpress;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.jogeeks.wordpress.listeners.OnPostsFailedListener;
+import com.jogeeks.wordpress.listeners.OnPostsReceivedListener;
+
+/**
+ * Keeps track of the post list requests that are in flight so an identical
+ * request (same URL and params) joins the running one instead of being sent
+ * again. The response is downloaded and parsed once and handed to every
+ * waiting listener.
+ */
+class WPRequestCoalescer {
+
+	private final HashMap<String, Group> inFlight = new HashMap<String, Group>();
+
+	private int coalescedCount;
+
+	/**
+	 * Attaches the listener to an identical request already in flight.
+	 *
+	 * @return false if there is no such request, the caller should then send
+	 *         it and register it with {@link #lead(String, OnPostsReceivedListener)}
+	 */
+	synchronized boolean join(String key, OnPostsReceivedListener listener) {
+		Group group = inFlight.get(key);
+		if (group == null) {
+			return false;
+		}
+		group.waiters.add(listener);
+		coalescedCount++;
+		return true;
+	}
+
+	/**
+	 * Registers a new request for the key.
+	 *
+	 * @return the listener to give to the request's response handler, it fans
+	 *         the result out to every listener that joined.
+	 */
+	synchronized Group lead(String key, OnPostsReceivedListener listener) {
+		Group group = new Group(key);
+		group.waiters.add(listener);
+		inFlight.put(key, group);
+		return group;
+	}
+
+	/**
+	 * Removes the request from the in flight list, later identical requests
+	 * will hit the network (or the response cache) again.
+	 */
+	synchronized void finish(Group group) {
+		if (inFlight.get(group.key) == group) {
+			inFlight.remove(group.key);
+		}
+	}
+
+	/**
+	 * Number of requests that were not sent because an identical one was
+	 * already running.
+	 */
+	synchronized int getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	class Group implements OnPostsReceivedListener, OnPostsFailedListener {
+		private final String key;
+		private final ArrayList<OnPostsReceivedListener> waiters = new ArrayList<OnPostsReceivedListener>();
+
+		private Group(String key) {
+			this.key = key;
+		}
+
+		private ArrayList<OnPostsReceivedListener> drain() {
+			synchronized (WPRequestCoalescer.this) {
+				finish(this);
+				return new ArrayList<OnPostsReceivedListener>(waiters);
+			}
+		}
+
+		/**
+		 * Every waiter gets the same list, listeners should copy it before
+		 * modifying it.
+		 */
+		@Override
+		public void onPostsReceived(List<WPPost> posts,
+				HashMap<String, String> wpResponseMeta) {
+			ArrayList<OnPostsReceivedListener> listeners = drain();
+			for (int i = 0; i < listeners.size(); i++) {
+				listeners.get(i).onPostsReceived(posts, wpResponseMeta);
+			}
+		}
+
+		@Override
+		public void onNoPosts() {
+			ArrayList<OnPostsReceivedListener> listeners = drain();
+			for (int i = 0; i < listeners.size(); i++) {
+				listeners.get(i).onNoPosts();
+			}
+		}
+
+		/**
+		 * Only the waiters that implement OnPostsFailedListener hear it.
+		 */
+		@Override
+		public void onPostsFailed(Throwable error) {
+			ArrayList<OnPostsReceivedListener> listeners = drain();
+			for (int i = 0; i < listeners.size(); i++) {
+				if (listeners.get(i) instanceof OnPostsFailedListener) {
+					((OnPostsFailedListener) listeners.get(i))
+							.onPostsFailed(error);
+				}
+			}
+		}
+	}
+}
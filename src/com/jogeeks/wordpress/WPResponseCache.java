@@ -0,0 +1,559 @@
+package com.jogeeks.wordpress;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Two tier (memory LRU + disk) cache for json-api responses. Bodies are stored
+ * with their ETag/Last-Modified validators so requests can be revalidated
+ * with a conditional GET, a 304 then only costs the headers.
+ *
+ * The validators are also kept in a small index in memory, filled from the
+ * disk tier in the background when the cache is created, so the conditional
+ * headers of a request are built without reading a body.
+ */
+public class WPResponseCache {
+
+	public static final int DEFAULT_MEMORY_SIZE = 512 * 1024; // chars
+	public static final long DEFAULT_DISK_SIZE = 5 * 1024 * 1024; // bytes
+
+	static final String CACHE_DIR = "wordpress-responses";
+
+	private static final int VERSION = 1;
+
+	/**
+	 * Entries of the validator index, a request whose validators were dropped
+	 * is sent without conditional headers.
+	 */
+	static final int MAX_VALIDATORS = 1024;
+
+	private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<String, Entry>(
+			16, 0.75f, true);
+	private final int maxMemorySize;
+	private int memorySize;
+
+	private final LinkedHashMap<String, Validators> validators = new LinkedHashMap<String, Validators>(
+			16, 0.75f, true);
+
+	private final File directory;
+	private final long maxDiskSize;
+	private long diskSize = -1;
+
+	private final ExecutorService diskExecutor = Executors
+			.newSingleThreadExecutor();
+
+	private int hitCount;
+	private int missCount;
+	private long bytesSaved;
+
+	public WPResponseCache(File directory) {
+		this(directory, DEFAULT_MEMORY_SIZE, DEFAULT_DISK_SIZE);
+	}
+
+	/**
+	 * @param directory
+	 *            where cached responses are written, may be null for a memory
+	 *            only cache.
+	 * @param maxMemorySize
+	 *            size of the memory tier in characters of response body.
+	 * @param maxDiskSize
+	 *            size of the disk tier in bytes.
+	 */
+	public WPResponseCache(File directory, int maxMemorySize, long maxDiskSize) {
+		this.directory = directory;
+		this.maxMemorySize = maxMemorySize;
+		this.maxDiskSize = maxDiskSize;
+
+		if (directory != null) {
+			diskExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					loadValidators();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Builds the cache key of a request URL (query string included). Query
+	 * parameters are sorted so the same RequestParams or WPQuery always map to
+	 * the same entry regardless of insertion order.
+	 */
+	public static String keyFor(String url) {
+		int query = url.indexOf('?');
+		if (query == -1 || query == url.length() - 1) {
+			return query == -1 ? url : url.substring(0, query);
+		}
+
+		String[] params = url.substring(query + 1).split("&");
+		Arrays.sort(params);
+
+		StringBuilder key = new StringBuilder(url.length());
+		key.append(url, 0, query).append('?');
+		for (int i = 0; i < params.length; i++) {
+			if (params[i].length() == 0) {
+				continue;
+			}
+			if (key.charAt(key.length() - 1) != '?') {
+				key.append('&');
+			}
+			key.append(params[i]);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the cached entry for the given key, looking at the memory tier
+	 * first then at the disk tier. The disk is read without holding the
+	 * cache's lock.
+	 */
+	public Entry get(String key) {
+		synchronized (this) {
+			Entry entry = memory.get(key);
+			if (entry != null) {
+				return entry;
+			}
+		}
+
+		Entry entry = readFromDisk(key);
+		if (entry != null) {
+			synchronized (this) {
+				// a response put while the disk was read is newer
+				Entry current = memory.get(key);
+				if (current != null) {
+					return current;
+				}
+				putInMemory(key, entry);
+				putValidators(key, entry.etag, entry.lastModified);
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Looks at the validator index only, never at a body: it is called on
+	 * the main thread for every read request.
+	 *
+	 * @return If-None-Match/If-Modified-Since headers for the cached entry of
+	 *         this key, or null if there is nothing to revalidate.
+	 */
+	public Header[] getConditionalHeaders(String key) {
+		String etag;
+		String lastModified;
+		synchronized (this) {
+			Validators entry = validators.get(key);
+			if (entry == null) {
+				return null;
+			}
+			etag = entry.etag;
+			lastModified = entry.lastModified;
+		}
+
+		if (etag != null && lastModified != null) {
+			return new Header[] { new BasicHeader("If-None-Match", etag),
+					new BasicHeader("If-Modified-Since", lastModified) };
+		} else if (etag != null) {
+			return new Header[] { new BasicHeader("If-None-Match", etag) };
+		} else if (lastModified != null) {
+			return new Header[] { new BasicHeader("If-Modified-Since",
+					lastModified) };
+		}
+		return null;
+	}
+
+	/**
+	 * Stores a full (200) response. Responses without any validator are not
+	 * cached since they could never be revalidated.
+	 */
+	public void put(String key, String body, Header[] headers) {
+		String etag = findHeader(headers, "ETag");
+		String lastModified = findHeader(headers, "Last-Modified");
+
+		synchronized (this) {
+			missCount++;
+		}
+
+		if (body == null || (etag == null && lastModified == null)) {
+			return;
+		}
+
+		final String entryKey = key;
+		final Entry entry = new Entry(body, etag, lastModified);
+		synchronized (this) {
+			putInMemory(entryKey, entry);
+			putValidators(entryKey, etag, lastModified);
+		}
+
+		if (directory != null) {
+			diskExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					writeToDisk(entryKey, entry);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Called when the server answered 304 Not Modified.
+	 *
+	 * @return the cached entry to serve instead of the (empty) response, null
+	 *         if it was evicted in the mean time.
+	 */
+	public Entry notModified(String key) {
+		Entry entry = get(key);
+		synchronized (this) {
+			if (entry != null) {
+				hitCount++;
+				bytesSaved += entry.body.length();
+			} else {
+				// nothing left to revalidate, the next request gets the body
+				validators.remove(key);
+			}
+		}
+		return entry;
+	}
+
+	public synchronized void remove(String key) {
+		Entry entry = memory.remove(key);
+		if (entry != null) {
+			memorySize -= entry.body.length();
+		}
+		validators.remove(key);
+		if (directory != null) {
+			File file = fileFor(key);
+			if (diskSize != -1) {
+				diskSize -= file.length();
+			}
+			file.delete();
+		}
+	}
+
+	public synchronized void clear() {
+		memory.clear();
+		memorySize = 0;
+		validators.clear();
+
+		if (directory != null) {
+			File[] files = directory.listFiles();
+			for (int i = 0; files != null && i < files.length; i++) {
+				files[i].delete();
+			}
+			diskSize = 0;
+		}
+	}
+
+	/**
+	 * Number of requests answered with 304 and served from the cache.
+	 */
+	public synchronized int getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Number of requests that had to download a full response body.
+	 */
+	public synchronized int getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Characters of response body that did not have to be downloaded again.
+	 */
+	public synchronized long getBytesSaved() {
+		return bytesSaved;
+	}
+
+	private void putInMemory(String key, Entry entry) {
+		Entry previous = memory.put(key, entry);
+		if (previous != null) {
+			memorySize -= previous.body.length();
+		}
+		memorySize += entry.body.length();
+
+		Iterator<Map.Entry<String, Entry>> eldest = memory.entrySet()
+				.iterator();
+		while (memorySize > maxMemorySize && eldest.hasNext()) {
+			Map.Entry<String, Entry> evicted = eldest.next();
+			memorySize -= evicted.getValue().body.length();
+			eldest.remove();
+			if (directory == null) {
+				// the only copy is gone
+				validators.remove(evicted.getKey());
+			}
+		}
+	}
+
+	private void putValidators(String key, String etag, String lastModified) {
+		validators.put(key, new Validators(md5(key), etag, lastModified));
+		Iterator<Validators> eldest = validators.values().iterator();
+		while (validators.size() > MAX_VALIDATORS && eldest.hasNext()) {
+			eldest.next();
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Reads the validators of the responses on disk, not their bodies, oldest
+	 * first so the index keeps the disk tier's LRU order. A key put in the
+	 * meantime keeps its newer validators.
+	 */
+	private void loadValidators() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		sortByLastModified(files);
+
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].getName().endsWith(".tmp")) {
+				continue;
+			}
+			DataInputStream in = null;
+			try {
+				in = new DataInputStream(new BufferedInputStream(
+						new FileInputStream(files[i]), 512));
+				if (in.readInt() != VERSION) {
+					continue;
+				}
+				String key = in.readUTF();
+				String etag = in.readUTF();
+				String lastModified = in.readUTF();
+				synchronized (this) {
+					if (!validators.containsKey(key)) {
+						putValidators(key, etag.length() == 0 ? null : etag,
+								lastModified.length() == 0 ? null
+										: lastModified);
+					}
+				}
+			} catch (IOException e) {
+				// read again, and dropped, when its key is requested
+			} finally {
+				closeQuietly(in);
+			}
+		}
+	}
+
+	private File fileFor(String key) {
+		return new File(directory, md5(key));
+	}
+
+	private Entry readFromDisk(String key) {
+		if (directory == null) {
+			return null;
+		}
+
+		File file = fileFor(key);
+		if (!file.exists()) {
+			return null;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (in.readInt() != VERSION || !key.equals(in.readUTF())) {
+				return null;
+			}
+			String etag = in.readUTF();
+			String lastModified = in.readUTF();
+			byte[] body = new byte[in.readInt()];
+			in.readFully(body);
+
+			// keeps the disk eviction order close to LRU
+			file.setLastModified(System.currentTimeMillis());
+
+			return new Entry(new String(body, "UTF-8"), etag.length() == 0 ? null
+					: etag, lastModified.length() == 0 ? null : lastModified);
+		} catch (IOException e) {
+			file.delete();
+			return null;
+		} finally {
+			closeQuietly(in);
+		}
+	}
+
+	private void writeToDisk(String key, Entry entry) {
+		if (!directory.exists() && !directory.mkdirs()) {
+			return;
+		}
+
+		File file = fileFor(key);
+		File tmp = new File(directory, file.getName() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			byte[] body = entry.body.getBytes("UTF-8");
+
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmp)));
+			out.writeInt(VERSION);
+			out.writeUTF(key);
+			out.writeUTF(entry.etag == null ? "" : entry.etag);
+			out.writeUTF(entry.lastModified == null ? "" : entry.lastModified);
+			out.writeInt(body.length);
+			out.write(body);
+			out.close();
+			out = null;
+
+			synchronized (this) {
+				long previous = file.length();
+				if (!tmp.renameTo(file)) {
+					tmp.delete();
+					return;
+				}
+				if (diskSize == -1) {
+					diskSize = directorySize();
+				} else {
+					diskSize += file.length() - previous;
+				}
+				trimDisk();
+			}
+		} catch (IOException e) {
+			tmp.delete();
+		} finally {
+			closeQuietly(out);
+		}
+	}
+
+	private long directorySize() {
+		long size = 0;
+		File[] files = directory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			size += files[i].length();
+		}
+		return size;
+	}
+
+	private void trimDisk() {
+		if (diskSize <= maxDiskSize) {
+			return;
+		}
+
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		sortByLastModified(files);
+
+		HashSet<String> deleted = new HashSet<String>();
+		for (int i = 0; i < files.length && diskSize > maxDiskSize; i++) {
+			diskSize -= files[i].length();
+			files[i].delete();
+			deleted.add(files[i].getName());
+		}
+
+		// a key left only in memory still has its validators
+		Iterator<Map.Entry<String, Validators>> entries = validators
+				.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<String, Validators> entry = entries.next();
+			if (deleted.contains(entry.getValue().file)
+					&& !memory.containsKey(entry.getKey())) {
+				entries.remove();
+			}
+		}
+	}
+
+	private static void sortByLastModified(File[] files) {
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long l = lhs.lastModified(), r = rhs.lastModified();
+				return l < r ? -1 : (l == r ? 0 : 1);
+			}
+		});
+	}
+
+	private static String findHeader(Header[] headers, String name) {
+		for (int i = 0; headers != null && i < headers.length; i++) {
+			if (headers[i].getName().equalsIgnoreCase(name)) {
+				return headers[i].getValue();
+			}
+		}
+		return null;
+	}
+
+	private static String md5(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(
+					key.getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (int i = 0; i < digest.length; i++) {
+				hex.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+				hex.append(Character.forDigit(digest[i] & 0xf, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(key.hashCode());
+		} catch (UnsupportedEncodingException e) {
+			return Integer.toHexString(key.hashCode());
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private static final class Validators {
+		// name of the entry's file in the disk tier
+		final String file;
+		final String etag;
+		final String lastModified;
+
+		Validators(String file, String etag, String lastModified) {
+			this.file = file;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+	}
+
+	public static class Entry {
+		private final String body;
+		private final String etag;
+		private final String lastModified;
+
+		Entry(String body, String etag, String lastModified) {
+			this.body = body;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		public String getBody() {
+			return body;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+	}
+}
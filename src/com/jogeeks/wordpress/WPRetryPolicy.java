@@ -0,0 +1,76 @@
+package com.jogeeks.wordpress;
+
+import java.util.Random;
+
+/**
+ * When and how long to wait before sending a read again. Only connection
+ * failures, timeouts and server errors are retried, with exponential backoff
+ * and full jitter: the n-th retry waits a random time between 0 and
+ * min(maxDelay, baseDelay * 2^(n-1)), so clients that failed together don't
+ * come back together.
+ *
+ * Writes are never retried, a write that timed out may have been applied.
+ */
+public class WPRetryPolicy {
+
+	/** a single attempt */
+	public static final WPRetryPolicy NONE = new WPRetryPolicy(1, 0, 0);
+
+	/** 4 attempts, retries after up to 0.5, 1 and 2 seconds */
+	public static final WPRetryPolicy DEFAULT = new WPRetryPolicy(4, 500,
+			30 * 1000);
+
+	private static final Random random = new Random();
+
+	private final int maxAttempts;
+	private final long baseDelay;
+	private final long maxDelay;
+
+	/**
+	 * @param maxAttempts
+	 *            number of times a request is sent at most, the first one
+	 *            included.
+	 * @param baseDelay
+	 *            upper bound of the first delay in milliseconds.
+	 * @param maxDelay
+	 *            upper bound of any delay in milliseconds.
+	 */
+	public WPRetryPolicy(int maxAttempts, long baseDelay, long maxDelay) {
+		this.maxAttempts = maxAttempts;
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @param attempts
+	 *            the number of times the request was sent.
+	 * @return true if a request that failed for reason should be sent again.
+	 */
+	public boolean shouldRetry(WPFailure.Reason reason, int attempts) {
+		if (attempts >= maxAttempts) {
+			return false;
+		}
+		return reason == WPFailure.Reason.CONNECTION
+				|| reason == WPFailure.Reason.TIMEOUT
+				|| reason == WPFailure.Reason.SERVER_ERROR;
+	}
+
+	/**
+	 * @param attempts
+	 *            the number of times the request was sent.
+	 * @return how long to wait before sending it again, in milliseconds.
+	 */
+	public long getDelay(int attempts) {
+		long cap = baseDelay << Math.min(attempts - 1, 30);
+		if (cap <= 0 || cap > maxDelay) {
+			cap = maxDelay;
+		}
+		synchronized (random) {
+			return (long) (random.nextDouble() * cap);
+		}
+	}
+}
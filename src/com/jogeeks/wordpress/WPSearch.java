@@ -0,0 +1,94 @@
+package com.jogeeks.wordpress;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import android.os.AsyncTask;
+
+import com.jogeeks.wordpress.listeners.OnPostsReceivedListener;
+import com.jogeeks.wordpress.listeners.OnSearchListener;
+
+/**
+ * Searches the posts in the local store first and then the site. The site
+ * results are stored (and so indexed), the final results are the local
+ * ranking followed by what only the site found.
+ *
+ * For type ahead use {@link WPPostStore#getSearchIndex()} directly, it does
+ * not touch the network.
+ */
+public class WPSearch {
+
+	private final Wordpress wordpress;
+	private final WPPostStore store;
+
+	public WPSearch(Wordpress wordpress, WPPostStore store) {
+		this.wordpress = wordpress;
+		this.store = store;
+	}
+
+	public void search(final String query, final int count,
+			final OnSearchListener listener) {
+		new AsyncTask<Void, Void, List<WPPost>>() {
+			@Override
+			protected List<WPPost> doInBackground(Void... params) {
+				return searchLocal(query, count);
+			}
+
+			@Override
+			protected void onPostExecute(List<WPPost> posts) {
+				listener.onLocalResults(posts);
+				searchSite(query, count, posts, listener);
+			}
+		}.execute();
+	}
+
+	private List<WPPost> searchLocal(String query, int count) {
+		return store.getPosts(store.getSearchIndex().search(query, count));
+	}
+
+	private void searchSite(final String query, final int count,
+			final List<WPPost> local, final OnSearchListener listener) {
+		wordpress.getPostsBySearch(query, count, 1,
+				new OnPostsReceivedListener() {
+					@Override
+					public void onPostsReceived(final List<WPPost> posts,
+							HashMap<String, String> wpResponseMeta) {
+						new AsyncTask<Void, Void, List<WPPost>>() {
+							@Override
+							protected List<WPPost> doInBackground(Void... params) {
+								store.putPosts(posts);
+								return merge(searchLocal(query, count), posts,
+										count);
+							}
+
+							@Override
+							protected void onPostExecute(List<WPPost> merged) {
+								listener.onSearchResults(merged);
+							}
+						}.execute();
+					}
+
+					@Override
+					public void onNoPosts() {
+						listener.onSearchResults(local);
+					}
+				});
+	}
+
+	private static List<WPPost> merge(List<WPPost> local, List<WPPost> site,
+			int count) {
+		ArrayList<WPPost> merged = new ArrayList<WPPost>(local);
+		HashSet<Integer> ids = new HashSet<Integer>();
+		for (int i = 0; i < local.size(); i++) {
+			ids.add(local.get(i).getId());
+		}
+		for (int i = 0; i < site.size() && merged.size() < count; i++) {
+			if (ids.add(site.get(i).getId())) {
+				merged.add(site.get(i));
+			}
+		}
+		return merged;
+	}
+}
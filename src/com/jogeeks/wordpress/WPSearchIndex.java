@@ -0,0 +1,307 @@
+package com.jogeeks.wordpress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * In memory inverted index over the title, plain title, excerpt and content
+ * (HTML stripped) of posts, so search works offline and fast enough for type
+ * ahead. Every word of the query has to match, the last one as a prefix
+ * unless the query ends with a space. Results are ranked by the weight of the
+ * field the word appears in times how rare the word is.
+ *
+ * Posts are added (or re-added after an edit) one by one, the index is never
+ * rebuilt.
+ */
+public class WPSearchIndex {
+
+	private static final float TITLE_WEIGHT = 4f;
+	private static final float EXCERPT_WEIGHT = 2f;
+	private static final float CONTENT_WEIGHT = 1f;
+
+	/**
+	 * A short prefix matches a lot of words, only the most common ones are
+	 * used so type ahead stays fast on the first keystrokes.
+	 */
+	private static final int MAX_PREFIX_TERMS = 64;
+
+	private static final Pattern TAGS = Pattern.compile("<[^>]*>");
+	private static final Pattern ENTITIES = Pattern.compile("&#?\\w{1,8};");
+
+	// term -> postings, the weight of the term in each post
+	private final TreeMap<String, Postings> postings = new TreeMap<String, Postings>();
+
+	// posts are numbered densely so a search can score into plain arrays
+	private final HashMap<Integer, Integer> docs = new HashMap<Integer, Integer>();
+	private int[] postIds = new int[64];
+	// doc -> its terms, to remove a post when it is indexed again
+	private String[][] docTerms = new String[64][];
+	private int docCount;
+	private int size;
+
+	public synchronized void addPosts(List<WPPost> posts) {
+		for (int i = 0; i < posts.size(); i++) {
+			addPost(posts.get(i));
+		}
+	}
+
+	/**
+	 * Indexes the post, replacing the previous version if the post was
+	 * already indexed.
+	 */
+	public synchronized void addPost(WPPost post) {
+		removePost(post.getId());
+
+		HashMap<String, Float> weights = new HashMap<String, Float>();
+		if (!WPPost.NO_TITLE.equals(post.getTitle())) {
+			tokenize(post.getTitle(), TITLE_WEIGHT, weights);
+		}
+		if (!WPPost.NO_PLAIN_TITLE.equals(post.getTitlePlain())) {
+			tokenize(post.getTitlePlain(), TITLE_WEIGHT, weights);
+		}
+		if (!WPPost.NO_EXCERPT.equals(post.getExcerpt())) {
+			tokenize(post.getExcerpt(), EXCERPT_WEIGHT, weights);
+		}
+		if (!WPPost.NO_CONTENT.equals(post.getContent())) {
+			tokenize(post.getContent(), CONTENT_WEIGHT, weights);
+		}
+
+		int doc = docFor(post.getId());
+		String[] terms = new String[weights.size()];
+		int i = 0;
+		for (Map.Entry<String, Float> weight : weights.entrySet()) {
+			Postings posts = postings.get(weight.getKey());
+			if (posts == null) {
+				posts = new Postings();
+				postings.put(weight.getKey(), posts);
+			}
+			posts.add(doc, weight.getValue());
+			terms[i++] = weight.getKey();
+		}
+		docTerms[doc] = terms;
+		size++;
+	}
+
+	public synchronized void removePost(int id) {
+		Integer doc = docs.get(id);
+		if (doc == null || docTerms[doc] == null) {
+			return;
+		}
+		String[] terms = docTerms[doc];
+		for (int i = 0; i < terms.length; i++) {
+			Postings posts = postings.get(terms[i]);
+			posts.remove(doc);
+			if (posts.size == 0) {
+				postings.remove(terms[i]);
+			}
+		}
+		docTerms[doc] = null;
+		size--;
+	}
+
+	public synchronized boolean contains(int id) {
+		Integer doc = docs.get(id);
+		return doc != null && docTerms[doc] != null;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized void clear() {
+		postings.clear();
+		docs.clear();
+		postIds = new int[64];
+		docTerms = new String[64][];
+		docCount = 0;
+		size = 0;
+	}
+
+	/**
+	 * @return ids of the matching posts, best match first.
+	 */
+	public synchronized List<Integer> search(String query, int limit) {
+		ArrayList<String> words = new ArrayList<String>();
+		split(query, words);
+		if (words.isEmpty() || limit <= 0) {
+			return new ArrayList<Integer>();
+		}
+		boolean prefix = !Character.isWhitespace(query
+				.charAt(query.length() - 1));
+
+		// matched[doc] is the number of words the post matched so far, a post
+		// only scores for a word if it matched all the previous ones
+		final float[] scores = new float[docCount];
+		float[] wordScores = new float[docCount];
+		int[] matched = new int[docCount];
+		for (int i = 0; i < words.size(); i++) {
+			List<Postings> terms;
+			if (prefix && i == words.size() - 1) {
+				terms = prefixTerms(words.get(i));
+			} else {
+				Postings posts = postings.get(words.get(i));
+				terms = posts == null ? Collections.<Postings> emptyList()
+						: Collections.singletonList(posts);
+			}
+			if (terms.isEmpty()) {
+				return new ArrayList<Integer>();
+			}
+
+			for (int t = 0; t < terms.size(); t++) {
+				Postings posts = terms.get(t);
+				float idf = (float) Math.log(1 + (double) size / posts.size);
+				for (int p = 0; p < posts.size; p++) {
+					int doc = posts.docs[p];
+					float score = posts.weights[p] * idf;
+					if (matched[doc] == i) {
+						matched[doc] = i + 1;
+						wordScores[doc] = score;
+						scores[doc] += score;
+					} else if (matched[doc] == i + 1 && score > wordScores[doc]) {
+						// another word with the prefix, the best one counts
+						scores[doc] += score - wordScores[doc];
+						wordScores[doc] = score;
+					}
+				}
+			}
+		}
+
+		// keep the best results in a min heap
+		PriorityQueue<Integer> best = new PriorityQueue<Integer>(limit + 1,
+				new Comparator<Integer>() {
+					@Override
+					public int compare(Integer lhs, Integer rhs) {
+						int cmp = Float.compare(scores[lhs], scores[rhs]);
+						// newer posts have higher ids
+						return cmp != 0 ? cmp : postIds[lhs] - postIds[rhs];
+					}
+				});
+		for (int doc = 0; doc < docCount; doc++) {
+			if (matched[doc] == words.size()) {
+				best.add(doc);
+				if (best.size() > limit) {
+					best.poll();
+				}
+			}
+		}
+
+		Integer[] ids = new Integer[best.size()];
+		for (int i = ids.length - 1; i >= 0; i--) {
+			ids[i] = postIds[best.poll()];
+		}
+		return new ArrayList<Integer>(Arrays.asList(ids));
+	}
+
+	/**
+	 * @return the postings of the words starting with the prefix, at most
+	 *         {@link #MAX_PREFIX_TERMS}
+	 */
+	private List<Postings> prefixTerms(String prefix) {
+		List<Postings> terms = new ArrayList<Postings>(postings.subMap(prefix,
+				prefix + Character.MAX_VALUE).values());
+		if (terms.size() > MAX_PREFIX_TERMS) {
+			Collections.sort(terms, new Comparator<Postings>() {
+				@Override
+				public int compare(Postings lhs, Postings rhs) {
+					return rhs.size - lhs.size;
+				}
+			});
+			terms = terms.subList(0, MAX_PREFIX_TERMS);
+		}
+		return terms;
+	}
+
+	private int docFor(int id) {
+		Integer doc = docs.get(id);
+		if (doc != null) {
+			return doc;
+		}
+		if (docCount == postIds.length) {
+			int[] newPostIds = new int[docCount * 2];
+			System.arraycopy(postIds, 0, newPostIds, 0, docCount);
+			postIds = newPostIds;
+			String[][] newDocTerms = new String[docCount * 2][];
+			System.arraycopy(docTerms, 0, newDocTerms, 0, docCount);
+			docTerms = newDocTerms;
+		}
+		postIds[docCount] = id;
+		docs.put(id, docCount);
+		return docCount++;
+	}
+
+	private static void tokenize(String text, float weight,
+			HashMap<String, Float> weights) {
+		if (text == null) {
+			return;
+		}
+		ArrayList<String> words = new ArrayList<String>();
+		split(ENTITIES.matcher(TAGS.matcher(text).replaceAll(" ")).replaceAll(
+				" "), words);
+		for (int i = 0; i < words.size(); i++) {
+			Float current = weights.get(words.get(i));
+			weights.put(words.get(i), current == null ? weight : current
+					+ weight);
+		}
+	}
+
+	/**
+	 * Splits the text on anything that is not a letter or a digit, single
+	 * characters are dropped.
+	 */
+	private static void split(String text, List<String> words) {
+		String lower = text.toLowerCase(Locale.US);
+		int start = -1;
+		for (int i = 0; i <= lower.length(); i++) {
+			boolean letter = i < lower.length()
+					&& Character.isLetterOrDigit(lower.charAt(i));
+			if (letter && start == -1) {
+				start = i;
+			} else if (!letter && start != -1) {
+				if (i - start > 1) {
+					words.add(lower.substring(start, i));
+				}
+				start = -1;
+			}
+		}
+	}
+
+	private static class Postings {
+		private int[] docs = new int[4];
+		private float[] weights = new float[4];
+		private int size;
+
+		private void add(int doc, float weight) {
+			if (size == docs.length) {
+				int[] newDocs = new int[size * 2];
+				System.arraycopy(docs, 0, newDocs, 0, size);
+				docs = newDocs;
+				float[] newWeights = new float[size * 2];
+				System.arraycopy(weights, 0, newWeights, 0, size);
+				weights = newWeights;
+			}
+			docs[size] = doc;
+			weights[size] = weight;
+			size++;
+		}
+
+		private void remove(int doc) {
+			for (int i = 0; i < size; i++) {
+				if (docs[i] == doc) {
+					size--;
+					docs[i] = docs[size];
+					weights[i] = weights[size];
+					return;
+				}
+			}
+		}
+	}
+}
@@ -1,5 +1,11 @@
 package com.jogeeks.wordpress;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -7,71 +13,183 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 
+/**
+ * The logged in user's session. Every WPSession reads the same in memory
+ * snapshot of the session, loaded from the shared preferences once per
+ * process. Changes replace the snapshot as a whole and are written to the
+ * preferences in the background, several changes in a row in one commit.
+ */
 public class WPSession extends JSONObject {
-	private int status;
+	static final String PREFERENCES_NAME = "libdroid-wordpress-session";
+
+	private static final String LOGGED_OUT = "-1";
+
+	private static final ExecutorService persistExecutor = Executors
+			.newSingleThreadExecutor();
+
+	private static volatile Snapshot snapshot;
+	private static Context appContext;
+	// true while a commit of the snapshot is queued
+	private static boolean persistScheduled;
 
-	private Context context;
+	private int status;
 
-	private SharedPreferences preferences;
-	private SharedPreferences.Editor editor;
 	private WPUser currentUser;
 
+	/**
+	 * An immutable copy of the session's preferences.
+	 */
+	private static final class Snapshot {
+		private final Map<String, ?> values;
+
+		Snapshot(Map<String, ?> values) {
+			this.values = Collections.unmodifiableMap(values);
+		}
+
+		String getString(String key) {
+			Object value = values.get(key);
+			return value instanceof String ? (String) value : LOGGED_OUT;
+		}
+
+		int getInt(String key) {
+			Object value = values.get(key);
+			return value instanceof Integer ? (Integer) value : -1;
+		}
+	}
+
 	/**
 	 * Pass context to initialize
 	 * 
 	 * @param context
 	 */
 	public WPSession(Context context) {
-		this.context = context;
-		preferences = this.context.getSharedPreferences(
-				"libdroid-wordpress-session", 0);
-		editor = preferences.edit();
+		synchronized (WPSession.class) {
+			if (appContext == null) {
+				appContext = context.getApplicationContext();
+			}
+		}
+	}
+
+	/**
+	 * Loads the session in the background so the first read on the UI thread
+	 * doesn't wait for the disk.
+	 */
+	static void preload(Context context) {
+		new WPSession(context);
+		persistExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				snapshot();
+			}
+		});
+	}
 
+	private static Snapshot snapshot() {
+		Snapshot current = snapshot;
+		if (current != null) {
+			return current;
+		}
+		synchronized (WPSession.class) {
+			if (snapshot == null) {
+				snapshot = new Snapshot(new HashMap<String, Object>(
+						preferences().getAll()));
+			}
+			return snapshot;
+		}
 	}
 
-	protected void setSession(JSONObject userdata) throws JSONException {
-		JSONObject userObject = userdata.getJSONObject("user");
+	private static SharedPreferences preferences() {
+		return appContext.getSharedPreferences(PREFERENCES_NAME, 0);
+	}
+
+	/**
+	 * Swaps in a snapshot with the changes and queues a commit, the changes
+	 * are visible to every WPSession right away.
+	 */
+	private static void write(Map<String, Object> changes) {
+		synchronized (WPSession.class) {
+			HashMap<String, Object> values = new HashMap<String, Object>(
+					snapshot().values);
+			values.putAll(changes);
+			snapshot = new Snapshot(values);
+
+			if (persistScheduled) {
+				return;
+			}
+			persistScheduled = true;
+		}
 
-		editor.putString("cookie", userdata.getString("cookie"));
-		editor.putInt("id", userObject.getInt("id"));
-		editor.putString("username", userObject.getString("username"));
-		editor.putString("nicename", userObject.getString("nicename"));
-		editor.putString("email", userObject.getString("email"));
-		editor.putString("url", userObject.getString("url"));
-		editor.putString("registered", userObject.getString("registered"));
-		editor.putString("displayname", userObject.getString("displayname"));
-		editor.putString("firstname", userObject.getString("firstname"));
-		editor.putString("lastname", userObject.getString("lastname"));
-		editor.putString("nickname", userObject.getString("nickname"));
-		editor.putString("description", userObject.getString("description"));
-		editor.putString("avatar", userObject.getString("avatar"));
-		editor.putString("capabilities",
-				userObject.getJSONObject("capabilities").toString());
+		persistExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Snapshot current;
+				synchronized (WPSession.class) {
+					persistScheduled = false;
+					current = snapshot;
+				}
+				persist(current);
+			}
+		});
+	}
 
+	private static void persist(Snapshot current) {
+		SharedPreferences.Editor editor = preferences().edit();
+		editor.clear();
+		for (Map.Entry<String, ?> value : current.values.entrySet()) {
+			if (value.getValue() instanceof Integer) {
+				editor.putInt(value.getKey(), (Integer) value.getValue());
+			} else if (value.getValue() instanceof String) {
+				editor.putString(value.getKey(), (String) value.getValue());
+			}
+		}
 		editor.commit();
 	}
 
+	protected void setSession(JSONObject userdata) throws JSONException {
+		JSONObject userObject = userdata.getJSONObject("user");
+
+		HashMap<String, Object> values = new HashMap<String, Object>();
+		values.put("cookie", userdata.getString("cookie"));
+		values.put("id", userObject.getInt("id"));
+		values.put("username", userObject.getString("username"));
+		values.put("nicename", userObject.getString("nicename"));
+		values.put("email", userObject.getString("email"));
+		values.put("url", userObject.getString("url"));
+		values.put("registered", userObject.getString("registered"));
+		values.put("displayname", userObject.getString("displayname"));
+		values.put("firstname", userObject.getString("firstname"));
+		values.put("lastname", userObject.getString("lastname"));
+		values.put("nickname", userObject.getString("nickname"));
+		values.put("description", userObject.getString("description"));
+		values.put("avatar", userObject.getString("avatar"));
+		values.put("capabilities", userObject.getJSONObject("capabilities")
+				.toString());
+
+		write(values);
+	}
+
 	private Bundle prepareUserBundle() {
+		Snapshot session = snapshot();
 		Bundle userData = new Bundle();
-		userData.putInt("id", getId());
-		userData.putString("cookie", getCookie());
-		userData.putString("username", getUsername());
-		userData.putString("nicename", getNicename());
-		userData.putString("url", getUrl());
-		userData.putString("email", getEmail());
-		userData.putString("registerd", getRegistrationDate());
-		userData.putString("display_name", getDisplayname());
-		userData.putString("firstname", getFirstname());
-		userData.putString("lastname", getLastname());
-		userData.putString("nickname", getNickname());
-		userData.putString("desc", getDescription());
-		userData.putString("avatar", getAvatar());
-		userData.putString("capabilities", getCapabilities());
+		userData.putInt("id", session.getInt("id"));
+		userData.putString("cookie", session.getString("cookie"));
+		userData.putString("username", session.getString("username"));
+		userData.putString("nicename", session.getString("nicename"));
+		userData.putString("url", session.getString("url"));
+		userData.putString("email", session.getString("email"));
+		userData.putString("registerd", session.getString("registered"));
+		userData.putString("display_name", session.getString("displayname"));
+		userData.putString("firstname", session.getString("firstname"));
+		userData.putString("lastname", session.getString("lastname"));
+		userData.putString("nickname", session.getString("nickname"));
+		userData.putString("desc", session.getString("description"));
+		userData.putString("avatar", session.getString("avatar"));
+		userData.putString("capabilities", session.getString("capabilities"));
 		return userData;
 	}
 
 	public WPUser getCurrentUser() {
-		currentUser = new WPUser(prepareUserBundle());
+		currentUser = WPBundles.getUser(prepareUserBundle());
 		return currentUser;
 	}
 
@@ -103,22 +221,23 @@ public class WPSession extends JSONObject {
 	}
 
 	public void logOut() {
-		editor.putString("cookie", "-1");
-		editor.putInt("id", -1);
-		editor.putString("username", "-1");
-		editor.putString("nicename", "-1");
-		editor.putString("email", "-1");
-		editor.putString("url", "-1");
-		editor.putString("registered", "-1");
-		editor.putString("displayname", "-1");
-		editor.putString("firstname", "-1");
-		editor.putString("lastname", "-1");
-		editor.putString("nickname", "-1");
-		editor.putString("description", "-1");
-		editor.putString("avatar", "-1");
-		editor.putString("capabilities", "-1");
-
-		editor.commit();
+		HashMap<String, Object> values = new HashMap<String, Object>();
+		values.put("cookie", LOGGED_OUT);
+		values.put("id", -1);
+		values.put("username", LOGGED_OUT);
+		values.put("nicename", LOGGED_OUT);
+		values.put("email", LOGGED_OUT);
+		values.put("url", LOGGED_OUT);
+		values.put("registered", LOGGED_OUT);
+		values.put("displayname", LOGGED_OUT);
+		values.put("firstname", LOGGED_OUT);
+		values.put("lastname", LOGGED_OUT);
+		values.put("nickname", LOGGED_OUT);
+		values.put("description", LOGGED_OUT);
+		values.put("avatar", LOGGED_OUT);
+		values.put("capabilities", LOGGED_OUT);
+
+		write(values);
 	}
 
 	/**
@@ -138,103 +257,110 @@ public class WPSession extends JSONObject {
 	 * Returns WordPress cookie, -1 if failed
 	 */
 	public String getCookie() {
-		return preferences.getString("cookie", "-1");
+		return snapshot().getString("cookie");
 	}
 
 	/**
 	 * Returns avatar url, -1 if failed
 	 */
 	public String getAvatar() {
-		return preferences.getString("avatar", "-1");
+		return snapshot().getString("avatar");
 	}
 
 	/**
 	 * Returns capabilities as JSONObject, -1 if failed
 	 */
 	private String getCapabilities() {
-		return preferences.getString("capabilities", "-1");
+		return snapshot().getString("capabilities");
 	}
 
 	/**
 	 * Use to set/update user's cookie
 	 */
 	protected void setCookie(String cookie) {
-		editor.putString("cookie", cookie);
+		HashMap<String, Object> values = new HashMap<String, Object>();
+		values.put("cookie", cookie);
+		write(values);
 	}
 
 	/**
 	 * Returns authenticated user ID
 	 */
 	public int getId() {
-		return preferences.getInt("id", -1);
+		return snapshot().getInt("id");
 	}
 
 	/**
 	 * Returns user name
 	 */
 	public String getUsername() {
-		return preferences.getString("username", "-1");
+		return snapshot().getString("username");
 	}
 
 	public String getNicename() {
-		return preferences.getString("nicename", "-1");
+		return snapshot().getString("nicename");
 	}
 
 	/**
 	 * Returns user's email
 	 */
 	public String getEmail() {
-		return preferences.getString("email", "-1");
+		return snapshot().getString("email");
 	}
 
 	public String getUrl() {
-		return preferences.getString("url", "-1");
+		return snapshot().getString("url");
 	}
 
 	public String getRegistrationDate() {
-		return preferences.getString("registered", "-1");
+		return snapshot().getString("registered");
 	}
 
 	public String getDisplayname() {
-		return preferences.getString("displayname", "-1");
+		return snapshot().getString("displayname");
 	}
 
 	public String getFirstname() {
-		return preferences.getString("firstname", "-1");
+		return snapshot().getString("firstname");
 	}
 
 	public String getLastname() {
-		return preferences.getString("firstname", "-1");
+		return snapshot().getString("lastname");
 	}
 
 	public String getNickname() {
-		return preferences.getString("nickname", "-1");
+		return snapshot().getString("nickname");
 	}
 
 	public String getDescription() {
-		return preferences.getString("description", "-1");
+		return snapshot().getString("description");
 	}
 
 	protected void setNonce(String nonce) {
-		editor.putString("nonce", nonce);
+		HashMap<String, Object> values = new HashMap<String, Object>();
+		values.put("nonce", nonce);
+		write(values);
 	}
 
 	public String getNonce() {
-		return preferences.getString("nonce", "-1");
+		return snapshot().getString("nonce");
 	}
 
 	public void updateUserData(WPUser newData) {
-		editor.putInt("id", newData.getId());
-		editor.putString("username", newData.getUsername());
-		editor.putString("nicename", newData.getNicename());
-		editor.putString("email", newData.getEmail());
-		editor.putString("url", newData.getUrl());
-		editor.putString("registered", newData.getRegistered());
-		editor.putString("displayname", newData.getDisplayname());
-		editor.putString("firstname", newData.getFirstname());
-		editor.putString("lastname", newData.getLastname());
-		editor.putString("nickname", newData.getNickname());
-		editor.putString("description", newData.getDescription());
+		HashMap<String, Object> values = new HashMap<String, Object>();
+		values.put("id", newData.getId());
+		values.put("username", newData.getUsername());
+		values.put("nicename", newData.getNicename());
+		values.put("email", newData.getEmail());
+		values.put("url", newData.getUrl());
+		values.put("registered", newData.getRegistered());
+		values.put("displayname", newData.getDisplayname());
+		values.put("firstname", newData.getFirstname());
+		values.put("lastname", newData.getLastname());
+		values.put("nickname", newData.getNickname());
+		values.put("description", newData.getDescription());
+
+		write(values);
 	}
 
 }
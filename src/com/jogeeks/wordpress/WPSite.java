@@ -0,0 +1,77 @@
+package com.jogeeks.wordpress;
+
+/**
+ * The WordPress site a Wordpress instance talks to: its URL and the json-api
+ * base path. Every instance has its own, so one process can follow several
+ * sites at once.
+ */
+public class WPSite {
+
+	private final String url;
+	private final String api;
+	private final String baseUrl;
+
+	/**
+	 * @param url
+	 *            the site URL, e.g. "http://blog.example.com".
+	 * @param api
+	 *            the json-api base, "api" unless the plugin settings changed
+	 *            it.
+	 */
+	public WPSite(String url, String api) {
+		while (url.endsWith("/")) {
+			url = url.substring(0, url.length() - 1);
+		}
+		this.url = url;
+		this.api = api;
+		baseUrl = url + "/" + api + "/";
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getApi() {
+		return api;
+	}
+
+	/**
+	 * @return the URL the controller paths are relative to, ends with "/".
+	 */
+	public String getBaseUrl() {
+		return baseUrl;
+	}
+
+	/**
+	 * @return the host name of the site, e.g. "blog.example.com".
+	 */
+	public String getHost() {
+		String host = baseUrl.replaceFirst("^[a-zA-Z]+://", "");
+		int end = host.indexOf('/');
+		return end == -1 ? host : host.substring(0, end);
+	}
+
+	/**
+	 * @return a name for the files of the site (response cache, post store),
+	 *         made of the host and path of the base URL.
+	 */
+	public String getKey() {
+		String key = baseUrl.replaceFirst("^[a-zA-Z]+://", "");
+		return key.replaceAll("[^A-Za-z0-9._-]+", "_");
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof WPSite && ((WPSite) o).baseUrl.equals(baseUrl);
+	}
+
+	@Override
+	public int hashCode() {
+		return baseUrl.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return baseUrl;
+	}
+}
@@ -1,10 +1,10 @@
 package com.jogeeks.wordpress;
 
+import java.io.IOException;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import android.os.Bundle;
-
 public class WPTag {
 
 	static final String PAGE_TAG_URL = "get_TAG_index";
@@ -33,12 +33,25 @@ public class WPTag {
 		}
 	}
 
-	public WPTag(Bundle bundle) {
-		id = bundle.getInt("id");
-		slug = bundle.getString("slug");
-		title = bundle.getString("title");
-		description = bundle.getString("desc");
-		postCount = bundle.getInt("post_count");
+	WPTag(WPJsonReader reader) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("id")) {
+				setId(reader.nextInt());
+			} else if (name.equals("slug")) {
+				setSlug(reader.nextString());
+			} else if (name.equals("title")) {
+				setTitle(reader.nextString());
+			} else if (name.equals("description")) {
+				setDescription(reader.nextString());
+			} else if (name.equals("post_count")) {
+				setPostCount(reader.nextInt());
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
 	}
 
 	public int getId() {
@@ -49,53 +62,69 @@ public class WPTag {
 		this.id = id;
 	}
 
-	public String getSlug() {
+	public synchronized String getSlug() {
 		return slug;
 	}
 
-	public void setSlug(String slug) {
+	public synchronized void setSlug(String slug) {
 		this.slug = slug;
 	}
 
-	public String getTitle() {
+	public synchronized String getTitle() {
 		return title;
 	}
 
-	private void setTitle(String title) {
+	synchronized void setTitle(String title) {
 		this.title = title;
 	}
 
-	public String getDescription() {
+	public synchronized String getDescription() {
 		return description;
 	}
 
-	public void setDescription(String description) {
+	public synchronized void setDescription(String description) {
 		this.description = description;
 	}
 
-	public int getPostCount() {
+	public synchronized int getPostCount() {
 		return postCount;
 	}
 
-	public void setPostCount(int postCount) {
+	public synchronized void setPostCount(int postCount) {
 		this.postCount = postCount;
 	}
 
-	public static Bundle getBundle(WPTag tag) {
-		Bundle tagBundle = new Bundle();
-		/*
-		 * private int id; private String slug; private String title; private
-		 * String description; private int postCount;
-		 */
+	/**
+	 * Takes the values of a newer copy of this tag.
+	 * 
+	 * @see WPCategory#update(WPCategory)
+	 */
+	synchronized void update(WPTag newer) {
+		if (newer.slug != null) {
+			slug = newer.slug;
+		}
+		if (newer.title != null) {
+			title = newer.title;
+		}
+		if (newer.description != null) {
+			description = newer.description;
+		}
+		postCount = newer.postCount;
+	}
 
-		tagBundle.putInt("id", tag.getId());
-		tagBundle.putString("slug", tag.getSlug());
-		tagBundle.putString("title", tag.getSlug());
-		tagBundle.putString("desc", tag.getDescription());
-		tagBundle.putInt("post_count", tag.getPostCount());
+	/**
+	 * Inverse of {@link #WPTag(JSONObject)}, in the json-api format.
+	 */
+	public static JSONObject getJSON(WPTag tag) throws JSONException {
+		JSONObject tagJson = new JSONObject();
 
-		return tagBundle;
+		tagJson.put("id", tag.getId());
+		tagJson.put("slug", tag.getSlug());
+		tagJson.put("title", tag.getTitle());
+		tagJson.put("description", tag.getDescription());
+		tagJson.put("post_count", tag.getPostCount());
 
+		return tagJson;
 	}
 
 }
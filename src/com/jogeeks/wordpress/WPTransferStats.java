@@ -0,0 +1,90 @@
+package com.jogeeks.wordpress;
+
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+/**
+ * The bytes the responses took over the wire against the bytes of their
+ * decoded bodies, per endpoint (e.g. "get_recent_posts",
+ * "posts/create_post"). The ratio shows what compression saves on each.
+ */
+public class WPTransferStats {
+
+	private static final class Counts {
+		long responses;
+		long wire;
+		long decoded;
+	}
+
+	private final TreeMap<String, Counts> endpoints = new TreeMap<String, Counts>();
+
+	/**
+	 * Counts a response of endpoint whose body was read.
+	 */
+	synchronized void record(String endpoint, long wireBytes,
+			long decodedBytes) {
+		Counts counts = endpoints.get(endpoint);
+		if (counts == null) {
+			counts = new Counts();
+			endpoints.put(endpoint, counts);
+		}
+		counts.responses++;
+		counts.wire += wireBytes;
+		counts.decoded += decodedBytes;
+	}
+
+	/**
+	 * @return the endpoints that answered, sorted.
+	 */
+	public synchronized ArrayList<String> getEndpoints() {
+		return new ArrayList<String>(endpoints.keySet());
+	}
+
+	public synchronized long getResponseCount(String endpoint) {
+		Counts counts = endpoints.get(endpoint);
+		return counts != null ? counts.responses : 0;
+	}
+
+	public synchronized long getWireBytes(String endpoint) {
+		Counts counts = endpoints.get(endpoint);
+		return counts != null ? counts.wire : 0;
+	}
+
+	public synchronized long getDecodedBytes(String endpoint) {
+		Counts counts = endpoints.get(endpoint);
+		return counts != null ? counts.decoded : 0;
+	}
+
+	/**
+	 * @return the decoded bytes per wire byte of endpoint, 1 without
+	 *         compression, 0 before it answered.
+	 */
+	public synchronized double getRatio(String endpoint) {
+		Counts counts = endpoints.get(endpoint);
+		return counts == null || counts.wire == 0 ? 0
+				: (double) counts.decoded / counts.wire;
+	}
+
+	public synchronized void reset() {
+		endpoints.clear();
+	}
+
+	/**
+	 * @return one line per endpoint, e.g. "get_recent_posts: 20 responses,
+	 *         61440 bytes on the wire, 266240 decoded (4.3x)".
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (String endpoint : endpoints.keySet()) {
+			Counts counts = endpoints.get(endpoint);
+			builder.append(endpoint).append(": ").append(counts.responses)
+					.append(" responses, ").append(counts.wire)
+					.append(" bytes on the wire, ").append(counts.decoded)
+					.append(" decoded (")
+					.append(String.format("%.1f", getRatio(endpoint)))
+					.append("x)\n");
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,121 @@
+package com.jogeeks.wordpress;
+
+import java.io.IOException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
+
+import com.loopj.android.http.RequestParams;
+import com.loopj.android.http.ResponseHandlerInterface;
+
+/**
+ * How the requests of Wordpress reach the network. A transport builds the
+ * HTTP request, runs it off the calling thread and reports to a loopj
+ * ResponseHandlerInterface the way AsyncHttpClient does: setRequestURI and
+ * setRequestHeaders, sendStartMessage, then sendResponseMessage with a
+ * response whose entity streams the body, or sendFailureMessage(0, null,
+ * null, exception), then sendFinishMessage. The response handlers, the
+ * response cache and the streaming parser work the same on every transport.
+ *
+ * A transport asks for {@link WPDecodingEntity#ACCEPT_ENCODING} and hands the
+ * body over as it came, WPRequest decodes it while the handler reads it.
+ *
+ * {@link WPAsyncHttpTransport}, on android-async-http, is the default;
+ * {@link WPUrlConnectionTransport} runs on HttpURLConnection.
+ */
+public interface WPTransport {
+
+	/**
+	 * Sends request, the callbacks of handler come from another thread.
+	 *
+	 * @return the call, to cancel it.
+	 */
+	Call execute(Request request, ResponseHandlerInterface handler);
+
+	/**
+	 * A request sent by a transport.
+	 */
+	public interface Call {
+
+		/**
+		 * Cancels the call if it hasn't started.
+		 *
+		 * @param interrupt
+		 *            true to also abort it while it runs, its handler then
+		 *            gets no response. False lets a running call finish and
+		 *            report its response, which is read to the end and frees
+		 *            the connection for the next request.
+		 */
+		void cancel(boolean interrupt);
+	}
+
+	/**
+	 * A GET or a POST: the URL, extra headers and the params, sent as the
+	 * query string of a GET or as the form (multipart with files) of a POST.
+	 */
+	public static class Request {
+
+		private final boolean post;
+		private final String url;
+		private final Header[] headers;
+		private final RequestParams params;
+
+		/**
+		 * @param headers
+		 *            may be null.
+		 * @param params
+		 *            may be null.
+		 */
+		public Request(boolean post, String url, Header[] headers,
+				RequestParams params) {
+			this.post = post;
+			this.url = url;
+			this.headers = headers;
+			this.params = params;
+		}
+
+		public boolean isPost() {
+			return post;
+		}
+
+		/**
+		 * @return the URL without the params.
+		 */
+		public String getUrl() {
+			return url;
+		}
+
+		public Header[] getHeaders() {
+			return headers;
+		}
+
+		public RequestParams getParams() {
+			return params;
+		}
+
+		/**
+		 * @return the URL of a GET, with the params as query string. It is
+		 *         built like AsyncHttpClient builds it, which the response
+		 *         cache keys on.
+		 */
+		public String getUrlWithQuery() throws IOException {
+			String query = url.replace(" ", "%20");
+			if (params == null) {
+				return query;
+			}
+			return query + (query.contains("?") ? "&" : "?")
+					+ EntityUtils.toString(params.getEntity(null));
+		}
+
+		/**
+		 * @return the body of a POST, null without params.
+		 * @param handler
+		 *            told the upload progress of a multipart body.
+		 */
+		public HttpEntity getBody(ResponseHandlerInterface handler)
+				throws IOException {
+			return params == null ? null : params.getEntity(handler);
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package com.jogeeks.wordpress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+
+import com.loopj.android.http.ResponseHandlerInterface;
+
+/**
+ * A transport on HttpURLConnection. Connections are kept alive and pooled by
+ * the platform, up to the http.maxConnections system property (5) idle ones
+ * per host; on Android 4.4 and later the pool is the one of the OkHttp engine
+ * behind HttpURLConnection. Gzip is asked for explicitly, so the connection
+ * hands the body over as it came. The calls run on the executor given, one
+ * thread each.
+ */
+public class WPUrlConnectionTransport implements WPTransport {
+
+	public static final int DEFAULT_TIMEOUT = 10 * 1000;
+
+	private static final Header[] NO_HEADERS = new Header[0];
+
+	private final ExecutorService executor;
+	private volatile int connectTimeout = DEFAULT_TIMEOUT;
+	private volatile int readTimeout = DEFAULT_TIMEOUT;
+
+	public WPUrlConnectionTransport(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * @param connectTimeout
+	 *            milliseconds to connect, 0 waits forever.
+	 * @param readTimeout
+	 *            milliseconds to wait for the next bytes of the response.
+	 */
+	public void setTimeouts(int connectTimeout, int readTimeout) {
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	@Override
+	public Call execute(Request request, ResponseHandlerInterface handler) {
+		UrlCall call = new UrlCall(request, handler);
+		call.future = executor.submit(call);
+		return call;
+	}
+
+	private final class UrlCall implements Runnable, Call {
+
+		private final Request request;
+		private final ResponseHandlerInterface handler;
+		volatile Future<?> future;
+		private volatile HttpURLConnection connection;
+		private volatile boolean aborted;
+		// the body of the response, closed once the handler is done
+		private InputStream in;
+
+		UrlCall(Request request, ResponseHandlerInterface handler) {
+			this.request = request;
+			this.handler = handler;
+		}
+
+		@Override
+		public void cancel(boolean interrupt) {
+			Future<?> running = future;
+			if (running != null) {
+				running.cancel(interrupt);
+			}
+			if (interrupt) {
+				aborted = true;
+				HttpURLConnection open = connection;
+				if (open != null) {
+					open.disconnect();
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			handler.sendStartMessage();
+			try {
+				HttpResponse response = connect();
+				if (!aborted && !Thread.currentThread().isInterrupted()) {
+					handler.sendResponseMessage(response);
+				}
+			} catch (IOException e) {
+				if (!aborted) {
+					handler.sendFailureMessage(0, null, null, e);
+				}
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException e) {
+						// the connection is dropped from the pool
+					}
+				}
+				handler.sendFinishMessage();
+			}
+		}
+
+		private HttpResponse connect() throws IOException {
+			String url = request.isPost() ? request.getUrl() : request
+					.getUrlWithQuery();
+			try {
+				handler.setRequestURI(new URI(url));
+			} catch (URISyntaxException e) {
+				throw new MalformedURLException(e.getMessage());
+			}
+			Header[] headers = request.getHeaders();
+			handler.setRequestHeaders(headers != null ? headers : NO_HEADERS);
+
+			HttpURLConnection connection = (HttpURLConnection) new URL(url)
+					.openConnection();
+			this.connection = connection;
+			if (aborted) {
+				throw new IOException("cancelled");
+			}
+			connection.setConnectTimeout(connectTimeout);
+			connection.setReadTimeout(readTimeout);
+			connection.setUseCaches(false);
+			connection.setRequestProperty("Accept-Encoding",
+					WPDecodingEntity.ACCEPT_ENCODING);
+			if (headers != null) {
+				for (Header header : headers) {
+					connection.addRequestProperty(header.getName(),
+							header.getValue());
+				}
+			}
+			if (request.isPost()) {
+				writeBody(connection);
+			}
+
+			int status = connection.getResponseCode();
+			if (status == -1) {
+				throw new IOException("not an HTTP response: " + url);
+			}
+			BasicHttpResponse response = new BasicHttpResponse(
+					new BasicStatusLine(HttpVersion.HTTP_1_1, status,
+							connection.getResponseMessage()));
+			for (Map.Entry<String, List<String>> field : connection
+					.getHeaderFields().entrySet()) {
+				// the status line is the field without a name
+				if (field.getKey() != null) {
+					for (String value : field.getValue()) {
+						response.addHeader(field.getKey(), value);
+					}
+				}
+			}
+			in = status >= 400 ? connection.getErrorStream()
+					: connection.getInputStream();
+			if (in != null) {
+				BasicHttpEntity entity = new BasicHttpEntity();
+				entity.setContent(in);
+				entity.setContentLength(connection.getContentLength());
+				entity.setContentType(connection.getContentType());
+				entity.setContentEncoding(connection.getContentEncoding());
+				response.setEntity(entity);
+			}
+			return response;
+		}
+
+		private void writeBody(HttpURLConnection connection)
+				throws IOException {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			HttpEntity body = request.getBody(handler);
+			if (body == null) {
+				connection.setFixedLengthStreamingMode(0);
+				connection.getOutputStream().close();
+				return;
+			}
+			if (body.getContentType() != null) {
+				connection.setRequestProperty("Content-Type", body
+						.getContentType().getValue());
+			}
+			long length = body.getContentLength();
+			if (length >= 0 && length <= Integer.MAX_VALUE) {
+				connection.setFixedLengthStreamingMode((int) length);
+			} else {
+				connection.setChunkedStreamingMode(0);
+			}
+			OutputStream out = connection.getOutputStream();
+			try {
+				body.writeTo(out);
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
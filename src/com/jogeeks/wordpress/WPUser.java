@@ -1,10 +1,10 @@
 package com.jogeeks.wordpress;
 
+import java.util.Map;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import android.os.Bundle;
-
 public class WPUser {
 
 	public static String ADMINISTRATOR = "administrator";
@@ -32,33 +32,11 @@ public class WPUser {
 
 	}
 
-	public WPUser(Bundle bundle) {
-
-		id = bundle.getInt("id");
-		username = bundle.getString("username");
-		nicename = bundle.getString("nicename");
-		url = bundle.getString("url");
-		email = bundle.getString("email");
-		registered = bundle.getString("registerd");
-		displayname = bundle.getString("display_name");
-		firstname = bundle.getString("firstname");
-		lastname = bundle.getString("lastname");
-		nickname = bundle.getString("nickname");
-		description = bundle.getString("desc");
-		avatar = bundle.getString("avatar");
-		try {
-			capabilities = new WPRole(new JSONObject(
-					bundle.getString("capabilities")));
-		} catch (JSONException e) {
-		} catch (NullPointerException e) {
-		}
-	}
-
 	public String getAvatar() {
 		return avatar;
 	}
 
-	public String getDescription() {
+	public synchronized String getDescription() {
 		return description;
 	}
 
@@ -70,7 +48,7 @@ public class WPUser {
 		return email;
 	}
 
-	public String getFirstname() {
+	public synchronized String getFirstname() {
 		return firstname;
 	}
 
@@ -78,7 +56,7 @@ public class WPUser {
 		return id;
 	}
 
-	public String getLastname() {
+	public synchronized String getLastname() {
 		return lastname;
 	}
 
@@ -86,7 +64,7 @@ public class WPUser {
 		return nicename;
 	}
 
-	public String getNickname() {
+	public synchronized String getNickname() {
 		return nickname;
 	}
 
@@ -94,7 +72,7 @@ public class WPUser {
 		return registered;
 	}
 
-	public String getUrl() {
+	public synchronized String getUrl() {
 		return url;
 	}
 
@@ -138,7 +116,7 @@ public class WPUser {
 		capabilities.contributor = s;
 	}
 
-	public void setDescription(String description) {
+	public synchronized void setDescription(String description) {
 		this.description = description;
 	}
 
@@ -154,7 +132,7 @@ public class WPUser {
 		this.email = email;
 	}
 
-	public void setFirstname(String firstname) {
+	public synchronized void setFirstname(String firstname) {
 		this.firstname = firstname;
 	}
 
@@ -162,7 +140,7 @@ public class WPUser {
 		this.id = id;
 	}
 
-	public void setLastname(String lastname) {
+	public synchronized void setLastname(String lastname) {
 		this.lastname = lastname;
 	}
 
@@ -170,7 +148,7 @@ public class WPUser {
 		this.nicename = nicename;
 	}
 
-	public void setNickname(String nickname) {
+	public synchronized void setNickname(String nickname) {
 		this.nickname = nickname;
 	}
 
@@ -182,82 +160,82 @@ public class WPUser {
 		capabilities.subscriber = s;
 	}
 
-	public void setUrl(String url) {
+	public synchronized void setUrl(String url) {
 		this.url = url;
 	}
 
 	/**
 	 * @param userData
-	 *            pass a bundle with all of the required values: username,
+	 *            pass a map with all of the required values: username,
 	 *            nicename, email, url, registered, displayname, firstname,
 	 *            lastname, nickname, description
 	 * 
 	 * @throws WPMissingDataException
 	 *             if any of the data fields is missing.
 	 */
-	public void setUserData(Bundle userData) {
-		if (userData.getString("username") != null) {
-			setUsername(userData.getString("username"));
+	public void setUserData(Map<String, String> userData) {
+		if (userData.get("username") != null) {
+			setUsername(userData.get("username"));
 		} else {
 			throw new WPMissingDataException("username");
 		}
 
-		if (userData.getString("nicename") != null) {
-			setNicename(userData.getString("nicename"));
+		if (userData.get("nicename") != null) {
+			setNicename(userData.get("nicename"));
 		} else {
 			throw new WPMissingDataException("nicename");
 		}
 
-		if (userData.getString("email") != null) {
-			setEmail(userData.getString("email"));
+		if (userData.get("email") != null) {
+			setEmail(userData.get("email"));
 		} else {
 			throw new WPMissingDataException("email");
 		}
 
-		if (userData.getString("url") != null) {
-			setUrl(userData.getString("url"));
+		if (userData.get("url") != null) {
+			setUrl(userData.get("url"));
 		} else {
 			throw new WPMissingDataException("url");
 		}
 
-		if (userData.getString("registered") != null) {
-			setRegistered(userData.getString("registered"));
+		if (userData.get("registered") != null) {
+			setRegistered(userData.get("registered"));
 		} else {
 			throw new WPMissingDataException("registered");
 		}
 
-		if (userData.getString("displayname") != null) {
-			setDisplayname(userData.getString("displayname"));
+		if (userData.get("displayname") != null) {
+			setDisplayname(userData.get("displayname"));
 		} else {
 			throw new WPMissingDataException("displayname");
 		}
 
-		if (userData.getString("firstname") != null) {
-			setFirstname(userData.getString("firstname"));
+		if (userData.get("firstname") != null) {
+			setFirstname(userData.get("firstname"));
 		} else {
 			throw new WPMissingDataException("firstname");
 		}
 
-		if (userData.getString("lastname") != null) {
-			setLastname(userData.getString("lastname"));
+		if (userData.get("lastname") != null) {
+			setLastname(userData.get("lastname"));
 		} else {
 			throw new WPMissingDataException("lastname");
 		}
 
-		if (userData.getString("nickname") != null) {
-			setNickname(userData.getString("nickname"));
+		if (userData.get("nickname") != null) {
+			setNickname(userData.get("nickname"));
 		} else {
 			throw new WPMissingDataException("nickname");
 		}
 
-		if (userData.getString("description") != null) {
-			setDescription(userData.getString("description"));
+		if (userData.get("description") != null) {
+			setDescription(userData.get("description"));
 		} else {
 			throw new WPMissingDataException("description");
 		}
 
-		if (userData.getString("avatar") != null) {
-			setAvatar(userData.getString("avatar"));
+		if (userData.get("avatar") != null) {
+			setAvatar(userData.get("avatar"));
 		} else {
 			throw new WPMissingDataException("avatar");
 		}
@@ -267,28 +245,23 @@ public class WPUser {
 		this.username = username;
 	}
 
-	public static Bundle getBundle(WPUser user) {
-		Bundle userBundle = new Bundle();
-
-		userBundle.putInt("id", user.getId());
-		userBundle.putString("username", user.getUsername());
-		userBundle.putString("nicename", user.getNicename());
-		userBundle.putString("url", user.getUrl());
-		userBundle.putString("email", user.getEmail());
-		userBundle.putString("registerd", user.getRegistered());
-		userBundle.putString("display_name", user.getDisplayname());
-		userBundle.putString("firstname", user.getFirstname());
-		userBundle.putString("lastname", user.getLastname());
-		userBundle.putString("nickname", user.getNickname());
-		userBundle.putString("desc", user.getDescription());
-		userBundle.putString("avatar", user.getAvatar());
-		userBundle.putString("capabilities",
-				user.capabilities.getJsonCapabilities());
-		return userBundle;
+	/**
+	 * @param capabilities
+	 *            the capabilities object as JSON, ignored if it isn't valid.
+	 */
+	void setCapabilities(String capabilities) {
+		try {
+			this.capabilities = new WPRole(new JSONObject(capabilities));
+		} catch (JSONException e) {
+		} catch (NullPointerException e) {
+		}
+	}
 
+	String getCapabilities() {
+		return capabilities.getJsonCapabilities();
 	}
 
-	private class WPMissingDataException extends RuntimeException {
+	static class WPMissingDataException extends RuntimeException {
 		/**
 		 * 
 		 */
@@ -296,7 +269,7 @@ public class WPUser {
 
 		public WPMissingDataException(String message) {
 			super("Missing data field \"" + message
-					+ "\", please check your bundle.");
+					+ "\", please check your user data.");
 
 		}
 	}
@@ -2,22 +2,33 @@ package com.jogeeks.wordpress;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.http.Header;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.params.ClientPNames;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.params.HttpParams;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.content.Context;
 import android.os.AsyncTask;
 import android.os.Bundle;
-import android.util.Log;
 
 import com.jogeeks.mobipress.R;
 import com.jogeeks.wordpress.listeners.OnApiRequestListener;
 import com.jogeeks.wordpress.listeners.OnCategoriesListener;
+import com.jogeeks.wordpress.listeners.OnCategoryTreeListener;
 import com.jogeeks.wordpress.listeners.OnCommentSubmittedListener;
 import com.jogeeks.wordpress.listeners.OnCommentsReceivedListener;
 import com.jogeeks.wordpress.listeners.OnConnectionFailureListener;
@@ -25,11 +36,14 @@ import com.jogeeks.wordpress.listeners.OnCreatePostListener;
 import com.jogeeks.wordpress.listeners.OnCustomFieldsListener;
 import com.jogeeks.wordpress.listeners.OnLoginListener;
 import com.jogeeks.wordpress.listeners.OnPostReceivedListener;
+import com.jogeeks.wordpress.listeners.OnPostsFailedListener;
 import com.jogeeks.wordpress.listeners.OnPostsReceivedListener;
 import com.jogeeks.wordpress.listeners.OnRegisterListener;
+import com.jogeeks.wordpress.listeners.OnRequestFailureListener;
 import com.loopj.android.http.AsyncHttpClient;
 import com.loopj.android.http.JsonHttpResponseHandler;
 import com.loopj.android.http.RequestParams;
+import com.loopj.android.http.ResponseHandlerInterface;
 
 public class Wordpress implements OnLoginListener, OnRegisterListener {
 
@@ -39,6 +53,7 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	public static final int LOGIN_PASSWORD_ERROR = 2;
 	public static final int LOGIN_CHECK_PASSWORD_AND_OR_USERNAME = 3;
 	public static final int BAD_NONCE = 4;
+	public static final int LOGIN_TIMED_OUT = 5;
 
 	public static final int REGISTRATION_FAILED = -1;
 	public static final int REGISTRATION_SUCCESS = 0;
@@ -48,14 +63,36 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	public static final int REGISTRATION_INVALID_EMAIL = 4;
 	public static final int REGISTRATION_EMAIL_IN_USE = 5;
 	public static final int REGISTRATION_INVALID_PASSWORD = 6;
+	public static final int REGISTRATION_TIMED_OUT = 7;
 
 	// http://wordpress.org/plugins/json-api/other_notes/#3.2.-Content-modifying-arguments
+	/**
+	 * @deprecated the base URL of the last instance created, each instance has
+	 *             its own site, see {@link #getSite()}.
+	 */
+	@Deprecated
 	public static String BASE_URL = "";
+	@Deprecated
 	static String API = "";
 
+	// every instance (one per site) shares the connections and the threads
+	private static final int MAX_CONNECTIONS = 64;
+	private static final int MAX_CONNECTIONS_PER_SITE = 10;
+	private static AsyncHttpClient sharedClient;
+	private static ThreadPoolExecutor sharedThreadPool;
+
 	static final String NONCE_URL = "get_nonce";
 	static final String DATE_INDEX_URL = "get_date_index";
 
+	// controllers and methods nonces are requested for
+	static final String POSTS_CONTROLLER = "posts";
+	static final String CREATE_POST_METHOD = "create_post";
+	static final String UPDATE_POST_METHOD = "update_post";
+	static final String AUTH_CONTROLLER = "auth";
+	static final String LOGIN_METHOD = "generate_auth_cookie";
+	static final String USER_CONTROLLER = "user";
+	static final String REGISTER_METHOD = "register";
+
 	private Context context;
 
 	private String username;
@@ -64,11 +101,29 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	private OnLoginListener loginListener;
 	private OnRegisterListener registerListener;
 	private OnConnectionFailureListener onConnectionFailureListener;
-	private WordpressResponseHandler<WPPost> postHandler;
-	private WordpressResponseHandler<WPComment> commentHandler;
-	private WordpressResponseHandler<JSONObject> apiRequestHandler;
 
-	private AsyncHttpClient httpClient = new AsyncHttpClient();
+	private final WPSite site;
+	private final AsyncHttpClient httpClient = getSharedClient();
+	private WPTransport transport;
+	// requests sent with context, cancelled by finish
+	private final ArrayList<WPRequest> requests = new ArrayList<WPRequest>();
+	private WPRetryPolicy retryPolicy = WPRetryPolicy.DEFAULT;
+	private WPHedgePolicy hedgePolicy;
+	// 0 for operations without a deadline
+	private long deadlineBudget;
+	private OnRequestFailureListener onRequestFailureListener;
+	private WPResponseCache responseCache;
+	private final WPTransferStats transferStats = new WPTransferStats();
+	private WPRequestCoalescer coalescer = new WPRequestCoalescer();
+	private boolean streamingParser = true;
+	private WPNonceManager nonceManager;
+	private WPSession session;
+	// built from the last category index received
+	private WPCategoryTree categoryTree;
+	// cleared when the server turns out not to have meta/batch_post_meta
+	private boolean metaBatchSupported = true;
+	// cleared when the server turns out not to have comments/get_comments
+	private boolean commentPagesSupported = true;
 
 	/**
 	 * <h1>WordPress constructor. After initializing this constructor, you can
@@ -79,20 +134,36 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 *            Pass the application's context to get this initialized.
 	 */
 	public Wordpress(Context context, OnConnectionFailureListener listener) {
+		this(context, new WPSite(context.getString(R.string.url),
+				context.getString(R.string.api)), listener);
+	}
+
+	/**
+	 * <h1>WordPress constructor for a site other than the one of the url and
+	 * api resources. Instances for different sites can be used at the same
+	 * time, they share one connection pool and one thread pool.</h1>
+	 * 
+	 * @param context
+	 *            Pass the application's context to get this initialized.
+	 */
+	public Wordpress(Context context, WPSite site,
+			OnConnectionFailureListener listener) {
 		this.context = context;
-		API = context.getString(R.string.api);
-		BASE_URL = context.getString(R.string.url) + "/" + API + "/";
+		this.site = site;
+		transport = new WPAsyncHttpTransport(httpClient, context);
+		WPLog.setLogger(new WPAndroidLogger());
+		API = site.getApi();
+		BASE_URL = site.getBaseUrl();
+		WPEntities.setDefaultSite(site);
 
-		httpClient.getHttpClient().getParams()
-				.setParameter(ClientPNames.ALLOW_CIRCULAR_REDIRECTS, true);
-		postHandler = new WordpressResponseHandler<WPPost>();
-		commentHandler = new WordpressResponseHandler<WPComment>();
-		onConnectionFailureListener = listener;
+		responseCache = new WPResponseCache(new File(context.getCacheDir(),
+				WPResponseCache.CACHE_DIR + "-" + site.getKey()));
 
-		postHandler.setOnConnectionFailureListener(onConnectionFailureListener);
-		commentHandler
-				.setOnConnectionFailureListener(onConnectionFailureListener);
+		onConnectionFailureListener = listener;
+		nonceManager = new WPNonceManager(this, site.getBaseUrl(), listener);
 
+		WPSession.preload(context);
+		session = new WPSession(context);
 	}
 
 	/**
@@ -103,9 +174,26 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 *            credentials "username", "password"
 	 */
 	public void login(Bundle userData, OnLoginListener listener) {
+		login(userData, listener, newDeadline());
+	}
+
+	/**
+	 * <h1>Logs in within deadline: the nonce and the cookie requests together.
+	 * Once it passes the login fails with LOGIN_TIMED_OUT.</h1>
+	 */
+	public void login(Bundle userData, OnLoginListener listener,
+			WPDeadline deadline) {
 		username = userData.getString("username");
 		password = userData.getString("password");
-		new WPLogin(username, password, listener);
+		new WPLogin(username, password, listener, deadline);
+	}
+
+	/**
+	 * <h1>Logs the user out and drops the nonces cached for them.</h1>
+	 */
+	public void logOut() {
+		session.logOut();
+		nonceManager.clear();
 	}
 
 	/**
@@ -116,11 +204,323 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 *            "username", "password", "email", "nickname"
 	 */
 	public void register(Bundle userData, OnRegisterListener listener) {
-		new WPRegister(userData, listener);
+		register(userData, listener, newDeadline());
+	}
+
+	/**
+	 * <h1>Registers within deadline: the nonce and the register requests
+	 * together. Once it passes the registration fails with
+	 * REGISTRATION_TIMED_OUT.</h1>
+	 */
+	public void register(Bundle userData, OnRegisterListener listener,
+			WPDeadline deadline) {
+		new WPRegister(userData, listener, deadline);
 	}
 
+	/**
+	 * <h1>Cancels the requests of this instance sent with context, the other
+	 * sites' requests go on.</h1>
+	 */
 	public void finish(Context context) {
-		httpClient.cancelRequests(context, true);
+		if (context != this.context) {
+			return;
+		}
+		synchronized (requests) {
+			for (int i = 0; i < requests.size(); i++) {
+				requests.get(i).cancel();
+			}
+			requests.clear();
+		}
+	}
+
+	public WPSite getSite() {
+		return site;
+	}
+
+	/**
+	 * <h1>Sets how failed reads are retried, WPRetryPolicy.NONE to never
+	 * retry. Writes are never retried.</h1>
+	 */
+	public void setRetryPolicy(WPRetryPolicy policy) {
+		retryPolicy = policy;
+	}
+
+	/**
+	 * <h1>Hedges slow reads with policy: a read that hasn't answered after the
+	 * hedge delay is sent again and the first answer wins. null, the default,
+	 * to never hedge. The policy counts the hedges and their wins.</h1>
+	 */
+	public void setHedgePolicy(WPHedgePolicy policy) {
+		hedgePolicy = policy;
+	}
+
+	public WPHedgePolicy getHedgePolicy() {
+		return hedgePolicy;
+	}
+
+	/**
+	 * <h1>Gives every operation started afterwards budgetMillis to complete,
+	 * all its requests included (e.g. get_nonce then create_post). 0, the
+	 * default, for no deadline. Operations that take a WPDeadline use that
+	 * one instead.</h1>
+	 */
+	public void setDeadline(long budgetMillis) {
+		deadlineBudget = budgetMillis;
+	}
+
+	private WPDeadline newDeadline() {
+		return deadlineBudget > 0 ? new WPDeadline(deadlineBudget) : null;
+	}
+
+	/**
+	 * Tells the OnRequestFailureListener about a failure that isn't a
+	 * request's, e.g. a deadline that passed while waiting for a nonce.
+	 * Called on the main thread.
+	 */
+	void reportFailure(WPFailure failure) {
+		WPLog.d("Wordpress", failure.toString());
+		if (onRequestFailureListener != null) {
+			onRequestFailureListener.onRequestFailed(failure);
+		}
+	}
+
+	/**
+	 * <h1>Sets the listener told why a request failed (after its retries), in
+	 * addition to the OnConnectionFailureListener.</h1>
+	 */
+	public void setOnRequestFailureListener(OnRequestFailureListener listener) {
+		onRequestFailureListener = listener;
+	}
+
+	/**
+	 * Sends the requests of this instance with transport instead of the
+	 * shared AsyncHttpClient, e.g. a {@link WPUrlConnectionTransport}.
+	 */
+	public void setTransport(WPTransport transport) {
+		this.transport = transport;
+	}
+
+	public WPTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * The client every instance sends its requests with. Connections are
+	 * pooled per host, up to MAX_CONNECTIONS_PER_SITE for one site and
+	 * MAX_CONNECTIONS overall, so many sites loaded at once are limited by
+	 * the bandwidth rather than by the pool.
+	 */
+	static synchronized AsyncHttpClient getSharedClient() {
+		if (sharedClient == null) {
+			AsyncHttpClient client = new AsyncHttpClient();
+			// WPRequest retries reads with backoff, never the client
+			client.setMaxRetriesAndTimeout(0, 0);
+			client.setThreadPool(getSharedThreadPool());
+			client.setMaxConnections(MAX_CONNECTIONS_PER_SITE);
+			HttpParams params = client.getHttpClient().getParams();
+			ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+			params.setParameter(ClientPNames.ALLOW_CIRCULAR_REDIRECTS, true);
+			sharedClient = client;
+		}
+		return sharedClient;
+	}
+
+	/**
+	 * Runs the requests of every instance and the parsing of their responses.
+	 * It grows with the requests in flight, idle threads end after a minute.
+	 */
+	static synchronized ThreadPoolExecutor getSharedThreadPool() {
+		if (sharedThreadPool == null) {
+			sharedThreadPool = (ThreadPoolExecutor) Executors
+					.newCachedThreadPool();
+		}
+		return sharedThreadPool;
+	}
+
+	/**
+	 * <h1>Returns the bytes the responses of this instance took over the
+	 * wire and decoded, per endpoint.</h1>
+	 */
+	public WPTransferStats getTransferStats() {
+		return transferStats;
+	}
+
+	/**
+	 * <h1>Returns the cache used by the read endpoints, use it to check the
+	 * hit/miss counts or to clear it.</h1>
+	 */
+	public WPResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Sends a GET for a read endpoint, revalidating the cached response (if
+	 * any) with a conditional request.
+	 */
+	private void cachedGet(WPEndpoint endpoint, String query,
+			RequestParams params, WordpressResponseHandler<?> responseHandler) {
+		String url = site.getBaseUrl() + endpoint.getPath() + query;
+		responseHandler.setEndpoint(endpoint);
+		responseHandler.setSite(site);
+		responseHandler.setResponseCache(responseCache);
+		send(endpoint, false, url,
+				responseCache.getConditionalHeaders(requestKey(url, params)),
+				params, responseHandler);
+	}
+
+	/**
+	 * Sends a GET tagged with its endpoint.
+	 */
+	private void get(WPEndpoint endpoint, RequestParams params,
+			WordpressResponseHandler<?> responseHandler) {
+		responseHandler.setEndpoint(endpoint);
+		responseHandler.setSite(site);
+		send(endpoint, false, site.getBaseUrl() + endpoint.getPath(), null,
+				params, responseHandler);
+	}
+
+	void get(WPEndpoint endpoint, String url, RequestParams params,
+			ResponseHandlerInterface responseHandler) {
+		send(endpoint, false, url, null, params, responseHandler, null);
+	}
+
+	/**
+	 * Sends a GET as a step of an operation with a deadline.
+	 */
+	private void get(WPEndpoint endpoint, String url, RequestParams params,
+			ResponseHandlerInterface responseHandler, WPDeadline deadline) {
+		send(endpoint, false, url, null, params, responseHandler, deadline);
+	}
+
+	private void post(WPEndpoint endpoint, String url, RequestParams params,
+			ResponseHandlerInterface responseHandler, WPDeadline deadline) {
+		send(endpoint, true, url, null, params, responseHandler, deadline);
+	}
+
+	private void send(WPEndpoint endpoint, boolean post, String url,
+			Header[] headers, RequestParams params,
+			ResponseHandlerInterface responseHandler) {
+		send(endpoint, post, url, headers, params, responseHandler, null);
+	}
+
+	/**
+	 * Every request goes through here and out through the transport: through
+	 * the circuit breaker of the site's host, and for a read, retried with
+	 * backoff by the retry policy.
+	 * The request can be cancelled by finish. A request sent without the
+	 * deadline of an operation gets one of its own if setDeadline was called.
+	 */
+	private void send(WPEndpoint endpoint, boolean post, String url,
+			Header[] headers, RequestParams params,
+			ResponseHandlerInterface responseHandler, WPDeadline deadline) {
+		if (deadline == null) {
+			deadline = newDeadline();
+		}
+		if (deadline != null) {
+			deadline.enterStep(stepOf(url));
+		}
+		WPRequest request = new WPRequest(transport, post, url, headers,
+				params, responseHandler,
+				!post && endpoint.isRead() ? retryPolicy : WPRetryPolicy.NONE,
+				!post && endpoint.isRead() ? hedgePolicy : null, deadline,
+				WPCircuitBreaker.forHost(site.getHost()),
+				onRequestFailureListener);
+		request.setTransferStats(transferStats, stepOf(url));
+		synchronized (requests) {
+			for (int i = requests.size() - 1; i >= 0; i--) {
+				if (requests.get(i).isFinished()) {
+					requests.remove(i);
+				}
+			}
+			requests.add(request);
+		}
+		request.send();
+	}
+
+	/**
+	 * @return the name of the step a request is, its path under the base
+	 *         URL, e.g. "posts/create_post".
+	 */
+	private String stepOf(String url) {
+		String step = url.startsWith(site.getBaseUrl()) ? url.substring(site
+				.getBaseUrl().length()) : url;
+		int query = step.indexOf('?');
+		if (query != -1) {
+			step = step.substring(0, query);
+		}
+		while (step.endsWith("/")) {
+			step = step.substring(0, step.length() - 1);
+		}
+		return step;
+	}
+
+	private static String pageQuery(int count, int page) {
+		return "?" + "count=" + count + "&" + "page=" + page;
+	}
+
+	/**
+	 * Sends a post list request, unless an identical one is already in flight
+	 * in which case the listener joins it and gets the same parsed result.
+	 */
+	private void requestPosts(WPEndpoint endpoint, String query,
+			RequestParams params, OnPostsReceivedListener listener) {
+		String key = requestKey(site.getBaseUrl() + endpoint.getPath() + query,
+				params);
+		if (coalescer.join(key, listener)) {
+			return;
+		}
+
+		final WPRequestCoalescer.Group group = coalescer.lead(key, listener);
+		WordpressResponseHandler<WPPost> responseHandler = new WordpressResponseHandler<WPPost>() {
+			@Override
+			public void onFinish() {
+				coalescer.finish(group);
+				super.onFinish();
+			}
+		};
+		responseHandler.setSite(site);
+		responseHandler.setOnPostsReceivedListener(group);
+		responseHandler.setStreamingParser(streamingParser);
+		responseHandler
+				.setOnConnectionFailureListener(onConnectionFailureListener);
+		cachedGet(endpoint, query, params, responseHandler);
+	}
+
+	/**
+	 * Every request gets its own handler so overlapping requests on the same
+	 * Wordpress instance never deliver to each other's listeners.
+	 */
+	private <T> WordpressResponseHandler<T> newResponseHandler() {
+		WordpressResponseHandler<T> responseHandler = new WordpressResponseHandler<T>();
+		responseHandler.setSite(site);
+		responseHandler
+				.setOnConnectionFailureListener(onConnectionFailureListener);
+		return responseHandler;
+	}
+
+	/**
+	 * Canonical form (sorted params) of a GET request, used by the response
+	 * cache and to detect identical requests.
+	 */
+	private String requestKey(String url, RequestParams params) {
+		return WPResponseCache.keyFor(AsyncHttpClient.getUrlWithQueryString(
+				httpClient.isUrlEncodingEnabled(), url, params));
+	}
+
+	/**
+	 * <h1>Post lists are decoded with a streaming parser by default, pass
+	 * false to go back to parsing them through a JSONObject tree.</h1>
+	 */
+	public void setStreamingParserEnabled(boolean enabled) {
+		streamingParser = enabled;
+	}
+
+	/**
+	 * <h1>Returns the number of post requests that were not sent because an
+	 * identical request was already in flight.</h1>
+	 */
+	public int getCoalescedRequestCount() {
+		return coalescer.getCoalescedCount();
 	}
 
 	/**
@@ -138,7 +538,8 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 */
 	public void addPostMeta(int pid, WPCustomField meta, boolean unique,
 			OnCustomFieldsListener listener) {
-		postHandler.setOnCustomFieldsListener(listener);
+		WordpressResponseHandler<WPPost> responseHandler = newResponseHandler();
+		responseHandler.setOnCustomFieldsListener(listener);
 
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("post_id", Integer.toString(pid));
@@ -146,8 +547,7 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 		reqParams.add("meta_value", meta.getValue());
 		reqParams.add("unique", Boolean.toString(unique));
 
-		httpClient.get(BASE_URL + WPCustomField.ADD_POST_META, reqParams,
-				postHandler);
+		get(WPEndpoint.ADD_POST_META, reqParams, responseHandler);
 	}
 
 	/**
@@ -166,7 +566,8 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 */
 	public void updatePostMeta(int pid, WPCustomField meta,
 			String previousValue, OnCustomFieldsListener listener) {
-		postHandler.setOnCustomFieldsListener(listener);
+		WordpressResponseHandler<WPPost> responseHandler = newResponseHandler();
+		responseHandler.setOnCustomFieldsListener(listener);
 
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("post_id", Integer.toString(pid));
@@ -174,8 +575,7 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 		reqParams.add("meta_value", meta.getValue());
 		reqParams.add("prev_value", previousValue);
 
-		httpClient.get(BASE_URL + WPCustomField.UPDATE_POST_META, reqParams,
-				postHandler);
+		get(WPEndpoint.UPDATE_POST_META, reqParams, responseHandler);
 	}
 
 	/**
@@ -189,15 +589,15 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 */
 	public void updatePostMeta(int pid, WPCustomField meta,
 			OnCustomFieldsListener listener) {
-		postHandler.setOnCustomFieldsListener(listener);
+		WordpressResponseHandler<WPPost> responseHandler = newResponseHandler();
+		responseHandler.setOnCustomFieldsListener(listener);
 
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("post_id", Integer.toString(pid));
 		reqParams.add("meta_key", meta.getName());
 		reqParams.add("meta_value", meta.getValue());
 
-		httpClient.get(BASE_URL + WPCustomField.UPDATE_POST_META, reqParams,
-				postHandler);
+		get(WPEndpoint.UPDATE_POST_META, reqParams, responseHandler);
 	}
 
 	/**
@@ -214,15 +614,15 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 */
 	public void deletePostMeta(int pid, WPCustomField meta,
 			OnCustomFieldsListener listener) {
-		postHandler.setOnCustomFieldsListener(listener);
+		WordpressResponseHandler<WPPost> responseHandler = newResponseHandler();
+		responseHandler.setOnCustomFieldsListener(listener);
 
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("post_id", Integer.toString(pid));
 		reqParams.add("meta_key", meta.getName());
 		reqParams.add("meta_value", meta.getValue());
 
-		httpClient.get(BASE_URL + WPCustomField.DELETE_POST_META, reqParams,
-				postHandler);
+		get(WPEndpoint.DELETE_POST_META, reqParams, responseHandler);
 	}
 
 	/**
@@ -236,14 +636,164 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 */
 	public void deletePostMeta(int pid, String key,
 			OnCustomFieldsListener listener) {
-		postHandler.setOnCustomFieldsListener(listener);
+		WordpressResponseHandler<WPPost> responseHandler = newResponseHandler();
+		responseHandler.setOnCustomFieldsListener(listener);
 
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("post_id", Integer.toString(pid));
 		reqParams.add("meta_key", key);
 
-		httpClient.get(BASE_URL + WPCustomField.DELETE_POST_META, reqParams,
-				postHandler);
+		get(WPEndpoint.DELETE_POST_META, reqParams, responseHandler);
+	}
+
+	/**
+	 * <h1>Applies all the custom field changes of the batch, for one or
+	 * several posts, in a single request</h1>
+	 * 
+	 * If the server's meta controller has no batch_post_meta method the
+	 * changes are sent as single requests in parallel, changes to the same key
+	 * of a post one after the other. OnMetaDataBatchApplied is called once
+	 * every change has a result, also when the batch fails as a whole: every
+	 * change then has its error.
+	 * 
+	 * @param batch
+	 *            WPMetaBatch with the changes, it holds the result of each
+	 *            change once applied.
+	 */
+	public void applyPostMeta(final WPMetaBatch batch,
+			final OnCustomFieldsListener listener) {
+		if (batch.size() == 0) {
+			listener.OnMetaDataBatchApplied(batch);
+			return;
+		}
+		if (!metaBatchSupported) {
+			applyPostMetaSeparately(batch, listener);
+			return;
+		}
+
+		RequestParams reqParams = new RequestParams();
+		try {
+			reqParams.add("operations", batch.toJSON().toString());
+		} catch (JSONException e) {
+			batch.fail(e.toString());
+			listener.OnMetaDataBatchApplied(batch);
+			return;
+		}
+
+		post(WPEndpoint.BATCH_POST_META,
+				site.getBaseUrl() + WPEndpoint.BATCH_POST_META.getPath(),
+				reqParams, new JsonHttpResponseHandler() {
+					@Override
+					public void onSuccess(int statusCode, Header[] headers,
+							JSONObject response) {
+						JSONArray results = response.optJSONArray("results");
+						if (results == null
+								&& response.optString("error").startsWith(
+										"Unknown")) {
+							// Unknown controller or method
+							metaBatchSupported = false;
+							applyPostMetaSeparately(batch, listener);
+							return;
+						}
+
+						if (results == null) {
+							results = new JSONArray();
+						}
+						batch.setResults(results);
+						listener.OnMetaDataBatchApplied(batch);
+					}
+
+					@Override
+					public void onFailure(int statusCode, Header[] headers,
+							byte[] responseBody, Throwable error) {
+						if (statusCode == HttpStatus.SC_NOT_FOUND) {
+							metaBatchSupported = false;
+							applyPostMetaSeparately(batch, listener);
+							return;
+						}
+						if (onConnectionFailureListener != null) {
+							onConnectionFailureListener.OnConnectionFailed();
+						}
+						batch.fail(error != null ? error.toString() : "HTTP "
+								+ statusCode);
+						listener.OnMetaDataBatchApplied(batch);
+					}
+
+					/**
+					 * A success whose body isn't a JSON object.
+					 */
+					@Override
+					public void onFailure(Throwable error, JSONObject response) {
+						batch.fail(error.toString());
+						listener.OnMetaDataBatchApplied(batch);
+					}
+				}, null);
+	}
+
+	private void applyPostMetaSeparately(final WPMetaBatch batch,
+			final OnCustomFieldsListener listener) {
+		// changes to the same field have to be applied in order
+		LinkedHashMap<String, ArrayList<WPMetaBatch.Operation>> fields = new LinkedHashMap<String, ArrayList<WPMetaBatch.Operation>>();
+		for (int i = 0; i < batch.size(); i++) {
+			WPMetaBatch.Operation operation = batch.get(i);
+			String field = operation.pid + "/" + operation.key;
+			ArrayList<WPMetaBatch.Operation> chain = fields.get(field);
+			if (chain == null) {
+				chain = new ArrayList<WPMetaBatch.Operation>();
+				fields.put(field, chain);
+			}
+			chain.add(operation);
+		}
+
+		final int[] remaining = { batch.size() };
+		for (final ArrayList<WPMetaBatch.Operation> chain : fields.values()) {
+			applyPostMeta(chain, 0, new Runnable() {
+				@Override
+				public void run() {
+					remaining[0]--;
+					if (remaining[0] == 0) {
+						listener.OnMetaDataBatchApplied(batch);
+					}
+				}
+			});
+		}
+	}
+
+	private void applyPostMeta(final ArrayList<WPMetaBatch.Operation> chain,
+			final int index, final Runnable onApplied) {
+		final WPMetaBatch.Operation operation = chain.get(index);
+		// a write, POSTed like the batch it stands in for
+		post(operation.getEndpoint(),
+				site.getBaseUrl() + operation.getEndpoint().getPath(),
+				operation.toParams(), new JsonHttpResponseHandler() {
+					@Override
+					public void onSuccess(int statusCode, Header[] headers,
+							JSONObject response) {
+						operation.setResult(response);
+						next();
+					}
+
+					@Override
+					public void onFailure(int statusCode, Header[] headers,
+							byte[] responseBody, Throwable error) {
+						operation.setResult(error != null ? error.toString()
+								: "HTTP " + statusCode);
+						next();
+					}
+
+					@Override
+					public void onFailure(Throwable error, JSONObject response) {
+						operation.setResult(error.toString());
+						next();
+					}
+
+					private void next() {
+						onApplied.run();
+						if (index + 1 < chain.size()) {
+							applyPostMeta(chain, index + 1, onApplied);
+						}
+					}
+				}, null);
 	}
 
 	/**
@@ -258,8 +808,9 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 * @see getPostCustomKeys, getPostCustomValues
 	 */
 	public void getPostCustom(int pid, OnCustomFieldsListener listener) {
-		postHandler.setOnCustomFieldsListener(listener);
-		httpClient.get(BASE_URL + WPCustomField.GET_POST_CUSTOM, postHandler);
+		WordpressResponseHandler<WPPost> responseHandler = newResponseHandler();
+		responseHandler.setOnCustomFieldsListener(listener);
+		get(WPEndpoint.GET_POST_CUSTOM, null, responseHandler);
 	}
 
 	/**
@@ -272,8 +823,9 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 * @see getPostCustom, getPostCustomValues
 	 */
 	public void getPostCustomKeys(int pid, OnCustomFieldsListener listener) {
-		postHandler.setOnCustomFieldsListener(listener);
-		httpClient.get(BASE_URL + WPCustomField.GET_POST_KEYS, postHandler);
+		WordpressResponseHandler<WPPost> responseHandler = newResponseHandler();
+		responseHandler.setOnCustomFieldsListener(listener);
+		get(WPEndpoint.GET_POST_KEYS, null, responseHandler);
 	}
 
 	/**
@@ -292,172 +844,277 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 */
 	public void getPostCustomValues(String key, int pid,
 			OnCustomFieldsListener listener) {
-		postHandler.setOnCustomFieldsListener(listener);
-		httpClient.get(BASE_URL + WPCustomField.GET_POST_KEYS, postHandler);
+		WordpressResponseHandler<WPPost> responseHandler = newResponseHandler();
+		responseHandler.setOnCustomFieldsListener(listener);
+		get(WPEndpoint.GET_POST_KEYS, null, responseHandler);
 	}
 
 	// TODO: most probably its best to use the Params, rather than supplying an
 	// overloaded function for each case
 	public void getPosts(OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-		httpClient.get(BASE_URL + WPPost.POSTS_URL, postHandler);
+		requestPosts(WPEndpoint.POSTS, "", null, listener);
 	}
 
 	public void getPosts(WPQuery query, OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-
 		RequestParams reqParams = query.getQuery();
-		httpClient.get(BASE_URL + WPPost.POSTS_URL, reqParams, postHandler);
+		requestPosts(WPEndpoint.POSTS, "", reqParams, listener);
 	}
 
 	public void getPosts(WPQuery query, int count, int page,
 			OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
 		RequestParams reqParams = query.getQuery();
 
-		httpClient.get(BASE_URL + WPPost.POSTS_URL + "?" + "count=" + count
-				+ "&" + "page=" + page, reqParams, postHandler);
+		requestPosts(WPEndpoint.POSTS, pageQuery(count, page),
+				reqParams, listener);
 	}
 
 	public void getPosts(int count, int page, OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-		httpClient.get(BASE_URL + WPPost.POSTS_URL + "?" + "count=" + count
-				+ "&" + "page=" + page, postHandler);
+		requestPosts(WPEndpoint.POSTS, pageQuery(count, page),
+				null, listener);
 	}
 
 	public void getRecentPosts(int count, int page,
 			OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-		httpClient.get(BASE_URL + WPPost.RECENT_POSTS_URL + "?" + "count="
-				+ count + "&" + "page=" + page, postHandler);
+		requestPosts(WPEndpoint.RECENT_POSTS, pageQuery(count, page),
+				null, listener);
 	}
 
 	public void getCustomPosts(int count, int page, String postType,
 			OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-		httpClient.get(BASE_URL + WPPost.POSTS_URL, postHandler);
+		requestPosts(WPEndpoint.POSTS, "", null, listener);
 	}
 
 	public void getPostsByCategory(int cId, OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("id", Integer.toString(cId));
-		httpClient.get(BASE_URL + WPPost.CATEGORY_POSTS_URL, reqParams,
-				postHandler);
+		requestPosts(WPEndpoint.CATEGORY_POSTS, "", reqParams, listener);
 	}
 
 	public void getPostsByCategory(int cId, int count, int page,
 			OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("id", Integer.toString(cId));
-		httpClient.get(BASE_URL + WPPost.CATEGORY_POSTS_URL + "?" + "count="
-				+ count + "&" + "page=" + page, reqParams, postHandler);
+		requestPosts(WPEndpoint.CATEGORY_POSTS, pageQuery(count, page),
+				reqParams, listener);
 	}
 
 	public void getPostsByTag(int tId, OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("id", Integer.toString(tId));
-		httpClient.get(BASE_URL + WPPost.TAG_POSTS_URL, reqParams, postHandler);
+		requestPosts(WPEndpoint.TAG_POSTS, "", reqParams, listener);
 	}
 
 	public void getPostsByTag(int tId, int count, int page,
 			OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("id", Integer.toString(tId));
-		httpClient.get(BASE_URL + WPPost.TAG_POSTS_URL + "?" + "count=" + count
-				+ "&" + "page=" + page, reqParams, postHandler);
+		requestPosts(WPEndpoint.TAG_POSTS, pageQuery(count, page),
+				reqParams, listener);
 	}
 
 	public void getPostsByAuthor(int aId, OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("id", Integer.toString(aId));
-		httpClient.get(BASE_URL + WPPost.AUTHOR_POSTS_URL, reqParams,
-				postHandler);
+		requestPosts(WPEndpoint.AUTHOR_POSTS, "", reqParams, listener);
 	}
 
 	public void getPostsByAuthor(int aId, int count, int page,
 			OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("id", Integer.toString(aId));
-		httpClient.get(BASE_URL + WPPost.AUTHOR_POSTS_URL + "?" + "count="
-				+ count + "&" + "page=" + page, reqParams, postHandler);
+		requestPosts(WPEndpoint.AUTHOR_POSTS, pageQuery(count, page),
+				reqParams, listener);
 	}
 
 	public void getPostsByDate(String date, OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("date", date);
-		httpClient
-				.get(BASE_URL + WPPost.DATE_POSTS_URL, reqParams, postHandler);
+		requestPosts(WPEndpoint.DATE_POSTS, "", reqParams, listener);
 	}
 
 	public void getPostsByDate(String date, int count, int page,
 			OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("date", date);
-		httpClient.get(BASE_URL + WPPost.DATE_POSTS_URL + "?" + "count="
-				+ count + "&" + "page=" + page, reqParams, postHandler);
+		requestPosts(WPEndpoint.DATE_POSTS, pageQuery(count, page),
+				reqParams, listener);
 	}
 
 	public void getPostsBySearch(String query, OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("search", query);
-		httpClient.get(BASE_URL + WPPost.SEARCH_POSTS_URL, reqParams,
-				postHandler);
+		requestPosts(WPEndpoint.SEARCH_POSTS, "", reqParams, listener);
 	}
 
 	public void getPostsBySearch(String query, int count, int page,
 			OnPostsReceivedListener listener) {
-		postHandler.setOnPostsReceivedListener(listener);
-
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("search", query);
-		httpClient.get(BASE_URL + WPPost.SEARCH_POSTS_URL + "?" + "count="
-				+ count + "&" + "page=" + page, reqParams, postHandler);
+		requestPosts(WPEndpoint.SEARCH_POSTS, pageQuery(count, page),
+				reqParams, listener);
+	}
+
+	/**
+	 * <h1>Gets the posts with the ids (e.g. bookmarks) with as few requests as
+	 * the URL length allows, sent all at once. The posts come in the order of
+	 * the ids, ids of deleted or unpublished posts are left out.</h1>
+	 *
+	 * @see WPPostSync#getPostsByIds(int[], OnPostsReceivedListener)
+	 */
+	public void getPostsByIds(final int[] ids,
+			final OnPostsReceivedListener listener) {
+		List<int[]> batches = WPQuery.postInBatches(ids);
+		if (batches.isEmpty()) {
+			listener.onNoPosts();
+			return;
+		}
+
+		final HashMap<Integer, WPPost> byId = new HashMap<Integer, WPPost>();
+		PostsFanOut fanOut = new PostsFanOut(batches.size()) {
+			@Override
+			void onPosts(List<WPPost> posts) {
+				for (int i = 0; i < posts.size(); i++) {
+					byId.put(posts.get(i).getId(), posts.get(i));
+				}
+			}
+
+			@Override
+			void onDone(Throwable error) {
+				ArrayList<WPPost> posts = new ArrayList<WPPost>();
+				for (int i = 0; i < ids.length; i++) {
+					// remove, an id asked for twice comes once
+					WPPost post = byId.remove(ids[i]);
+					if (post != null) {
+						posts.add(post);
+					}
+				}
+				deliver(posts, error, listener);
+			}
+		};
+
+		for (int i = 0; i < batches.size(); i++) {
+			WPQuery query = new WPQuery();
+			query.postIn(batches.get(i));
+			getPosts(query, batches.get(i).length, 1, fanOut.newListener());
+		}
+	}
+
+	/**
+	 * The requests of one call sent at once: counts their answers, failures
+	 * included, and ends the call once every one has answered.
+	 */
+	private abstract static class PostsFanOut {
+
+		private int remaining;
+		private Throwable error;
+
+		PostsFanOut(int requests) {
+			remaining = requests;
+		}
+
+		/**
+		 * The posts of one of the requests.
+		 */
+		abstract void onPosts(List<WPPost> posts);
+
+		/**
+		 * Every request has answered.
+		 *
+		 * @param error
+		 *            the first failure, null if none failed.
+		 */
+		abstract void onDone(Throwable error);
+
+		OnPostsReceivedListener newListener() {
+			return new Part();
+		}
+
+		/**
+		 * Hands over the posts that arrived. With none, the listener gets
+		 * onPostsFailed if a request failed and it implements
+		 * OnPostsFailedListener, onNoPosts otherwise.
+		 */
+		static void deliver(List<WPPost> posts, Throwable error,
+				OnPostsReceivedListener listener) {
+			if (!posts.isEmpty()) {
+				HashMap<String, String> meta = new HashMap<String, String>();
+				meta.put("count", Integer.toString(posts.size()));
+				listener.onPostsReceived(posts, meta);
+			} else if (error != null
+					&& listener instanceof OnPostsFailedListener) {
+				((OnPostsFailedListener) listener).onPostsFailed(error);
+			} else {
+				listener.onNoPosts();
+			}
+		}
+
+		private void answered() {
+			remaining--;
+			if (remaining == 0) {
+				onDone(error);
+			}
+		}
+
+		private class Part implements OnPostsReceivedListener,
+				OnPostsFailedListener {
+			@Override
+			public void onPostsReceived(List<WPPost> posts,
+					HashMap<String, String> wpResponseMeta) {
+				onPosts(posts);
+				answered();
+			}
+
+			@Override
+			public void onNoPosts() {
+				answered();
+			}
+
+			@Override
+			public void onPostsFailed(Throwable failure) {
+				if (error == null) {
+					error = failure;
+				}
+				answered();
+			}
+		}
 	}
 
 	public void getPost(int pId, OnPostReceivedListener listener) {
-		postHandler.setOnPostReceivedListener(listener);
+		WordpressResponseHandler<WPPost> responseHandler = newResponseHandler();
+		responseHandler.setOnPostReceivedListener(listener);
 
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("id", Integer.toString(pId));
-		httpClient.get(BASE_URL + WPPost.POST_URL, reqParams, postHandler);
+		cachedGet(WPEndpoint.POST, "", reqParams, responseHandler);
 	}
 
 	public void getPage(int pId,
 			WordpressResponseHandler<WPPost> responseHandler) {
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("id", Integer.toString(pId));
-		httpClient.get(BASE_URL + WPPost.PAGE_URL, reqParams, responseHandler);
+		get(WPEndpoint.PAGE, reqParams, responseHandler);
 	}
 
-	public void createPost(final WPPost post, final String attachment,
+	public void createPost(WPPost post, String attachment,
 			OnCreatePostListener listener) {
-		postHandler.setOnCreatePostListener(listener);
+		createPost(post, attachment, listener, newDeadline());
+	}
 
-		httpClient.get(BASE_URL + NONCE_URL
-				+ "/?controller=posts&method=create_post",
-				new WordpressResponseHandler<WPPost>() {
+	/**
+	 * <h1>Creates the post within deadline: the nonce and the create_post
+	 * requests together.</h1>
+	 */
+	public void createPost(final WPPost post, final String attachment,
+			OnCreatePostListener listener, final WPDeadline deadline) {
+		final WordpressResponseHandler<WPPost> responseHandler = newResponseHandler();
+		responseHandler.setOnCreatePostListener(listener);
+		responseHandler.setEndpoint(WPEndpoint.CREATE_POST);
+
+		nonceManager.getNonce(POSTS_CONTROLLER, CREATE_POST_METHOD,
+				new NonceRequest(POSTS_CONTROLLER, CREATE_POST_METHOD,
+						responseHandler, deadline) {
 					@Override
-					public void onNonceRecieved(String nonce, String method) {
-						this.setOnConnectionFailureListener(onConnectionFailureListener);
-
+					void send(String nonce) {
 						String title, content, status;
 						String categories = "";
 						String tags = "";
@@ -486,11 +1143,10 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 							}
 						}
 
-						Log.d("cookie", new WPSession(context).getCookie());
+						String cookie = session.getCookie();
 						RequestParams reqParams = new RequestParams();
 						reqParams.add("nonce", nonce);
-						reqParams.add("cookie",
-								new WPSession(context).getCookie());
+						reqParams.add("cookie", cookie);
 						reqParams.add("title", title);
 						reqParams.add("content", content);
 						reqParams.add("status", status);
@@ -499,18 +1155,16 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 
 						if (!attachment.equals(null) || !attachment.equals("")) {
 							File image = new File(attachment);
-							Log.d("ATT2", image.getAbsolutePath());
 							try {
 								reqParams.put("attachment", image);
 							} catch (FileNotFoundException e) {
 							}
 						}
-						httpClient.post(BASE_URL + WPPost.CREATE_POST_URL,
-								reqParams, postHandler);
-
-						super.onNonceRecieved(nonce, method);
+						post(WPEndpoint.CREATE_POST, site.getBaseUrl()
+								+ WPPost.CREATE_POST_URL, reqParams,
+								responseHandler, deadline);
 					}
-				});
+				}, deadline);
 	}
 
 	/**
@@ -527,9 +1181,11 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 */
 	public void apiRequest(String controller, String method,
 			OnApiRequestListener listener) {
-		apiRequestHandler = new WordpressResponseHandler<JSONObject>();
-		apiRequestHandler.setOnApiRequestListener(listener);
-		httpClient.get(BASE_URL + controller + "/" + method, apiRequestHandler);
+		WordpressResponseHandler<JSONObject> responseHandler = newResponseHandler();
+		responseHandler.setOnApiRequestListener(listener);
+		responseHandler.setEndpoint(WPEndpoint.API);
+		get(WPEndpoint.API, site.getBaseUrl() + controller + "/" + method,
+				null, responseHandler);
 	}
 
 	/**
@@ -548,20 +1204,35 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 	 */
 	public void apiRequest(String controller, String method,
 			RequestParams params, OnApiRequestListener listener) {
-		apiRequestHandler = new WordpressResponseHandler<JSONObject>();
-		apiRequestHandler.setOnApiRequestListener(listener);
-		httpClient.get(BASE_URL + controller + "/" + method, params,
-				apiRequestHandler);
+		WordpressResponseHandler<JSONObject> responseHandler = newResponseHandler();
+		responseHandler.setOnApiRequestListener(listener);
+		responseHandler.setEndpoint(WPEndpoint.API);
+		get(WPEndpoint.API, site.getBaseUrl() + controller + "/" + method,
+				params, responseHandler);
 	}
 
+	public void updatePost(WPPost post, int userId, String status,
+			WordpressResponseHandler<WPPost> responseHandler) {
+		updatePost(post, userId, status, responseHandler, newDeadline());
+	}
+
+	/**
+	 * <h1>Updates the post within deadline: the nonce and the update requests
+	 * together.</h1> If the server gives no nonce the update isn't sent and
+	 * responseHandler.onNonceRejected is called. If the nonce can't be had,
+	 * e.g. on a connection failure, responseHandler gets the failure and its
+	 * finish instead.
+	 */
 	public void updatePost(final WPPost post, int userId, final String status,
-			final WordpressResponseHandler<WPPost> responseHandler) {
+			final WordpressResponseHandler<WPPost> responseHandler,
+			final WPDeadline deadline) {
 		// TODO: add the cookie
-		httpClient.get(BASE_URL + NONCE_URL
-				+ "?controller=posts&method=update_post",
-				new WordpressResponseHandler<WPPost>() {
+		responseHandler.setSite(site);
+		nonceManager.getNonce(POSTS_CONTROLLER, UPDATE_POST_METHOD,
+				new NonceRequest(POSTS_CONTROLLER, UPDATE_POST_METHOD,
+						responseHandler, deadline) {
 					@Override
-					public void onNonceRecieved(String nonce, String method) {
+					void send(String nonce) {
 						RequestParams reqParams = new RequestParams();
 						// reqParams.add("title", Integer.toString(pId));
 						reqParams.add("title", post.getTitle());
@@ -569,169 +1240,433 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 						reqParams.add("status", status);
 						reqParams.add("nonce", nonce);
 
-						httpClient.get(BASE_URL + WPPost.CREATE_POST_URL,
-								reqParams, responseHandler);
+						get(WPEndpoint.CREATE_POST, site.getBaseUrl()
+								+ WPPost.CREATE_POST_URL, reqParams,
+								responseHandler, deadline);
+					}
+				}, deadline);
+	}
 
-						super.onNonceRecieved(nonce, method);
+	/**
+	 * Requests the nonces the logged in user needs to write posts in the
+	 * background, createPost and updatePost then cost a single round trip.
+	 * Called after every successful login.
+	 */
+	public void prefetchNonces() {
+		nonceManager.prefetch(POSTS_CONTROLLER, CREATE_POST_METHOD);
+		nonceManager.prefetch(POSTS_CONTROLLER, UPDATE_POST_METHOD);
+	}
+
+	/**
+	 * Sends a write once its nonce is known. If the server rejects the nonce a
+	 * fresh one is requested and the write is sent once more, within the
+	 * deadline of the operation. If it gives no nonce at all, or the nonce
+	 * can't be had, the write isn't sent and the response handler is told.
+	 */
+	private abstract class NonceRequest implements
+			WPNonceManager.OnNonceListener {
+		private final String controller;
+		private final String method;
+		private final WordpressResponseHandler<?> responseHandler;
+		private final WPDeadline deadline;
+		private boolean retried;
+
+		NonceRequest(String controller, String method,
+				WordpressResponseHandler<?> responseHandler,
+				WPDeadline deadline) {
+			this.controller = controller;
+			this.method = method;
+			this.responseHandler = responseHandler;
+			this.deadline = deadline;
+		}
+
+		abstract void send(String nonce);
+
+		@Override
+		public void onNonceReceived(String nonce) {
+			if (!retried) {
+				responseHandler.setNonceRetry(new Runnable() {
+					@Override
+					public void run() {
+						retried = true;
+						nonceManager.invalidate(controller, method);
+						nonceManager.getNonce(controller, method,
+								NonceRequest.this, deadline);
 					}
 				});
+			}
+			send(nonce);
+		}
+
+		@Override
+		public void onNonceRejected() {
+			WPLog.w("Wordpress", "no nonce for " + controller + "/" + method,
+					null);
+			responseHandler.onNonceRejected(method);
+		}
+
+		@Override
+		public void onNonceFailed(Throwable error) {
+			// the write is never sent, its handler fails in its place
+			responseHandler.sendFailureMessage(0, null, null, error);
+			responseHandler.sendFinishMessage();
+		}
 	}
 
-	public void getCategoryIndex(OnCategoriesListener listener) {
-		WordpressResponseHandler<WPCategory> responseHandler = new WordpressResponseHandler<WPCategory>();
-		responseHandler.setOnCategoriesListener(listener);
-		responseHandler
-				.setOnConnectionFailureListener(onConnectionFailureListener);
-		httpClient.get(BASE_URL + WPCategory.CATEGORY_INDEX, responseHandler);
+	public void getCategoryIndex(final OnCategoriesListener listener) {
+		WordpressResponseHandler<WPCategory> responseHandler = newResponseHandler();
+		responseHandler.setOnCategoriesListener(new OnCategoriesListener() {
+			@Override
+			public void onCategoriesReceived(ArrayList<WPCategory> cats) {
+				categoryTree = new WPCategoryTree(cats);
+				listener.onCategoriesReceived(cats);
+			}
+		});
+		cachedGet(WPEndpoint.CATEGORY_INDEX, "", null, responseHandler);
+	}
+
+	/**
+	 * <h1>Hands the category tree to the listener, the one built from the
+	 * last category index if any, otherwise the category index is
+	 * requested.</h1>
+	 */
+	public void getCategoryTree(final OnCategoryTreeListener listener) {
+		if (categoryTree != null) {
+			listener.onCategoryTreeReceived(categoryTree);
+			return;
+		}
+		getCategoryIndex(new OnCategoriesListener() {
+			@Override
+			public void onCategoriesReceived(ArrayList<WPCategory> cats) {
+				listener.onCategoryTreeReceived(categoryTree);
+			}
+		});
+	}
+
+	/**
+	 * <h1>Gets the first count posts of the category and of every category
+	 * below it: one request per category, all at once, merged newest
+	 * first.</h1>
+	 */
+	public void getPostsByCategoryTree(final int cId, final int count,
+			final OnPostsReceivedListener listener) {
+		getCategoryTree(new OnCategoryTreeListener() {
+			@Override
+			public void onCategoryTreeReceived(WPCategoryTree tree) {
+				int[] ids = tree.getSubtreeIds(cId);
+				if (ids.length == 0) {
+					ids = new int[] { cId };
+				}
+				getPostsByCategories(ids, count, listener);
+			}
+		});
+	}
+
+	private void getPostsByCategories(int[] ids, final int count,
+			final OnPostsReceivedListener listener) {
+		final ArrayList<WPPost> merged = new ArrayList<WPPost>();
+		final HashMap<Integer, WPPost> byId = new HashMap<Integer, WPPost>();
+		PostsFanOut fanOut = new PostsFanOut(ids.length) {
+			@Override
+			void onPosts(List<WPPost> posts) {
+				for (int i = 0; i < posts.size(); i++) {
+					// a post can be in several of the categories
+					if (!byId.containsKey(posts.get(i).getId())) {
+						byId.put(posts.get(i).getId(), posts.get(i));
+						merged.add(posts.get(i));
+					}
+				}
+			}
+
+			@Override
+			void onDone(Throwable error) {
+				Collections.sort(merged, NEWEST_FIRST);
+				deliver(merged.size() > count ? new ArrayList<WPPost>(merged
+						.subList(0, count)) : merged, error, listener);
+			}
+		};
+
+		for (int i = 0; i < ids.length; i++) {
+			getPostsByCategory(ids[i], count, 1, fanOut.newListener());
+		}
 	}
 
+	// json-api dates ("2014-02-11 09:30:00") sort as strings
+	private static final Comparator<WPPost> NEWEST_FIRST = new Comparator<WPPost>() {
+		@Override
+		public int compare(WPPost lhs, WPPost rhs) {
+			String left = lhs.getDate() == null ? "" : lhs.getDate();
+			String right = rhs.getDate() == null ? "" : rhs.getDate();
+			return right.compareTo(left);
+		}
+	};
+
 	public void getComments(int pId, OnCommentsReceivedListener listener) {
-		commentHandler.setOnCommentsReceivedListener(listener);
+		WordpressResponseHandler<WPComment> responseHandler = newResponseHandler();
+		responseHandler.setOnCommentsReceivedListener(listener);
+		RequestParams reqParams = new RequestParams();
+		reqParams.add("id", Integer.toString(pId));
+		cachedGet(WPEndpoint.POST, "", reqParams, responseHandler);
+	}
+
+	interface OnCommentsPageListener {
+		/**
+		 * @param lastPage
+		 *            true if there are no comments after these ones.
+		 */
+		public void onCommentsPage(ArrayList<WPComment> comments,
+				boolean lastPage);
+
+		/**
+		 * The page couldn't be loaded. After a connection failure or an error
+		 * status it is called after the OnConnectionFailureListener.
+		 */
+		public void onCommentsPageFailed(Throwable error);
+	}
+
+	/**
+	 * Gets the first count comments of the post with an id above afterId, in
+	 * id order. Without the comments controller on the server, every comment
+	 * above afterId comes in one page taken from get_post.
+	 */
+	void getCommentsAfter(final int pId, final int afterId, final int count,
+			final OnCommentsPageListener listener) {
+		if (!commentPagesSupported) {
+			getAllCommentsAfter(pId, afterId, listener);
+			return;
+		}
+
+		RequestParams reqParams = new RequestParams();
+		reqParams.add("post_id", Integer.toString(pId));
+		reqParams.add("after", Integer.toString(afterId));
+		reqParams.add("count", Integer.toString(count));
+
+		get(WPEndpoint.GET_COMMENTS,
+				site.getBaseUrl() + WPEndpoint.GET_COMMENTS.getPath(),
+				reqParams, new JsonHttpResponseHandler() {
+					@Override
+					public void onSuccess(int statusCode, Header[] headers,
+							JSONObject response) {
+						JSONArray comments = response.optJSONArray("comments");
+						if (comments == null
+								&& response.optString("error").startsWith(
+										"Unknown")) {
+							// Unknown controller or method
+							commentPagesSupported = false;
+							getAllCommentsAfter(pId, afterId, listener);
+							return;
+						}
+
+						ArrayList<WPComment> page = parseComments(comments,
+								pId, afterId);
+						listener.onCommentsPage(page, page.size() < count);
+					}
+
+					@Override
+					public void onFailure(int statusCode, Header[] headers,
+							byte[] responseBody, Throwable error) {
+						if (statusCode == HttpStatus.SC_NOT_FOUND) {
+							commentPagesSupported = false;
+							getAllCommentsAfter(pId, afterId, listener);
+						} else {
+							onConnectionFailureListener.OnConnectionFailed();
+							listener.onCommentsPageFailed(error);
+						}
+					}
+
+					@Override
+					public void onFailure(Throwable e, JSONObject errorResponse) {
+						// a body that isn't a JSON object
+						listener.onCommentsPageFailed(e);
+					}
+				});
+	}
+
+	private void getAllCommentsAfter(final int pId, final int afterId,
+			final OnCommentsPageListener listener) {
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("id", Integer.toString(pId));
-		httpClient.get(BASE_URL + WPPost.POST_URL, reqParams, commentHandler);
+		// leave the content, attachments... of the post out
+		reqParams.add("include", "comments");
+
+		get(WPEndpoint.POST, site.getBaseUrl() + WPEndpoint.POST.getPath(),
+				reqParams,
+				new JsonHttpResponseHandler() {
+					@Override
+					public void onSuccess(int statusCode, Header[] headers,
+							JSONObject response) {
+						JSONObject post = response.optJSONObject("post");
+						listener.onCommentsPage(parseComments(post == null ? null
+								: post.optJSONArray("comments"), pId, afterId),
+								true);
+					}
+
+					@Override
+					public void onFailure(int statusCode, Header[] headers,
+							byte[] responseBody, Throwable error) {
+						onConnectionFailureListener.OnConnectionFailed();
+						listener.onCommentsPageFailed(error);
+					}
+
+					@Override
+					public void onFailure(Throwable e, JSONObject errorResponse) {
+						listener.onCommentsPageFailed(e);
+					}
+				});
+	}
+
+	private static ArrayList<WPComment> parseComments(JSONArray comments,
+			int pId, int afterId) {
+		ArrayList<WPComment> page = new ArrayList<WPComment>();
+		for (int i = 0; comments != null && i < comments.length(); i++) {
+			JSONObject comment = comments.optJSONObject(i);
+			if (comment != null) {
+				WPComment parsed = new WPComment(comment, pId);
+				if (parsed.getId() > afterId) {
+					page.add(parsed);
+				}
+			}
+		}
+		Collections.sort(page, WPCommentThread.BY_ID);
+		return page;
 	}
 
 	public void submitComment(WPComment comment,
 			OnCommentSubmittedListener listener) {
-		commentHandler.setOnCommentsSubmittedListener(listener);
+		WordpressResponseHandler<WPComment> responseHandler = newResponseHandler();
+		responseHandler.setOnCommentsSubmittedListener(listener);
 		RequestParams reqParams = new RequestParams();
 		reqParams.add("name", comment.getName());
 		reqParams.add("content", comment.getContent());
 		reqParams.add("email", comment.getUrl());
 		reqParams.add("post_id", Integer.toString(comment.getPostId()));
-		httpClient.get(BASE_URL + WPComment.SUBMIT_COMMENT_URL, reqParams,
-				commentHandler);
+		get(WPEndpoint.SUBMIT_COMMENT, reqParams, responseHandler);
 	}
 
-	private class WPLogin {
+	private class WPLogin implements WPNonceManager.OnNonceListener {
 
 		private String BAD_NONCE = "-1";
 
-		private String nonceURL;
 		private String cookieURL;
 
 		private String userName;
 		private String password;
-		private RequestParams loginPar = new RequestParams();
+
+		private OnLoginListener listener;
+		private WPSession userSession;
+		private WPDeadline deadline;
+		private boolean retried;
 		
-		public WPLogin(String un, String pass, final OnLoginListener listener) {
+		public WPLogin(String un, String pass, final OnLoginListener listener,
+				WPDeadline deadline) {
 			listener.OnLoginStart();
 
 			/*
-			 * 1 - OnLoginStart is called 2 - Nonce request. 1 - failure : calls
-			 * OnLoginFailure 2 - success : make cookie request (actual login) 1
-			 * - failure : calls OnLoginFailure 2 - success : calls
-			 * OnLoginSuccess with a valid session
+			 * 1 - OnLoginStart is called 2 - Nonce request (or cached nonce).
+			 * 1 - failure : calls OnLoginFailure 2 - success : make cookie
+			 * request (actual login) 1 - failure : calls OnLoginFailure 2 -
+			 * success : calls OnLoginSuccess with a valid session
 			 */
 
 			userName = un;
 			password = pass;
+			this.listener = listener;
+			this.deadline = deadline;
 
-			cookieURL = BASE_URL.concat(context
+			cookieURL = site.getBaseUrl().concat(context
 					.getString(R.string.cookie_request));
-			nonceURL = BASE_URL.concat(context.getString(R.string.loginNonce));
 
-			final WPSession userSession = new WPSession(context);
+			userSession = new WPSession(context);
 
-			httpClient.get(nonceURL, new JsonHttpResponseHandler() {
+			nonceManager.getNonce(AUTH_CONTROLLER, LOGIN_METHOD, this, deadline);
+		}
+
+		@Override
+		public void onNonceRejected() {
+			userSession.setStatus(Wordpress.BAD_NONCE);
+			listener.OnLoginFailure(userSession);
+		}
+
+		@Override
+		public void onNonceFailed(Throwable error) {
+			userSession.setStatus(isTimedOut() ? Wordpress.LOGIN_TIMED_OUT
+					: Wordpress.LOGIN_FAILED);
+			listener.OnLoginFailure(userSession);
+		}
+
+		private boolean isTimedOut() {
+			return deadline != null && deadline.isExpired();
+		}
+
+		@Override
+		public void onNonceReceived(String nonce) {
+			userSession.setNonce(nonce);
+
+			RequestParams loginPar = new RequestParams();
+			loginPar.add("nonce", nonce);
+			loginPar.add("username", userName);
+			loginPar.add("password", password);
+
+			get(WPEndpoint.API, cookieURL, loginPar, new JsonHttpResponseHandler() {
 				@Override
 				public void onSuccess(int statusCode, Header[] headers,
 						JSONObject response) {
-					super.onSuccess(statusCode, headers, response);
-
-					// Check nonce status
-					if (isNonceOk(response)) {
+					// Check cookie status
+					if (isCookieOk(response)) {
 						try {
-							String nonce = response.getString("nonce");
-							userSession.setNonce(nonce);
-							
-							loginPar.add("nonce", nonce);
-							loginPar.add("username", userName);
-							loginPar.add("password", password);
-
+							userSession.setSession(response);
 						} catch (JSONException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
 						}
 
-						httpClient.get(cookieURL, loginPar,
-								new JsonHttpResponseHandler() {
-									@Override
-									public void onSuccess(int statusCode,
-											Header[] headers,
-											JSONObject response) {
-										// Check cookie status
-										if (isCookieOk(response)) {
-											try {
-												userSession
-														.setSession(response);
-											} catch (JSONException e) {
-											}
-
-											userSession
-													.setStatus(Wordpress.LOGIN_SUCCESS);
-
-											listener.OnLoginSuccess(userSession);
-
-										} else {
-											int code = Wordpress.LOGIN_FAILED;
-											try {
-												code = response.getInt("code");
-											} catch (JSONException e) {
-											}
-
-											switch (code) {
-											case 1:
-												userSession
-														.setStatus(Wordpress.LOGIN_USER_NAME_ERROR);
-												listener.OnLoginFailure(userSession);
-											case 2:
-												userSession
-														.setStatus(Wordpress.LOGIN_PASSWORD_ERROR);
-												listener.OnLoginFailure(userSession);
-											case 3:
-												userSession
-														.setStatus(Wordpress.LOGIN_CHECK_PASSWORD_AND_OR_USERNAME);
-												listener.OnLoginFailure(userSession);
-											}
-										}
-									}
-
-									@Override
-									public void onFailure(Throwable arg0,
-											JSONObject arg1) {
-										onConnectionFailureListener
-												.OnConnectionFailed();
-									}
-								});
+						userSession.setStatus(Wordpress.LOGIN_SUCCESS);
+
+						// nonces belong to the user, get the new user's ones
+						nonceManager.clear();
+						prefetchNonces();
+
+						listener.OnLoginSuccess(userSession);
+
+					} else if (!retried && WPNonceManager.isNonceError(response)) {
+						// the cached nonce expired, try once with a fresh one
+						retried = true;
+						nonceManager.invalidate(AUTH_CONTROLLER, LOGIN_METHOD);
+						nonceManager.getNonce(AUTH_CONTROLLER, LOGIN_METHOD,
+								WPLogin.this, deadline);
+
 					} else {
-						userSession.setStatus(Wordpress.BAD_NONCE);
-						listener.OnLoginFailure(userSession);
+						int code = Wordpress.LOGIN_FAILED;
+						try {
+							code = response.getInt("code");
+						} catch (JSONException e) {
+						}
+
+						switch (code) {
+						case 1:
+							userSession
+									.setStatus(Wordpress.LOGIN_USER_NAME_ERROR);
+							listener.OnLoginFailure(userSession);
+						case 2:
+							userSession
+									.setStatus(Wordpress.LOGIN_PASSWORD_ERROR);
+							listener.OnLoginFailure(userSession);
+						case 3:
+							userSession
+									.setStatus(Wordpress.LOGIN_CHECK_PASSWORD_AND_OR_USERNAME);
+							listener.OnLoginFailure(userSession);
+						}
 					}
 				}
 
 				@Override
 				public void onFailure(Throwable arg0, JSONObject arg1) {
-					onConnectionFailureListener.OnConnectionFailed();
+					if (isTimedOut()) {
+						userSession.setStatus(Wordpress.LOGIN_TIMED_OUT);
+						listener.OnLoginFailure(userSession);
+					} else {
+						onConnectionFailureListener.OnConnectionFailed();
+					}
 				}
-			});
-		}
-
-		private boolean isNonceOk(JSONObject nr) {
-			String status = null;
-
-			try {
-				status = nr.get("status").toString();
-			} catch (Exception s) {
-
-			}
-
-			if (status.equals("ok")) {
-				return true;
-			} else {
-				return false;
-			}
+			}, deadline);
 		}
 
 		private boolean isCookieOk(JSONObject nr) {
@@ -751,9 +1686,8 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 		}
 	}
 
-	private class WPRegister {
+	private class WPRegister implements WPNonceManager.OnNonceListener {
 
-		private String nonceURL;
 		private String registerURL;
 
 		private String userName;
@@ -761,21 +1695,21 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 		private String email;
 		private String password;
 
-		RequestParams regPar = new RequestParams();
-
 		private OnRegisterListener listener;
+		private WPDeadline deadline;
+		private boolean retried;
 
-		public WPRegister(Bundle regData, OnRegisterListener listener) {
+		public WPRegister(Bundle regData, OnRegisterListener listener,
+				WPDeadline deadline) {
 			this.listener = listener;
+			this.deadline = deadline;
 
 			userName = regData.getString("username");
 			password = regData.getString("password");
 			displayName = regData.getString("displayname");
 			email = regData.getString("email");
 
-			nonceURL = BASE_URL.concat(
-					context.getString(R.string.registerNonce));
-			registerURL = BASE_URL.concat(
+			registerURL = site.getBaseUrl().concat(
 					context.getString(R.string.register_request));
 
 			register();
@@ -785,82 +1719,69 @@ public class Wordpress implements OnLoginListener, OnRegisterListener {
 		private void register() {
 			listener.onRegisterStart();
 
-			httpClient.get(nonceURL, new JsonHttpResponseHandler() {
+			nonceManager.getNonce(USER_CONTROLLER, REGISTER_METHOD, this,
+					deadline);
+		}
+
+		@Override
+		public void onNonceRejected() {
+			//nonce is not ok
+			listener.OnRegisterFailure(Wordpress.BAD_NONCE);
+		}
+
+		@Override
+		public void onNonceFailed(Throwable error) {
+			listener.OnRegisterFailure(isTimedOut() ? Wordpress.REGISTRATION_TIMED_OUT
+					: Wordpress.REGISTRATION_FAILED);
+		}
+
+		private boolean isTimedOut() {
+			return deadline != null && deadline.isExpired();
+		}
+
+		@Override
+		public void onNonceReceived(String nonce) {
+			session.setNonce(nonce);
+
+			RequestParams regPar = new RequestParams();
+			regPar.add("nonce", nonce);
+			regPar.add("username", userName);
+			regPar.add("display_name", displayName);
+			regPar.add("email", email);
+			regPar.add("password", password);
+
+			get(WPEndpoint.API, registerURL, regPar, new JsonHttpResponseHandler() {
 
 				@Override
 				public void onSuccess(int statusCode, Header[] headers,
 						JSONObject response) {
+					if (!retried && WPNonceManager.isNonceError(response)) {
+						// the cached nonce expired, try once with a fresh one
+						retried = true;
+						nonceManager.invalidate(USER_CONTROLLER, REGISTER_METHOD);
+						nonceManager.getNonce(USER_CONTROLLER, REGISTER_METHOD,
+								WPRegister.this, deadline);
+						return;
+					}
 
-					// Check nonce status
-					if (isNonceOk(response)) {
-						try {
-							String nonce = response.getString("nonce");
-							new WPSession(context).setNonce(nonce);
-							// replace URL variables
-							regPar.add("nonce", nonce);
-							regPar.add("username", userName);
-							regPar.add("display_name", displayName);
-							regPar.add("email", email);
-							regPar.add("password", password);
+					int result = registrationStatus(response);
 
-						} catch (JSONException e) {
-							e.printStackTrace();
-							listener.OnRegisterFailure(Wordpress.REGISTRATION_FAILED);
-						}
-
-						httpClient.get(registerURL, regPar,
-								new JsonHttpResponseHandler() {
-
-									@Override
-									public void onSuccess(int statusCode,
-											Header[] headers,
-											JSONObject response) {
-										int result = registrationStatus(response);
-
-										if (result == Wordpress.REGISTRATION_SUCCESS) {
-											listener.OnRegisterSuccess(result);
-										} else {
-											listener.OnRegisterFailure(result);
-										}
-									}
-
-									@Override
-									public void onFailure(Throwable arg0,
-											JSONObject arg1) {
-										onConnectionFailureListener
-												.OnConnectionFailed();
-									}
-								});
-
-					}else{
-						//nonce is not ok
-						listener.OnRegisterFailure(Wordpress.BAD_NONCE);
+					if (result == Wordpress.REGISTRATION_SUCCESS) {
+						listener.OnRegisterSuccess(result);
+					} else {
+						listener.OnRegisterFailure(result);
 					}
-
 				}
 
 				@Override
 				public void onFailure(Throwable arg0, JSONObject arg1) {
-					onConnectionFailureListener.OnConnectionFailed();
+					if (isTimedOut()) {
+						listener.OnRegisterFailure(Wordpress.REGISTRATION_TIMED_OUT);
+					} else {
+						onConnectionFailureListener.OnConnectionFailed();
+					}
 				}
-			});
-
-		}
-
-		private boolean isNonceOk(JSONObject nr) {
-			String status = null;
-
-			try {
-				status = nr.get("status").toString();
-			} catch (Exception s) {
-
-			}
-
-			if (status.equals("ok")) {
-				return true;
-			} else {
-				return false;
-			}
+			}, deadline);
 		}
 
 		private int registrationStatus(JSONObject nr) {
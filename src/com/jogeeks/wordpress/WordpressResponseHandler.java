@@ -1,16 +1,19 @@
 package com.jogeeks.wordpress;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Pattern;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import android.util.Log;
-
 import com.jogeeks.wordpress.listeners.OnApiRequestListener;
 import com.jogeeks.wordpress.listeners.OnCategoriesListener;
 import com.jogeeks.wordpress.listeners.OnCommentSubmittedListener;
@@ -20,6 +23,7 @@ import com.jogeeks.wordpress.listeners.OnCreatePostListener;
 import com.jogeeks.wordpress.listeners.OnCustomFieldsListener;
 import com.jogeeks.wordpress.listeners.OnLoginListener;
 import com.jogeeks.wordpress.listeners.OnPostReceivedListener;
+import com.jogeeks.wordpress.listeners.OnPostsFailedListener;
 import com.jogeeks.wordpress.listeners.OnPostsReceivedListener;
 import com.loopj.android.http.JsonHttpResponseHandler;
 
@@ -35,7 +39,52 @@ public class WordpressResponseHandler<OBJ_TYPE> extends JsonHttpResponseHandler
 	private OnCustomFieldsListener onCustomFieldsListener;
 	private OnApiRequestListener onApiRequestListener;
 	private OnLoginListener onLoginListener;
+
+	private WPEndpoint endpoint;
+	private WPSite site;
+	private WPResponseCache responseCache;
+	private boolean streamingParser = true;
+	private Runnable nonceRetry;
+	private boolean postsFailed;
+
+	/**
+	 * Tags the request with the endpoint it is sent to, the response is then
+	 * dispatched without looking at the request URI.
+	 */
+	void setEndpoint(WPEndpoint endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	/**
+	 * The site the request is sent to. Untagged requests are routed against
+	 * its base URL, and the parsed categories, tags and authors are shared
+	 * with its other posts only.
+	 */
+	void setSite(WPSite site) {
+		this.site = site;
+	}
+
+	void setResponseCache(WPResponseCache cache) {
+		responseCache = cache;
+	}
+
+	/**
+	 * @param enabled
+	 *            false to decode post lists through the JSONObject tree like
+	 *            every other response.
+	 */
+	void setStreamingParser(boolean enabled) {
+		streamingParser = enabled;
+	}
 	
+	/**
+	 * Runs the retry (once) instead of dispatching the response if the server
+	 * rejected the request's nonce.
+	 */
+	void setNonceRetry(Runnable retry) {
+		nonceRetry = retry;
+	}
+
 	public void setOnApiRequestListener(OnApiRequestListener oar) {
 		onApiRequestListener = oar;
 	}
@@ -76,62 +125,223 @@ public class WordpressResponseHandler<OBJ_TYPE> extends JsonHttpResponseHandler
 		onLoginListener = oll;
 	}
 	
+	/**
+	 * A post list is parsed while it downloads: the decoded body goes from
+	 * the connection straight into the streaming parser and never sits in
+	 * memory whole, unless the response cache keeps a copy of it. Any other
+	 * response is read into a String by JsonHttpResponseHandler first.
+	 */
 	@Override
-	public void onSuccess(int statusCode, Header[] headers, JSONObject response) {
-		super.onSuccess(statusCode, headers, response);
+	public void sendResponseMessage(HttpResponse response) throws IOException {
+		int statusCode = response.getStatusLine().getStatusCode();
+		HttpEntity entity = response.getEntity();
+		if (!streamingParser || onPostsReceivedListener == null
+				|| entity == null || statusCode >= 300) {
+			super.sendResponseMessage(response);
+			return;
+		}
 
+		Header[] headers = response.getAllHeaders();
+		boolean cached = responseCache != null && getRequestURI() != null;
+		// only a response that can be revalidated is stored
+		BodyReader body = new BodyReader(new InputStreamReader(
+				entity.getContent(), getCharset()), cached
+				&& (response.containsHeader("ETag") || response
+						.containsHeader("Last-Modified")));
+		final HashMap<String, String> responseMeta = new HashMap<String, String>();
+		final List<WPPost> posts;
+		WPEntities.setParsingSite(site);
 		try {
-			Log.d("requesturi", super.getRequestURI().toString());
+			posts = WPPost.parsePosts(new WPJsonReader(body), responseMeta);
+			entity.consumeContent();
+		} catch (IOException e) {
+			if (body.error != null) {
+				// the download failed, not the parser: the request may be
+				// retried
+				throw body.error;
+			}
+			WPLog.w("WordpressResponseHandler", "streaming parser failed", e);
+			try {
+				entity.consumeContent();
+			} catch (IOException ignored) {
+				// the connection is dropped from the pool
+			}
+			sendFailureMessage(statusCode, headers, null, e);
+			return;
+		} finally {
+			WPEntities.setParsingSite(null);
+		}
 
-			String requestUri = super.getRequestURI().toString();
-			String[] splits = requestUri
-					.split(Wordpress.BASE_URL);
-			String controler = splits[1].split(Pattern.quote("?"))[0];
+		if (cached) {
+			responseCache.put(
+					WPResponseCache.keyFor(getRequestURI().toString()),
+					body.copy != null ? body.copy.toString() : null, headers);
+		}
+		if (!Thread.currentThread().isInterrupted()) {
+			postRunnable(new Runnable() {
+				@Override
+				public void run() {
+					dispatchPosts(posts, responseMeta);
+				}
+			});
+		}
+	}
 
-			Log.d("contorler", controler);
+	@Override
+	public void onSuccess(int statusCode, Header[] headers, String responseBody) {
+		if (responseCache != null && getRequestURI() != null) {
+			responseCache.put(
+					WPResponseCache.keyFor(getRequestURI().toString()),
+					responseBody, headers);
+		}
+		onResponseBody(statusCode, headers, responseBody);
+	}
 
-			/***** posts controller *****/
-			if (controler.equalsIgnoreCase(WPPost.POSTS_URL)) {
-				if (response.getInt("count") != 0) {
-					onPostsReceivedListener.onPostsReceived(
-							WPPost.parsePosts(response),
-							Wordpress.parseResponseMeta(response));
-				} else {
-					onPostsReceivedListener.onNoPosts();
-				}
-			} else if (controler.equalsIgnoreCase(WPPost.DATE_POSTS_URL)) {
-				if (response.getInt("count") != 0) {
-					onPostsReceivedListener.onPostsReceived(
-							WPPost.parsePosts(response),
-							Wordpress.parseResponseMeta(response));
-				} else {
-					onPostsReceivedListener.onNoPosts();
-				}
-			} else if (controler.equalsIgnoreCase(WPPost.RECENT_POSTS_URL)) {
-				if (response.getInt("count") != 0) {
-					onPostsReceivedListener.onPostsReceived(
-							WPPost.parsePosts(response),
-							Wordpress.parseResponseMeta(response));
-				} else {
-					onPostsReceivedListener.onNoPosts();
-				}
-			} else if (controler.equalsIgnoreCase(WPPost.SEARCH_POSTS_URL)) {
-				if (response.getInt("count") != 0) {
-					onPostsReceivedListener.onPostsReceived(
-							WPPost.parsePosts(response),
-							Wordpress.parseResponseMeta(response));
-				} else {
-					onPostsReceivedListener.onNoPosts();
+	@Override
+	public void onFailure(int statusCode, Header[] headers,
+			String responseBody, Throwable throwable) {
+		// a 304 is reported as a failure, serve the cached body instead
+		if (statusCode == HttpStatus.SC_NOT_MODIFIED && responseCache != null
+				&& getRequestURI() != null) {
+			WPResponseCache.Entry entry = responseCache
+					.notModified(WPResponseCache.keyFor(getRequestURI()
+							.toString()));
+			if (entry != null) {
+				onResponseBody(statusCode, headers, entry.getBody());
+				return;
+			}
+		}
+		failPosts(throwable);
+		super.onFailure(statusCode, headers, responseBody, throwable);
+	}
+
+	/**
+	 * Post lists that arrive as a String, a cached body served for a 304, are
+	 * decoded by the streaming parser on a background thread, straight into
+	 * WPPost objects. Any other response, or a body the streaming parser
+	 * rejects, goes through the JSONObject tree.
+	 */
+	private void onResponseBody(final int statusCode, final Header[] headers,
+			final String responseBody) {
+		if (!streamingParser || onPostsReceivedListener == null
+				|| responseBody == null) {
+			parseTree(statusCode, headers, responseBody);
+			return;
+		}
+
+		Wordpress.getSharedThreadPool().execute(new Runnable() {
+			@Override
+			public void run() {
+				final HashMap<String, String> responseMeta = new HashMap<String, String>();
+				WPEntities.setParsingSite(site);
+				try {
+					final List<WPPost> posts = WPPost.parsePosts(
+							new WPJsonReader(responseBody), responseMeta);
+					postRunnable(new Runnable() {
+						@Override
+						public void run() {
+							dispatchPosts(posts, responseMeta);
+						}
+					});
+				} catch (IOException e) {
+					WPLog.w("WordpressResponseHandler",
+							"streaming parser failed, falling back to JSONObject",
+							e);
+					parseTree(statusCode, headers, responseBody);
+				} finally {
+					WPEntities.setParsingSite(null);
 				}
-			} else if (controler.equalsIgnoreCase(WPPost.CATEGORY_POSTS_URL)) {
-				if (response.getInt("count") != 0) {
-					onPostsReceivedListener.onPostsReceived(
-							WPPost.parsePosts(response),
-							Wordpress.parseResponseMeta(response));
-				} else {
-					onPostsReceivedListener.onNoPosts();
+			}
+		});
+	}
+
+	/**
+	 * Decodes the body into a JSONObject on a background thread, like
+	 * JsonHttpResponseHandler does, but a body that isn't a JSON object is a
+	 * failure: handing it back to onSuccess(int, Header[], String) would
+	 * parse it again, forever.
+	 */
+	private void parseTree(final int statusCode, final Header[] headers,
+			final String responseBody) {
+		Wordpress.getSharedThreadPool().execute(new Runnable() {
+			@Override
+			public void run() {
+				Object json;
+				try {
+					json = parseResponse(responseBody);
+				} catch (JSONException e) {
+					json = e;
 				}
-			} else if (controler.equalsIgnoreCase(WPPost.AUTHOR_POSTS_URL)) {
+				final Object result = json;
+				postRunnable(new Runnable() {
+					@Override
+					public void run() {
+						if (result instanceof JSONObject) {
+							onSuccess(statusCode, headers, (JSONObject) result);
+						} else if (result instanceof JSONException) {
+							onFailure((JSONException) result, (JSONObject) null);
+						} else {
+							onFailure(new JSONException("not a JSON object: "
+									+ responseBody), (JSONObject) null);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Tells the post list listener that the request failed, if it wants to
+	 * know. An error status with a JSON body fails twice, through the status
+	 * and through the body, the listener hears it once.
+	 */
+	private void failPosts(Throwable error) {
+		if (postsFailed
+				|| !(onPostsReceivedListener instanceof OnPostsFailedListener)) {
+			return;
+		}
+		postsFailed = true;
+		((OnPostsFailedListener) onPostsReceivedListener).onPostsFailed(error);
+	}
+
+	private void dispatchPosts(List<WPPost> posts,
+			HashMap<String, String> responseMeta) {
+		if (posts.size() != 0) {
+			onPostsReceivedListener.onPostsReceived(posts, responseMeta);
+		} else {
+			onPostsReceivedListener.onNoPosts();
+		}
+	}
+
+	@Override
+	public void onSuccess(int statusCode, Header[] headers, JSONObject response) {
+		super.onSuccess(statusCode, headers, response);
+
+		if (nonceRetry != null && WPNonceManager.isNonceError(response)) {
+			Runnable retry = nonceRetry;
+			nonceRetry = null;
+			retry.run();
+			return;
+		}
+
+		WPEndpoint target = endpoint;
+		if (target == null) {
+			target = WPEndpoint.fromRequestUri(getRequestURI() == null ? null
+					: getRequestURI().toString(),
+					site != null ? site.getBaseUrl() : Wordpress.BASE_URL);
+		}
+
+		WPEntities.setParsingSite(site);
+		try {
+			switch (target) {
+			/***** posts controller *****/
+			case POSTS:
+			case DATE_POSTS:
+			case RECENT_POSTS:
+			case SEARCH_POSTS:
+			case CATEGORY_POSTS:
+			case AUTHOR_POSTS:
+			case TAG_POSTS:
 				if (response.getInt("count") != 0) {
 					onPostsReceivedListener.onPostsReceived(
 							WPPost.parsePosts(response),
@@ -139,76 +349,90 @@ public class WordpressResponseHandler<OBJ_TYPE> extends JsonHttpResponseHandler
 				} else {
 					onPostsReceivedListener.onNoPosts();
 				}
-			} else if (controler.equalsIgnoreCase(WPPost.TAG_POSTS_URL)) {
-				onPostsReceivedListener.onPostsReceived(
-						WPPost.parsePosts(response),
-						Wordpress.parseResponseMeta(response));
-				/***** Post controller *****/
-			} else if (controler.equalsIgnoreCase(WPPost.CREATE_POST_URL)) {
+				break;
+
+			/***** Post controller *****/
+			case CREATE_POST:
 				onCreatePostListener.OnPostCreated(new WPPost(response
 						.getJSONObject("post")));
-			} else if (controler.equalsIgnoreCase(WPPost.DELTE_POST_URL)) {
+				break;
+			case DELETE_POST:
 				onPostDeleted();
-			} else if (controler.equalsIgnoreCase(WPPost.UPDATE_POST_URL)) {
+				break;
+			case UPDATE_POST:
 				onPostEdited(new WPPost(response));
-			} else if (controler.equalsIgnoreCase(WPPost.POST_URL)) {
+				break;
+			case POST:
 				WPPost post = new WPPost(response.getJSONObject("post"));
-				onPostReceivedListener.onPostReceived(post);
-				// TODO: maybe later make a parser just for comments (if there
-				// is not object post then go to the comments listner)
-				// onCommentsReceivedListener.onCommentsReceived(post,
-				// post.getComments());
-				/***** Page controller *****/
-			} else if (controler.equalsIgnoreCase(WPPost.PAGE_URL)) {
-				onCreatePostListener.OnPostCreated(new WPPost(response));
-			}
+				// get_post answers both getPost and getComments, each request
+				// has its own handler so only one of the listeners is set
+				if (onCommentsReceivedListener != null) {
+					onCommentsReceivedListener.onCommentsReceived(post,
+							post.getComments());
+				} else {
+					onPostReceivedListener.onPostReceived(post);
+				}
+				break;
+
 			/***** Page controller *****/
-			else if (controler.equalsIgnoreCase(Wordpress.NONCE_URL + "/")) {
+			case PAGE:
+				onCreatePostListener.OnPostCreated(new WPPost(response));
+				break;
+			case NONCE:
 				onNonceRecieved(WPPost.parseNonce(response), "create_post");
-			}
+				break;
+
 			/***** Comments controller *****/
-			else if (controler.equalsIgnoreCase(WPComment.SUBMIT_COMMENT_URL)) {
+			case SUBMIT_COMMENT:
 				onCommentSubmittedListener.onCommentSubmitted(new WPComment(
 						response, 0));
+				break;
 
-				/***** Users controller *****/
-
-				/***** Categories controller *****/
-			} else if (controler.equalsIgnoreCase(WPCategory.CATEGORY_INDEX)) {
+			/***** Categories controller *****/
+			case CATEGORY_INDEX:
 				onCategoriesListener.onCategoriesReceived(WPCategory
 						.parseCategories(response));
-				/***** Post custom fields controller *****/
-				// TODO handle response
-			} else if (controler.equalsIgnoreCase(WPCustomField.ADD_POST_META)) {
+				break;
+
+			/***** Post custom fields controller *****/
+			// TODO handle response
+			case ADD_POST_META:
 				onCustomFieldsListener.OnMetaDataAdded();
-			} else if (controler
-					.equalsIgnoreCase(WPCustomField.DELETE_POST_META)) {
+				break;
+			case DELETE_POST_META:
 				onCustomFieldsListener.OnMetaDataDeleted();
-			} else if (controler
-					.equalsIgnoreCase(WPCustomField.GET_POST_CUSTOM)) {
+				break;
+			case GET_POST_CUSTOM:
 				onCustomFieldsListener.OnCustomPostMetaReceived(WPCustomField
 						.parseMetaResponse(response
 								.getJSONObject("custom_fields")));
-			} else if (controler.equalsIgnoreCase(WPCustomField.GET_POST_KEYS)) {
+				break;
+			case GET_POST_KEYS:
 				onCustomFieldsListener.OnCustomPostMetaKeysReceived(WPCustomField
 						.parseCustomKeys(response
 								.getJSONArray("custom_fields_keys")));
-			} else if (controler
-					.equalsIgnoreCase(WPCustomField.GET_POST_VALUES)) {
+				break;
+			case GET_POST_VALUES:
 				onCustomFieldsListener.OnCustomPostMetaValuesReceived(WPCustomField
 						.parseCustomValues(response
 								.getJSONArray("custom_fields_values")));
-			} else if (controler
-					.equalsIgnoreCase(WPCustomField.UPDATE_POST_META)) {
+				break;
+			case UPDATE_POST_META:
 				onCustomFieldsListener.OnMetaDataUpdated();
-				
-				//Custom API request
-			} else{
+				break;
+
+			// Custom API request
+			case API:
+			default:
 				onApiRequestListener.OnApiRequestResponse(response);
+				break;
 			}
 
 		} catch (JSONException e) {
 			e.printStackTrace();
+			failPosts(e);
+		} finally {
+			WPEntities.setParsingSite(null);
 		}
 	}
 
@@ -216,6 +440,17 @@ public class WordpressResponseHandler<OBJ_TYPE> extends JsonHttpResponseHandler
 
 	}
 
+	/**
+	 * The server gave no nonce for method, so the write wasn't sent. Tells
+	 * the create post listener the post wasn't created; a handler passed to
+	 * updatePost can override it.
+	 */
+	public void onNonceRejected(String method) {
+		if (onCreatePostListener != null) {
+			onCreatePostListener.OnPostCreatedFailed();
+		}
+	}
+
 	public void onPostEdited(WPPost post) {
 		//
 	}
@@ -224,10 +459,56 @@ public class WordpressResponseHandler<OBJ_TYPE> extends JsonHttpResponseHandler
 		//
 	}
 
+	/**
+	 * A failed create_post, or one never sent because its nonce couldn't be
+	 * had, tells the create post listener the post wasn't created.
+	 */
 	@Override
 	public void onFailure(Throwable arg0, JSONObject arg1) {
-
-		onConnectionFailureListener.OnConnectionFailed();
+		failPosts(arg0);
+		if (onCreatePostListener != null) {
+			onCreatePostListener.OnPostCreatedFailed();
+		}
+		if (onConnectionFailureListener != null) {
+			onConnectionFailureListener.OnConnectionFailed();
+		}
 	}
 
+	/**
+	 * The body as the streaming parser reads it. Keeps a copy for the
+	 * response cache if asked, and the error of a failed download, to tell
+	 * it from a body the parser rejects.
+	 */
+	private static final class BodyReader extends Reader {
+
+		private final Reader in;
+		final StringBuilder copy;
+		IOException error;
+
+		BodyReader(Reader in, boolean keepCopy) {
+			this.in = in;
+			copy = keepCopy ? new StringBuilder() : null;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length)
+				throws IOException {
+			int read;
+			try {
+				read = in.read(buffer, offset, length);
+			} catch (IOException e) {
+				error = e;
+				throw e;
+			}
+			if (read > 0 && copy != null) {
+				copy.append(buffer, offset, read);
+			}
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
 }
@@ -0,0 +1,7 @@
+package com.jogeeks.wordpress.listeners;
+
+import com.jogeeks.wordpress.WPCategoryTree;
+
+public interface OnCategoryTreeListener {
+	public void onCategoryTreeReceived(WPCategoryTree tree);
+}
@@ -0,0 +1,21 @@
+package com.jogeeks.wordpress.listeners;
+
+import java.util.List;
+
+import com.jogeeks.wordpress.WPComment;
+import com.jogeeks.wordpress.WPCommentThread;
+
+public interface OnCommentThreadListener {
+	/**
+	 * @param added
+	 *            the comments new to the thread, in id order, empty if there
+	 *            were none.
+	 */
+	public void onCommentsLoaded(WPCommentThread thread, List<WPComment> added);
+
+	/**
+	 * The page couldn't be loaded, the thread is unchanged. Call loadMore or
+	 * refresh again to retry.
+	 */
+	public void onCommentsFailed(WPCommentThread thread, Throwable error);
+}
@@ -1,6 +1,8 @@
 package com.jogeeks.wordpress.listeners;
 
+/**
+ * @see OnRequestFailureListener for the reason of the failure.
+ */
 public interface OnConnectionFailureListener {
-	// TODO be more specific
 	public void OnConnectionFailed();
 }
@@ -3,6 +3,7 @@ package com.jogeeks.wordpress.listeners;
 import java.util.ArrayList;
 
 import com.jogeeks.wordpress.WPCustomField;
+import com.jogeeks.wordpress.WPMetaBatch;
 
 public interface OnCustomFieldsListener {
 	public void OnMetaDataAdded();
@@ -11,4 +12,5 @@ public interface OnCustomFieldsListener {
 	public void OnCustomPostMetaReceived(ArrayList<WPCustomField> metaData);
 	public void OnCustomPostMetaKeysReceived(ArrayList<String> metaData);
 	public void OnCustomPostMetaValuesReceived(ArrayList<String> metaData);
+	public void OnMetaDataBatchApplied(WPMetaBatch batch);
 }
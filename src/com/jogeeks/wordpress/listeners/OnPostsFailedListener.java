@@ -0,0 +1,14 @@
+package com.jogeeks.wordpress.listeners;
+
+/**
+ * An OnPostsReceivedListener that also implements this interface is told
+ * when its post list request fails, instead of getting no call at all.
+ */
+public interface OnPostsFailedListener {
+	/**
+	 * Called on the main thread once the request has failed for good: the
+	 * connection failed, the server answered with an error or a body that
+	 * isn't a post list.
+	 */
+	public void onPostsFailed(Throwable error);
+}
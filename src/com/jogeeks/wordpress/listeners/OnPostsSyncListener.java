@@ -0,0 +1,17 @@
+package com.jogeeks.wordpress.listeners;
+
+import java.util.List;
+
+import com.jogeeks.wordpress.WPPost;
+
+public interface OnPostsSyncListener {
+	public void onLocalPostsLoaded(List<WPPost> posts);
+
+	public void onPostsSynced(List<WPPost> posts, int changedCount);
+
+	/**
+	 * A page of the sync failed, the sync stopped there. The local posts
+	 * handed over before are still the ones to show.
+	 */
+	public void onPostsSyncFailed(Throwable error);
+}
@@ -0,0 +1,11 @@
+package com.jogeeks.wordpress.listeners;
+
+import com.jogeeks.wordpress.WPFailure;
+
+public interface OnRequestFailureListener {
+	/**
+	 * Called on the main thread once a request has failed for good, after its
+	 * retries, before the failure reaches its own listener.
+	 */
+	public void onRequestFailed(WPFailure failure);
+}
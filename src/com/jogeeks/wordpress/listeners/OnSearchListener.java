@@ -0,0 +1,11 @@
+package com.jogeeks.wordpress.listeners;
+
+import java.util.List;
+
+import com.jogeeks.wordpress.WPPost;
+
+public interface OnSearchListener {
+	public void onLocalResults(List<WPPost> posts);
+
+	public void onSearchResults(List<WPPost> posts);
+}